@@ -66,6 +66,8 @@ public class Options {
         MONITORS,       /* -l */
         THREADS,        /* -t */
         PARSE_ARCHIVES, /* -a */
+        LOG_COLUMNAR,   /* -b */
+        LOG_PERCENTILES, /* -q */
         
         /* Heap SnapShot (-snapshot) */
         SNAPSHOT_SUMMARY, /* -s */
@@ -74,6 +76,10 @@ public class Options {
         CLASS_REFERENCES, /* -r */
         HEAP_CSV,         /* -e */
         GC_CSV,           /* -g */
+        HEAP_COLUMNAR,    /* -b */
+        PACK_ARCHIVE,     /* -z */
+        LEAK_SUSPECTS,    /* -l */
+        FORECAST,         /* -f */
         
         /* Thread Recorder (-record) */
         SHOW_THREAD_RECORD_ID, /* -threads */
@@ -93,6 +99,16 @@ public class Options {
         JMX_INVOKE_ALL_LOG   /* -ia */
     }
     
+    /**
+     * Direction of reference traverse (-snapshot -r).
+     */
+    public static enum RefDirection{
+        PARENT, /* p */
+        CHILD,  /* c */
+        OWNER,  /* o */
+        CYCLE   /* s */
+    }
+    
     /**
      * File list to parse.
      */
@@ -123,6 +139,9 @@ public class Options {
     /* -showids */
     private boolean showId = false;
     
+    /* -follow */
+    private boolean follow = false;
+    
     /**
      * Start of reference.
      * This option effects -snapshot -r only.
@@ -133,13 +152,25 @@ public class Options {
      * Direction of reference traverse.
      * This option effects -snapshot -r only.
      */
-    private boolean refToParent;
+    private RefDirection refDirection;
     
     /**
      * CSV file name to dump.
      * This option effects -snapshot -e or -g only.
      */
     private File csvFile;
+    
+    /**
+     * Columnar binary file name to dump.
+     * This option effects -log -b or -snapshot -b only.
+     */
+    private File columnarFile;
+    
+    /**
+     * SnapShot archive file name to write.
+     * This option effects -snapshot -z only.
+     */
+    private File archiveFile;
 
     /**
      * Thread ID to dump.
@@ -175,6 +206,7 @@ public class Options {
         System.out.println("common options:");
         System.out.println("  -start: Start ID");
         System.out.println("  -end  : End ID");
+        System.out.println("  -follow: Follow data which is appended to the file. (-log -showids/-i/-c/-m/-s/-l/-t, -snapshot -showids/-s)");
         System.out.println();
         System.out.println("mode:");
         System.out.println("  -log     : Processs HeapStats resource log file.");
@@ -192,6 +224,8 @@ public class Options {
         System.out.println("    -l      : Show monitor contention count at java process.");
         System.out.println("    -t      : Show count of live java threads at java process.");
         System.out.println("    -a      : Report and extract error archive in resource file.");
+        System.out.println("    -b <file>: Dump resource log as columnar binary.");
+        System.out.println("    -q      : Show percentiles (p50/p90/p99/p99.9) of all metrics.");
         System.out.println("  -snapshot:");
         System.out.println("    -showids      : List all IDs in files.");
         System.out.println("    -filter       : Set filter to out. You can use regex.");
@@ -200,9 +234,14 @@ public class Options {
         System.out.println("    -c            : Show class histogram.");
         System.out.println("    -d            : Show histogram from diff of snapshots.");
         System.out.println("    -r <class tag>: Show class references. You have to pass class id as start point.");
-        System.out.println("      -d <p|c>: Select the direction to traverse references. p means parent, c means child.");
+        System.out.println("      -d <p|c|o|s>: Select the direction to traverse references. p means parent, c means child,");
+        System.out.println("                    o means heaviest reference paths to owners, s means reference cycles.");
         System.out.println("    -e <CSV file> : Dump class histogram(s) as CSV.");
         System.out.println("    -g <CSV file> : Dump GC information as CSV.");
+        System.out.println("    -b <file>     : Dump GC information and class histogram(s) as columnar binary.");
+        System.out.println("    -z <file>     : Pack snapshot(s) into compact archive. Archive can be passed as snapshot file.");
+        System.out.println("    -l            : Show leak suspects from growth trend of classes in snapshots.");
+        System.out.println("    -f            : Forecast exhaustion of Java heap and Metaspace from usage after full GC.");
         System.out.println("  -event: Processs HeapStats thread recorder file.");
         System.out.println("    -showids      : List all IDs in files.");
         System.out.println("    -threads: List all thread IDs in files.");
@@ -270,6 +309,13 @@ public class Options {
             case "-a":
                 mode = Mode.PARSE_ARCHIVES;
                 break;
+            case "-b":
+                mode = Mode.LOG_COLUMNAR;
+                columnarFile = new File(getNextValue(itr, "Columnar option (-b) needs file name."));
+                break;
+            case "-q":
+                mode = Mode.LOG_PERCENTILES;
+                break;
             default:
                 throw new IllegalArgumentException("Unknown option: " + option);
         }
@@ -313,19 +359,25 @@ public class Options {
                     mode = Mode.CLASS_REFERENCES;
                     refStartTag = Long.decode(getNextValue(itr, "Class Reference option (-r) needs class tag value."));
 
-                    if(!getNextValue(itr, "Class Reference option (-r) needs direction option (-d <p|c>)").equals("-d")){
-                        throw new IllegalArgumentException("Class Reference option (-r) needs direction option (-d <p|c>)");
+                    if(!getNextValue(itr, "Class Reference option (-r) needs direction option (-d <p|c|o|s>)").equals("-d")){
+                        throw new IllegalArgumentException("Class Reference option (-r) needs direction option (-d <p|c|o|s>)");
                     }
 
-                    switch(getNextValue(itr, "Class Reference option (-r) needs direction option (-d <p|c>)")){
+                    switch(getNextValue(itr, "Class Reference option (-r) needs direction option (-d <p|c|o|s>)")){
                         case "p":
-                            refToParent = true;
+                            refDirection = RefDirection.PARENT;
                             break;
                         case "c":
-                            refToParent = false;
+                            refDirection = RefDirection.CHILD;
+                            break;
+                        case "o":
+                            refDirection = RefDirection.OWNER;
+                            break;
+                        case "s":
+                            refDirection = RefDirection.CYCLE;
                             break;
                         default:
-                            throw new IllegalArgumentException("Class Reference option (-r) needs direction option (-d <p|c>)");
+                            throw new IllegalArgumentException("Class Reference option (-r) needs direction option (-d <p|c|o|s>)");
                     }
 
                     break;
@@ -337,6 +389,20 @@ public class Options {
                     mode = Mode.GC_CSV;
                     csvFile = new File(getNextValue(itr, "GC CSV option (-g) needs file name of CSV."));
                     break;
+                case "-b":
+                    mode = Mode.HEAP_COLUMNAR;
+                    columnarFile = new File(getNextValue(itr, "Columnar option (-b) needs file name."));
+                    break;
+                case "-z":
+                    mode = Mode.PACK_ARCHIVE;
+                    archiveFile = new File(getNextValue(itr, "Archive option (-z) needs file name."));
+                    break;
+                case "-l":
+                    mode = Mode.LEAK_SUSPECTS;
+                    break;
+                case "-f":
+                    mode = Mode.FORECAST;
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown option: " + option);
             }
@@ -455,6 +521,9 @@ public class Options {
                 case "-end":
                     end = OptionalInt.of(Integer.parseInt(getNextValue(itr, "-end option needs valid ID.")) + 1);
                     break;
+                case "-follow":
+                    follow = true;
+                    break;
                 case "-log":
                     parseLogOptions(itr);
                     break;
@@ -535,10 +604,10 @@ public class Options {
     /**
      * Direction of reference traverse.
      * This option effects -snapshot -r only.
-     * @return true if parent.
+     * @return Direction of reference traverse.
      */
-    public boolean isRefToParent() {
-        return refToParent;
+    public RefDirection getRefDirection() {
+        return refDirection;
     }
 
     /**
@@ -549,6 +618,14 @@ public class Options {
         return showId;
     }
     
+    /**
+     * Follow option.
+     * @return true if appended data should be followed.
+     */
+    public boolean isFollow() {
+        return follow;
+    }
+    
     /**
      * Get file type to parse.
      * @return File type.
@@ -589,6 +666,22 @@ public class Options {
     public File getCsvFile() {
         return csvFile;
     }
+
+    /**
+     * Get columnar binary file name.
+     * @return Columnar binary file name.
+     */
+    public File getColumnarFile() {
+        return columnarFile;
+    }
+
+    /**
+     * Get SnapShot archive file name.
+     * @return SnapShot archive file name.
+     */
+    public File getArchiveFile() {
+        return archiveFile;
+    }
     
     /**
      * Get predicate of Thread ID filter.
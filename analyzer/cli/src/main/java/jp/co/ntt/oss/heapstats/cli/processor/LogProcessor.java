@@ -19,14 +19,18 @@ package jp.co.ntt.oss.heapstats.cli.processor;
 
 import java.io.File;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import jp.co.ntt.oss.heapstats.cli.Options;
+import jp.co.ntt.oss.heapstats.collection.QuantileSketch;
 import jp.co.ntt.oss.heapstats.container.log.ArchiveData;
-import jp.co.ntt.oss.heapstats.container.log.DiffData;
-import jp.co.ntt.oss.heapstats.container.log.LogData;
+import jp.co.ntt.oss.heapstats.container.log.DiffSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogStatistics;
 import jp.co.ntt.oss.heapstats.lambda.ConsumerWrapper;
+import jp.co.ntt.oss.heapstats.task.ColumnarDumpLog;
+import jp.co.ntt.oss.heapstats.task.FollowLogFile;
 import jp.co.ntt.oss.heapstats.task.ParseLogFile;
 
 /**
@@ -51,80 +55,218 @@ public class LogProcessor implements CliProcessor{
                                                         .collect(Collectors.toList()), false);
     }
     
+    /**
+     * Check whether the mode shows log entries in each row.
+     * 
+     * @return true if the mode shows rows.
+     */
+    private boolean isRowMode(){
+        
+        if(options.isShowId()){
+            return true;
+        }
+        
+        switch(options.getMode()){
+            case JAVA_CPU:
+            case SYSTEM_CPU:
+            case MEMORIES:
+            case SAFEPOINTS:
+            case MONITORS:
+            case THREADS:
+                return true;
+            default:
+                return false;
+        }
+        
+    }
+    
+    /**
+     * Check whether rows of the mode are based on difference series.
+     * 
+     * @return true if rows are difference data.
+     */
+    private boolean isDiffMode(){
+        
+        if(options.isShowId()){
+            return false;
+        }
+        
+        switch(options.getMode()){
+            case JAVA_CPU:
+            case SYSTEM_CPU:
+            case SAFEPOINTS:
+            case MONITORS:
+                return true;
+            default:
+                return false;
+        }
+        
+    }
+    
+    /**
+     * Print title of rows.
+     */
+    private void printTitle(){
+        
+        if(options.isShowId()){
+            return;
+        }
+        
+        switch(options.getMode()){
+            case JAVA_CPU:
+                System.out.println("Java CPU:");
+                System.out.println("date time,  %user,  %sys");
+                break;
+            case SYSTEM_CPU:
+                System.out.println("System CPU:");
+                System.out.println("date time,  %user,  %nice,  %sys,  %iowait,  %irq,  %softirq,  %steal,  %guest,  %idle");
+                break;
+            case MEMORIES:
+                System.out.println("Java Memory:");
+                System.out.println("date time,  VSZ (MB),  RSS (MB)");
+                break;
+            case SAFEPOINTS:
+                System.out.println("Safepoints:");
+                System.out.println("date time,  count,  time (ms)");
+                break;
+            case MONITORS:
+                System.out.println("Monitor Contention:");
+                System.out.println("date time,  count");
+                break;
+            case THREADS:
+                System.out.println("Live threads:");
+                System.out.println("date time,  count");
+                break;
+        }
+        
+    }
+    
+    /**
+     * Create printer of a row.
+     * Index of difference series is passed to the printer if
+     * {@link #isDiffMode()} is true, otherwise index of log series is passed.
+     * 
+     * @param logSeries Log series to print.
+     * @param diffSeries Difference series of logSeries.
+     * @return Printer of a row.
+     */
+    private IntConsumer createRowPrinter(LogSeries logSeries, DiffSeries diffSeries){
+        
+        if(options.isShowId()){
+            return i -> System.out.println(String.format("%d: %s", i, logSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        }
+        
+        switch(options.getMode()){
+            case JAVA_CPU:
+                return i -> System.out.println(String.format("%s: %.2f %.2f", diffSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), diffSeries.getJavaUserUsage(i), diffSeries.getJavaSysUsage(i)));
+            case SYSTEM_CPU:
+                return i -> System.out.println(String.format("%s: %.2f %.2f %.2f %.2f %.2f %.2f %.2f %.2f %.2f", diffSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                                                                                                                  diffSeries.getCpuUserUsage(i), diffSeries.getCpuNiceUsage(i), diffSeries.getCpuSysUsage(i),
+                                                                                                                  diffSeries.getCpuIOWaitUsage(i), diffSeries.getCpuIRQUsage(i), diffSeries.getCpuSoftIRQUsage(i),
+                                                                                                                  diffSeries.getCpuStealUsage(i), diffSeries.getCpuGuestUsage(i), diffSeries.getCpuIdleUsage(i)));
+            case MEMORIES:
+                return i -> System.out.println(String.format("%s: %d %d", logSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), logSeries.getJavaVSSize(i) / 1024 / 1024, logSeries.getJavaRSSize(i) / 1024 / 1024));
+            case SAFEPOINTS:
+                return i -> System.out.println(String.format("%s: %d %d", diffSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), diffSeries.getJvmSafepoints(i), diffSeries.getJvmSafepointTime(i)));
+            case MONITORS:
+                return i -> System.out.println(String.format("%s: %d", diffSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), diffSeries.getJvmSyncPark(i)));
+            case THREADS:
+                return i -> System.out.println(String.format("%s: %d", logSeries.getDateTime(i).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), logSeries.getJvmLiveThreads(i)));
+            default:
+                throw new IllegalStateException("Unexpected mode: " + options.getMode());
+        }
+        
+    }
+    
+    /**
+     * Show count, average, maximum and percentiles of all metrics.
+     * 
+     * @param statistics Statistics to show.
+     */
+    private void printStatistics(LogStatistics statistics){
+        System.out.println("metric, count, average, max, p50, p90, p99, p99.9");
+        
+        for(LogStatistics.Metric metric : LogStatistics.Metric.values()){
+            QuantileSketch sketch = statistics.getSketch(metric);
+            System.out.println(String.format("%s, %d, %.2f, %.2f, %.2f, %.2f, %.2f, %.2f",
+                                             metric.name(), sketch.getCount(), sketch.getAverage(), sketch.getMax(),
+                                             sketch.getQuantile(0.5d), sketch.getQuantile(0.9d),
+                                             sketch.getQuantile(0.99d), sketch.getQuantile(0.999d)));
+        }
+        
+    }
+    
+    /**
+     * Follow resource log and show appended entries.
+     * This method does not return until the process is terminated.
+     */
+    private void follow(){
+        
+        if(!isRowMode()){
+            System.out.println("-follow is not supported in this mode.");
+            return;
+        }
+        if(options.getFile().size() != 1){
+            System.out.println("-follow needs one resource log file.");
+            return;
+        }
+        
+        printTitle();
+        FollowLogFile follower = new FollowLogFile(options.getFile().get(0), (logSeries, from) -> {
+                                                    DiffSeries diffSeries = new DiffSeries(logSeries);
+                                                    /* Difference of the first appended entry is calculated with previous entry. */
+                                                    int start = isDiffMode() ? Math.max(from - 1, 0) : from;
+                                                    int end = isDiffMode() ? diffSeries.size() : logSeries.size();
+                                                    IntStream.range(start, end)
+                                                             .forEach(createRowPrinter(logSeries, diffSeries));
+                                                 },
+                                                 e -> System.err.println("Skipped: " + e.getMessage()));
+        follower.run();
+    }
+    
     /**
      * {@inheritDoc}
      */
     @Override
     public void process(){
+        
+        if(options.isFollow()){
+            follow();
+            return;
+        }
+        
         parser.run();
-        List<LogData> logEntries = parser.getLogEntries();
-        List<DiffData> diffEntries = parser.getDiffEntries();
+        LogSeries logSeries = parser.getLogSeries();
+        DiffSeries diffSeries = parser.getDiffSeries();
         int start = options.getStart().orElse(0);
         
-        if(options.isShowId()){
-            IntStream.range(start, options.getEnd().orElse(logEntries.size()))
-                     .mapToObj(i ->String.format("%d: %s", i, logEntries.get(i).getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)))
-                     .forEachOrdered(System.out::println);
+        if(isRowMode()){
+            printTitle();
+            IntStream.range(start, options.getEnd().orElse(isDiffMode() ? diffSeries.size() : logSeries.size()))
+                     .forEach(createRowPrinter(logSeries, diffSeries));
         }
         else{
             
             switch(options.getMode()){
-                case JAVA_CPU:
-                    System.out.println("Java CPU:");
-                    System.out.println("date time,  %user,  %sys");
-                    IntStream.range(start, options.getEnd().orElse(diffEntries.size()))
-                             .mapToObj(i -> diffEntries.get(i))
-                             .forEach(d -> System.out.println(String.format("%s: %.2f %.2f", d.getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), d.getJavaUserUsage(), d.getJavaSysUsage())));
-                    break;
-                case SYSTEM_CPU:
-                    System.out.println("System CPU:");
-                    System.out.println("date time,  %user,  %nice,  %sys,  %iowait,  %irq,  %softirq,  %steal,  %guest,  %idle");
-                    IntStream.range(start, options.getEnd().orElse(diffEntries.size()))
-                             .mapToObj(i -> diffEntries.get(i))
-                             .forEach(d -> System.out.println(String.format("%s: %.2f %.2f %.2f %.2f %.2f %.2f %.2f %.2f %.2f", d.getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                                                                                                                                d.getCpuUserUsage(), d.getCpuNiceUsage(), d.getCpuSysUsage(),
-                                                                                                                                d.getCpuIOWaitUsage(), d.getCpuIRQUsage(), d.getCpuSoftIRQUsage(),
-                                                                                                                                d.getCpuStealUsage(), d.getCpuGuestUsage(), d.getCpuIdleUsage())));
-                    break;
-                case MEMORIES:
-                    System.out.println("Java Memory:");
-                    System.out.println("date time,  VSZ (MB),  RSS (MB)");
-                    IntStream.range(start, options.getEnd().orElse(logEntries.size()))
-                             .mapToObj(i -> logEntries.get(i))
-                             .forEach(d -> System.out.println(String.format("%s: %d %d", d.getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), d.getJavaVSSize() / 1024 / 1024, d.getJavaRSSize() / 1024 / 1024)));
-                    break;
-                case SAFEPOINTS:
-                    System.out.println("Safepoints:");
-                    System.out.println("date time,  count,  time (ms)");
-                    IntStream.range(start, options.getEnd().orElse(diffEntries.size()))
-                             .mapToObj(i -> diffEntries.get(i))
-                             .forEach(d -> System.out.println(String.format("%s: %d %d", d.getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), d.getJvmSafepoints(), d.getJvmSafepointTime())));
-                    break;
-                case MONITORS:
-                    System.out.println("Monitor Contention:");
-                    System.out.println("date time,  count");
-                    IntStream.range(start, options.getEnd().orElse(diffEntries.size()))
-                             .mapToObj(i -> diffEntries.get(i))
-                             .forEach(d -> System.out.println(String.format("%s: %d", d.getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), d.getJvmSyncPark())));
-                    break;
-                case THREADS:
-                    System.out.println("Live threads:");
-                    System.out.println("date time,  count");
-                    IntStream.range(start, options.getEnd().orElse(logEntries.size()))
-                             .mapToObj(i -> logEntries.get(i))
-                             .forEach(d -> System.out.println(String.format("%s: %d", d.getDateTime().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), d.getJvmLiveThreads())));
-                    break;
                 case PARSE_ARCHIVES:
                     System.out.println("Archive list:");
                     System.out.println("date time,  path");
-                    IntStream.range(start, options.getEnd().orElse(logEntries.size()))
-                             .mapToObj(i -> logEntries.get(i))
-                             .filter(d -> d.getArchivePath() != null)
+                    IntStream.range(start, options.getEnd().orElse(logSeries.size()))
+                             .filter(i -> logSeries.getArchivePath(i) != null)
+                             .mapToObj(logSeries::get)
                              .map(d -> new ArchiveData(d, new File(d.getArchivePath().replaceAll("\\..*$", ""))))
                              .peek(a -> a.getExtractPath().mkdir())
                              .peek(new ConsumerWrapper<>(a -> a.parseArchive()))
                              .forEach(a -> System.out.println(String.format("%s: %s", a.getDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), a.getExtractPath().getAbsolutePath())));
                     break;
+                case LOG_COLUMNAR:
+                    ColumnarDumpLog dumper = new ColumnarDumpLog(options.getColumnarFile(), logSeries.subSeries(start, options.getEnd().orElse(logSeries.size())));
+                    dumper.run();
+                    break;
+                case LOG_PERCENTILES:
+                    LogSeries target = logSeries.subSeries(start, options.getEnd().orElse(logSeries.size()));
+                    printStatistics(new LogStatistics(target, new DiffSeries(target)));
+                    break;
             }
             
         }
@@ -21,21 +21,34 @@ import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import jp.co.ntt.oss.heapstats.cli.Options;
+import jp.co.ntt.oss.heapstats.container.snapshot.ClassCluster;
 import jp.co.ntt.oss.heapstats.container.snapshot.DiffData;
+import jp.co.ntt.oss.heapstats.container.snapshot.ExhaustionForecast;
+import jp.co.ntt.oss.heapstats.container.snapshot.LeakSuspect;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.ReferencePath;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.snapshot.ExhaustionForecaster;
+import jp.co.ntt.oss.heapstats.snapshot.ReferenceCycleAnalyzer;
 import jp.co.ntt.oss.heapstats.snapshot.ReferenceTracker;
+import jp.co.ntt.oss.heapstats.snapshot.RetentionAnalyzer;
 import jp.co.ntt.oss.heapstats.task.CSVDumpGC;
 import jp.co.ntt.oss.heapstats.task.CSVDumpHeap;
+import jp.co.ntt.oss.heapstats.task.ColumnarDumpHeap;
 import jp.co.ntt.oss.heapstats.task.DiffCalculator;
+import jp.co.ntt.oss.heapstats.task.FollowSnapShot;
+import jp.co.ntt.oss.heapstats.task.LeakSuspectCalculator;
+import jp.co.ntt.oss.heapstats.task.PackSnapShot;
 import jp.co.ntt.oss.heapstats.task.ParseHeader;
 
 /**
@@ -44,6 +57,18 @@ import jp.co.ntt.oss.heapstats.task.ParseHeader;
  */
 public class SnapShotProcessor implements CliProcessor{
     
+    /** Max number of hops of reference path to owner. */
+    private static final int OWNER_PATH_DEPTH = 10;
+    
+    /** Number of reference paths to owner. */
+    private static final int OWNER_PATHS = 5;
+    
+    /** Number of clusters to show in reference cycles. */
+    private static final int TOP_CLUSTERS = 10;
+    
+    /** Number of leak suspects to show. */
+    private static final int TOP_SUSPECTS = 20;
+    
     private final Options options;
     
     /**
@@ -138,17 +163,30 @@ public class SnapShotProcessor implements CliProcessor{
      */
     private void showClassReference(SnapShotHeader header){
         long refStart = options.getRefStartTag();
-        Map<Long, ObjectData> snapShot = header.getSnapShot(true);
+        SnapShotData snapShot = header.getSnapShotData(true);
         
         System.out.println(header.getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        System.out.println("Start: " + snapShot.get(refStart).getName());
-        System.out.println("Direction: " + (options.isRefToParent() ? "Parent" : "Child"));
+        
+        int startRow = snapShot.indexOf(refStart);
+        if(startRow == -1){
+            System.out.println("Start: Tag 0x" + Long.toHexString(refStart) + " is not found in this SnapShot.");
+            return;
+        }
+        System.out.println("Start: " + snapShot.getName(startRow));
+        
+        if(options.getRefDirection() == Options.RefDirection.OWNER){
+            showOwnerPaths(snapShot, refStart);
+            return;
+        }
+        
+        boolean toParent = options.getRefDirection() == Options.RefDirection.PARENT;
+        System.out.println("Direction: " + (toParent ? "Parent" : "Child"));
         System.out.println("\tTag\tClass\tClassLoader\tInstances\tSize(KB)");
         
         ReferenceTracker refTracker = new ReferenceTracker(snapShot, OptionalInt.empty(), Optional.ofNullable(options.getFilterPredicate()));
         
-        List<ObjectData> objectList = options.isRefToParent() ? refTracker.getParents(refStart, true)
-                                                              : refTracker.getChildren(refStart, true);
+        List<ObjectData> objectList = toParent ? refTracker.getParents(refStart, true)
+                                               : refTracker.getChildren(refStart, true);
         objectList.stream()
                   .map(o -> (new StringJoiner("\t")).add("\t")
                                                     .add("0x" + Long.toHexString(o.getTag()))
@@ -159,15 +197,254 @@ public class SnapShotProcessor implements CliProcessor{
                                                     .toString())
                   .forEachOrdered(System.out::println);
     }
+    
+    /**
+     * Show heaviest reference paths from the class to its owners.
+     * @param snapShot SnapShot to analyze.
+     * @param refStart Class tag to start.
+     */
+    private void showOwnerPaths(SnapShotData snapShot, long refStart){
+        RetentionAnalyzer analyzer = new RetentionAnalyzer(snapShot, Optional.ofNullable(options.getFilterPredicate()));
+        
+        System.out.println("Direction: Owner");
+        System.out.println("Retained(KB): " + analyzer.getRetainedSize(refStart) / 1024);
+        
+        List<ReferencePath> paths = analyzer.getHeaviestPaths(refStart, OWNER_PATH_DEPTH, OWNER_PATHS, true);
+        for(int i = 0; i < paths.size(); i++){
+            System.out.println("Path " + (i + 1) + ": " + paths.get(i).getWeight() / 1024 + "KB");
+            System.out.println("\tTag\tClass\tClassLoader\tInstances\tSize(KB)\tRetained(KB)");
+            paths.get(i).getObjects().stream()
+                                     .skip(1)
+                                     .map(o -> (new StringJoiner("\t")).add("\t")
+                                                                       .add("0x" + Long.toHexString(o.getTag()))
+                                                                       .add(o.getName())
+                                                                       .add(o.getLoaderName())
+                                                                       .add(Long.toString(o.getCount()))
+                                                                       .add(Long.toString(o.getTotalSize() / 1024))
+                                                                       .add(Long.toString(analyzer.getRetainedSize(o.getTag()) / 1024))
+                                                                       .toString())
+                                     .forEachOrdered(System.out::println);
+        }
+        
+    }
+
+    /**
+     * Show reference cycles.
+     * Cycles are found in the last SnapShot, and growth of the cycle which
+     * contains start class is tracked across SnapShots.
+     * @param headers SnapShot headers.
+     */
+    private void showReferenceCycles(List<SnapShotHeader> headers){
+        
+        if(headers.isEmpty()){
+            return;
+        }
+        
+        long refStart = options.getRefStartTag();
+        List<SnapShotData> snapShots = headers.stream()
+                                              .map(h -> h.getSnapShotData(true))
+                                              .collect(Collectors.toList());
+        SnapShotData last = snapShots.get(snapShots.size() - 1);
+        ReferenceCycleAnalyzer analyzer = new ReferenceCycleAnalyzer(last);
+        
+        System.out.println(headers.get(headers.size() - 1).getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        int startRow = last.indexOf(refStart);
+        if(startRow == -1){
+            System.out.println("Start: Tag 0x" + Long.toHexString(refStart) + " is not found in this SnapShot.");
+            return;
+        }
+        System.out.println("Start: " + last.getName(startRow));
+        System.out.println("Direction: Cycle");
+        
+        Optional<ClassCluster> cluster = analyzer.getCluster(refStart);
+        if(cluster.isPresent()){
+            System.out.printf("Cluster: %d classes, Instances: %d, Size(KB): %d\n", cluster.get().size(), cluster.get().getCount(), cluster.get().getTotalSize() / 1024);
+            System.out.println("\tTag\tClass\tClassLoader\tInstances\tSize(KB)");
+            cluster.get().getObjects().stream()
+                                      .map(o -> (new StringJoiner("\t")).add("\t")
+                                                                        .add("0x" + Long.toHexString(o.getTag()))
+                                                                        .add(o.getName())
+                                                                        .add(o.getLoaderName())
+                                                                        .add(Long.toString(o.getCount()))
+                                                                        .add(Long.toString(o.getTotalSize() / 1024))
+                                                                        .toString())
+                                      .forEachOrdered(System.out::println);
+            
+            System.out.println("Growth:");
+            System.out.println("\tDate\tSize(KB)");
+            long[] history = ReferenceCycleAnalyzer.getSizeHistory(cluster.get(), snapShots);
+            for(int i = 0; i < history.length; i++){
+                System.out.println("\t" + headers.get(i).getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\t" + history[i] / 1024);
+            }
+            
+        }
+        else{
+            System.out.println("Cluster: Start class is not in reference cycle.");
+        }
+        
+        System.out.println("Top clusters:");
+        System.out.println("\tRank\tClasses\tInstances\tSize(KB)\tLargest class");
+        List<ClassCluster> clusters = analyzer.getClusters();
+        IntStream.range(0, Math.min(clusters.size(), TOP_CLUSTERS))
+                 .mapToObj(i -> (new StringJoiner("\t")).add("\t")
+                                                        .add(Integer.toString(i + 1))
+                                                        .add(Integer.toString(clusters.get(i).size()))
+                                                        .add(Long.toString(clusters.get(i).getCount()))
+                                                        .add(Long.toString(clusters.get(i).getTotalSize() / 1024))
+                                                        .add(clusters.get(i).getObjects().get(0).getName())
+                                                        .toString())
+                 .forEachOrdered(System.out::println);
+    }
+
+    /**
+     * Show leak suspects.
+     * Growth after full GC is shown as "-" if the class is not sampled
+     * after full GC twice or more.
+     * @param headers SnapShot headers.
+     */
+    private void showLeakSuspects(List<SnapShotHeader> headers){
+        
+        if(headers.isEmpty()){
+            return;
+        }
+        
+        LeakSuspectCalculator calculator = new LeakSuspectCalculator(headers, TOP_SUSPECTS, options.getFilterPredicate(), true);
+        calculator.run();
+        
+        System.out.println("Leak suspects of " + headers.get(0).getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + " - " + headers.get(headers.size() - 1).getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        System.out.println("Rank\tTag\tClass\tClassLoader\tSlope(KB/h)\tGrowing(%)\tFullGC growth(KB)\tInstances\tSize(KB)");
+        
+        List<LeakSuspect> suspects = calculator.getSuspects();
+        IntStream.range(0, suspects.size())
+                 .mapToObj(i -> (new StringJoiner("\t")).add(Integer.toString(i + 1))
+                                                        .add("0x" + Long.toHexString(suspects.get(i).getTag()))
+                                                        .add(suspects.get(i).getName())
+                                                        .add(suspects.get(i).getLoaderName())
+                                                        .add(String.format("%.1f", suspects.get(i).getSlope() * 3600 / 1024))
+                                                        .add(String.format("%.1f", suspects.get(i).getMonotonicRatio() * 100))
+                                                        .add((suspects.get(i).getFullGCSamples() < 2) ? "-" : Long.toString(suspects.get(i).getGrowthAfterFullGC() / 1024))
+                                                        .add(Long.toString(suspects.get(i).getCount()))
+                                                        .add(Long.toString(suspects.get(i).getTotalSize() / 1024))
+                                                        .toString())
+                 .forEachOrdered(System.out::println);
+    }
+
+    /**
+     * Format forecast of exhaustion as tab separated values.
+     * @param name Name of memory area.
+     * @param forecast Forecast to format.
+     * @return Formatted forecast.
+     */
+    private String formatForecast(String name, Optional<ExhaustionForecast> forecast){
+        StringJoiner joiner = new StringJoiner("\t").add(name);
+        
+        if(!forecast.isPresent()){
+            return joiner.add("0").add("-").add("-").add("-").add("-").add("-").add("-").toString();
+        }
+        
+        ExhaustionForecast f = forecast.get();
+        return joiner.add(Integer.toString(f.getNumPoints()))
+                     .add(Long.toString(f.getUsage() / 1024 / 1024))
+                     .add(Long.toString(f.getCapacity() / 1024 / 1024))
+                     .add(String.format("%.2f", f.getSlope() * 3600 / 1024 / 1024))
+                     .add(f.getEstimated().map(d -> d.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).orElse("-"))
+                     .add(f.getEarliest().map(d -> d.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).orElse("-"))
+                     .add(f.getLatest().map(d -> d.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).orElse("-"))
+                     .toString();
+    }
+    
+    /**
+     * Print forecast of Java heap and Metaspace exhaustion.
+     * @param forecaster Forecaster which SnapShots are added to.
+     * @param first The first SnapShot header.
+     * @param last The last SnapShot header.
+     */
+    private void printForecast(ExhaustionForecaster forecaster, SnapShotHeader first, SnapShotHeader last){
+        System.out.println("Forecast of " + first.getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) + " - " + last.getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        System.out.println("Area\tPoints\tUsage(MB)\tCapacity(MB)\tGrowth(MB/h)\tExhaustion\tEarliest\tLatest");
+        System.out.println(formatForecast("Java heap", forecaster.getHeapForecast()));
+        System.out.println(formatForecast("Metaspace", forecaster.getMetaspaceForecast()));
+    }
+    
+    /**
+     * Show forecast of Java heap and Metaspace exhaustion.
+     * Earliest and latest are the bounds of 95% confidence band.
+     * @param headers SnapShot headers.
+     */
+    private void showForecast(List<SnapShotHeader> headers){
+        
+        if(headers.isEmpty()){
+            return;
+        }
+        
+        ExhaustionForecaster forecaster = new ExhaustionForecaster();
+        headers.forEach(forecaster::add);
+        printForecast(forecaster, headers.get(0), headers.get(headers.size() - 1));
+    }
+    
+    /**
+     * Follow SnapShot file and show appended SnapShots.
+     * In forecast mode, appended SnapShots are added to the forecaster, and
+     * forecast is shown whenever SnapShots are appended.
+     * This method does not return until the process is terminated.
+     */
+    private void follow(){
+        
+        if(!options.isShowId() && (options.getMode() != Options.Mode.SNAPSHOT_SUMMARY) && (options.getMode() != Options.Mode.FORECAST)){
+            System.out.println("-follow is not supported in this mode.");
+            return;
+        }
+        if(options.getFile().size() != 1){
+            System.out.println("-follow needs one SnapShot file.");
+            return;
+        }
+        
+        AtomicInteger nextId = new AtomicInteger();
+        AtomicReference<ExhaustionForecaster> forecaster = new AtomicReference<>(new ExhaustionForecaster());
+        AtomicReference<SnapShotHeader> first = new AtomicReference<>();
+        FollowSnapShot follower = new FollowSnapShot(options.getFile().get(0), appended -> {
+                                                      if(options.isShowId()){
+                                                          appended.forEach(h -> System.out.println(String.format("%d: %s", nextId.getAndIncrement(), h.getSnapShotDate().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))));
+                                                      }
+                                                      else if(options.getMode() == Options.Mode.FORECAST){
+                                                          first.compareAndSet(null, appended.get(0));
+                                                          appended.forEach(forecaster.get()::add);
+                                                          printForecast(forecaster.get(), first.get(), appended.get(appended.size() - 1));
+                                                          System.out.println();
+                                                      }
+                                                      else{
+                                                          appended.forEach(this::showSnapShotSummary);
+                                                      }
+                                                   }){
+            
+            @Override
+            protected void onTruncated(){
+                super.onTruncated();
+                /* SnapShots are read from the beginning of the file again. */
+                nextId.set(0);
+                forecaster.set(new ExhaustionForecaster());
+                first.set(null);
+            }
+            
+        };
+        follower.run();
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
     public void process() {
+        
+        if(options.isFollow()){
+            follow();
+            return;
+        }
+        
         ParseHeader headerParser = new ParseHeader(options.getFile().stream()
                                                                     .map(p -> p.toString())
-                                                                    .collect(Collectors.toList()), true, false);
+                                                                    .collect(Collectors.toList()), false);
         headerParser.run();
         List<SnapShotHeader> snapShots = headerParser.getSnapShotList();
         int start = options.getStart().orElse(0);
@@ -193,7 +470,12 @@ public class SnapShotProcessor implements CliProcessor{
                     showDiffHistogram(snapShots.get(start), snapShots.get(options.getEnd().orElse(snapShots.size()) - 1));
                     break;
                 case CLASS_REFERENCES:
-                    snapshotStream.forEachOrdered(this::showClassReference);
+                    if(options.getRefDirection() == Options.RefDirection.CYCLE){
+                        showReferenceCycles(snapshotStream.collect(Collectors.toList()));
+                    }
+                    else{
+                        snapshotStream.forEachOrdered(this::showClassReference);
+                    }
                     break;
                 case HEAP_CSV:
                     CSVDumpHeap heapDumper = new CSVDumpHeap(options.getCsvFile(), snapshotStream.collect(Collectors.toList()), options.getFilterPredicate(), true);
@@ -203,6 +485,20 @@ public class SnapShotProcessor implements CliProcessor{
                     CSVDumpGC csvDumper = new CSVDumpGC(options.getCsvFile(), snapshotStream.collect(Collectors.toList()));
                     csvDumper.run();
                     break;
+                case HEAP_COLUMNAR:
+                    ColumnarDumpHeap columnarDumper = new ColumnarDumpHeap(options.getColumnarFile(), snapshotStream.collect(Collectors.toList()), options.getFilterPredicate(), true);
+                    columnarDumper.run();
+                    break;
+                case PACK_ARCHIVE:
+                    PackSnapShot packer = new PackSnapShot(options.getArchiveFile(), snapshotStream.collect(Collectors.toList()));
+                    packer.run();
+                    break;
+                case LEAK_SUSPECTS:
+                    showLeakSuspects(snapshotStream.collect(Collectors.toList()));
+                    break;
+                case FORECAST:
+                    showForecast(snapshotStream.collect(Collectors.toList()));
+                    break;
             }
             
         }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.collection;
+
+/**
+ * Hash set of long.
+ * This set uses open addressing with linear probing, so elements are not
+ * boxed.
+ */
+public class LongHashSet {
+
+    private long[] keys;
+
+    private boolean[] used;
+
+    private int size;
+
+    private int mask;
+
+    /**
+     * Constructor of LongHashSet.
+     *
+     * @param expectedSize Expected number of elements.
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+        size = 0;
+    }
+
+    /**
+     * Calculate table size which can hold elements with load factor 0.5 .
+     *
+     * @param expectedSize Expected number of elements.
+     * @return Table size. This value is power of 2.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        return Math.max(capacity, 8);
+    }
+
+    /**
+     * Allocate new table.
+     *
+     * @param capacity Table size.
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Find slot of the element.
+     *
+     * @param key Element to find.
+     * @return Slot of the element, or empty slot where the element should be stored.
+     */
+    private int find(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        int pos = (int) (h ^ (h >>> 32)) & mask;
+
+        while (used[pos] && (keys[pos] != key)) {
+            pos = (pos + 1) & mask;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Expand hash table.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int pos = find(oldKeys[i]);
+                used[pos] = true;
+                keys[pos] = oldKeys[i];
+            }
+        }
+
+    }
+
+    /**
+     * Add the element.
+     *
+     * @param key Element to add.
+     * @return true if this set did not contain the element.
+     */
+    public boolean add(long key) {
+        int pos = find(key);
+
+        if (used[pos]) {
+            return false;
+        }
+
+        used[pos] = true;
+        keys[pos] = key;
+        size++;
+
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether the element exists.
+     * This method can be called from multiple threads if no element is
+     * added concurrently.
+     *
+     * @param key Element.
+     * @return true if this set contains the element.
+     */
+    public boolean contains(long key) {
+        return used[find(key)];
+    }
+
+    /**
+     * Get number of elements.
+     *
+     * @return Number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+}
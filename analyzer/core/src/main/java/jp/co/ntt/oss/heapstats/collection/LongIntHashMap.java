@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.collection;
+
+/**
+ * Hash map from long to int.
+ * This map uses open addressing with linear probing, so neither keys nor
+ * values are boxed.
+ */
+public class LongIntHashMap {
+
+    private long[] keys;
+
+    private int[] values;
+
+    private boolean[] used;
+
+    private int size;
+
+    private int mask;
+
+    /**
+     * Constructor of LongIntHashMap.
+     *
+     * @param expectedSize Expected number of entries.
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+        size = 0;
+    }
+
+    /**
+     * Calculate table size which can hold entries with load factor 0.5 .
+     *
+     * @param expectedSize Expected number of entries.
+     * @return Table size. This value is power of 2.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        return Math.max(capacity, 8);
+    }
+
+    /**
+     * Allocate new table.
+     *
+     * @param capacity Table size.
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Calculate slot of the key.
+     *
+     * @param key Key.
+     * @return Start position of probing.
+     */
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Find slot of the key.
+     *
+     * @param key Key to find.
+     * @return Slot of the key, or empty slot where the key should be stored.
+     */
+    private int find(long key) {
+        int pos = slot(key);
+
+        while (used[pos] && (keys[pos] != key)) {
+            pos = (pos + 1) & mask;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Expand hash table.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(keys.length * 2);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int pos = find(oldKeys[i]);
+                used[pos] = true;
+                keys[pos] = oldKeys[i];
+                values[pos] = oldValues[i];
+            }
+        }
+
+    }
+
+    /**
+     * Associate value with the key.
+     *
+     * @param key Key.
+     * @param value Value.
+     */
+    public void put(long key, int value) {
+        int pos = find(key);
+
+        if (!used[pos]) {
+            used[pos] = true;
+            keys[pos] = key;
+            size++;
+        }
+
+        values[pos] = value;
+
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+
+    }
+
+    /**
+     * Get value which is associated with the key.
+     *
+     * @param key Key.
+     * @param defaultValue Value which is returned if the key does not exist.
+     * @return Value of the key, or defaultValue.
+     */
+    public int getOrDefault(long key, int defaultValue) {
+        int pos = find(key);
+        return used[pos] ? values[pos] : defaultValue;
+    }
+
+    /**
+     * Add delta to the value of the key.
+     * If the key does not exist, delta is stored as new value.
+     *
+     * @param key Key.
+     * @param delta Value to add.
+     * @return New value.
+     */
+    public int addTo(long key, int delta) {
+        int pos = find(key);
+
+        if (used[pos]) {
+            values[pos] += delta;
+            return values[pos];
+        }
+
+        put(key, delta);
+        return delta;
+    }
+
+    /**
+     * Check whether the key exists.
+     *
+     * @param key Key.
+     * @return true if this map contains the key.
+     */
+    public boolean containsKey(long key) {
+        return used[find(key)];
+    }
+
+    /**
+     * Get size of hash table.
+     *
+     * @return Number of slots.
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Get number of entries.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+}
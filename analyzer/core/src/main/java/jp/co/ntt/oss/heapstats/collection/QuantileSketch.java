@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.collection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Mergeable sketch of quantiles.
+ * Values are counted in logarithmic buckets, so quantiles are estimated with
+ * bounded relative error. (e.g. 1% error for relative accuracy 0.01)
+ * Number of buckets depends on range of values, not on number of values.
+ * Sketches which have same relative accuracy can be merged, so sketches of
+ * each file or host can be combined later. Count, sum, min and max are
+ * exact. Infinite values are counted apart from buckets, and they are
+ * regarded as the smallest or the largest values.
+ */
+public class QuantileSketch {
+
+    /** Default relative accuracy. */
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** Absolute value which is smaller than this value is counted as zero. */
+    private static final double MIN_INDEXABLE_VALUE = 1.0e-9;
+
+    /** Bucket index is clamped in [-MAX_INDEX, MAX_INDEX] . */
+    private static final int MAX_INDEX = 1 << 20;
+
+    private final double relativeAccuracy;
+
+    private final double gamma;
+
+    private final double logGamma;
+
+    private final Buckets positive;
+
+    private final Buckets negative;
+
+    private long zeroCount;
+
+    private long positiveInfinityCount;
+
+    private long negativeInfinityCount;
+
+    private long count;
+
+    private double sum;
+
+    private double min;
+
+    private double max;
+
+    /**
+     * Dense counters of buckets.
+     */
+    private static class Buckets {
+
+        private long[] counts;
+
+        /** Bucket index of counts[0] . */
+        private int offset;
+
+        /**
+         * Constructor of Buckets.
+         */
+        public Buckets() {
+            counts = new long[0];
+            offset = 0;
+        }
+
+        /**
+         * Expand counters to contain the bucket.
+         *
+         * @param index Bucket index.
+         */
+        private void expand(int index) {
+
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - 8;
+                return;
+            }
+
+            int low = Math.min(offset, index);
+            int high = Math.max(offset + counts.length - 1, index);
+            int length = Math.max(high - low + 1, counts.length * 2);
+            int newOffset = (index < offset) ? high - length + 1 : low;
+
+            long[] newCounts = new long[length];
+            System.arraycopy(counts, 0, newCounts, offset - newOffset, counts.length);
+            counts = newCounts;
+            offset = newOffset;
+        }
+
+        /**
+         * Add count to the bucket.
+         *
+         * @param index Bucket index.
+         * @param n Count to add.
+         */
+        public void add(int index, long n) {
+
+            if ((index < offset) || (index >= offset + counts.length)) {
+                expand(index);
+            }
+
+            counts[index - offset] += n;
+        }
+
+        /**
+         * Add all counts of other buckets.
+         *
+         * @param other Buckets to add.
+         */
+        public void addAll(Buckets other) {
+
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+
+        }
+
+        /**
+         * Write non-zero range of counters.
+         *
+         * @param out Output to write.
+         * @throws IOException
+         */
+        public void write(DataOutput out) throws IOException {
+            int from = 0;
+            int to = counts.length;
+
+            while ((from < to) && (counts[from] == 0)) {
+                from++;
+            }
+            while ((to > from) && (counts[to - 1] == 0)) {
+                to--;
+            }
+
+            out.writeInt(offset + from);
+            out.writeInt(to - from);
+            for (int i = from; i < to; i++) {
+                out.writeLong(counts[i]);
+            }
+
+        }
+
+        /**
+         * Read counters which are written by write() .
+         *
+         * @param in Input to read.
+         * @throws IOException
+         */
+        public void read(DataInput in) throws IOException {
+            int first = in.readInt();
+            int length = in.readInt();
+
+            if (length < 0) {
+                throw new IOException("Invalid length of buckets: " + length);
+            }
+
+            for (int i = 0; i < length; i++) {
+                long n = in.readLong();
+                if (n != 0) {
+                    add(first + i, n);
+                }
+            }
+
+        }
+
+    }
+
+    /**
+     * Constructor of QuantileSketch with default relative accuracy.
+     */
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Constructor of QuantileSketch.
+     *
+     * @param relativeAccuracy Relative accuracy of quantiles. This value
+     *                          must be greater than 0 and less than 1.
+     */
+    public QuantileSketch(double relativeAccuracy) {
+
+        if (!(relativeAccuracy > 0.0d) || !(relativeAccuracy < 1.0d)) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1): " + relativeAccuracy);
+        }
+
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1.0d + relativeAccuracy) / (1.0d - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.positive = new Buckets();
+        this.negative = new Buckets();
+        this.zeroCount = 0;
+        this.positiveInfinityCount = 0;
+        this.negativeInfinityCount = 0;
+        this.count = 0;
+        this.sum = 0.0d;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Get bucket index of the value.
+     *
+     * @param value Positive value.
+     * @return Bucket index.
+     */
+    private int index(double value) {
+        double index = Math.ceil(Math.log(value) / logGamma);
+        return (int) Math.max(-MAX_INDEX, Math.min(MAX_INDEX, index));
+    }
+
+    /**
+     * Get representative value of the bucket.
+     *
+     * @param index Bucket index.
+     * @return Value which has the relative error to all values in the
+     *          bucket within relative accuracy.
+     */
+    private double value(int index) {
+        /* gamma^(index - 1) is used to avoid overflow of the largest bucket. */
+        return Math.pow(gamma, index - 1) * (2.0d * gamma / (gamma + 1.0d));
+    }
+
+    /**
+     * Add value to this sketch.
+     * NaN is ignored.
+     *
+     * @param value Value to add.
+     */
+    public void add(double value) {
+
+        if (Double.isNaN(value)) {
+            return;
+        }
+
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        if (value == Double.POSITIVE_INFINITY) {
+            positiveInfinityCount++;
+        }
+        else if (value == Double.NEGATIVE_INFINITY) {
+            negativeInfinityCount++;
+        }
+        else if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        }
+        else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        }
+        else {
+            zeroCount++;
+        }
+
+    }
+
+    /**
+     * Merge other sketch to this sketch.
+     *
+     * @param other Sketch to merge. It must have same relative accuracy.
+     */
+    public void merge(QuantileSketch other) {
+
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Relative accuracy is different: " + relativeAccuracy + " and " + other.relativeAccuracy);
+        }
+
+        positive.addAll(other.positive);
+        negative.addAll(other.negative);
+        zeroCount += other.zeroCount;
+        positiveInfinityCount += other.positiveInfinityCount;
+        negativeInfinityCount += other.negativeInfinityCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Get estimated quantile.
+     *
+     * @param quantile Quantile in [0, 1] . e.g. 0.99 for p99
+     * @return Estimated value, or NaN if this sketch is empty.
+     */
+    public double getQuantile(double quantile) {
+
+        if (!(quantile >= 0.0d) || !(quantile <= 1.0d)) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + quantile);
+        }
+
+        if (count == 0) {
+            return Double.NaN;
+        }
+        else if (quantile == 0.0d) {
+            return min;
+        }
+        else if (quantile == 1.0d) {
+            return max;
+        }
+
+        double rank = quantile * (count - 1);
+        long cumulative = 0;
+        double result = max;
+        boolean found = false;
+
+        cumulative += negativeInfinityCount;
+        if (cumulative > rank) {
+            result = Double.NEGATIVE_INFINITY;
+            found = true;
+        }
+
+        /* Negative values from the smallest one */
+        for (int i = negative.counts.length - 1; !found && (i >= 0); i--) {
+            cumulative += negative.counts[i];
+            if (cumulative > rank) {
+                result = -value(negative.offset + i);
+                found = true;
+            }
+        }
+
+        if (!found) {
+            cumulative += zeroCount;
+            if (cumulative > rank) {
+                result = 0.0d;
+                found = true;
+            }
+        }
+
+        for (int i = 0; !found && (i < positive.counts.length); i++) {
+            cumulative += positive.counts[i];
+            if (cumulative > rank) {
+                result = value(positive.offset + i);
+                found = true;
+            }
+        }
+
+        return Math.max(min, Math.min(max, result));
+    }
+
+    /**
+     * Get relative accuracy of this sketch.
+     *
+     * @return Relative accuracy.
+     */
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Get number of values.
+     *
+     * @return Number of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get sum of values.
+     *
+     * @return Sum of values.
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * Get average of values.
+     *
+     * @return Average, or NaN if this sketch is empty.
+     */
+    public double getAverage() {
+        return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Get minimum value.
+     *
+     * @return Minimum value, or positive infinity if this sketch is empty.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Get maximum value.
+     *
+     * @return Maximum value, or negative infinity if this sketch is empty.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Write this sketch.
+     *
+     * @param out Output to write.
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeLong(count);
+        out.writeDouble(sum);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeLong(zeroCount);
+        out.writeLong(positiveInfinityCount);
+        out.writeLong(negativeInfinityCount);
+        positive.write(out);
+        negative.write(out);
+    }
+
+    /**
+     * Read sketch which is written by {@link #write(DataOutput)} .
+     *
+     * @param in Input to read.
+     * @return Sketch.
+     * @throws IOException
+     */
+    public static QuantileSketch read(DataInput in) throws IOException {
+        double relativeAccuracy = in.readDouble();
+        QuantileSketch sketch;
+
+        try {
+            sketch = new QuantileSketch(relativeAccuracy);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Invalid sketch", e);
+        }
+
+        sketch.count = in.readLong();
+        sketch.sum = in.readDouble();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        sketch.zeroCount = in.readLong();
+        sketch.positiveInfinityCount = in.readLong();
+        sketch.negativeInfinityCount = in.readLong();
+        sketch.positive.read(in);
+        sketch.negative.read(in);
+
+        return sketch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format("QuantileSketch: accuracy %f, count %d, min %f, max %f",
+                             relativeAccuracy, count, min, max);
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.collection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selector of top N elements by long value.
+ * Elements are kept in bounded min-heap, so whole elements are not sorted.
+ * If values are same, element which is offered earlier is ranked higher.
+ *
+ * @param <T> Type of element.
+ */
+public class TopNSelector<T> {
+
+    private final int limit;
+
+    private final long[] values;
+
+    private final long[] orders;
+
+    private final Object[] elements;
+
+    private int size;
+
+    private long nextOrder;
+
+    /**
+     * Constructor of TopNSelector.
+     *
+     * @param limit Number of elements to select.
+     */
+    public TopNSelector(int limit) {
+        this.limit = Math.max(limit, 0);
+        values = new long[this.limit];
+        orders = new long[this.limit];
+        elements = new Object[this.limit];
+        size = 0;
+        nextOrder = 0;
+    }
+
+    /**
+     * Compare heap slots.
+     *
+     * @param i Slot.
+     * @param j Slot.
+     * @return true if element at i is ranked lower than element at j.
+     */
+    private boolean lower(int i, int j) {
+        return (values[i] < values[j]) || ((values[i] == values[j]) && (orders[i] > orders[j]));
+    }
+
+    /**
+     * Swap heap slots.
+     *
+     * @param i Slot.
+     * @param j Slot.
+     */
+    private void swap(int i, int j) {
+        long v = values[i];
+        values[i] = values[j];
+        values[j] = v;
+
+        long o = orders[i];
+        orders[i] = orders[j];
+        orders[j] = o;
+
+        Object e = elements[i];
+        elements[i] = elements[j];
+        elements[j] = e;
+    }
+
+    /**
+     * Move up the element in heap.
+     *
+     * @param pos Slot of the element.
+     */
+    private void siftUp(int pos) {
+
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+
+            if (!lower(pos, parent)) {
+                break;
+            }
+
+            swap(pos, parent);
+            pos = parent;
+        }
+
+    }
+
+    /**
+     * Move down the element in heap.
+     *
+     * @param pos Slot of the element.
+     */
+    private void siftDown(int pos) {
+
+        while (true) {
+            int child = pos * 2 + 1;
+
+            if (child >= size) {
+                break;
+            }
+            if ((child + 1 < size) && lower(child + 1, child)) {
+                child++;
+            }
+            if (!lower(child, pos)) {
+                break;
+            }
+
+            swap(pos, child);
+            pos = child;
+        }
+
+    }
+
+    /**
+     * Check whether the value can be ranked in top N.
+     * Caller can use this method to avoid building element which would be
+     * discarded.
+     *
+     * @param value Value of the element.
+     * @return true if the element with value should be offered.
+     */
+    public boolean accepts(long value) {
+        return (size < limit) || ((limit > 0) && (value > values[0]));
+    }
+
+    /**
+     * Offer the element.
+     * Order of elements which have same value is decided by the order of
+     * this method call.
+     *
+     * @param value Value of the element.
+     * @param element Element.
+     */
+    public void offer(long value, T element) {
+        long order = nextOrder++;
+
+        if (!accepts(value)) {
+            return;
+        }
+
+        if (size < limit) {
+            values[size] = value;
+            orders[size] = order;
+            elements[size] = element;
+            siftUp(size++);
+        }
+        else {
+            values[0] = value;
+            orders[0] = order;
+            elements[0] = element;
+            siftDown(0);
+        }
+
+    }
+
+    /**
+     * Get selected elements.
+     *
+     * @return Elements which are sorted by value in descending order.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> toList() {
+        TopNSelector<T> work = new TopNSelector<>(limit);
+        System.arraycopy(values, 0, work.values, 0, size);
+        System.arraycopy(orders, 0, work.orders, 0, size);
+        System.arraycopy(elements, 0, work.elements, 0, size);
+        work.size = size;
+
+        Object[] result = new Object[size];
+
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = work.elements[0];
+            work.size--;
+            work.swap(0, work.size);
+            work.siftDown(0);
+        }
+
+        List<T> list = new ArrayList<>(size);
+        for (Object e : result) {
+            list.add((T) e);
+        }
+
+        return list;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.columnar;
+
+/**
+ * Type of column in columnar file.
+ */
+public enum ColumnType {
+
+    /** Signed 64bit integer. */
+    LONG(0),
+
+    /** String which is encoded to id of dictionary. */
+    DICTIONARY(1);
+
+    private final int id;
+
+    /**
+     * Constructor of ColumnType.
+     *
+     * @param id Type id in file.
+     */
+    private ColumnType(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Get type id which is written to file.
+     *
+     * @return Type id.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get ColumnType from type id in file.
+     *
+     * @param id Type id.
+     * @return ColumnType of the id.
+     * @throws IllegalArgumentException If the id is unknown.
+     */
+    public static ColumnType fromId(int id) {
+
+        for (ColumnType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown column type: " + id);
+    }
+
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+
+package jp.co.ntt.oss.heapstats.columnar;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader of columnar binary file which is written by
+ * {@link ColumnarWriter}.
+ * <p>
+ * Tables are read in order of the file by {@link #nextTable()}, and row
+ * groups of the table are read in order by {@link Table#nextRowGroup()}.
+ * Only current row group is held in memory.
+ * </p>
+ *
+ * @see ColumnarWriter
+ */
+public class ColumnarReader implements Closeable {
+
+    private final DataInputStream in;
+
+    private final Inflater inflater;
+
+    private Table currentTable;
+
+    private boolean finished;
+
+    /**
+     * Table in columnar file.
+     * Values can be read from current row group.
+     */
+    public class Table {
+
+        private final String name;
+
+        private final String[] columnNames;
+
+        private final ColumnType[] types;
+
+        private final List<List<String>> dictionaries;
+
+        private long[][] values;
+
+        private int rows;
+
+        private boolean closed;
+
+        /**
+         * Constructor of Table.
+         *
+         * @param name Name of table.
+         * @param columnNames Names of columns.
+         * @param types Types of columns.
+         */
+        private Table(String name, String[] columnNames, ColumnType[] types) {
+            this.name = name;
+            this.columnNames = columnNames;
+            this.types = types;
+            this.dictionaries = new ArrayList<>(types.length);
+            this.values = new long[types.length][0];
+            this.rows = 0;
+            this.closed = false;
+
+            for (ColumnType type : types) {
+                dictionaries.add((type == ColumnType.DICTIONARY) ? new ArrayList<>() : null);
+            }
+
+        }
+
+        /**
+         * Get name of this table.
+         *
+         * @return Name of table.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get names of columns.
+         *
+         * @return Names of columns.
+         */
+        public String[] getColumnNames() {
+            return Arrays.copyOf(columnNames, columnNames.length);
+        }
+
+        /**
+         * Get types of columns.
+         *
+         * @return Types of columns.
+         */
+        public ColumnType[] getColumnTypes() {
+            return Arrays.copyOf(types, types.length);
+        }
+
+        /**
+         * Read next row group of this table.
+         *
+         * @return true if row group is read. false if this table has no
+         *          more row group.
+         * @throws IOException If I/O error occurred or file is corrupted.
+         */
+        public boolean nextRowGroup() throws IOException {
+
+            if (closed) {
+                return false;
+            }
+
+            int numRows = in.readInt();
+
+            if (numRows == 0) {
+                rows = 0;
+                closed = true;
+                return false;
+            }
+            else if (numRows < 0) {
+                throw new IOException("Columnar file is corrupted.");
+            }
+
+            for (int i = 0; i < types.length; i++) {
+
+                if (types[i] == ColumnType.DICTIONARY) {
+                    List<String> dictionary = dictionaries.get(i);
+                    int numEntries = in.readInt();
+
+                    if (numEntries < 0) {
+                        throw new IOException("Columnar file is corrupted.");
+                    }
+
+                    for (int j = 0; j < numEntries; j++) {
+                        dictionary.add(in.readUTF());
+                    }
+
+                }
+
+                values[i] = readChunk(numRows);
+            }
+
+            rows = numRows;
+            return true;
+        }
+
+        /**
+         * Get number of rows in current row group.
+         *
+         * @return Number of rows.
+         */
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Get value of LONG column in current row group.
+         *
+         * @param column Column index.
+         * @param row Row index in current row group.
+         * @return Value.
+         */
+        public long getLong(int column, int row) {
+
+            if (types[column] != ColumnType.LONG) {
+                throw new IllegalArgumentException("Column " + column + " is not LONG column.");
+            }
+
+            return values[column][row];
+        }
+
+        /**
+         * Get string of DICTIONARY column in current row group.
+         *
+         * @param column Column index.
+         * @param row Row index in current row group.
+         * @return String. null is read as empty string.
+         * @throws IOException If the id is not in dictionary.
+         */
+        public String getString(int column, int row) throws IOException {
+
+            if (types[column] != ColumnType.DICTIONARY) {
+                throw new IllegalArgumentException("Column " + column + " is not DICTIONARY column.");
+            }
+
+            List<String> dictionary = dictionaries.get(column);
+            long id = values[column][row];
+
+            if ((id < 0) || (id >= dictionary.size())) {
+                throw new IOException("Columnar file is corrupted.");
+            }
+
+            return dictionary.get((int) id);
+        }
+
+        /**
+         * Skip remaining row groups of this table.
+         *
+         * @throws IOException If I/O error occurred or file is corrupted.
+         */
+        private void skip() throws IOException {
+
+            while (nextRowGroup()) {
+                /* Do nothing */
+            }
+
+        }
+
+    }
+
+    /**
+     * Constructor of ColumnarReader.
+     * File header is read in this constructor.
+     *
+     * @param in Stream to read.
+     * @throws IOException If I/O error occurred or the stream is not
+     *                      columnar file.
+     */
+    public ColumnarReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        this.inflater = new Inflater();
+        this.currentTable = null;
+        this.finished = false;
+
+        byte[] magic = new byte[ColumnarWriter.MAGIC.length];
+
+        try {
+            this.in.readFully(magic);
+
+            if (!Arrays.equals(magic, ColumnarWriter.MAGIC)) {
+                throw new IOException("Not columnar file.");
+            }
+
+            int version = this.in.readInt();
+
+            if (version != ColumnarWriter.VERSION) {
+                throw new IOException("Unsupported columnar file version: " + version);
+            }
+
+        }
+        catch (IOException ex) {
+            close();
+            throw ex;
+        }
+
+    }
+
+    /**
+     * Read next table.
+     * Remaining row groups of previous table are skipped.
+     *
+     * @return Next table. Empty if no more table.
+     * @throws IOException If I/O error occurred or file is corrupted.
+     */
+    public Optional<Table> nextTable() throws IOException {
+
+        if (finished) {
+            return Optional.empty();
+        }
+
+        if (currentTable != null) {
+            currentTable.skip();
+        }
+
+        int marker = in.readByte();
+
+        if (marker == 0) {
+            currentTable = null;
+            finished = true;
+            return Optional.empty();
+        }
+        else if (marker != 1) {
+            throw new IOException("Columnar file is corrupted.");
+        }
+
+        String name = in.readUTF();
+        int numColumns = in.readInt();
+
+        if (numColumns < 0) {
+            throw new IOException("Columnar file is corrupted.");
+        }
+
+        String[] columnNames = new String[numColumns];
+        ColumnType[] types = new ColumnType[numColumns];
+
+        for (int i = 0; i < numColumns; i++) {
+            columnNames[i] = in.readUTF();
+
+            try {
+                types[i] = ColumnType.fromId(in.readByte());
+            }
+            catch (IllegalArgumentException ex) {
+                throw new IOException("Columnar file is corrupted.", ex);
+            }
+
+        }
+
+        currentTable = new Table(name, columnNames, types);
+        return Optional.of(currentTable);
+    }
+
+    /**
+     * Read and decode column chunk.
+     *
+     * @param rows Number of values.
+     * @return Values of column.
+     * @throws IOException If I/O error occurred or file is corrupted.
+     */
+    private long[] readChunk(int rows) throws IOException {
+        int rawLength = in.readInt();
+        int compressedLength = in.readInt();
+
+        if ((rawLength < rows) || (compressedLength < 0)) {
+            throw new IOException("Columnar file is corrupted.");
+        }
+
+        byte[] compressed = new byte[compressedLength];
+        byte[] raw = new byte[rawLength];
+        in.readFully(compressed);
+
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        try {
+            int len = 0;
+
+            while (len < rawLength) {
+                int n = inflater.inflate(raw, len, rawLength - len);
+
+                if ((n == 0) && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Column chunk is truncated.");
+                }
+
+                len += n;
+            }
+
+        }
+        catch (DataFormatException ex) {
+            throw new IOException("Columnar file is corrupted.", ex);
+        }
+
+        long[] column = new long[rows];
+        int pos = 0;
+        long prev = 0;
+
+        for (int i = 0; i < rows; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                if ((pos == rawLength) || (shift > 63)) {
+                    throw new IOException("Columnar file is corrupted.");
+                }
+
+                b = raw[pos++];
+                zigzag |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            prev += (zigzag >>> 1) ^ -(zigzag & 1);
+            column[i] = prev;
+        }
+
+        return column;
+    }
+
+    /**
+     * Close this reader.
+     * Underlying stream is also closed.
+     *
+     * @throws IOException If I/O error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+            inflater.end();
+        }
+        finally {
+            in.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.columnar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writer of columnar binary file.
+ * <p>
+ * File consists of tables. Each table has a schema and row groups, and each
+ * column in row group is stored as compressed column chunk. All numbers
+ * are big endian.
+ * </p>
+ * <pre>
+ * file      := "HSCL" version:int table* 0:byte
+ * table     := 1:byte name:UTF numColumns:int (columnName:UTF type:byte)*
+ *              rowGroup* 0:int
+ * rowGroup  := numRows:int column*
+ * column    := [numNewEntries:int entry:UTF*] rawLength:int
+ *              compressedLength:int bytes
+ * </pre>
+ * <p>
+ * Values in column chunk are differences from the previous value in the
+ * chunk. They are encoded by ZigZag varint, and compressed by Deflate.
+ * Dictionary column stores id of the string. Ids are assigned in order of
+ * appearance in the table, and each row group carries only strings which
+ * appear for the first time in that row group.
+ * </p>
+ *
+ * @see ColumnarReader
+ */
+public class ColumnarWriter implements Closeable {
+
+    /** Magic number of columnar file. */
+    public static final byte[] MAGIC = {'H', 'S', 'C', 'L'};
+
+    /** Version of file format. */
+    public static final int VERSION = 1;
+
+    /** Default number of rows in one row group. */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 65536;
+
+    private final DataOutputStream out;
+
+    private final int rowGroupSize;
+
+    private final Deflater deflater;
+
+    private final ByteArrayOutputStream compressed;
+
+    private Table currentTable;
+
+    /**
+     * Table in columnar file.
+     * Values are set to each column of current row, and the row is
+     * committed by {@link #endRow()}.
+     */
+    public class Table {
+
+        private final ColumnType[] types;
+
+        private final long[][] values;
+
+        private final List<Map<String, Integer>> dictionaries;
+
+        private final List<List<String>> newEntries;
+
+        private int rows;
+
+        private boolean closed;
+
+        /**
+         * Constructor of Table.
+         *
+         * @param types Types of columns.
+         */
+        private Table(ColumnType[] types) {
+            this.types = types;
+            this.values = new long[types.length][rowGroupSize];
+            this.dictionaries = new ArrayList<>(types.length);
+            this.newEntries = new ArrayList<>(types.length);
+            this.rows = 0;
+            this.closed = false;
+
+            for (ColumnType type : types) {
+                dictionaries.add((type == ColumnType.DICTIONARY) ? new HashMap<>() : null);
+                newEntries.add((type == ColumnType.DICTIONARY) ? new ArrayList<>() : null);
+            }
+
+        }
+
+        /**
+         * Set value to the column of current row.
+         *
+         * @param column Column index.
+         * @param value Value.
+         */
+        public void setLong(int column, long value) {
+
+            if (types[column] != ColumnType.LONG) {
+                throw new IllegalArgumentException("Column " + column + " is not LONG column.");
+            }
+
+            values[column][rows] = value;
+        }
+
+        /**
+         * Set string to the column of current row.
+         * null is stored as empty string.
+         *
+         * @param column Column index.
+         * @param value String.
+         */
+        public void setString(int column, String value) {
+
+            if (types[column] != ColumnType.DICTIONARY) {
+                throw new IllegalArgumentException("Column " + column + " is not DICTIONARY column.");
+            }
+
+            Map<String, Integer> dictionary = dictionaries.get(column);
+            String key = Objects.toString(value, "");
+            Integer id = dictionary.get(key);
+
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.put(key, id);
+                newEntries.get(column).add(key);
+            }
+
+            values[column][rows] = id;
+        }
+
+        /**
+         * Commit current row.
+         * Row group is written if it is full.
+         *
+         * @throws IOException If I/O error occurred.
+         */
+        public void endRow() throws IOException {
+            rows++;
+
+            if (rows == rowGroupSize) {
+                flush();
+            }
+
+        }
+
+        /**
+         * Write current row group.
+         *
+         * @throws IOException If I/O error occurred.
+         */
+        private void flush() throws IOException {
+
+            if (rows == 0) {
+                return;
+            }
+
+            out.writeInt(rows);
+
+            for (int i = 0; i < types.length; i++) {
+
+                if (types[i] == ColumnType.DICTIONARY) {
+                    List<String> entries = newEntries.get(i);
+                    out.writeInt(entries.size());
+
+                    for (String entry : entries) {
+                        out.writeUTF(entry);
+                    }
+
+                    entries.clear();
+                }
+
+                writeChunk(values[i], rows);
+            }
+
+            rows = 0;
+        }
+
+        /**
+         * Write remaining rows and end of this table.
+         *
+         * @throws IOException If I/O error occurred.
+         */
+        private void close() throws IOException {
+
+            if (!closed) {
+                flush();
+                out.writeInt(0);
+                closed = true;
+            }
+
+        }
+
+    }
+
+    /**
+     * Constructor of ColumnarWriter.
+     * File header is written in this constructor.
+     *
+     * @param out Stream to write.
+     * @param rowGroupSize Number of rows in one row group.
+     * @throws IOException If I/O error occurred.
+     */
+    public ColumnarWriter(OutputStream out, int rowGroupSize) throws IOException {
+
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("Row group size must be positive: " + rowGroupSize);
+        }
+
+        this.out = new DataOutputStream(out);
+        this.rowGroupSize = rowGroupSize;
+        this.deflater = new Deflater();
+        this.compressed = new ByteArrayOutputStream();
+        this.currentTable = null;
+
+        this.out.write(MAGIC);
+        this.out.writeInt(VERSION);
+    }
+
+    /**
+     * Constructor of ColumnarWriter.
+     * {@link #DEFAULT_ROW_GROUP_SIZE} is used as size of row group.
+     *
+     * @param out Stream to write.
+     * @throws IOException If I/O error occurred.
+     */
+    public ColumnarWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    /**
+     * Start new table.
+     * Previous table is closed.
+     *
+     * @param name Name of table.
+     * @param columnNames Names of columns.
+     * @param types Types of columns.
+     * @return New table.
+     * @throws IOException If I/O error occurred.
+     */
+    public Table startTable(String name, String[] columnNames, ColumnType[] types) throws IOException {
+
+        if (columnNames.length != types.length) {
+            throw new IllegalArgumentException("Number of column names and types are different.");
+        }
+
+        if (currentTable != null) {
+            currentTable.close();
+        }
+
+        out.writeByte(1);
+        out.writeUTF(name);
+        out.writeInt(columnNames.length);
+
+        for (int i = 0; i < columnNames.length; i++) {
+            out.writeUTF(columnNames[i]);
+            out.writeByte(types[i].getId());
+        }
+
+        currentTable = new Table(Arrays.copyOf(types, types.length));
+        return currentTable;
+    }
+
+    /**
+     * Encode and write column chunk.
+     *
+     * @param column Values of column.
+     * @param rows Number of values.
+     * @throws IOException If I/O error occurred.
+     */
+    private void writeChunk(long[] column, int rows) throws IOException {
+        byte[] raw = new byte[rows * 10];
+        int len = 0;
+        long prev = 0;
+
+        for (int i = 0; i < rows; i++) {
+            long delta = column[i] - prev;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            prev = column[i];
+
+            while ((zigzag & ~0x7fL) != 0) {
+                raw[len++] = (byte) ((zigzag & 0x7f) | 0x80);
+                zigzag >>>= 7;
+            }
+
+            raw[len++] = (byte) zigzag;
+        }
+
+        deflater.reset();
+        compressed.reset();
+
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater)) {
+            deflaterStream.write(raw, 0, len);
+        }
+
+        out.writeInt(len);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+    }
+
+    /**
+     * Close current table and write end of file.
+     * Underlying stream is also closed.
+     *
+     * @throws IOException If I/O error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+            if (currentTable != null) {
+                currentTable.close();
+            }
+
+            out.writeByte(0);
+        }
+        finally {
+            deflater.end();
+            out.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.log;
+
+import java.time.LocalDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Difference view of LogSeries.
+ * Entry i of this series is the difference between entry i and i + 1 of
+ * LogSeries, so size of this series is one less than LogSeries.
+ * Values are calculated from LogSeries on demand, so this class does not
+ * keep any array. The result is same as {@link DiffData} .
+ */
+public class DiffSeries {
+
+    /** Number of values which are stored by {@link #getValues(int, double[])} . */
+    public static final int NUM_VALUES = 15;
+
+    private final LogSeries series;
+
+    /**
+     * Constructor of DiffSeries.
+     *
+     * @param series LogSeries to calculate difference.
+     */
+    public DiffSeries(LogSeries series) {
+        this.series = series;
+    }
+
+    /**
+     * Get number of entries.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+        return Math.max(series.size() - 1, 0);
+    }
+
+    /**
+     * Get difference of metric.
+     *
+     * @param column Column of metric in LogSeries.
+     * @param index Index of entry.
+     * @return "current - prev"
+     */
+    private long delta(int column, int index) {
+        return series.getValue(column, index + 1) - series.getValue(column, index);
+    }
+
+    /**
+     * Get total of system CPU time.
+     *
+     * @param index Index of entry.
+     * @return Total of system CPU time.
+     */
+    private double systemCPUTotal(int index) {
+        double total = 0.0d;
+
+        for (int column = LogSeries.SYSTEM_USER_TIME; column <= LogSeries.SYSTEM_GUEST_TIME; column++) {
+            total += delta(column, index);
+        }
+
+        return total;
+    }
+
+    /**
+     * Get usage of system CPU time.
+     *
+     * @param column Column of system CPU time in LogSeries.
+     * @param index Index of entry.
+     * @return Usage of CPU time in percent.
+     */
+    private double cpuUsage(int column, int index) {
+        return hasMinusData(index) ? 0.0d
+                                   : (double) delta(column, index) / systemCPUTotal(index) * 100.0d;
+    }
+
+    /**
+     * Get usage of java CPU time.
+     *
+     * @param column Column of java CPU time in LogSeries.
+     * @param index Index of entry.
+     * @return Usage of CPU time in percent.
+     */
+    private double javaUsage(int column, int index) {
+
+        if (hasMinusData(index)) {
+            return 0.0d;
+        }
+
+        double javaCPUTotal = (double) delta(LogSeries.JAVA_USER_TIME, index) + (double) delta(LogSeries.JAVA_SYS_TIME, index);
+        return (double) delta(column, index) / javaCPUTotal * 100.0d;
+    }
+
+    /**
+     * Get difference of JVM statistics.
+     *
+     * @param column Column of JVM statistics in LogSeries.
+     * @param index Index of entry.
+     * @return Difference, or 0 if this entry has minus data.
+     */
+    private long jvmDelta(int column, int index) {
+        return hasMinusData(index) ? 0 : delta(column, index);
+    }
+
+    /**
+     * Get *current* log date time.
+     *
+     * @param index Index of entry.
+     * @return Date time of current log data.
+     */
+    public LocalDateTime getDateTime(int index) {
+        return series.getDateTime(index + 1);
+    }
+
+    /**
+     * Get *current* log date time in epoch milliseconds.
+     *
+     * @param index Index of entry.
+     * @return Date time of current log data.
+     */
+    public long getEpochMilli(int index) {
+        return series.getEpochMilli(index + 1);
+    }
+
+    /**
+     * Get whether this difference has minus data.
+     * If this method return true, JVM may reboot.
+     *
+     * @param index Index of entry.
+     * @return true if this difference has minus data.
+     */
+    public boolean hasMinusData(int index) {
+
+        for (int column = LogSeries.SYSTEM_USER_TIME; column <= LogSeries.JVM_SAFEPOINTS; column++) {
+            if (delta(column, index) < 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get %user of java process.
+     *
+     * @param index Index of entry.
+     * @return %user
+     */
+    public double getJavaUserUsage(int index) {
+        return javaUsage(LogSeries.JAVA_USER_TIME, index);
+    }
+
+    /**
+     * Get %sys of java process.
+     *
+     * @param index Index of entry.
+     * @return %sys
+     */
+    public double getJavaSysUsage(int index) {
+        return javaUsage(LogSeries.JAVA_SYS_TIME, index);
+    }
+
+    /**
+     * Get %user of system.
+     *
+     * @param index Index of entry.
+     * @return %user
+     */
+    public double getCpuUserUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_USER_TIME, index);
+    }
+
+    /**
+     * Get %nice of system.
+     *
+     * @param index Index of entry.
+     * @return %nice
+     */
+    public double getCpuNiceUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_NICE_TIME, index);
+    }
+
+    /**
+     * Get %sys of system.
+     *
+     * @param index Index of entry.
+     * @return %sys
+     */
+    public double getCpuSysUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_SYS_TIME, index);
+    }
+
+    /**
+     * Get %idle of system.
+     *
+     * @param index Index of entry.
+     * @return %idle
+     */
+    public double getCpuIdleUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_IDLE_TIME, index);
+    }
+
+    /**
+     * Get %iowait of system.
+     *
+     * @param index Index of entry.
+     * @return %iowait
+     */
+    public double getCpuIOWaitUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_IOWAIT_TIME, index);
+    }
+
+    /**
+     * Get %irq of system.
+     *
+     * @param index Index of entry.
+     * @return %irq
+     */
+    public double getCpuIRQUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_IRQ_TIME, index);
+    }
+
+    /**
+     * Get %soft of system.
+     *
+     * @param index Index of entry.
+     * @return %soft
+     */
+    public double getCpuSoftIRQUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_SOFTIRQ_TIME, index);
+    }
+
+    /**
+     * Get %steal of system.
+     *
+     * @param index Index of entry.
+     * @return %steal
+     */
+    public double getCpuStealUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_STEAL_TIME, index);
+    }
+
+    /**
+     * Get %guest of system.
+     *
+     * @param index Index of entry.
+     * @return %guest
+     */
+    public double getCpuGuestUsage(int index) {
+        return cpuUsage(LogSeries.SYSTEM_GUEST_TIME, index);
+    }
+
+    /**
+     * Get CPU usage of system.
+     * This value is total of all usages except %idle.
+     *
+     * @param index Index of entry.
+     * @return CPU usage
+     */
+    public double getCpuTotalUsage(int index) {
+        return getCpuUserUsage(index) + getCpuNiceUsage(index) + getCpuSysUsage(index) + getCpuIOWaitUsage(index) +
+               getCpuIRQUsage(index) + getCpuSoftIRQUsage(index) + getCpuStealUsage(index) + getCpuGuestUsage(index);
+    }
+
+    /**
+     * Get park count of java process.
+     *
+     * @param index Index of entry.
+     * @return Park count
+     */
+    public long getJvmSyncPark(int index) {
+        return jvmDelta(LogSeries.JVM_SYNC_PARK, index);
+    }
+
+    /**
+     * Get safepoint time of java process.
+     *
+     * @param index Index of entry.
+     * @return Safepoint time
+     */
+    public long getJvmSafepointTime(int index) {
+        return jvmDelta(LogSeries.JVM_SAFEPOINT_TIME, index);
+    }
+
+    /**
+     * Get safepoint count of java process.
+     *
+     * @param index Index of entry.
+     * @return Safepoint count
+     */
+    public long getJvmSafepoints(int index) {
+        return jvmDelta(LogSeries.JVM_SAFEPOINTS, index);
+    }
+
+    /**
+     * Get all usages and JVM statistics of the entry at once.
+     * Differences, minus data check and CPU totals are calculated only once,
+     * so this method is faster than calling each getter. Values are same as
+     * getters, and they are stored in order of getJavaUserUsage,
+     * getJavaSysUsage, getCpuUserUsage, getCpuNiceUsage, getCpuSysUsage,
+     * getCpuIdleUsage, getCpuIOWaitUsage, getCpuIRQUsage,
+     * getCpuSoftIRQUsage, getCpuStealUsage, getCpuGuestUsage,
+     * getCpuTotalUsage, getJvmSyncPark, getJvmSafepointTime and
+     * getJvmSafepoints.
+     *
+     * @param index Index of entry.
+     * @param values Array to store values. Its length must be
+     *                {@link #NUM_VALUES} or more.
+     */
+    public void getValues(int index, double[] values) {
+        long[] deltas = new long[LogSeries.NUM_COLUMNS];
+        boolean minus = false;
+
+        for (int column = 0; column < LogSeries.NUM_COLUMNS; column++) {
+            deltas[column] = delta(column, index);
+
+            if ((column >= LogSeries.SYSTEM_USER_TIME) && (column <= LogSeries.JVM_SAFEPOINTS) && (deltas[column] < 0)) {
+                minus = true;
+            }
+
+        }
+
+        if (minus) {
+            Arrays.fill(values, 0, NUM_VALUES, 0.0d);
+            return;
+        }
+
+        double javaCPUTotal = (double) deltas[LogSeries.JAVA_USER_TIME] + (double) deltas[LogSeries.JAVA_SYS_TIME];
+        values[0] = (double) deltas[LogSeries.JAVA_USER_TIME] / javaCPUTotal * 100.0d;
+        values[1] = (double) deltas[LogSeries.JAVA_SYS_TIME] / javaCPUTotal * 100.0d;
+
+        double systemCPUTotal = 0.0d;
+        for (int column = LogSeries.SYSTEM_USER_TIME; column <= LogSeries.SYSTEM_GUEST_TIME; column++) {
+            systemCPUTotal += deltas[column];
+        }
+
+        for (int column = LogSeries.SYSTEM_USER_TIME; column <= LogSeries.SYSTEM_GUEST_TIME; column++) {
+            values[column - LogSeries.SYSTEM_USER_TIME + 2] = (double) deltas[column] / systemCPUTotal * 100.0d;
+        }
+
+        /* Total of all usages except %idle. */
+        values[11] = values[2] + values[3] + values[4] + values[6] + values[7] + values[8] + values[9] + values[10];
+
+        values[12] = deltas[LogSeries.JVM_SYNC_PARK];
+        values[13] = deltas[LogSeries.JVM_SAFEPOINT_TIME];
+        values[14] = deltas[LogSeries.JVM_SAFEPOINTS];
+    }
+
+    /**
+     * Get difference entry.
+     * DiffData is created for each call.
+     *
+     * @param index Index of entry.
+     * @return Difference entry.
+     */
+    public DiffData get(int index) {
+        return new DiffData(series.get(index), series.get(index + 1));
+    }
+
+    /**
+     * Get List view of this series.
+     * Elements of the list are created on demand.
+     *
+     * @return Unmodifiable List of DiffData.
+     */
+    public List<DiffData> asList() {
+        return new DiffDataList();
+    }
+
+    /**
+     * Unmodifiable List view of DiffSeries.
+     */
+    private class DiffDataList extends AbstractList<DiffData> implements RandomAccess {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public DiffData get(int index) {
+            return DiffSeries.this.get(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return DiffSeries.this.size();
+        }
+
+    }
+
+}
@@ -18,6 +18,7 @@
 
 package jp.co.ntt.oss.heapstats.container.log;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -37,6 +38,8 @@ public class LogData implements Comparable<LogData>{
         ILLEGAL
     }
     
+    private long epochMilli;
+    
     private LocalDateTime dateTime;
     
     private LogCause logCause;
@@ -77,6 +80,46 @@ public class LogData implements Comparable<LogData>{
     
     private String archivePath;
     
+    /**
+     * Constructor of LogData.
+     * Fields are set by parseFromCSV() .
+     */
+    public LogData(){
+    }
+    
+    /**
+     * Constructor of LogData.
+     * Fields are copied from the entry in LogSeries.
+     * 
+     * @param series LogSeries which contains the entry.
+     * @param index Index of the entry.
+     */
+    LogData(LogSeries series, int index){
+        epochMilli = series.getEpochMilli(index);
+        logCause = series.getLogCause(index);
+        
+        javaUserTime = series.getJavaUserTime(index);
+        javaSysTime  = series.getJavaSysTime(index);
+        javaVSSize = series.getJavaVSSize(index);
+        javaRSSize = series.getJavaRSSize(index);
+        
+        systemUserTime     = series.getSystemUserTime(index);
+        systemNiceTime     = series.getSystemNiceTime(index);
+        systemSysTime      = series.getSystemSysTime(index);
+        systemIdleTime     = series.getSystemIdleTime(index);
+        systemIOWaitTime   = series.getSystemIOWaitTime(index);
+        systemIRQTime      = series.getSystemIRQTime(index);
+        systemSoftIRQTime  = series.getSystemSoftIRQTime(index);
+        systemStealTime    = series.getSystemStealTime(index);
+        systemGuestTime    = series.getSystemGuestTime(index);
+        
+        jvmSyncPark = series.getJvmSyncPark(index);
+        jvmSafepointTime = series.getJvmSafepointTime(index);
+        jvmSafepoints = series.getJvmSafepoints(index);
+        jvmLiveThreads = series.getJvmLiveThreads(index);
+        archivePath = series.getArchivePath(index);
+    }
+    
     /**
      * This method creates LogData from CSV.
      * 
@@ -90,31 +133,10 @@ public class LogData implements Comparable<LogData>{
             throw new IllegalArgumentException("CSV data is not valid: " + csv);
         }
         
-        Instant instant = Instant.ofEpochMilli(Long.parseLong(csvArray[0]));
-        dateTime = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        epochMilli = Long.parseLong(csvArray[0]);
+        dateTime = null;
         
-        switch(Integer.parseInt(csvArray[1])){
-            
-            case 1:
-                logCause = LogCause.EXHAUSTED;
-                break;
-                
-            case 2:
-                logCause = LogCause.SIGNAL;
-                break;
-                
-            case 3:
-                logCause = LogCause.INTERVAL;
-                break;
-                
-            case 4:
-                logCause = LogCause.DEADLOCK;
-                break;
-                
-            default:
-                logCause = LogCause.ILLEGAL;
-                break;
-        }
+        logCause = toLogCause(Integer.parseInt(csvArray[1]));
         
         javaUserTime = Long.parseUnsignedLong(csvArray[2]);
         javaSysTime  = Long.parseUnsignedLong(csvArray[3]);
@@ -138,11 +160,272 @@ public class LogData implements Comparable<LogData>{
         archivePath = (csvArray.length == 20) ? Paths.get(logdir, csvArray[19]).toString() : null;
     }
 
+    /**
+     * This method creates LogData from CSV in byte array.
+     * Numbers are decoded from bytes directly, so this method does not
+     * create String for each column. The result is same as
+     * {@link #parseFromCSV(java.lang.String, java.lang.String)} .
+     * 
+     * @param csv Byte array which contains CSV data.
+     * @param offset Start of CSV line in csv.
+     * @param length Length of CSV line. Line separator must not be included.
+     * @param logdir Directory to deflate if parser finds log archive.
+     * @throws IllegalArgumentException 
+     */
+    public void parseFromCSV(byte[] csv, int offset, int length, String logdir) throws IllegalArgumentException{
+        CSVCursor cursor = new CSVCursor(csv, offset, offset + length);
+        
+        try{
+            epochMilli = cursor.nextLong();
+            dateTime = null;
+            
+            logCause = toLogCause(cursor.nextInt());
+            
+            javaUserTime = cursor.nextUnsignedLong();
+            javaSysTime  = cursor.nextUnsignedLong();
+            javaVSSize = cursor.nextUnsignedLong();
+            javaRSSize = cursor.nextUnsignedLong();
+            
+            systemUserTime     = cursor.nextUnsignedLong();
+            systemNiceTime     = cursor.nextUnsignedLong();
+            systemSysTime      = cursor.nextUnsignedLong();
+            systemIdleTime     = cursor.nextUnsignedLong();
+            systemIOWaitTime   = cursor.nextUnsignedLong();
+            systemIRQTime      = cursor.nextUnsignedLong();
+            systemSoftIRQTime  = cursor.nextUnsignedLong();
+            systemStealTime    = cursor.nextUnsignedLong();
+            systemGuestTime    = cursor.nextUnsignedLong();
+            
+            jvmSyncPark = cursor.nextLong();
+            jvmSafepointTime = cursor.nextLong();
+            jvmSafepoints = cursor.nextLong();
+            jvmLiveThreads = cursor.nextLong();
+            
+            /* Empty trailing column is ignored as well as String#split() */
+            String archive = cursor.hasNext() ? cursor.nextString() : "";
+            archivePath = archive.isEmpty() ? null : Paths.get(logdir, archive).toString();
+            
+            if(cursor.hasNext()){
+                throw new IllegalArgumentException("Too many columns");
+            }
+            
+        }
+        catch(IllegalArgumentException e){
+            throw new IllegalArgumentException("CSV data is not valid: " + new String(csv, offset, length, StandardCharsets.UTF_8), e);
+        }
+        
+    }
+    
+    /**
+     * Convert cause number in CSV to LogCause.
+     * 
+     * @param cause Cause number.
+     * @return LogCause of the number.
+     */
+    private static LogCause toLogCause(int cause){
+        
+        switch(cause){
+            
+            case 1:
+                return LogCause.EXHAUSTED;
+                
+            case 2:
+                return LogCause.SIGNAL;
+                
+            case 3:
+                return LogCause.INTERVAL;
+                
+            case 4:
+                return LogCause.DEADLOCK;
+                
+            default:
+                return LogCause.ILLEGAL;
+        }
+        
+    }
+    
+    /**
+     * Cursor of columns in CSV line in byte array.
+     */
+    private static class CSVCursor{
+        
+        /** Max value of unsigned long / 10 */
+        private static final long UNSIGNED_LIMIT = Long.divideUnsigned(-1L, 10);
+        
+        private final byte[] buf;
+        
+        private final int end;
+        
+        private int pos;
+        
+        private boolean hasNext;
+        
+        /**
+         * Constructor of CSVCursor.
+         * 
+         * @param buf Byte array which contains CSV line.
+         * @param start Start of the line.
+         * @param end End of the line (exclusive).
+         */
+        public CSVCursor(byte[] buf, int start, int end){
+            this.buf = buf;
+            this.end = end;
+            this.pos = start;
+            this.hasNext = true;
+        }
+        
+        /**
+         * Check whether the line has more column.
+         * 
+         * @return true if the line has more column.
+         */
+        public boolean hasNext(){
+            return hasNext;
+        }
+        
+        /**
+         * Move to next column.
+         * 
+         * @param columnEnd End of current column.
+         */
+        private void next(int columnEnd){
+            hasNext = columnEnd < end;
+            pos = columnEnd + 1;
+        }
+        
+        /**
+         * Get end of current column.
+         * 
+         * @return Position of comma or end of line.
+         */
+        private int columnEnd(){
+            
+            if(!hasNext){
+                throw new IllegalArgumentException("Too few columns");
+            }
+            
+            int i = pos;
+            while((i < end) && (buf[i] != ',')){
+                i++;
+            }
+            
+            return i;
+        }
+        
+        /**
+         * Decode unsigned decimal digits.
+         * 
+         * @param start Start of digits.
+         * @param columnEnd End of digits.
+         * @return Decoded value as unsigned long.
+         */
+        private long decodeUnsigned(int start, int columnEnd){
+            
+            if(start == columnEnd){
+                throw new NumberFormatException("Empty column");
+            }
+            
+            long value = 0;
+            for(int i = start; i < columnEnd; i++){
+                int digit = buf[i] - '0';
+                
+                if((digit < 0) || (digit > 9)){
+                    throw new NumberFormatException("Not a number at column " + i);
+                }
+                if((Long.compareUnsigned(value, UNSIGNED_LIMIT) > 0) ||
+                   ((value == UNSIGNED_LIMIT) && (digit > Long.remainderUnsigned(-1L, 10)))){
+                    throw new NumberFormatException("Number is too large at column " + i);
+                }
+                
+                value = value * 10 + digit;
+            }
+            
+            return value;
+        }
+        
+        /**
+         * Get next column as unsigned long.
+         * 
+         * @return Value of the column.
+         */
+        public long nextUnsignedLong(){
+            int columnEnd = columnEnd();
+            int start = ((pos < columnEnd) && (buf[pos] == '+')) ? pos + 1 : pos;
+            long value = decodeUnsigned(start, columnEnd);
+            
+            next(columnEnd);
+            return value;
+        }
+        
+        /**
+         * Get next column as signed long.
+         * 
+         * @return Value of the column.
+         */
+        public long nextLong(){
+            int columnEnd = columnEnd();
+            boolean negative = (pos < columnEnd) && (buf[pos] == '-');
+            int start = (negative || ((pos < columnEnd) && (buf[pos] == '+'))) ? pos + 1 : pos;
+            long magnitude = decodeUnsigned(start, columnEnd);
+            
+            if((magnitude < 0) && !(negative && (magnitude == Long.MIN_VALUE))){
+                throw new NumberFormatException("Number is out of range at column " + pos);
+            }
+            
+            next(columnEnd);
+            return negative ? -magnitude : magnitude;
+        }
+        
+        /**
+         * Get next column as int.
+         * 
+         * @return Value of the column.
+         */
+        public int nextInt(){
+            int columnStart = pos;
+            long value = nextLong();
+            
+            if((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE)){
+                throw new NumberFormatException("Number is out of range at column " + columnStart);
+            }
+            
+            return (int)value;
+        }
+        
+        /**
+         * Get next column as String.
+         * 
+         * @return Value of the column.
+         */
+        public String nextString(){
+            int columnEnd = columnEnd();
+            String value = new String(buf, pos, columnEnd - pos, StandardCharsets.UTF_8);
+            
+            next(columnEnd);
+            return value;
+        }
+        
+    }
+
+    /**
+     * Get date time of this log data in epoch milliseconds.
+     * @return Date time of this log data
+     */
+    public long getEpochMilli() {
+        return epochMilli;
+    }
+
     /**
      * Get date time of this log data.
      * @return Date time of this log data
      */
     public LocalDateTime getDateTime() {
+        
+        /* LocalDateTime is created on demand. */
+        if(dateTime == null){
+            dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilli), ZoneId.systemDefault());
+        }
+        
         return dateTime;
     }
 
@@ -307,7 +590,7 @@ public class LogData implements Comparable<LogData>{
      */
     @Override
     public int compareTo(LogData o) {
-        return dateTime.compareTo(o.dateTime);
+        return getDateTime().compareTo(o.getDateTime());
     }
 
 }
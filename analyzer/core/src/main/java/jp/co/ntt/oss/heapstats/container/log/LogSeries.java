@@ -0,0 +1,876 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.log;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Columnar time-series container of resource log.
+ * Each metric is stored to primitive array, so LogData object is not kept
+ * for each entry. LogData is created on demand by {@link #get(int)} .
+ * Sub series which is created by {@link #subSeries(int, int)} shares
+ * arrays with the original series, and it cannot be modified.
+ */
+public class LogSeries {
+
+    /** Column of %user time of java process. */
+    public static final int JAVA_USER_TIME = 0;
+
+    /** Column of %sys time of java process. */
+    public static final int JAVA_SYS_TIME = 1;
+
+    /** Column of VSZ of java process. */
+    public static final int JAVA_VS_SIZE = 2;
+
+    /** Column of RSS of java process. */
+    public static final int JAVA_RS_SIZE = 3;
+
+    /** Column of %user time of system. */
+    public static final int SYSTEM_USER_TIME = 4;
+
+    /** Column of %nice time of system. */
+    public static final int SYSTEM_NICE_TIME = 5;
+
+    /** Column of %sys time of system. */
+    public static final int SYSTEM_SYS_TIME = 6;
+
+    /** Column of %idle time of system. */
+    public static final int SYSTEM_IDLE_TIME = 7;
+
+    /** Column of %iowait time of system. */
+    public static final int SYSTEM_IOWAIT_TIME = 8;
+
+    /** Column of %irq time of system. */
+    public static final int SYSTEM_IRQ_TIME = 9;
+
+    /** Column of %soft time of system. */
+    public static final int SYSTEM_SOFTIRQ_TIME = 10;
+
+    /** Column of %steal time of system. */
+    public static final int SYSTEM_STEAL_TIME = 11;
+
+    /** Column of %guest time of system. */
+    public static final int SYSTEM_GUEST_TIME = 12;
+
+    /** Column of park count of java process. */
+    public static final int JVM_SYNC_PARK = 13;
+
+    /** Column of safepoint time of java process. */
+    public static final int JVM_SAFEPOINT_TIME = 14;
+
+    /** Column of safepoint count of java process. */
+    public static final int JVM_SAFEPOINTS = 15;
+
+    /** Column of live thread count of java process. */
+    public static final int JVM_LIVE_THREADS = 16;
+
+    /** Number of metric columns. */
+    public static final int NUM_COLUMNS = 17;
+
+    private static final LogData.LogCause[] CAUSES = LogData.LogCause.values();
+
+    private long[] epochMillis;
+
+    private byte[] causes;
+
+    private long[][] values;
+
+    /** Archive paths. This array is allocated when the first archive is added. */
+    private String[] archivePaths;
+
+    private final int offset;
+
+    private int size;
+
+    /** true if this series is sub series of other series. */
+    private final boolean view;
+
+    /**
+     * Constructor of LogSeries.
+     */
+    public LogSeries() {
+        this(1024);
+    }
+
+    /**
+     * Constructor of LogSeries.
+     *
+     * @param capacity Initial capacity.
+     */
+    public LogSeries(int capacity) {
+        capacity = Math.max(capacity, 16);
+        epochMillis = new long[capacity];
+        causes = new byte[capacity];
+        values = new long[NUM_COLUMNS][capacity];
+        archivePaths = null;
+        offset = 0;
+        size = 0;
+        view = false;
+    }
+
+    /**
+     * Constructor of sub series.
+     *
+     * @param base Original series.
+     * @param from Start index in base (inclusive).
+     * @param to End index in base (exclusive).
+     */
+    private LogSeries(LogSeries base, int from, int to) {
+        epochMillis = base.epochMillis;
+        causes = base.causes;
+        values = base.values;
+        archivePaths = base.archivePaths;
+        offset = base.offset + from;
+        size = to - from;
+        view = true;
+    }
+
+    /**
+     * Expand arrays to store entries.
+     *
+     * @param required Number of entries which should be stored.
+     */
+    private void ensureCapacity(int required) {
+
+        if (view) {
+            throw new UnsupportedOperationException("Sub series cannot be modified.");
+        }
+
+        if (required <= epochMillis.length) {
+            return;
+        }
+
+        int capacity = Math.max(required, epochMillis.length + (epochMillis.length >> 1));
+        epochMillis = Arrays.copyOf(epochMillis, capacity);
+        causes = Arrays.copyOf(causes, capacity);
+
+        long[][] newValues = new long[NUM_COLUMNS][];
+        for (int i = 0; i < NUM_COLUMNS; i++) {
+            newValues[i] = Arrays.copyOf(values[i], capacity);
+        }
+        values = newValues;
+
+        if (archivePaths != null) {
+            archivePaths = Arrays.copyOf(archivePaths, capacity);
+        }
+
+    }
+
+    /**
+     * Store archive path.
+     *
+     * @param pos Position in arrays.
+     * @param path Archive path.
+     */
+    private void setArchivePath(int pos, String path) {
+
+        if (path == null) {
+            if (archivePaths != null) {
+                archivePaths[pos] = null;
+            }
+            return;
+        }
+
+        if (archivePaths == null) {
+            archivePaths = new String[epochMillis.length];
+        }
+
+        archivePaths[pos] = path;
+    }
+
+    /**
+     * Add log entry to the end of this series.
+     *
+     * @param data Log entry to add.
+     */
+    public void add(LogData data) {
+        ensureCapacity(size + 1);
+
+        int pos = size;
+        epochMillis[pos] = data.getEpochMilli();
+        causes[pos] = (byte) ((data.getLogCause() == null) ? -1 : data.getLogCause().ordinal());
+
+        values[JAVA_USER_TIME][pos] = data.getJavaUserTime();
+        values[JAVA_SYS_TIME][pos] = data.getJavaSysTime();
+        values[JAVA_VS_SIZE][pos] = data.getJavaVSSize();
+        values[JAVA_RS_SIZE][pos] = data.getJavaRSSize();
+        values[SYSTEM_USER_TIME][pos] = data.getSystemUserTime();
+        values[SYSTEM_NICE_TIME][pos] = data.getSystemNiceTime();
+        values[SYSTEM_SYS_TIME][pos] = data.getSystemSysTime();
+        values[SYSTEM_IDLE_TIME][pos] = data.getSystemIdleTime();
+        values[SYSTEM_IOWAIT_TIME][pos] = data.getSystemIOWaitTime();
+        values[SYSTEM_IRQ_TIME][pos] = data.getSystemIRQTime();
+        values[SYSTEM_SOFTIRQ_TIME][pos] = data.getSystemSoftIRQTime();
+        values[SYSTEM_STEAL_TIME][pos] = data.getSystemStealTime();
+        values[SYSTEM_GUEST_TIME][pos] = data.getSystemGuestTime();
+        values[JVM_SYNC_PARK][pos] = data.getJvmSyncPark();
+        values[JVM_SAFEPOINT_TIME][pos] = data.getJvmSafepointTime();
+        values[JVM_SAFEPOINTS][pos] = data.getJvmSafepoints();
+        values[JVM_LIVE_THREADS][pos] = data.getJvmLiveThreads();
+
+        setArchivePath(pos, data.getArchivePath());
+        size++;
+    }
+
+    /**
+     * Add all entries in other series to the end of this series.
+     *
+     * @param other Series to add.
+     */
+    public void addAll(LogSeries other) {
+        ensureCapacity(size + other.size);
+
+        System.arraycopy(other.epochMillis, other.offset, epochMillis, size, other.size);
+        System.arraycopy(other.causes, other.offset, causes, size, other.size);
+        for (int i = 0; i < NUM_COLUMNS; i++) {
+            System.arraycopy(other.values[i], other.offset, values[i], size, other.size);
+        }
+
+        if (other.archivePaths != null) {
+            for (int i = 0; i < other.size; i++) {
+                setArchivePath(size + i, other.archivePaths[other.offset + i]);
+            }
+        }
+
+        size += other.size;
+    }
+
+    /**
+     * Merge sorted series and add entries to the end of this series.
+     * Each series must be sorted by date time. Entries which have same
+     * date time are added in order of sources. Consecutive entries from
+     * the same series are copied at once, so series which do not overlap
+     * each other are just concatenated.
+     *
+     * @param sources Sorted series to merge.
+     */
+    public void mergeAll(List<LogSeries> sources) {
+        ensureCapacity(size + sources.stream().mapToInt(LogSeries::size).sum());
+
+        /* Min-heap of source indices ordered by date time of the current entry. */
+        int[] heap = new int[sources.size()];
+        int[] cursors = new int[sources.size()];
+        int heapSize = 0;
+
+        for (int i = 0; i < sources.size(); i++) {
+            if (!sources.get(i).isEmpty()) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, sources, cursors);
+            }
+        }
+
+        while (heapSize > 0) {
+            int src = heap[0];
+            LogSeries source = sources.get(src);
+            int from = cursors[src];
+            int to = from + 1;
+
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, sources, cursors);
+
+            /* Copy entries which precede the head of the other sources. */
+            if (heapSize == 0) {
+                to = source.size();
+            }
+            else {
+                int next = heap[0];
+                long limit = sources.get(next).getEpochMilli(cursors[next]);
+
+                while ((to < source.size()) &&
+                       ((source.getEpochMilli(to) < limit) || ((source.getEpochMilli(to) == limit) && (src < next)))) {
+                    to++;
+                }
+
+            }
+
+            addAll(source.subSeries(from, to));
+            cursors[src] = to;
+
+            if (to < source.size()) {
+                heap[heapSize] = src;
+                siftUp(heap, heapSize++, sources, cursors);
+            }
+
+        }
+
+    }
+
+    /**
+     * Merge sorted series into this sorted series.
+     * Entries of this series before the earliest entry of sources are kept
+     * as they are, and only following entries are merged with sources.
+     * Entries which have same date time are added in order of this series
+     * and sources.
+     *
+     * @param sources Sorted series to merge.
+     */
+    public void mergeSorted(List<LogSeries> sources) {
+        long earliest = sources.stream()
+                               .filter(s -> !s.isEmpty())
+                               .mapToLong(s -> s.getEpochMilli(0))
+                               .min()
+                               .orElse(Long.MAX_VALUE);
+
+        /* Find the first entry which is later than earliest. */
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (getEpochMilli(mid) <= earliest) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+
+        }
+
+        LogSeries tail = new LogSeries(size - low);
+        tail.addAll(subSeries(low, size));
+        truncate(low);
+
+        List<LogSeries> all = new ArrayList<>(sources.size() + 1);
+        all.add(tail);
+        all.addAll(sources);
+        mergeAll(all);
+    }
+
+    /**
+     * Remove entries after the index.
+     *
+     * @param newSize New number of entries.
+     */
+    public void truncate(int newSize) {
+
+        if (view) {
+            throw new UnsupportedOperationException("Sub series cannot be modified.");
+        }
+
+        if ((newSize < 0) || (newSize > size)) {
+            throw new IndexOutOfBoundsException("Index: " + newSize + ", Size: " + size);
+        }
+
+        if (archivePaths != null) {
+            Arrays.fill(archivePaths, newSize, size, null);
+        }
+
+        size = newSize;
+    }
+
+    /**
+     * Compare heads of sources in merge.
+     *
+     * @param a Index of source.
+     * @param b Index of source.
+     * @param sources Sources of merge.
+     * @param cursors Current positions of sources.
+     * @return true if head of a precedes head of b.
+     */
+    private static boolean precedes(int a, int b, List<LogSeries> sources, int[] cursors) {
+        long timeA = sources.get(a).getEpochMilli(cursors[a]);
+        long timeB = sources.get(b).getEpochMilli(cursors[b]);
+
+        return (timeA < timeB) || ((timeA == timeB) && (a < b));
+    }
+
+    /**
+     * Move up the source in heap.
+     *
+     * @param heap Heap of sources.
+     * @param pos Slot of the source.
+     * @param sources Sources of merge.
+     * @param cursors Current positions of sources.
+     */
+    private static void siftUp(int[] heap, int pos, List<LogSeries> sources, int[] cursors) {
+
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+
+            if (!precedes(heap[pos], heap[parent], sources, cursors)) {
+                break;
+            }
+
+            int tmp = heap[pos];
+            heap[pos] = heap[parent];
+            heap[parent] = tmp;
+            pos = parent;
+        }
+
+    }
+
+    /**
+     * Move down the top of heap.
+     *
+     * @param heap Heap of sources.
+     * @param heapSize Number of sources in heap.
+     * @param sources Sources of merge.
+     * @param cursors Current positions of sources.
+     */
+    private static void siftDown(int[] heap, int heapSize, List<LogSeries> sources, int[] cursors) {
+        int pos = 0;
+
+        while (true) {
+            int child = pos * 2 + 1;
+
+            if (child >= heapSize) {
+                break;
+            }
+            if ((child + 1 < heapSize) && precedes(heap[child + 1], heap[child], sources, cursors)) {
+                child++;
+            }
+            if (!precedes(heap[child], heap[pos], sources, cursors)) {
+                break;
+            }
+
+            int tmp = heap[pos];
+            heap[pos] = heap[child];
+            heap[child] = tmp;
+            pos = child;
+        }
+
+    }
+
+    /**
+     * Sort entries by date time.
+     * Order of entries which have same date time is kept.
+     * Nothing is done if entries are already sorted.
+     */
+    public void sort() {
+
+        if (view) {
+            throw new UnsupportedOperationException("Sub series cannot be modified.");
+        }
+
+        boolean sorted = true;
+        for (int i = 1; sorted && (i < size); i++) {
+            sorted = epochMillis[i - 1] <= epochMillis[i];
+        }
+        if (sorted) {
+            return;
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size);
+
+        epochMillis = permute(epochMillis, order);
+        byte[] newCauses = new byte[causes.length];
+        for (int i = 0; i < size; i++) {
+            newCauses[i] = causes[order[i]];
+        }
+        causes = newCauses;
+
+        for (int i = 0; i < NUM_COLUMNS; i++) {
+            values[i] = permute(values[i], order);
+        }
+
+        if (archivePaths != null) {
+            String[] newPaths = new String[archivePaths.length];
+            for (int i = 0; i < size; i++) {
+                newPaths[i] = archivePaths[order[i]];
+            }
+            archivePaths = newPaths;
+        }
+
+    }
+
+    /**
+     * Stable merge sort of indices by date time.
+     *
+     * @param order Indices to sort.
+     * @param work Work buffer which has same length of order.
+     * @param from Start of range (inclusive).
+     * @param to End of range (exclusive).
+     */
+    private void mergeSort(int[] order, int[] work, int from, int to) {
+
+        if (to - from < 2) {
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        mergeSort(order, work, from, mid);
+        mergeSort(order, work, mid, to);
+
+        if (epochMillis[order[mid - 1]] <= epochMillis[order[mid]]) {
+            return;
+        }
+
+        System.arraycopy(order, from, work, from, to - from);
+        int left = from;
+        int right = mid;
+
+        for (int i = from; i < to; i++) {
+            if ((right >= to) || ((left < mid) && (epochMillis[work[left]] <= epochMillis[work[right]]))) {
+                order[i] = work[left++];
+            }
+            else {
+                order[i] = work[right++];
+            }
+        }
+
+    }
+
+    /**
+     * Reorder array.
+     *
+     * @param src Array to reorder.
+     * @param order Indices of src in new order.
+     * @return New array.
+     */
+    private static long[] permute(long[] src, int[] order) {
+        long[] result = new long[src.length];
+
+        for (int i = 0; i < order.length; i++) {
+            result[i] = src[order[i]];
+        }
+
+        return result;
+    }
+
+    /**
+     * Get number of entries.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether this series is empty.
+     *
+     * @return true if this series has no entry.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Check index of entry.
+     *
+     * @param index Index of entry.
+     * @return Position in arrays.
+     */
+    private int position(int index) {
+
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        return offset + index;
+    }
+
+    /**
+     * Get sub series.
+     * Returned series shares arrays with this series.
+     *
+     * @param from Start index (inclusive).
+     * @param to End index (exclusive).
+     * @return Sub series.
+     */
+    public LogSeries subSeries(int from, int to) {
+
+        if ((from < 0) || (to > size) || (from > to)) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", Size: " + size);
+        }
+
+        return new LogSeries(this, from, to);
+    }
+
+    /**
+     * Get log entry.
+     * LogData is created for each call.
+     *
+     * @param index Index of entry.
+     * @return Log entry.
+     */
+    public LogData get(int index) {
+        position(index);
+        return new LogData(this, index);
+    }
+
+    /**
+     * Get List view of this series.
+     * Elements of the list are created on demand.
+     *
+     * @return Unmodifiable List of LogData.
+     */
+    public List<LogData> asList() {
+        return new LogDataList();
+    }
+
+    /**
+     * Unmodifiable List view of LogSeries.
+     */
+    private class LogDataList extends AbstractList<LogData> implements RandomAccess {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public LogData get(int index) {
+            return LogSeries.this.get(index);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+    /**
+     * Get date time in epoch milliseconds.
+     *
+     * @param index Index of entry.
+     * @return Date time.
+     */
+    public long getEpochMilli(int index) {
+        return epochMillis[position(index)];
+    }
+
+    /**
+     * Get date time.
+     * LocalDateTime is created for each call.
+     *
+     * @param index Index of entry.
+     * @return Date time.
+     */
+    public LocalDateTime getDateTime(int index) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(getEpochMilli(index)), ZoneId.systemDefault());
+    }
+
+    /**
+     * Get cause of log.
+     *
+     * @param index Index of entry.
+     * @return Cause of log.
+     */
+    public LogData.LogCause getLogCause(int index) {
+        byte cause = causes[position(index)];
+        return (cause < 0) ? null : CAUSES[cause];
+    }
+
+    /**
+     * Get value of metric.
+     *
+     * @param column Column of metric. e.g. {@link #JAVA_USER_TIME}
+     * @param index Index of entry.
+     * @return Value of metric.
+     */
+    public long getValue(int column, int index) {
+        return values[column][position(index)];
+    }
+
+    /**
+     * Get %user time of java process.
+     *
+     * @param index Index of entry.
+     * @return %user time.
+     */
+    public long getJavaUserTime(int index) {
+        return getValue(JAVA_USER_TIME, index);
+    }
+
+    /**
+     * Get %sys time of java process.
+     *
+     * @param index Index of entry.
+     * @return %sys time.
+     */
+    public long getJavaSysTime(int index) {
+        return getValue(JAVA_SYS_TIME, index);
+    }
+
+    /**
+     * Get virtual memory size (VSZ) of java process.
+     *
+     * @param index Index of entry.
+     * @return VSZ
+     */
+    public long getJavaVSSize(int index) {
+        return getValue(JAVA_VS_SIZE, index);
+    }
+
+    /**
+     * Get resident set size (RSS) of java process.
+     *
+     * @param index Index of entry.
+     * @return RSS
+     */
+    public long getJavaRSSize(int index) {
+        return getValue(JAVA_RS_SIZE, index);
+    }
+
+    /**
+     * Get %user time of system.
+     *
+     * @param index Index of entry.
+     * @return %user time.
+     */
+    public long getSystemUserTime(int index) {
+        return getValue(SYSTEM_USER_TIME, index);
+    }
+
+    /**
+     * Get %nice time of system.
+     *
+     * @param index Index of entry.
+     * @return %nice time.
+     */
+    public long getSystemNiceTime(int index) {
+        return getValue(SYSTEM_NICE_TIME, index);
+    }
+
+    /**
+     * Get %sys time of system.
+     *
+     * @param index Index of entry.
+     * @return %sys time.
+     */
+    public long getSystemSysTime(int index) {
+        return getValue(SYSTEM_SYS_TIME, index);
+    }
+
+    /**
+     * Get %idle time of system.
+     *
+     * @param index Index of entry.
+     * @return %idle time.
+     */
+    public long getSystemIdleTime(int index) {
+        return getValue(SYSTEM_IDLE_TIME, index);
+    }
+
+    /**
+     * Get %iowait time of system.
+     *
+     * @param index Index of entry.
+     * @return %iowait time.
+     */
+    public long getSystemIOWaitTime(int index) {
+        return getValue(SYSTEM_IOWAIT_TIME, index);
+    }
+
+    /**
+     * Get %irq time of system.
+     *
+     * @param index Index of entry.
+     * @return %irq time.
+     */
+    public long getSystemIRQTime(int index) {
+        return getValue(SYSTEM_IRQ_TIME, index);
+    }
+
+    /**
+     * Get %soft time of system.
+     *
+     * @param index Index of entry.
+     * @return %soft time.
+     */
+    public long getSystemSoftIRQTime(int index) {
+        return getValue(SYSTEM_SOFTIRQ_TIME, index);
+    }
+
+    /**
+     * Get %steal time of system.
+     *
+     * @param index Index of entry.
+     * @return %steal time.
+     */
+    public long getSystemStealTime(int index) {
+        return getValue(SYSTEM_STEAL_TIME, index);
+    }
+
+    /**
+     * Get %guest time of system.
+     *
+     * @param index Index of entry.
+     * @return %guest time.
+     */
+    public long getSystemGuestTime(int index) {
+        return getValue(SYSTEM_GUEST_TIME, index);
+    }
+
+    /**
+     * Get park count of java process.
+     *
+     * @param index Index of entry.
+     * @return Park count.
+     */
+    public long getJvmSyncPark(int index) {
+        return getValue(JVM_SYNC_PARK, index);
+    }
+
+    /**
+     * Get safepoint time of java process.
+     *
+     * @param index Index of entry.
+     * @return Safepoint time.
+     */
+    public long getJvmSafepointTime(int index) {
+        return getValue(JVM_SAFEPOINT_TIME, index);
+    }
+
+    /**
+     * Get safepoint count of java process.
+     *
+     * @param index Index of entry.
+     * @return Safepoint count.
+     */
+    public long getJvmSafepoints(int index) {
+        return getValue(JVM_SAFEPOINTS, index);
+    }
+
+    /**
+     * Get live thread count of java process.
+     *
+     * @param index Index of entry.
+     * @return Live thread count.
+     */
+    public long getJvmLiveThreads(int index) {
+        return getValue(JVM_LIVE_THREADS, index);
+    }
+
+    /**
+     * Get archive path when trouble occurrs.
+     *
+     * @param index Index of entry.
+     * @return Archive path, or null if the entry does not have archive.
+     */
+    public String getArchivePath(int index) {
+        int pos = position(index);
+        return (archivePaths == null) ? null : archivePaths[pos];
+    }
+
+}
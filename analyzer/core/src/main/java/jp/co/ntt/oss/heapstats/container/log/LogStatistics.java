@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.log;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import jp.co.ntt.oss.heapstats.collection.QuantileSketch;
+
+/**
+ * Streaming statistics of resource log.
+ * Each metric is summarized by {@link QuantileSketch}, so percentiles can be
+ * calculated without keeping values. Statistics of each file or host can be
+ * merged.
+ */
+public class LogStatistics {
+
+    /**
+     * Metrics of resource log.
+     * Usages and JVM counters are calculated from difference series, and
+     * others are calculated from log series.
+     */
+    public static enum Metric {
+        JAVA_USER_USAGE(true),
+        JAVA_SYS_USAGE(true),
+        CPU_USER_USAGE(true),
+        CPU_NICE_USAGE(true),
+        CPU_SYS_USAGE(true),
+        CPU_IDLE_USAGE(true),
+        CPU_IOWAIT_USAGE(true),
+        CPU_IRQ_USAGE(true),
+        CPU_SOFTIRQ_USAGE(true),
+        CPU_STEAL_USAGE(true),
+        CPU_GUEST_USAGE(true),
+        CPU_TOTAL_USAGE(true),
+        JVM_SYNC_PARK(true),
+        JVM_SAFEPOINT_TIME(true),
+        JVM_SAFEPOINTS(true),
+        JAVA_VSZ(false),
+        JAVA_RSS(false),
+        JVM_LIVE_THREADS(false);
+
+        private final boolean diff;
+
+        private Metric(boolean diff) {
+            this.diff = diff;
+        }
+
+        /**
+         * Returns whether this metric is calculated from difference series.
+         *
+         * @return true if this metric is calculated from difference series.
+         */
+        public boolean isDiff() {
+            return diff;
+        }
+
+    }
+
+    /** Metrics in order of {@link DiffSeries#getValues(int, double[])} . */
+    private static final Metric[] DIFF_METRICS = {Metric.JAVA_USER_USAGE, Metric.JAVA_SYS_USAGE,
+                                                  Metric.CPU_USER_USAGE, Metric.CPU_NICE_USAGE, Metric.CPU_SYS_USAGE, Metric.CPU_IDLE_USAGE,
+                                                  Metric.CPU_IOWAIT_USAGE, Metric.CPU_IRQ_USAGE, Metric.CPU_SOFTIRQ_USAGE, Metric.CPU_STEAL_USAGE,
+                                                  Metric.CPU_GUEST_USAGE, Metric.CPU_TOTAL_USAGE,
+                                                  Metric.JVM_SYNC_PARK, Metric.JVM_SAFEPOINT_TIME, Metric.JVM_SAFEPOINTS};
+
+    /** Number of entries which are summarized in one parallel task. */
+    private static final int PARALLEL_CHUNK_SIZE = 64 * 1024;
+
+    private final Map<Metric, QuantileSketch> sketches;
+
+    /**
+     * Constructor of LogStatistics with default relative accuracy.
+     */
+    public LogStatistics() {
+        this(QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * Constructor of LogStatistics.
+     *
+     * @param relativeAccuracy Relative accuracy of percentiles.
+     */
+    public LogStatistics(double relativeAccuracy) {
+        sketches = new EnumMap<>(Metric.class);
+
+        for (Metric metric : Metric.values()) {
+            sketches.put(metric, new QuantileSketch(relativeAccuracy));
+        }
+
+    }
+
+    /**
+     * Constructor of LogStatistics.
+     * All entries of log series and difference series are added.
+     *
+     * @param logSeries Log series to be summarized.
+     * @param diffSeries Difference series to be summarized.
+     */
+    public LogStatistics(LogSeries logSeries, DiffSeries diffSeries) {
+        this();
+        addLogEntries(logSeries, 0, logSeries.size());
+        addDiffEntries(diffSeries, 0, diffSeries.size());
+    }
+
+    /**
+     * Add entries of log series.
+     *
+     * @param series Log series.
+     * @param from Index of the first entry (inclusive).
+     * @param to Index of the last entry (exclusive).
+     */
+    public void addLogEntries(LogSeries series, int from, int to) {
+        QuantileSketch vsz = sketches.get(Metric.JAVA_VSZ);
+        QuantileSketch rss = sketches.get(Metric.JAVA_RSS);
+        QuantileSketch liveThreads = sketches.get(Metric.JVM_LIVE_THREADS);
+
+        for (int i = from; i < to; i++) {
+            vsz.add(series.getJavaVSSize(i) / 1024.0d / 1024.0d); // in MB
+            rss.add(series.getJavaRSSize(i) / 1024.0d / 1024.0d); // in MB
+            liveThreads.add(series.getJvmLiveThreads(i));
+        }
+
+    }
+
+    /**
+     * Add entries of difference series.
+     *
+     * @param series Difference series.
+     * @param from Index of the first entry (inclusive).
+     * @param to Index of the last entry (exclusive).
+     */
+    public void addDiffEntries(DiffSeries series, int from, int to) {
+
+        if (to - from <= PARALLEL_CHUNK_SIZE) {
+            addDiffRange(series, from, to);
+            return;
+        }
+
+        /* Each chunk is summarized in parallel, and they are merged in order. */
+        double relativeAccuracy = sketches.get(Metric.JAVA_USER_USAGE).getRelativeAccuracy();
+        int numChunks = (to - from + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+
+        IntStream.range(0, numChunks)
+                 .parallel()
+                 .mapToObj(c -> {
+                     LogStatistics chunk = new LogStatistics(relativeAccuracy);
+                     int start = from + c * PARALLEL_CHUNK_SIZE;
+                     chunk.addDiffRange(series, start, Math.min(start + PARALLEL_CHUNK_SIZE, to));
+                     return chunk;
+                 })
+                 .reduce((a, b) -> {
+                     a.merge(b);
+                     return a;
+                 })
+                 .ifPresent(this::merge);
+    }
+
+    /**
+     * Add entries of difference series sequentially.
+     * All values of each entry are calculated at once.
+     *
+     * @param series Difference series.
+     * @param from Index of the first entry (inclusive).
+     * @param to Index of the last entry (exclusive).
+     */
+    private void addDiffRange(DiffSeries series, int from, int to) {
+        QuantileSketch[] targets = new QuantileSketch[DIFF_METRICS.length];
+        double[] values = new double[DiffSeries.NUM_VALUES];
+
+        for (int i = 0; i < DIFF_METRICS.length; i++) {
+            targets[i] = sketches.get(DIFF_METRICS[i]);
+        }
+
+        for (int i = from; i < to; i++) {
+            series.getValues(i, values);
+
+            for (int j = 0; j < targets.length; j++) {
+                targets[j].add(values[j]);
+            }
+
+        }
+
+    }
+
+    /**
+     * Remove all values from this statistics.
+     */
+    public void clear() {
+        sketches.replaceAll((k, v) -> new QuantileSketch(v.getRelativeAccuracy()));
+    }
+
+    /**
+     * Add difference entry.
+     *
+     * @param data Difference entry.
+     */
+    public void addDiffData(DiffData data) {
+        double[] values = {data.getJavaUserUsage(), data.getJavaSysUsage(),
+                           data.getCpuUserUsage(), data.getCpuNiceUsage(), data.getCpuSysUsage(), data.getCpuIdleUsage(),
+                           data.getCpuIOWaitUsage(), data.getCpuIRQUsage(), data.getCpuSoftIRQUsage(), data.getCpuStealUsage(),
+                           data.getCpuGuestUsage(), data.getCpuTotalUsage(),
+                           data.getJvmSyncPark(), data.getJvmSafepointTime(), data.getJvmSafepoints()};
+
+        for (int i = 0; i < DIFF_METRICS.length; i++) {
+            sketches.get(DIFF_METRICS[i]).add(values[i]);
+        }
+
+    }
+
+    /**
+     * Merge other statistics to this statistics.
+     *
+     * @param other Statistics to merge. It must have same relative accuracy.
+     */
+    public void merge(LogStatistics other) {
+        sketches.forEach((k, v) -> v.merge(other.sketches.get(k)));
+    }
+
+    /**
+     * Get sketch of the metric.
+     *
+     * @param metric Metric.
+     * @return Sketch of the metric.
+     */
+    public QuantileSketch getSketch(Metric metric) {
+        return sketches.get(metric);
+    }
+
+    /**
+     * Get estimated percentile of the metric.
+     *
+     * @param metric Metric.
+     * @param percentile Percentile in [0, 100] . e.g. 99.9 for p99.9
+     * @return Estimated value, or NaN if no value is added.
+     */
+    public double getPercentile(Metric metric, double percentile) {
+        return sketches.get(metric).getQuantile(percentile / 100.0d);
+    }
+
+    /**
+     * Write this statistics.
+     *
+     * @param out Output to write.
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(sketches.size());
+
+        for (Map.Entry<Metric, QuantileSketch> entry : sketches.entrySet()) {
+            out.writeUTF(entry.getKey().name());
+            entry.getValue().write(out);
+        }
+
+    }
+
+    /**
+     * Read statistics which is written by {@link #write(DataOutput)} .
+     * Unknown metrics are ignored.
+     *
+     * @param in Input to read.
+     * @return Statistics.
+     * @throws IOException
+     */
+    public static LogStatistics read(DataInput in) throws IOException {
+        LogStatistics statistics = new LogStatistics();
+        int count = in.readInt();
+
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            QuantileSketch sketch = QuantileSketch.read(in);
+
+            try {
+                statistics.sketches.put(Metric.valueOf(name), sketch);
+            }
+            catch (IllegalArgumentException e) {
+                /* Metric of newer version */
+            }
+
+        }
+
+        return statistics;
+    }
+
+}
@@ -18,8 +18,8 @@
 
 package jp.co.ntt.oss.heapstats.container.log;
 
-import java.util.DoubleSummaryStatistics;
 import java.util.List;
+import jp.co.ntt.oss.heapstats.collection.QuantileSketch;
 
 /**
  * Summary data class.<br/>
@@ -58,6 +58,8 @@ public class SummaryData {
         
     }
     
+    private final LogStatistics statistics;
+
     private final double averageCPUUsage;
     
     private final double maxCPUUsage;
@@ -78,27 +80,74 @@ public class SummaryData {
      * Constructor of SummaryData.
      * @param logData Log data list to be summarized.
      * @param diffData Difference data list to be summarized.
+     * @deprecated Use {@link #SummaryData(LogSeries, DiffSeries)} to avoid
+     *             creating LogData and DiffData for each entry.
      */
+    @Deprecated
     public SummaryData(List<LogData> logData, List<DiffData> diffData){
-        DoubleSummaryStatistics cpuUsage = diffData.parallelStream()
-                                                   .mapToDouble(d -> d.getCpuTotalUsage())
-                                                   .summaryStatistics();
-        averageCPUUsage = cpuUsage.getAverage();
+        this(createStatistics(logData, diffData));
+    }
+    
+    /**
+     * Constructor of SummaryData.
+     * @param logData Log series to be summarized.
+     * @param diffData Difference series to be summarized.
+     */
+    public SummaryData(LogSeries logData, DiffSeries diffData){
+        this(new LogStatistics(logData, diffData));
+    }
+    
+    /**
+     * Constructor of SummaryData.
+     * Statistics which are merged from some logs (e.g. some hosts) can be
+     * summarized.
+     * @param statistics Statistics to be summarized.
+     */
+    public SummaryData(LogStatistics statistics){
+        this.statistics = statistics;
+        
+        QuantileSketch cpuUsage = statistics.getSketch(LogStatistics.Metric.CPU_TOTAL_USAGE);
+        /* Same as DoubleSummaryStatistics: 0 and -Infinity if no difference data */
+        averageCPUUsage = (cpuUsage.getCount() == 0) ? 0.0d : cpuUsage.getAverage();
         maxCPUUsage = cpuUsage.getMax();
         
-        DiffSummaryStatistics diffSummary = logData.parallelStream()
-                                                   .collect(DiffSummaryStatistics::new,
-                                                            DiffSummaryStatistics::accept,
-                                                            DiffSummaryStatistics::combine);
+        QuantileSketch vsz = statistics.getSketch(LogStatistics.Metric.JAVA_VSZ);
+        averageVSZ = vsz.getAverage(); // in MB
+        maxVSZ = getMax(vsz); // in MB
         
-        averageVSZ = diffSummary.getAverageVSZ() / 1024.0d / 1024.0d; // in MB
-        maxVSZ = diffSummary.getMaxVSZ() / 1024.0d / 1024.0d; // in MB
+        QuantileSketch rss = statistics.getSketch(LogStatistics.Metric.JAVA_RSS);
+        averageRSS = rss.getAverage(); // in MB
+        maxRSS = getMax(rss); // in MB
         
-        averageRSS = diffSummary.getAverageRSS() / 1024.0d / 1024.0d; // in MB
-        maxRSS = diffSummary.getMaxRSS() / 1024.0d / 1024.0d; // in MB
-
-        averageLiveThreads = diffSummary.getAverageLiveThreads();
-        maxLiveThreads = diffSummary.getMaxLiveThreads();
+        QuantileSketch liveThreads = statistics.getSketch(LogStatistics.Metric.JVM_LIVE_THREADS);
+        averageLiveThreads = liveThreads.getAverage();
+        maxLiveThreads = (long)getMax(liveThreads);
+    }
+    
+    /**
+     * Create statistics from lists of log data and difference data.
+     * @param logData Log data list to be summarized.
+     * @param diffData Difference data list to be summarized.
+     * @return Statistics of all metrics.
+     */
+    private static LogStatistics createStatistics(List<LogData> logData, List<DiffData> diffData){
+        LogSeries logSeries = new LogSeries(logData.size());
+        logData.forEach(logSeries::add);
+        
+        LogStatistics statistics = new LogStatistics();
+        statistics.addLogEntries(logSeries, 0, logSeries.size());
+        diffData.forEach(statistics::addDiffData);
+        
+        return statistics;
+    }
+    
+    /**
+     * Get maximum value of the sketch.
+     * @param sketch Sketch of metric.
+     * @return Maximum value, or 0 if the sketch is empty.
+     */
+    private static double getMax(QuantileSketch sketch){
+        return (sketch.getCount() == 0) ? 0.0d : sketch.getMax();
     }
 
     /**
@@ -166,84 +215,21 @@ public class SummaryData {
     }
     
     /**
-     * Statistics class for SnapSHot diff calculation.
+     * Get statistics of this summary.
+     * @return Statistics of all metrics
      */
-    private class DiffSummaryStatistics{
-        
-        private long count;
-        
-        private long vsz;
-        
-        private long maxVSZ;
-        
-        private long rss;
-        
-        private long maxRSS;
-        
-        private long liveThreads;
-        
-        private long maxLiveThreads;
-        
-        public DiffSummaryStatistics(){
-            count = 0;
-            vsz = 0;
-            maxVSZ = 0;
-            rss = 0;
-            maxRSS = 0;
-            liveThreads = 0;
-            maxLiveThreads = 0;
-        }
-        
-        public void accept(LogData logData){
-            count++;
-            
-            vsz += logData.getJavaVSSize();
-            maxVSZ = Math.max(maxVSZ, logData.getJavaVSSize());
-            
-            rss += logData.getJavaRSSize();
-            maxRSS = Math.max(maxRSS, logData.getJavaRSSize());
-            
-            liveThreads += logData.getJvmLiveThreads();
-            maxLiveThreads = Math.max(maxLiveThreads, logData.getJvmLiveThreads());
-        }
-        
-        public void combine(DiffSummaryStatistics other){
-            count += other.count;
-            
-            vsz += other.vsz;
-            maxVSZ = Math.max(maxVSZ, other.maxVSZ);
-            
-            rss += other.rss;
-            maxRSS = Math.max(maxRSS, other.maxRSS);
-            
-            liveThreads += other.liveThreads;
-            maxLiveThreads = Math.max(maxLiveThreads, other.maxLiveThreads);
-        }
-        
-        public double getAverageVSZ(){
-            return (double)vsz / (double)count;
-        }
-        
-        public long getMaxVSZ(){
-            return maxVSZ;
-        }
-        
-        public double getAverageRSS(){
-            return (double)rss / (double)count;
-        }
-        
-        public long getMaxRSS(){
-            return maxRSS;
-        }
-        
-        public double getAverageLiveThreads(){
-            return (double)liveThreads / (double)count;
-        }
-        
-        public long getMaxLiveThreads(){
-            return maxLiveThreads;
-        }
-        
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Get estimated percentile of the metric.
+     * @param metric Metric of resource log
+     * @param percentile Percentile in [0, 100] . e.g. 99.9 for p99.9
+     * @return Estimated value of the percentile
+     */
+    public double getPercentile(LogStatistics.Metric metric, double percentile) {
+        return statistics.getPercentile(metric, percentile);
     }
     
 }
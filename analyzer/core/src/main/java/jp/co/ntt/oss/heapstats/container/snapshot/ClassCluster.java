@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Strongly connected component of class reference graph.
+ * Each class in this cluster is reachable from all other classes in it,
+ * so the classes refer each other in cycle.
+ */
+public class ClassCluster {
+
+    private final List<ObjectData> objects;
+
+    private final long[] tags;
+
+    private final long count;
+
+    private final long totalSize;
+
+    /**
+     * Constructor of ClassCluster.
+     *
+     * @param objects Classes in this cluster.
+     */
+    public ClassCluster(List<ObjectData> objects) {
+        this.objects = Collections.unmodifiableList(objects);
+        this.tags = objects.stream()
+                           .mapToLong(ObjectData::getTag)
+                           .sorted()
+                           .toArray();
+        this.count = objects.stream()
+                            .mapToLong(ObjectData::getCount)
+                            .sum();
+        this.totalSize = objects.stream()
+                                .mapToLong(ObjectData::getTotalSize)
+                                .sum();
+    }
+
+    /**
+     * Get id of this cluster.
+     * Id is the smallest class tag in this cluster.
+     *
+     * @return Id of this cluster.
+     */
+    public long getId() {
+        return tags[0];
+    }
+
+    /**
+     * Get classes in this cluster.
+     *
+     * @return Classes in this cluster.
+     */
+    public List<ObjectData> getObjects() {
+        return objects;
+    }
+
+    /**
+     * Get class tags in this cluster.
+     *
+     * @return Sorted class tags.
+     */
+    public long[] getTags() {
+        return tags.clone();
+    }
+
+    /**
+     * Check whether this cluster contains the class.
+     *
+     * @param tag Class tag.
+     * @return true if this cluster contains the class.
+     */
+    public boolean contains(long tag) {
+        return Arrays.binarySearch(tags, tag) >= 0;
+    }
+
+    /**
+     * Get number of classes in this cluster.
+     *
+     * @return Number of classes.
+     */
+    public int size() {
+        return tags.length;
+    }
+
+    /**
+     * Get total number of instances in this cluster.
+     *
+     * @return Number of instances.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get total size of instances in this cluster.
+     *
+     * @return Total size.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+}
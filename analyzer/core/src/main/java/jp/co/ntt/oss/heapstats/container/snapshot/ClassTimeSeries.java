@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import jp.co.ntt.oss.heapstats.collection.LongIntHashMap;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
+import jp.co.ntt.oss.heapstats.parser.handler.TimeSeriesHandler;
+
+/**
+ * Transposed store of SnapShots.
+ * Instance count and total size of each class are stored as time series
+ * which is indexed by SnapShot, so history of the class can be read
+ * sequentially. Values of each class are stored in its own array, which is
+ * allocated when the class is found in a SnapShot at first. So number of
+ * classes and number of SnapShots are not limited by size of one array.
+ */
+public class ClassTimeSeries {
+
+    private final int numSnapShots;
+
+    private int size;
+
+    private long[] tags;
+
+    private int[] nameIds;
+
+    private boolean[] selected;
+
+    /** History of number of instances of each slot. null means all 0. */
+    private long[][] counts;
+
+    /** History of total size of each slot. null means all 0. */
+    private long[][] totalSizes;
+
+    private final LongIntHashMap index;
+
+    private final SymbolTable symbolTable;
+
+    /**
+     * Constructor of ClassTimeSeries.
+     *
+     * @param numSnapShots Number of SnapShots.
+     * @param expectedSize Expected number of classes.
+     */
+    public ClassTimeSeries(int numSnapShots, int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+
+        this.numSnapShots = numSnapShots;
+        size = 0;
+        tags = new long[capacity];
+        nameIds = new int[capacity];
+        selected = new boolean[capacity];
+        counts = new long[capacity][];
+        totalSizes = new long[capacity][];
+        index = new LongIntHashMap(capacity);
+        symbolTable = SymbolTable.getInstance();
+    }
+
+    /**
+     * Build time series from SnapShots.
+     * SnapShots are read in one streaming pass. Cached SnapShot is read from
+     * {@link SnapShotCache}, and others are parsed without building whole
+     * SnapShot.
+     *
+     * @param snapShots SnapShots to build.
+     * @param needJavaStyle true if class name should be Java-Style.
+     * @param filter Class filter. Class is selected if it is accepted in
+     *                any SnapShot.
+     * @return Time series of classes.
+     */
+    public static ClassTimeSeries build(List<SnapShotHeader> snapShots, boolean needJavaStyle, Optional<Predicate<? super ObjectData>> filter) {
+        int expectedSize = snapShots.stream()
+                                    .mapToInt(SnapShotHeader::getExpectedEntries)
+                                    .max()
+                                    .orElse(0);
+        ClassTimeSeries result = new ClassTimeSeries(snapShots.size(), expectedSize);
+
+        for (int i = 0; i < snapShots.size(); i++) {
+            SnapShotHeader header = snapShots.get(i);
+
+            if (header.isSnapShotCached(needJavaStyle)) {
+                SnapShotData data = header.getSnapShotData(needJavaStyle);
+
+                for (int row = 0; row < data.size(); row++) {
+                    int r = row;
+                    boolean accepted = filter.map(f -> f.test(data.getObjectData(r))).orElse(true);
+                    result.put(i, data.getTag(row), data.getNameId(row, result.symbolTable), data.getCount(row), data.getTotalSize(row), accepted);
+                }
+
+            }
+            else {
+                try {
+                    new SnapShotParser(needJavaStyle).parseSingle(header, new TimeSeriesHandler(result, i, filter.orElse(null)));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+        }
+
+        return result;
+    }
+
+    /**
+     * Store values of the class in the SnapShot.
+     *
+     * @param snapShot Index of SnapShot.
+     * @param tag Class tag.
+     * @param nameId Symbol id of class name.
+     * @param count Number of instances.
+     * @param totalSize Total size of instances.
+     * @param accepted true if the class is accepted by filter.
+     */
+    public void put(int snapShot, long tag, int nameId, long count, long totalSize, boolean accepted) {
+        int slot = register(tag, nameId, accepted);
+
+        if (counts[slot] == null) {
+            counts[slot] = new long[numSnapShots];
+            totalSizes[slot] = new long[numSnapShots];
+        }
+
+        counts[slot][snapShot] = count;
+        totalSizes[slot][snapShot] = totalSize;
+    }
+
+    /**
+     * Register the class.
+     * If the class is already registered, this method updates selected flag
+     * only.
+     *
+     * @param tag Class tag.
+     * @param nameId Symbol id of class name.
+     * @param accepted true if the class is accepted by filter.
+     * @return Slot of the class.
+     */
+    public int register(long tag, int nameId, boolean accepted) {
+        int slot = index.getOrDefault(tag, -1);
+
+        if (slot == -1) {
+            if (size == tags.length) {
+                int capacity = size * 2;
+                tags = Arrays.copyOf(tags, capacity);
+                nameIds = Arrays.copyOf(nameIds, capacity);
+                selected = Arrays.copyOf(selected, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                totalSizes = Arrays.copyOf(totalSizes, capacity);
+            }
+
+            slot = size++;
+            tags[slot] = tag;
+            nameIds[slot] = nameId;
+            index.put(tag, slot);
+        }
+
+        selected[slot] |= accepted;
+        return slot;
+    }
+
+    /**
+     * Get number of SnapShots.
+     *
+     * @return Number of SnapShots.
+     */
+    public int getNumSnapShots() {
+        return numSnapShots;
+    }
+
+    /**
+     * Get number of classes.
+     *
+     * @return Number of classes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get slot of the class.
+     *
+     * @param tag Class tag.
+     * @return Slot of the class, or -1 if the class is not found.
+     */
+    public int indexOf(long tag) {
+        return index.getOrDefault(tag, -1);
+    }
+
+    /**
+     * Get class tag.
+     *
+     * @param slot Slot of the class.
+     * @return Class tag.
+     */
+    public long getTag(int slot) {
+        return tags[slot];
+    }
+
+    /**
+     * Get symbol id of class name.
+     *
+     * @param slot Slot of the class.
+     * @return Symbol id of class name.
+     */
+    public int getNameId(int slot) {
+        return nameIds[slot];
+    }
+
+    /**
+     * Get symbol id of class name in the symbol table.
+     * If the table is not the table of this series, the class name is
+     * registered to the table.
+     *
+     * @param slot Slot of the class.
+     * @param table Symbol table.
+     * @return Symbol id in the table.
+     */
+    public int getNameId(int slot, SymbolTable table) {
+        return (table == symbolTable) ? nameIds[slot] : table.intern(tags[slot], getName(slot)).getId();
+    }
+
+    /**
+     * Get symbol table which name ids are registered to.
+     *
+     * @return Symbol table.
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Get class name.
+     * Class name is the name which is found at first.
+     *
+     * @param slot Slot of the class.
+     * @return Class name.
+     */
+    public String getName(int slot) {
+        return symbolTable.getSymbol(nameIds[slot]).getName();
+    }
+
+    /**
+     * Check whether the class is accepted by filter in any SnapShot.
+     *
+     * @param slot Slot of the class.
+     * @return true if the class is selected.
+     */
+    public boolean isSelected(int slot) {
+        return selected[slot];
+    }
+
+    /**
+     * Get number of instances.
+     *
+     * @param slot Slot of the class.
+     * @param snapShot Index of SnapShot.
+     * @return Number of instances. 0 if the class does not exist in the SnapShot.
+     */
+    public long getCount(int slot, int snapShot) {
+        return (counts[slot] == null) ? 0 : counts[slot][snapShot];
+    }
+
+    /**
+     * Get total size of instances.
+     *
+     * @param slot Slot of the class.
+     * @param snapShot Index of SnapShot.
+     * @return Total size. 0 if the class does not exist in the SnapShot.
+     */
+    public long getTotalSize(int slot, int snapShot) {
+        return (totalSizes[slot] == null) ? 0 : totalSizes[slot][snapShot];
+    }
+
+    /**
+     * Get history of number of instances.
+     *
+     * @param slot Slot of the class.
+     * @return Number of instances which is indexed by SnapShot.
+     */
+    public long[] getCounts(int slot) {
+        return (counts[slot] == null) ? new long[numSnapShots] : counts[slot].clone();
+    }
+
+    /**
+     * Get history of total size.
+     *
+     * @param slot Slot of the class.
+     * @return Total size which is indexed by SnapShot.
+     */
+    public long[] getTotalSizes(int slot) {
+        return (totalSizes[slot] == null) ? new long[numSnapShots] : totalSizes[slot].clone();
+    }
+
+}
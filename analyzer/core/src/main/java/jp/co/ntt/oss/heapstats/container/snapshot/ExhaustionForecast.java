@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Forecast of exhaustion of memory area.
+ * This class holds linear trend of usage after full GC, and estimated time
+ * when the usage reaches capacity. Estimation has 95% confidence band which
+ * is based on standard error of the slope.
+ */
+public class ExhaustionForecast {
+
+    private final int numPoints;
+
+    private final LocalDateTime lastDate;
+
+    private final long usage;
+
+    private final long capacity;
+
+    private final double slope;
+
+    private final double slopeError;
+
+    private final LocalDateTime estimated;
+
+    private final LocalDateTime earliest;
+
+    private final LocalDateTime latest;
+
+    /**
+     * Constructor of ExhaustionForecast.
+     *
+     * @param numPoints Number of points which are used to fit trend.
+     * @param lastDate Date of the last point.
+     * @param usage Fitted usage at the last point.
+     * @param capacity Capacity of the memory area at the last point.
+     * @param slope Slope of usage in bytes per second.
+     * @param slopeError Standard error of the slope.
+     * @param estimated Estimated time of exhaustion, or null if usage does
+     *                   not grow.
+     * @param earliest Earliest time of exhaustion in confidence band, or
+     *                  null if usage does not grow.
+     * @param latest Latest time of exhaustion in confidence band, or null
+     *                if usage might not grow.
+     */
+    public ExhaustionForecast(int numPoints, LocalDateTime lastDate, long usage, long capacity, double slope, double slopeError,
+                              LocalDateTime estimated, LocalDateTime earliest, LocalDateTime latest) {
+        this.numPoints = numPoints;
+        this.lastDate = lastDate;
+        this.usage = usage;
+        this.capacity = capacity;
+        this.slope = slope;
+        this.slopeError = slopeError;
+        this.estimated = estimated;
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    /**
+     * Get number of points which are used to fit trend.
+     *
+     * @return Number of points.
+     */
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    /**
+     * Get date of the last point.
+     *
+     * @return Date of the last point.
+     */
+    public LocalDateTime getLastDate() {
+        return lastDate;
+    }
+
+    /**
+     * Get fitted usage at the last point.
+     *
+     * @return Usage in bytes.
+     */
+    public long getUsage() {
+        return usage;
+    }
+
+    /**
+     * Get capacity of the memory area.
+     *
+     * @return Capacity in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get slope of usage.
+     *
+     * @return Slope in bytes per second.
+     */
+    public double getSlope() {
+        return slope;
+    }
+
+    /**
+     * Get standard error of the slope.
+     *
+     * @return Standard error in bytes per second.
+     */
+    public double getSlopeError() {
+        return slopeError;
+    }
+
+    /**
+     * Get estimated time of exhaustion.
+     *
+     * @return Estimated time, or empty if usage does not grow.
+     */
+    public Optional<LocalDateTime> getEstimated() {
+        return Optional.ofNullable(estimated);
+    }
+
+    /**
+     * Get earliest time of exhaustion in confidence band.
+     *
+     * @return Earliest time, or empty if usage does not grow.
+     */
+    public Optional<LocalDateTime> getEarliest() {
+        return Optional.ofNullable(earliest);
+    }
+
+    /**
+     * Get latest time of exhaustion in confidence band.
+     *
+     * @return Latest time, or empty if usage might not grow.
+     */
+    public Optional<LocalDateTime> getLatest() {
+        return Optional.ofNullable(latest);
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+/**
+ * Class which is suspected to leak.
+ * This class holds growth trend of the class over SnapShots.
+ */
+public class LeakSuspect {
+
+    private final long tag;
+
+    private final String name;
+
+    private final String loaderName;
+
+    private final int numSamples;
+
+    private final double slope;
+
+    private final double monotonicRatio;
+
+    private final int fullGCSamples;
+
+    private final long growthAfterFullGC;
+
+    private final long count;
+
+    private final long totalSize;
+
+    private final long score;
+
+    /**
+     * Constructor of LeakSuspect.
+     *
+     * @param tag Class tag.
+     * @param name Class name.
+     * @param loaderName Name of class loader.
+     * @param numSamples Number of SnapShots which contain the class.
+     * @param slope Least-squares slope of total size in bytes per second.
+     * @param monotonicRatio Ratio of growing steps in consecutive SnapShots.
+     * @param fullGCSamples Number of SnapShots which are taken after full GC.
+     * @param growthAfterFullGC Growth of total size between first and last
+     *                           SnapShots which are taken after full GC.
+     * @param count Number of instances in the last SnapShot.
+     * @param totalSize Total size of instances in the last SnapShot.
+     * @param score Score to rank suspects.
+     */
+    public LeakSuspect(long tag, String name, String loaderName, int numSamples, double slope, double monotonicRatio,
+                       int fullGCSamples, long growthAfterFullGC, long count, long totalSize, long score) {
+        this.tag = tag;
+        this.name = name;
+        this.loaderName = loaderName;
+        this.numSamples = numSamples;
+        this.slope = slope;
+        this.monotonicRatio = monotonicRatio;
+        this.fullGCSamples = fullGCSamples;
+        this.growthAfterFullGC = growthAfterFullGC;
+        this.count = count;
+        this.totalSize = totalSize;
+        this.score = score;
+    }
+
+    /**
+     * Get class tag.
+     *
+     * @return Class tag.
+     */
+    public long getTag() {
+        return tag;
+    }
+
+    /**
+     * Get class name.
+     *
+     * @return Class name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get name of class loader.
+     *
+     * @return Name of class loader.
+     */
+    public String getLoaderName() {
+        return loaderName;
+    }
+
+    /**
+     * Get number of SnapShots which contain the class.
+     *
+     * @return Number of samples.
+     */
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    /**
+     * Get least-squares slope of total size.
+     *
+     * @return Slope in bytes per second.
+     */
+    public double getSlope() {
+        return slope;
+    }
+
+    /**
+     * Get ratio of growing steps.
+     * Step is a pair of consecutive SnapShots which contain the class.
+     *
+     * @return Ratio between 0.0 and 1.0 .
+     */
+    public double getMonotonicRatio() {
+        return monotonicRatio;
+    }
+
+    /**
+     * Get number of SnapShots which are taken after full GC.
+     * Growth after full GC is available if this value is 2 or more.
+     *
+     * @return Number of SnapShots after full GC.
+     */
+    public int getFullGCSamples() {
+        return fullGCSamples;
+    }
+
+    /**
+     * Get growth of total size after full GC.
+     * This value is the difference between first and last SnapShots which
+     * are taken after full GC. Garbage is collected at these SnapShots, so
+     * growth of this value means live objects are increasing.
+     *
+     * @return Growth in bytes.
+     */
+    public long getGrowthAfterFullGC() {
+        return growthAfterFullGC;
+    }
+
+    /**
+     * Get number of instances in the last SnapShot.
+     *
+     * @return Number of instances.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get total size of instances in the last SnapShot.
+     *
+     * @return Total size in bytes.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Get score of this suspect.
+     * Higher score means stronger suspect.
+     *
+     * @return Score.
+     */
+    public long getScore() {
+        return score;
+    }
+
+}
@@ -216,6 +216,7 @@ public class ObjectData implements Serializable, Cloneable {
     
     /**
      * Setter method of class loader name.
+     * Class loader name is shared via {@link SymbolTable}.
      * 
      * @param snapShotData SnapShot data map. Key is object tag. Value is ObjectData.
      */
@@ -231,7 +232,7 @@ public class ObjectData implements Serializable, Cloneable {
             String loaderClass =  Optional.ofNullable(snapShotData.get(classLoaderTag))
                                           .map(o -> o.name)
                                           .orElse("<Unknown>");
-            loaderName = String.format("%s (0x%x)", loaderClass, classLoader);
+            loaderName = SymbolTable.getInstance().getLoaderName(loaderClass, classLoader);
         }
         
     }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Multi-hop reference path in class reference graph.
+ * First element is the start class, and following elements are parents
+ * (referrers) of previous element. Instances and total size of parents are
+ * values of the reference to previous element.
+ */
+public class ReferencePath {
+
+    private final List<ObjectData> objects;
+
+    private final long weight;
+
+    /**
+     * Constructor of ReferencePath.
+     *
+     * @param objects Classes in this path.
+     * @param weight Weight of this path.
+     */
+    public ReferencePath(List<ObjectData> objects, long weight) {
+        this.objects = Collections.unmodifiableList(objects);
+        this.weight = weight;
+    }
+
+    /**
+     * Get classes in this path.
+     *
+     * @return Classes from start class to its owner.
+     */
+    public List<ObjectData> getObjects() {
+        return objects;
+    }
+
+    /**
+     * Get weight of this path.
+     * Weight is the smallest reference (instances or total size) in this
+     * path.
+     *
+     * @return Weight of this path.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get owner of the start class.
+     *
+     * @return Last class of this path.
+     */
+    public ObjectData getOwner() {
+        return objects.get(objects.size() - 1);
+    }
+
+}
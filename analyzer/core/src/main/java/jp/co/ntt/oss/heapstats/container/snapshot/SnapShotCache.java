@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared LRU cache of SnapShot data.
+ * SnapShot is cached for each style of class name (Java-Style or JNI-style).
+ * Both styles of the same SnapShot are held in one entry because Java-Style
+ * SnapShot may share columns with JNI-style SnapShot. Total size of cached
+ * entries is limited by byte budget. Least recently used entry is evicted
+ * when the budget is exceeded, and entry which is larger than the budget is
+ * not cached. Statistics of this cache are logged when it is cleared.
+ */
+public class SnapShotCache {
+
+    /** Default budget is 1/4 of max Java heap. */
+    private static final SnapShotCache INSTANCE = new SnapShotCache(Runtime.getRuntime().maxMemory() / 4);
+
+    private final LinkedHashMap<Key, Entry> cache;
+
+    private long maxBytes;
+
+    private long currentBytes;
+
+    private int numSnapShots;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    private long rejectionCount;
+
+    /**
+     * Key of cache.
+     * SnapShotHeader is compared by identity because equals() of
+     * SnapShotHeader is based on SnapShot date.
+     */
+    private static class Key {
+
+        private final SnapShotHeader header;
+
+        /**
+         * Constructor of Key.
+         *
+         * @param header SnapShot header.
+         */
+        public Key(SnapShotHeader header) {
+            this.header = header;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(header);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Key) && (((Key) obj).header == header);
+        }
+
+    }
+
+    /**
+     * Entry of cache.
+     * This entry holds both styles of SnapShot in the header.
+     */
+    private static class Entry {
+
+        private SnapShotData jniStyle;
+
+        private SnapShotData javaStyle;
+
+        private long estimatedSize;
+
+        /**
+         * Get SnapShot in this entry.
+         *
+         * @param isJavaStyle true if class name should be Java-Style.
+         * @return SnapShot, or null if it is not held.
+         */
+        public SnapShotData get(boolean isJavaStyle) {
+            return isJavaStyle ? javaStyle : jniStyle;
+        }
+
+        /**
+         * Set SnapShot to this entry, and update estimated size.
+         *
+         * @param isJavaStyle true if class name of data is Java-Style.
+         * @param data SnapShot data.
+         */
+        public void set(boolean isJavaStyle, SnapShotData data) {
+
+            if (isJavaStyle) {
+                javaStyle = data;
+            }
+            else {
+                jniStyle = data;
+            }
+
+            estimatedSize = estimate(jniStyle) + estimate(javaStyle);
+        }
+
+        /**
+         * Get number of SnapShots in this entry.
+         *
+         * @return Number of SnapShots.
+         */
+        public int count() {
+            return ((jniStyle == null) ? 0 : 1) + ((javaStyle == null) ? 0 : 1);
+        }
+
+        /**
+         * Estimate size of the SnapShot in this entry.
+         * Source of the view is counted if it is not held in this entry.
+         *
+         * @param data SnapShot data.
+         * @return Estimated size in bytes.
+         */
+        private long estimate(SnapShotData data) {
+
+            if (data == null) {
+                return 0;
+            }
+
+            SnapShotData source = data.getSource();
+            boolean hasSource = (source == null) || (source == jniStyle) || (source == javaStyle);
+            return data.getEstimatedSize() + (hasSource ? 0 : source.getEstimatedSize());
+        }
+
+    }
+
+    /**
+     * Constructor of SnapShotCache.
+     *
+     * @param maxBytes Budget of this cache in bytes.
+     */
+    public SnapShotCache(long maxBytes) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+        this.currentBytes = 0;
+        this.numSnapShots = 0;
+        this.hitCount = 0;
+        this.missCount = 0;
+        this.evictionCount = 0;
+        this.rejectionCount = 0;
+    }
+
+    /**
+     * Get cache which is shared in this process.
+     *
+     * @return Shared SnapShotCache.
+     */
+    public static SnapShotCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Evict least recently used entries until total size fits the budget.
+     */
+    private void evict() {
+        Iterator<Entry> itr = cache.values().iterator();
+
+        while ((currentBytes > maxBytes) && itr.hasNext()) {
+            Entry entry = itr.next();
+            currentBytes -= entry.estimatedSize;
+            numSnapShots -= entry.count();
+            itr.remove();
+            evictionCount++;
+        }
+
+    }
+
+    /**
+     * Get SnapShot from this cache.
+     *
+     * @param header SnapShot header.
+     * @param javaStyle true if class name should be Java-Style.
+     * @return Cached SnapShot, or null if it is not cached.
+     */
+    public synchronized SnapShotData get(SnapShotHeader header, boolean javaStyle) {
+        Entry entry = cache.get(new Key(header));
+        SnapShotData result = (entry == null) ? null : entry.get(javaStyle);
+
+        if (result == null) {
+            missCount++;
+        }
+        else {
+            hitCount++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Get SnapShot from this cache without affecting hit/miss count and LRU
+     * order.
+     *
+     * @param header SnapShot header.
+     * @param javaStyle true if class name should be Java-Style.
+     * @return Cached SnapShot, or null if it is not cached.
+     */
+    public synchronized SnapShotData peek(SnapShotHeader header, boolean javaStyle) {
+        Entry entry = cache.get(new Key(header));
+        return (entry == null) ? null : entry.get(javaStyle);
+    }
+
+    /**
+     * Check whether the SnapShot is cached.
+     * This method does not affect hit/miss count and LRU order.
+     *
+     * @param header SnapShot header.
+     * @param javaStyle true if class name should be Java-Style.
+     * @return true if the SnapShot is cached.
+     */
+    public synchronized boolean contains(SnapShotHeader header, boolean javaStyle) {
+        return peek(header, javaStyle) != null;
+    }
+
+    /**
+     * Get SnapShot from this cache.
+     * If the SnapShot is not cached, it is loaded by loader and cached.
+     * Loader is called without lock of this cache.
+     *
+     * @param header SnapShot header.
+     * @param javaStyle true if class name should be Java-Style.
+     * @param loader Function to load SnapShot.
+     * @return SnapShot.
+     */
+    public SnapShotData get(SnapShotHeader header, boolean javaStyle, Function<? super SnapShotHeader, SnapShotData> loader) {
+        SnapShotData result = get(header, javaStyle);
+
+        if (result == null) {
+            result = loader.apply(header);
+            put(header, javaStyle, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Store SnapShot to this cache.
+     *
+     * @param header SnapShot header.
+     * @param javaStyle true if class name of data is Java-Style.
+     * @param data SnapShot data.
+     */
+    public synchronized void put(SnapShotHeader header, boolean javaStyle, SnapShotData data) {
+        Entry entry = cache.computeIfAbsent(new Key(header), k -> new Entry());
+
+        currentBytes -= entry.estimatedSize;
+        numSnapShots -= entry.count();
+        entry.set(javaStyle, data);
+        currentBytes += entry.estimatedSize;
+        numSnapShots += entry.count();
+
+        if (entry.estimatedSize > maxBytes) {
+            /* Other entries should not be evicted for the entry which never fits. */
+            remove(header);
+            rejectionCount++;
+            Logger.getLogger(SnapShotCache.class.getName()).log(Level.FINE, "SnapShot at {0} is not cached: {1} bytes exceeds budget.",
+                                                                new Object[]{header.getSnapShotDate(), entry.estimatedSize});
+            return;
+        }
+
+        evict();
+    }
+
+    /**
+     * Remove SnapShots of the header from this cache.
+     * Both of Java-Style and JNI-style SnapShots are removed.
+     *
+     * @param header SnapShot header.
+     */
+    public synchronized void remove(SnapShotHeader header) {
+        Entry prev = cache.remove(new Key(header));
+
+        if (prev != null) {
+            currentBytes -= prev.estimatedSize;
+            numSnapShots -= prev.count();
+        }
+
+    }
+
+    /**
+     * Remove all SnapShots from this cache.
+     */
+    public synchronized void clear() {
+
+        if ((hitCount + missCount) > 0) {
+            Logger.getLogger(SnapShotCache.class.getName()).log(Level.INFO, "{0}", this);
+        }
+
+        cache.clear();
+        currentBytes = 0;
+        numSnapShots = 0;
+    }
+
+    /**
+     * Get budget of this cache.
+     *
+     * @return Budget in bytes.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Set budget of this cache.
+     * SnapShots are evicted if current size exceeds new budget.
+     *
+     * @param maxBytes Budget in bytes.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Get estimated size of cached SnapShots.
+     *
+     * @return Size in bytes.
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Get number of cached SnapShots.
+     *
+     * @return Number of SnapShots.
+     */
+    public synchronized int size() {
+        return numSnapShots;
+    }
+
+    /**
+     * Get number of cache hits.
+     *
+     * @return Number of hits.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get number of cache misses.
+     *
+     * @return Number of misses.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get number of evicted entries.
+     *
+     * @return Number of evictions.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get number of SnapShots which are not cached because they are larger
+     * than the budget.
+     *
+     * @return Number of rejections.
+     */
+    public synchronized long getRejectionCount() {
+        return rejectionCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("SnapShotCache: %d entries, %d SnapShots, %d/%d bytes, hit %d, miss %d, evict %d, reject %d",
+                             cache.size(), numSnapShots, currentBytes, maxBytes, hitCount, missCount, evictionCount, rejectionCount);
+    }
+
+}
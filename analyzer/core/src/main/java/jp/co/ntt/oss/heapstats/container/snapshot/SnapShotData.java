@@ -0,0 +1,783 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.lang.ref.SoftReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import jp.co.ntt.oss.heapstats.collection.LongIntHashMap;
+
+/**
+ * Columnar container of one SnapShot.
+ * Each class entry is stored as a row of primitive arrays, and class name
+ * is stored as id of {@link SymbolTable}. Child references are stored in
+ * CSR (Compressed Sparse Row) form: children of row r are stored in
+ * [getChildStart(r), getChildEnd(r)) of child arrays.
+ * Reverse references (child to parents) are also stored in CSR form. They
+ * are built at the first access.
+ */
+public class SnapShotData {
+
+    private int size;
+
+    private long[] tags;
+
+    private int[] nameIds;
+
+    private long[] classLoaders;
+
+    private long[] classLoaderTags;
+
+    private long[] counts;
+
+    private long[] totalSizes;
+
+    /** Start offset of children of each row. Length is size + 1 . */
+    private int[] childOffsets;
+
+    private int numChildren;
+
+    private long[] childTags;
+
+    private long[] childInstances;
+
+    private long[] childTotalSizes;
+
+    private final LongIntHashMap index;
+
+    private final SymbolTable symbolTable;
+
+    /** SnapShot which owns columns of this view, or null. */
+    private final SnapShotData source;
+
+    private volatile ParentIndex parentIndex;
+
+    private volatile MapView mapView;
+
+    /**
+     * Reverse references of child references.
+     * Parents of row r are stored in [offsets[r], offsets[r + 1]) of
+     * rows and children.
+     */
+    private static class ParentIndex {
+
+        private final int[] offsets;
+
+        /** Row of parent. */
+        private final int[] rows;
+
+        /** Position of the reference in child arrays. */
+        private final int[] children;
+
+        /**
+         * Constructor of ParentIndex.
+         *
+         * @param offsets Start offset of parents of each row.
+         * @param rows Rows of parents.
+         * @param children Positions of references in child arrays.
+         */
+        public ParentIndex(int[] offsets, int[] rows, int[] children) {
+            this.offsets = offsets;
+            this.rows = rows;
+            this.children = children;
+        }
+
+    }
+
+    /**
+     * Constructor of SnapShotData.
+     * Class names are resolved by current {@link SymbolTable}.
+     *
+     * @param expectedSize Expected number of class entries.
+     */
+    public SnapShotData(int expectedSize) {
+        this(expectedSize, SymbolTable.getInstance());
+    }
+
+    /**
+     * Constructor of SnapShotData.
+     *
+     * @param expectedSize Expected number of class entries.
+     * @param symbolTable Symbol table which name ids are registered to.
+     */
+    public SnapShotData(int expectedSize, SymbolTable symbolTable) {
+        int capacity = Math.max(expectedSize, 16);
+
+        size = 0;
+        tags = new long[capacity];
+        nameIds = new int[capacity];
+        classLoaders = new long[capacity];
+        classLoaderTags = new long[capacity];
+        counts = new long[capacity];
+        totalSizes = new long[capacity];
+        childOffsets = new int[capacity + 1];
+        numChildren = 0;
+        childTags = new long[capacity];
+        childInstances = new long[capacity];
+        childTotalSizes = new long[capacity];
+        index = new LongIntHashMap(capacity);
+        this.symbolTable = symbolTable;
+        source = null;
+    }
+
+    /**
+     * Constructor for the view which has other class names.
+     * All columns except class names are shared with source.
+     *
+     * @param src Source SnapShot.
+     * @param nameIds Symbol ids of class names.
+     */
+    private SnapShotData(SnapShotData src, int[] nameIds) {
+        size = src.size;
+        tags = src.tags;
+        this.nameIds = nameIds;
+        classLoaders = src.classLoaders;
+        classLoaderTags = src.classLoaderTags;
+        counts = src.counts;
+        totalSizes = src.totalSizes;
+        childOffsets = src.childOffsets;
+        numChildren = src.numChildren;
+        childTags = src.childTags;
+        childInstances = src.childInstances;
+        childTotalSizes = src.childTotalSizes;
+        index = src.index;
+        symbolTable = src.symbolTable;
+        source = (src.source == null) ? src : src.source;
+        parentIndex = src.parentIndex;
+    }
+
+    /**
+     * Create Java-Style view of this SnapShot.
+     * This SnapShot must have JNI-style class names. Each distinct class name
+     * is converted only once via {@link SymbolTable}.
+     *
+     * @return SnapShot which has Java-Style class names.
+     */
+    public SnapShotData toJavaStyle() {
+        int[] javaStyleIds = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            javaStyleIds[i] = symbolTable.getJavaStyleSymbol(nameIds[i]).getId();
+        }
+
+        return new SnapShotData(this, javaStyleIds);
+    }
+
+    /**
+     * Add class entry.
+     *
+     * @param tag Class tag.
+     * @param nameId Symbol id of class name.
+     * @param classLoader Id of class loader.
+     * @param classLoaderTag Class tag of class loader.
+     * @param count Number of instances.
+     * @param totalSize Total size of instances.
+     */
+    public void add(long tag, int nameId, long classLoader, long classLoaderTag, long count, long totalSize) {
+
+        if (size == tags.length) {
+            int capacity = size * 2;
+            tags = Arrays.copyOf(tags, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            classLoaders = Arrays.copyOf(classLoaders, capacity);
+            classLoaderTags = Arrays.copyOf(classLoaderTags, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            totalSizes = Arrays.copyOf(totalSizes, capacity);
+            childOffsets = Arrays.copyOf(childOffsets, capacity + 1);
+        }
+
+        tags[size] = tag;
+        nameIds[size] = nameId;
+        classLoaders[size] = classLoader;
+        classLoaderTags[size] = classLoaderTag;
+        counts[size] = count;
+        totalSizes[size] = totalSize;
+        index.put(tag, size);
+
+        size++;
+        childOffsets[size] = numChildren;
+    }
+
+    /**
+     * Add child reference to the last class entry.
+     *
+     * @param tag Class tag of child.
+     * @param instances Number of child instances.
+     * @param totalSize Total size of child instances.
+     */
+    public void addChild(long tag, long instances, long totalSize) {
+
+        if (numChildren == childTags.length) {
+            int capacity = numChildren * 2;
+            childTags = Arrays.copyOf(childTags, capacity);
+            childInstances = Arrays.copyOf(childInstances, capacity);
+            childTotalSizes = Arrays.copyOf(childTotalSizes, capacity);
+        }
+
+        childTags[numChildren] = tag;
+        childInstances[numChildren] = instances;
+        childTotalSizes[numChildren] = totalSize;
+
+        numChildren++;
+        childOffsets[size] = numChildren;
+    }
+
+    /**
+     * Release unused area of arrays.
+     * This method should be called after all entries are added.
+     */
+    public void trim() {
+        tags = Arrays.copyOf(tags, size);
+        nameIds = Arrays.copyOf(nameIds, size);
+        classLoaders = Arrays.copyOf(classLoaders, size);
+        classLoaderTags = Arrays.copyOf(classLoaderTags, size);
+        counts = Arrays.copyOf(counts, size);
+        totalSizes = Arrays.copyOf(totalSizes, size);
+        childOffsets = Arrays.copyOf(childOffsets, size + 1);
+        childTags = Arrays.copyOf(childTags, numChildren);
+        childInstances = Arrays.copyOf(childInstances, numChildren);
+        childTotalSizes = Arrays.copyOf(childTotalSizes, numChildren);
+    }
+
+    /**
+     * Get number of class entries.
+     *
+     * @return Number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get SnapShot which owns columns of this view.
+     *
+     * @return Source SnapShot, or null if this SnapShot is not a view.
+     * @see #toJavaStyle()
+     */
+    public SnapShotData getSource() {
+        return source;
+    }
+
+    /**
+     * Get estimated memory footprint of this SnapShot.
+     * Reverse references are not counted because they are built lazily,
+     * and this value must not be changed while this SnapShot is cached.
+     * Columns which are shared with source SnapShot are not counted for
+     * the view, so only its class names are counted.
+     *
+     * @return Estimated size in bytes.
+     */
+    public long getEstimatedSize() {
+
+        if (source != null) {
+            /* class names (4 bytes), header of the array and this object */
+            return (long)nameIds.length * 4 + 16 * 2;
+        }
+
+        /* 6 columns (8 bytes * 5 + 4 bytes) and offset of children */
+        long rowBytes = (long)tags.length * (8 * 5 + 4) + (long)childOffsets.length * 4;
+        /* 3 columns (8 bytes * 3) */
+        long childBytes = (long)childTags.length * 8 * 3;
+        /* key (8 bytes), value (4 bytes) and used flag (1 byte) */
+        long indexBytes = (long)index.getCapacity() * (8 + 4 + 1);
+        /* headers of 14 arrays and 3 objects */
+        long overhead = 16 * 14 + 16 * 3;
+
+        return rowBytes + childBytes + indexBytes + overhead;
+    }
+
+    /**
+     * Get row of the class.
+     *
+     * @param tag Class tag.
+     * @return Row of the class, or -1 if this SnapShot does not have it.
+     */
+    public int indexOf(long tag) {
+        return index.getOrDefault(tag, -1);
+    }
+
+    /**
+     * Get class tag.
+     *
+     * @param row Row of the class.
+     * @return Class tag.
+     */
+    public long getTag(int row) {
+        return tags[row];
+    }
+
+    /**
+     * Get symbol id of class name.
+     *
+     * @param row Row of the class.
+     * @return Symbol id.
+     */
+    public int getNameId(int row) {
+        return nameIds[row];
+    }
+
+    /**
+     * Get symbol id of class name in the symbol table.
+     * If the table is not the table of this SnapShot, the class name is
+     * registered to the table.
+     *
+     * @param row Row of the class.
+     * @param table Symbol table.
+     * @return Symbol id in the table.
+     */
+    public int getNameId(int row, SymbolTable table) {
+        return (table == symbolTable) ? nameIds[row] : table.intern(tags[row], getName(row)).getId();
+    }
+
+    /**
+     * Get symbol table which name ids are registered to.
+     *
+     * @return Symbol table.
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Get class name.
+     *
+     * @param row Row of the class.
+     * @return Class name.
+     */
+    public String getName(int row) {
+        return symbolTable.getSymbol(nameIds[row]).getName();
+    }
+
+    /**
+     * Get id of class loader.
+     *
+     * @param row Row of the class.
+     * @return Id of class loader.
+     */
+    public long getClassLoader(int row) {
+        return classLoaders[row];
+    }
+
+    /**
+     * Get class tag of class loader.
+     *
+     * @param row Row of the class.
+     * @return Class tag of class loader.
+     */
+    public long getClassLoaderTag(int row) {
+        return classLoaderTags[row];
+    }
+
+    /**
+     * Get name of class loader.
+     *
+     * @param row Row of the class.
+     * @return Name of class loader.
+     * @see ObjectData#setLoaderName(java.util.Map)
+     */
+    public String getLoaderName(int row) {
+        return symbolTable.getLoaderName(classLoaders[row], classLoaderTags[row], t -> {
+                                                                                          int loaderRow = indexOf(t);
+                                                                                          return (loaderRow == -1) ? null : getName(loaderRow);
+                                                                                       });
+    }
+
+    /**
+     * Get number of instances.
+     *
+     * @param row Row of the class.
+     * @return Number of instances.
+     */
+    public long getCount(int row) {
+        return counts[row];
+    }
+
+    /**
+     * Get total size of instances.
+     *
+     * @param row Row of the class.
+     * @return Total size.
+     */
+    public long getTotalSize(int row) {
+        return totalSizes[row];
+    }
+
+    /**
+     * Get start position of children of the class.
+     *
+     * @param row Row of the class.
+     * @return Start position in child arrays.
+     */
+    public int getChildStart(int row) {
+        return childOffsets[row];
+    }
+
+    /**
+     * Get end position (exclusive) of children of the class.
+     *
+     * @param row Row of the class.
+     * @return End position in child arrays.
+     */
+    public int getChildEnd(int row) {
+        return childOffsets[row + 1];
+    }
+
+    /**
+     * Get total number of child references.
+     *
+     * @return Number of child references.
+     */
+    public int getNumChildren() {
+        return numChildren;
+    }
+
+    /**
+     * Get class tag of child.
+     *
+     * @param child Position in child arrays.
+     * @return Class tag of child.
+     */
+    public long getChildTag(int child) {
+        return childTags[child];
+    }
+
+    /**
+     * Get number of child instances.
+     *
+     * @param child Position in child arrays.
+     * @return Number of child instances.
+     */
+    public long getChildInstances(int child) {
+        return childInstances[child];
+    }
+
+    /**
+     * Get total size of child instances.
+     *
+     * @param child Position in child arrays.
+     * @return Total size of child instances.
+     */
+    public long getChildTotalSize(int child) {
+        return childTotalSizes[child];
+    }
+
+    /**
+     * Build reverse references of child references.
+     * If a parent refers the same child more than once, only first
+     * reference is stored.
+     *
+     * @return Reverse references.
+     */
+    private ParentIndex buildParentIndex() {
+        int[] childRows = new int[numChildren];
+        int[] lastParents = new int[size];
+        int[] offsets = new int[size + 1];
+
+        /* Count parents of each row */
+        Arrays.fill(lastParents, -1);
+        for (int row = 0; row < size; row++) {
+            for (int child = childOffsets[row]; child < childOffsets[row + 1]; child++) {
+                int childRow = index.getOrDefault(childTags[child], -1);
+
+                if ((childRow != -1) && (lastParents[childRow] != row)) {
+                    lastParents[childRow] = row;
+                    offsets[childRow + 1]++;
+                }
+                else {
+                    childRow = -1;
+                }
+
+                childRows[child] = childRow;
+            }
+        }
+
+        for (int row = 0; row < size; row++) {
+            offsets[row + 1] += offsets[row];
+        }
+
+        /* Fill parents in order of parent row */
+        int[] rows = new int[offsets[size]];
+        int[] children = new int[offsets[size]];
+        int[] positions = Arrays.copyOf(offsets, size);
+        for (int row = 0; row < size; row++) {
+            for (int child = childOffsets[row]; child < childOffsets[row + 1]; child++) {
+                int childRow = childRows[child];
+
+                if (childRow != -1) {
+                    int pos = positions[childRow]++;
+                    rows[pos] = row;
+                    children[pos] = child;
+                }
+
+            }
+        }
+
+        return new ParentIndex(offsets, rows, children);
+    }
+
+    /**
+     * Get reverse references.
+     * They are built only once for each SnapShot.
+     *
+     * @return Reverse references.
+     */
+    private ParentIndex getParentIndex() {
+        ParentIndex result = parentIndex;
+
+        if (result == null) {
+            synchronized (this) {
+                result = parentIndex;
+                if (result == null) {
+                    result = buildParentIndex();
+                    parentIndex = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get start position of parents of the class.
+     *
+     * @param row Row of the class.
+     * @return Start position of parents.
+     */
+    public int getParentStart(int row) {
+        return getParentIndex().offsets[row];
+    }
+
+    /**
+     * Get end position (exclusive) of parents of the class.
+     *
+     * @param row Row of the class.
+     * @return End position of parents.
+     */
+    public int getParentEnd(int row) {
+        return getParentIndex().offsets[row + 1];
+    }
+
+    /**
+     * Get row of parent.
+     *
+     * @param parent Position of parent.
+     * @return Row of parent class.
+     */
+    public int getParentRow(int parent) {
+        return getParentIndex().rows[parent];
+    }
+
+    /**
+     * Get child reference which refers from parent.
+     *
+     * @param parent Position of parent.
+     * @return Position of the reference in child arrays.
+     */
+    public int getParentChild(int parent) {
+        return getParentIndex().children[parent];
+    }
+
+    /**
+     * Build ObjectData of the class.
+     * ObjectData is created for each call.
+     *
+     * @param row Row of the class.
+     * @return ObjectData of the class.
+     */
+    public ObjectData getObjectData(int row) {
+        List<ChildObjectData> referenceList = null;
+        int start = childOffsets[row];
+        int end = childOffsets[row + 1];
+
+        if (start < end) {
+            referenceList = new ArrayList<>(end - start);
+
+            for (int i = start; i < end; i++) {
+                referenceList.add(new ChildObjectData(childTags[i], childInstances[i], childTotalSizes[i]));
+            }
+
+        }
+
+        return new ObjectData(tags[row], getName(row), classLoaders[row], classLoaderTags[row],
+                              counts[row], totalSizes[row], getLoaderName(row), referenceList);
+    }
+
+    /**
+     * Get stream of rows.
+     *
+     * @return Stream of rows.
+     */
+    public IntStream rows() {
+        return IntStream.range(0, size);
+    }
+
+    /**
+     * Get stream of ObjectData.
+     *
+     * @return Stream of ObjectData which is built from each row.
+     */
+    public Stream<ObjectData> stream() {
+        return rows().mapToObj(this::getObjectData);
+    }
+
+    /**
+     * Get read-only Map view of this SnapShot.
+     * Key is class tag. Value is ObjectData which is built at the first
+     * access of each class. The same view is returned for this SnapShot.
+     * This method must be called after all entries are added.
+     *
+     * @return Map view.
+     */
+    public Map<Long, ObjectData> asMap() {
+        MapView result = mapView;
+
+        if (result == null) {
+            result = new MapView();
+            mapView = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Read-only Map view of SnapShotData.
+     * Built ObjectData are held through SoftReference, so they are released
+     * under memory pressure even if this SnapShot is cached. They are not
+     * counted in {@link #getEstimatedSize()} .
+     */
+    private class MapView extends AbstractMap<Long, ObjectData> {
+
+        private volatile SoftReference<AtomicReferenceArray<ObjectData>> objects = new SoftReference<>(null);
+
+        /**
+         * Get ObjectData of the row.
+         * ObjectData is built only once while it is held by this view.
+         *
+         * @param row Row of the class.
+         * @return ObjectData of the class.
+         */
+        private ObjectData getObject(int row) {
+            AtomicReferenceArray<ObjectData> array = objects.get();
+
+            if ((array == null) || (array.length() != size)) {
+                array = new AtomicReferenceArray<>(size);
+                objects = new SoftReference<>(array);
+            }
+
+            ObjectData result = array.get(row);
+
+            if (result == null) {
+                result = getObjectData(row);
+                if (!array.compareAndSet(row, null, result)) {
+                    result = array.get(row);
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof Long) && (indexOf((Long) key) != -1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ObjectData get(Object key) {
+
+            if (!(key instanceof Long)) {
+                return null;
+            }
+
+            int row = indexOf((Long) key);
+            return (row == -1) ? null : getObject(row);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Set<Map.Entry<Long, ObjectData>> entrySet() {
+
+            return new AbstractSet<Map.Entry<Long, ObjectData>>() {
+
+                @Override
+                public Iterator<Map.Entry<Long, ObjectData>> iterator() {
+
+                    return new Iterator<Map.Entry<Long, ObjectData>>() {
+
+                        private int row = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return row < size;
+                        }
+
+                        @Override
+                        public Map.Entry<Long, ObjectData> next() {
+
+                            if (row >= size) {
+                                throw new NoSuchElementException();
+                            }
+
+                            Map.Entry<Long, ObjectData> entry = new AbstractMap.SimpleImmutableEntry<>(tags[row], getObject(row));
+                            row++;
+
+                            return entry;
+                        }
+
+                    };
+
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+            };
+
+        }
+
+    }
+
+}
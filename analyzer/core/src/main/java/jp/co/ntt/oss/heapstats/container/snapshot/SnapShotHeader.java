@@ -24,7 +24,6 @@ package jp.co.ntt.oss.heapstats.container.snapshot;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.UncheckedIOException;
-import java.lang.ref.SoftReference;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.time.Instant;
@@ -32,7 +31,6 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
 import jp.co.ntt.oss.heapstats.parser.handler.SnapShotHandler;
 
@@ -64,6 +62,13 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
      */
     public static final int SNAPSHOT_CAUSE_INTERVAL = 3;
 
+    /**
+     * Upper bound of expected number of entries.
+     * Containers which are sized from header should grow on demand beyond
+     * this value, because number of entries in header might be corrupted.
+     */
+    public static final int MAX_EXPECTED_ENTRIES = 4096;
+
     /**
      * Byte order of the agent Dump file.
      */
@@ -74,6 +79,11 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
      */
     private LocalDateTime snapShotDate;
 
+    /**
+     * Time the snapshot was taken in milliseconds from epoch.
+     */
+    private long snapShotDateAsLong;
+
     /**
      * Number of live classes.
      */
@@ -144,8 +154,6 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
 
     private long snapShotSize;
 
-    private SoftReference<Map<Long, ObjectData>> snapShotCache;
-
     /**
      * Creates a SnapShotHeader.
      */
@@ -163,7 +171,6 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
         totalCapacity = 0;
         metaspaceUsage = 0;
         metaspaceCapacity = 0;
-        snapShotCache = new SoftReference<>(null);
     }
 
     /**
@@ -191,6 +198,8 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
      */
     public final void setSnapShotDate(final LocalDateTime value) {
         snapShotDate = value;
+        snapShotDateAsLong = (value == null) ? 0
+                : value.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
     /**
@@ -201,6 +210,16 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
     public final void setSnapShotDateAsLong(final long value) {
         Instant inst = Instant.ofEpochMilli(value);
         snapShotDate = LocalDateTime.ofInstant(inst, ZoneId.systemDefault());
+        snapShotDateAsLong = value;
+    }
+
+    /**
+     * To get the SnapShot Date in milliseconds from epoch.
+     *
+     * @return Return the SnapShot Date in milliseconds
+     */
+    public final long getSnapShotDateAsLong() {
+        return snapShotDateAsLong;
     }
 
     /**
@@ -230,6 +249,16 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
         return numEntries;
     }
 
+    /**
+     * Get expected number of entries to allocate containers.
+     *
+     * @return Number of Object entries which is clamped in
+     *          [0, {@link #MAX_EXPECTED_ENTRIES}] .
+     */
+    public final int getExpectedEntries() {
+        return (int) Math.max(0, Math.min(numEntries, MAX_EXPECTED_ENTRIES));
+    }
+
     /**
      * To get the Number of Instances.
      *
@@ -540,14 +569,13 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
 
     /**
      * Get SnapShot data from file.
+     * Class names in the result are JNI-style.
      *
-     * @param needJavaStyle true if class name should be Java style, false means
-     * JNI style.
      * @return SnapShot which is related to this header.
      */
-    private Map<Long, ObjectData> getSnapShotDirectly(boolean needJavaStyle) {
+    private SnapShotData getSnapShotDirectly() {
         SnapShotHandler handler = new SnapShotHandler();
-        SnapShotParser parser = new SnapShotParser(needJavaStyle);
+        SnapShotParser parser = new SnapShotParser(false);
 
         try {
             parser.parseSingle(this, handler);
@@ -555,31 +583,73 @@ public class SnapShotHeader implements Comparable<SnapShotHeader>, Serializable
             throw new UncheckedIOException(ex);
         }
 
-        Map<Long, ObjectData> result = handler.getSnapShot();
-        setSnapShot(result);
-
-        return result;
+        return handler.getSnapShotData();
     }
 
     /**
      * Get SnapShot in this header.
+     * SnapShot is managed by {@link SnapShotCache} for each style of class
+     * name. Java-Style SnapShot is derived from JNI-style SnapShot, so the
+     * file is not parsed again if JNI-style SnapShot is cached.
      *
      * @param needJavaStyle true if class name should be Java style, false means
      * JNI style.
      * @return SnapShot in this header.
      */
+    public SnapShotData getSnapShotData(boolean needJavaStyle) {
+        SnapShotCache cache = SnapShotCache.getInstance();
+
+        if (!needJavaStyle) {
+            return cache.get(this, false, h -> getSnapShotDirectly());
+        }
+
+        return cache.get(this, true, h -> {
+                                              SnapShotData jniStyle = cache.peek(this, false);
+
+                                              if (jniStyle == null) {
+                                                  /* Java-Style view shares columns with JNI-style SnapShot. */
+                                                  jniStyle = getSnapShotDirectly();
+                                                  cache.put(this, false, jniStyle);
+                                              }
+
+                                              return jniStyle.toJavaStyle();
+                                           });
+    }
+
+    /**
+     * Check whether SnapShot in this header can be got without parsing.
+     *
+     * @param needJavaStyle true if class name should be Java style, false means
+     * JNI style.
+     * @return true if SnapShot (or JNI-style SnapShot which Java-Style
+     * SnapShot can be derived from) is cached.
+     */
+    public boolean isSnapShotCached(boolean needJavaStyle) {
+        SnapShotCache cache = SnapShotCache.getInstance();
+        return cache.contains(this, needJavaStyle) || (needJavaStyle && cache.contains(this, false));
+    }
+
+    /**
+     * Get SnapShot in this header as Map.
+     *
+     * @param needJavaStyle true if class name should be Java style, false means
+     * JNI style.
+     * @return Read-only Map view of SnapShot in this header.
+     * @see SnapShotData#asMap()
+     */
     public Map<Long, ObjectData> getSnapShot(boolean needJavaStyle) {
-        return Optional.ofNullable(snapShotCache.get())
-                .orElseGet(() -> getSnapShotDirectly(needJavaStyle));
+        return getSnapShotData(needJavaStyle).asMap();
     }
 
     /**
-     * Set SnapShot in this header. This SnapShot is managed as SoftReference.
+     * Set SnapShot in this header. This SnapShot is managed by
+     * {@link SnapShotCache}.
      *
      * @param snapShot SnapShot to be managed.
+     * @param isJavaStyle true if class name in snapShot is Java style.
      */
-    public void setSnapShot(Map<Long, ObjectData> snapShot) {
-        this.snapShotCache = new SoftReference<>(snapShot);
+    public void setSnapShotData(SnapShotData snapShot, boolean isJavaStyle) {
+        SnapShotCache.getInstance().put(this, isJavaStyle, snapShot);
     }
 
     @Override
@@ -20,6 +20,7 @@ package jp.co.ntt.oss.heapstats.container.snapshot;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.OptionalInt;
 
 /**
@@ -78,12 +79,28 @@ public class SummaryData {
 
     private final List<LocalDateTime> rebootSuspectList;
 
+    private final Optional<ExhaustionForecast> heapForecast;
+
+    private final Optional<ExhaustionForecast> metaspaceForecast;
+
     /**
      * Constructor of SummaryData.
+     * Forecasts of exhaustion are empty.
      *
      * @param headers List of SnapShot headers which should be summarized.
      */
     public SummaryData(List<SnapShotHeader> headers) {
+        this(headers, Optional.empty(), Optional.empty());
+    }
+
+    /**
+     * Constructor of SummaryData.
+     *
+     * @param headers List of SnapShot headers which should be summarized.
+     * @param heapForecast Forecast of Java heap exhaustion.
+     * @param metaspaceForecast Forecast of Metaspace exhaustion.
+     */
+    public SummaryData(List<SnapShotHeader> headers, Optional<ExhaustionForecast> heapForecast, Optional<ExhaustionForecast> metaspaceForecast) {
         rebootSuspectList = new ArrayList<>();
         OptionalInt lastRebootIndex = OptionalInt.empty();
 
@@ -121,6 +138,9 @@ public class SummaryData {
         maxGCTime = statistics.getMaxGCTime();
         maxSnapshotSize = statistics.getMaxSnapshotSize();
         maxEntryCount = statistics.getMaxEntryCount();
+
+        this.heapForecast = heapForecast;
+        this.metaspaceForecast = metaspaceForecast;
     }
 
     /**
@@ -204,6 +224,24 @@ public class SummaryData {
         return rebootSuspectList;
     }
 
+    /**
+     * Get forecast of Java heap exhaustion.
+     *
+     * @return Forecast, or empty if SnapShots after full GC are not enough.
+     */
+    public Optional<ExhaustionForecast> getHeapForecast() {
+        return heapForecast;
+    }
+
+    /**
+     * Get forecast of Metaspace exhaustion.
+     *
+     * @return Forecast, or empty if SnapShots after full GC are not enough.
+     */
+    public Optional<ExhaustionForecast> getMetaspaceForecast() {
+        return metaspaceForecast;
+    }
+
     private class MaxSummaryStatistics {
 
         private long maxGCTime;
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.container.snapshot;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+import jp.co.ntt.oss.heapstats.parser.ClassNameConverter;
+
+/**
+ * Session-wide symbol table of classes in SnapShots.
+ * Each pair of class tag and class name is mapped to an unique id and
+ * canonical String. Class loader names are also shared between SnapShots.
+ * Each set of SnapShot files uses its own table which is created by
+ * {@link #renew()}. Objects which hold symbol ids keep the table which is
+ * got at their construction, so tasks of previous set can resolve their ids
+ * while next set is loaded.
+ */
+public class SymbolTable {
+
+    private static volatile SymbolTable instance = new SymbolTable();
+
+    private final Map<Symbol, Symbol> symbols;
+
+    private final Map<Symbol, String> loaderNames;
+
+    private volatile Symbol[] symbolArray;
+
+    private int numSymbols;
+
+    /**
+     * Symbol of class.
+     */
+    public static final class Symbol {
+
+        private final int id;
+
+        private final long tag;
+
+        private final String name;
+
+        /** Java-Style symbol which is converted from this symbol. */
+        private volatile Symbol javaStyle;
+
+        /**
+         * Constructor of Symbol.
+         *
+         * @param id Id of this symbol. -1 means lookup key.
+         * @param tag Class tag.
+         * @param name Class name.
+         */
+        private Symbol(int id, long tag, String name) {
+            this.id = id;
+            this.tag = tag;
+            this.name = name;
+        }
+
+        /**
+         * Get id of this symbol.
+         *
+         * @return Symbol id.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Get class tag.
+         *
+         * @return Class tag.
+         */
+        public long getTag() {
+            return tag;
+        }
+
+        /**
+         * Get canonical class name.
+         *
+         * @return Class name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return Long.hashCode(tag) * 31 + Objects.hashCode(name);
+        }
+
+        /**
+         * {@inheritDoc}
+         * This method is based on tag and name.
+         */
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Symbol)) {
+                return false;
+            }
+
+            Symbol other = (Symbol) obj;
+            return (tag == other.tag) && Objects.equals(name, other.name);
+        }
+
+    }
+
+    /**
+     * Constructor of SymbolTable.
+     */
+    private SymbolTable() {
+        symbols = new ConcurrentHashMap<>();
+        loaderNames = new ConcurrentHashMap<>();
+        symbolArray = new Symbol[1024];
+        numSymbols = 0;
+    }
+
+    /**
+     * Get current symbol table which is shared in this process.
+     *
+     * @return Instance of SymbolTable.
+     */
+    public static SymbolTable getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replace current symbol table with empty one.
+     * This method should be called when new set of SnapShot files is loaded.
+     * Previous table is not modified, and it is released after all objects
+     * which hold it are discarded.
+     */
+    public static void renew() {
+        instance = new SymbolTable();
+    }
+
+    /**
+     * Register new symbol.
+     *
+     * @param tag Class tag.
+     * @param name Class name.
+     * @return New symbol.
+     */
+    private synchronized Symbol register(long tag, String name) {
+        Symbol symbol = new Symbol(numSymbols, tag, name);
+        Symbol[] array = symbolArray;
+
+        if (numSymbols == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+
+        array[numSymbols++] = symbol;
+        symbolArray = array;
+
+        return symbol;
+    }
+
+    /**
+     * Get symbol of the class.
+     * Symbol is registered if it does not exist.
+     *
+     * @param tag Class tag.
+     * @param name Class name.
+     * @return Symbol of the class.
+     */
+    public Symbol intern(long tag, String name) {
+        Symbol key = new Symbol(-1, tag, name);
+        Symbol result = symbols.get(key);
+
+        return (result == null) ? symbols.computeIfAbsent(key, k -> register(k.tag, k.name))
+                                : result;
+    }
+
+    /**
+     * Get symbol from id.
+     *
+     * @param id Symbol id.
+     * @return Symbol.
+     */
+    public Symbol getSymbol(int id) {
+        return symbolArray[id];
+    }
+
+    /**
+     * Get Java-Style symbol of JNI-style symbol.
+     * Class name is converted only once for each symbol.
+     *
+     * @param id Symbol id of JNI-style class name.
+     * @return Symbol of Java-Style class name.
+     */
+    public Symbol getJavaStyleSymbol(int id) {
+        Symbol symbol = getSymbol(id);
+        Symbol result = symbol.javaStyle;
+
+        if (result == null) {
+            result = intern(symbol.tag, ClassNameConverter.toJavaStyle(symbol.name));
+            symbol.javaStyle = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Get number of registered symbols.
+     *
+     * @return Number of symbols.
+     */
+    public synchronized int size() {
+        return numSymbols;
+    }
+
+    /**
+     * Get name of class loader.
+     *
+     * @param loaderClassName Class name of class loader.
+     * @param classLoader Id of class loader.
+     * @return Name of class loader. e.g. "foo.Loader (0x12345678)"
+     */
+    public String getLoaderName(String loaderClassName, long classLoader) {
+        Symbol key = new Symbol(-1, classLoader, loaderClassName);
+        String result = loaderNames.get(key);
+
+        return (result == null) ? loaderNames.computeIfAbsent(key, k -> String.format("%s (0x%x)", k.name, k.tag))
+                                : result;
+    }
+
+    /**
+     * Get name of class loader.
+     *
+     * @param classLoader Id of class loader.
+     * @param classLoaderTag Class tag of class loader.
+     * @param classNameResolver Function to get class name from class tag.
+     *                           This function should return null if the
+     *                           class is not found.
+     * @return Name of class loader.
+     */
+    public String getLoaderName(long classLoader, long classLoaderTag, LongFunction<String> classNameResolver) {
+
+        if (classLoaderTag < 0) {
+            return "-";
+        }
+        else if (classLoaderTag == 0) {
+            return "<SystemClassLoader>";
+        }
+
+        String loaderClass = classNameResolver.apply(classLoaderTag);
+        return getLoaderName((loaderClass == null) ? "<Unknown>" : loaderClass, classLoader);
+    }
+
+}
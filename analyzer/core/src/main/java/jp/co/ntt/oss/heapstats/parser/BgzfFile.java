@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * BGZF (blocked gzip) file.
+ * Each block is independent gzip member which has its compressed size in
+ * extra field, so block index can be built from block headers without
+ * decompression. Blocks are decompressed in parallel with read-ahead.
+ */
+class BgzfFile implements SegmentSource {
+
+    /** Size of fixed part of gzip header. */
+    private static final int HEADER_SIZE = 12;
+
+    /** Size of gzip trailer (CRC32 and ISIZE). */
+    private static final int TRAILER_SIZE = 8;
+
+    /** Number of blocks which are decompressed ahead. */
+    private static final int READ_AHEAD = Runtime.getRuntime().availableProcessors();
+
+    /** Number of decompressed blocks which are cached. */
+    private static final int CACHE_SIZE = Math.max(READ_AHEAD * 2, 16);
+
+    private final Path path;
+
+    private final FileChannel ch;
+
+    private final AtomicInteger refCount;
+
+    private final long[] blockOffsets;
+
+    private final int[] dataLengths;
+
+    private final int[] crcs;
+
+    /** Offset of each block in decompressed file. */
+    private final long[] offsets;
+
+    private final int[] lengths;
+
+    private final long size;
+
+    private final Map<Integer, CompletableFuture<byte[]>> blocks;
+
+    /**
+     * Constructor of BgzfFile.
+     *
+     * @param path BGZF file.
+     * @throws IOException
+     */
+    private BgzfFile(Path path) throws IOException {
+        this.path = path;
+        ch = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, ch.size() / 32768));
+            long[] blockOffsetsBuf = new long[capacity];
+            int[] dataLengthsBuf = new int[capacity];
+            int[] crcsBuf = new int[capacity];
+            long[] offsetsBuf = new long[capacity];
+            int[] lengthsBuf = new int[capacity];
+            int numBlocks = 0;
+            long uncompressed = 0;
+            long fileSize = ch.size();
+            long position = 0;
+
+            while (position < fileSize) {
+                ByteBuffer header = read(position, HEADER_SIZE);
+                int xlen = Short.toUnsignedInt(header.getShort(10));
+                ByteBuffer extra = read(position, HEADER_SIZE + xlen);
+                int blockSize = blockSize(extra);
+
+                if (blockSize == -1) {
+                    throw new IOException("Invalid BGZF block at " + position + ": " + path);
+                }
+
+                ByteBuffer trailer = read(position + blockSize - TRAILER_SIZE, TRAILER_SIZE);
+                int crc = trailer.getInt();
+                int isize = trailer.getInt();
+
+                if (isize != 0) {
+                    if (numBlocks == blockOffsetsBuf.length) {
+                        int newCapacity = numBlocks * 2;
+                        blockOffsetsBuf = Arrays.copyOf(blockOffsetsBuf, newCapacity);
+                        dataLengthsBuf = Arrays.copyOf(dataLengthsBuf, newCapacity);
+                        crcsBuf = Arrays.copyOf(crcsBuf, newCapacity);
+                        offsetsBuf = Arrays.copyOf(offsetsBuf, newCapacity);
+                        lengthsBuf = Arrays.copyOf(lengthsBuf, newCapacity);
+                    }
+
+                    blockOffsetsBuf[numBlocks] = position + HEADER_SIZE + xlen;
+                    dataLengthsBuf[numBlocks] = blockSize - HEADER_SIZE - xlen - TRAILER_SIZE;
+                    crcsBuf[numBlocks] = crc;
+                    offsetsBuf[numBlocks] = uncompressed;
+                    lengthsBuf[numBlocks] = isize;
+                    uncompressed += Integer.toUnsignedLong(isize);
+                    numBlocks++;
+                }
+
+                position += blockSize;
+            }
+
+            blockOffsets = Arrays.copyOf(blockOffsetsBuf, numBlocks);
+            dataLengths = Arrays.copyOf(dataLengthsBuf, numBlocks);
+            crcs = Arrays.copyOf(crcsBuf, numBlocks);
+            offsets = Arrays.copyOf(offsetsBuf, numBlocks);
+            lengths = Arrays.copyOf(lengthsBuf, numBlocks);
+            size = uncompressed;
+        }
+        catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+
+        refCount = new AtomicInteger(1);
+        blocks = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true);
+    }
+
+    /**
+     * Open BGZF file.
+     *
+     * @param path BGZF file.
+     * @return Opened file.
+     * @throws IOException
+     */
+    static BgzfFile open(Path path) throws IOException {
+        return new BgzfFile(path);
+    }
+
+    /**
+     * Get size of BGZF block from its header.
+     *
+     * @param header Buffer which contains gzip header and extra field.
+     * @return Size of the block, or -1 if the header is not BGZF block.
+     */
+    private static int blockSize(ByteBuffer header) {
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        if ((header.limit() < HEADER_SIZE) || (Byte.toUnsignedInt(header.get(0)) != 0x1f) ||
+            (Byte.toUnsignedInt(header.get(1)) != 0x8b) || ((header.get(3) & 0x04) == 0)) {
+            return -1;
+        }
+
+        int end = Math.min(header.limit(), HEADER_SIZE + Short.toUnsignedInt(header.getShort(10)));
+        int pos = HEADER_SIZE;
+
+        while (pos + 4 <= end) {
+            int slen = Short.toUnsignedInt(header.getShort(pos + 2));
+
+            if ((header.get(pos) == 'B') && (header.get(pos + 1) == 'C') && (slen == 2) && (pos + 6 <= end)) {
+                return Short.toUnsignedInt(header.getShort(pos + 4)) + 1;
+            }
+
+            pos += 4 + slen;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Check whether the header is BGZF block header.
+     *
+     * @param head Buffer which contains top of the file.
+     * @return true if the header is BGZF block.
+     */
+    static boolean isBgzfHeader(ByteBuffer head) {
+        return blockSize(head.duplicate()) != -1;
+    }
+
+    /**
+     * Read bytes from BGZF file.
+     *
+     * @param position File position.
+     * @param length Bytes to read.
+     * @return Little endian buffer which contains read bytes.
+     * @throws IOException
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) == -1) {
+                throw new IOException("BGZF file is truncated: " + path);
+            }
+        }
+
+        buf.flip();
+        return buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Decompress the block.
+     *
+     * @param index Index of block.
+     * @return Decompressed bytes.
+     */
+    private byte[] inflate(int index) {
+        byte[] result = new byte[lengths[index]];
+        Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(read(blockOffsets[index], dataLengths[index]).array());
+
+            if (inflater.inflate(result) != result.length) {
+                throw new IOException("BGZF block " + index + " is corrupted: " + path);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(result);
+            if ((int) crc.getValue() != crcs[index]) {
+                throw new IOException("CRC error in BGZF block " + index + ": " + path);
+            }
+
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("BGZF block " + index + " is corrupted: " + path, e));
+        }
+        finally {
+            inflater.end();
+        }
+
+        return result;
+    }
+
+    /**
+     * Get future of decompressed block.
+     * Decompression is started if the block is not requested yet.
+     *
+     * @param index Index of block.
+     * @return Future of decompressed bytes.
+     */
+    private CompletableFuture<byte[]> request(int index) {
+
+        synchronized (blocks) {
+            CompletableFuture<byte[]> result = blocks.get(index);
+
+            if (result == null) {
+                result = CompletableFuture.supplyAsync(() -> inflate(index));
+                blocks.put(index, result);
+
+                Iterator<CompletableFuture<byte[]>> itr = blocks.values().iterator();
+                while (blocks.size() > CACHE_SIZE) {
+                    itr.next();
+                    itr.remove();
+                }
+
+            }
+
+            return result;
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int find(long position) {
+
+        if ((position < 0) || (position >= size)) {
+            return -1;
+        }
+
+        int index = Arrays.binarySearch(offsets, position);
+        return (index >= 0) ? index : (-index - 2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     * Following blocks are decompressed ahead in parallel.
+     */
+    @Override
+    public byte[] decode(int index) throws IOException {
+        CompletableFuture<byte[]> result = request(index);
+
+        for (int i = index + 1; i < Math.min(index + 1 + READ_AHEAD, lengths.length); i++) {
+            request(i);
+        }
+
+        try {
+            return result.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BgzfFile retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release() throws IOException {
+
+        if (refCount.decrementAndGet() == 0) {
+            ch.close();
+        }
+
+    }
+
+}
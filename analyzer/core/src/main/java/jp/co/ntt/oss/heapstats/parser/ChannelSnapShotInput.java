@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SnapShot input which reads the file through buffered FileChannel.
+ */
+public class ChannelSnapShotInput implements SnapShotInput {
+
+    /** Size of read buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+
+    private final FileChannel ch;
+
+    private final ByteBuffer buffer;
+
+    /** File position of the top of buffer. */
+    private long bufferPosition;
+
+    /**
+     * Constructor of ChannelSnapShotInput.
+     *
+     * @param path SnapShot file to read.
+     * @throws IOException
+     */
+    public ChannelSnapShotInput(Path path) throws IOException {
+        this.path = path;
+        ch = FileChannel.open(path, StandardOpenOption.READ);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.limit(0);
+        bufferPosition = 0;
+    }
+
+    /**
+     * Fill buffer until it has required bytes.
+     *
+     * @param required Required bytes.
+     * @return true if buffer has required bytes.
+     * @throws IOException
+     */
+    private boolean fill(int required) throws IOException {
+
+        if (buffer.remaining() >= required) {
+            return true;
+        }
+
+        bufferPosition += buffer.position();
+        buffer.compact();
+
+        while (buffer.position() < required) {
+            if (ch.read(buffer) == -1) {
+                break;
+            }
+        }
+
+        buffer.flip();
+        return buffer.remaining() >= required;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void order(ByteOrder order) {
+        buffer.order(order);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long position() throws IOException {
+        return bufferPosition + buffer.position();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() throws IOException {
+        return ch.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void position(long newPosition) throws IOException {
+
+        if ((newPosition >= bufferPosition) && (newPosition <= bufferPosition + buffer.limit())) {
+            buffer.position((int) (newPosition - bufferPosition));
+        } else {
+            ch.position(newPosition);
+            bufferPosition = newPosition;
+            buffer.clear();
+            buffer.limit(0);
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        return fill(1) ? Byte.toUnsignedInt(buffer.get()) : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] dst, int off, int len) throws IOException {
+        int total = 0;
+
+        while (total < len) {
+            if (!buffer.hasRemaining() && !fill(1)) {
+                break;
+            }
+
+            int n = Math.min(len - total, buffer.remaining());
+            buffer.get(dst, off + total, n);
+            total += n;
+        }
+
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong() throws IOException {
+        if (!fill(8)) {
+            throw new EOFException();
+        }
+
+        return buffer.getLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt() throws IOException {
+        if (!fill(4)) {
+            throw new EOFException();
+        }
+
+        return buffer.getInt();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapShotInput duplicate() throws IOException {
+        ChannelSnapShotInput result = new ChannelSnapShotInput(path);
+        result.order(buffer.order());
+        result.position(position());
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converter of class name in SnapShot.
+ * Converted names are cached with raw name bytes as a key. So each distinct
+ * class name is converted only once, and all SnapShots share the same
+ * String instance.
+ */
+public class ClassNameConverter {
+
+    /** Max number of cached class names. */
+    public static final int MAX_CACHE_ENTRIES = 1 << 20;
+
+    private static final ClassNameConverter JAVA_STYLE = new ClassNameConverter(true);
+
+    private static final ClassNameConverter JNI_STYLE = new ClassNameConverter(false);
+
+    private final boolean javaStyle;
+
+    private final Map<NameKey, String> cache;
+
+    /**
+     * Key of class name cache.
+     * Instance which is used for lookup can be reused by
+     * {@link #set(int)}. Thus it must not be shared between threads.
+     */
+    public static class NameKey {
+
+        private byte[] bytes;
+
+        private int length;
+
+        private int hash;
+
+        /**
+         * Constructor of NameKey.
+         *
+         * @param capacity Initial capacity of name buffer.
+         */
+        public NameKey(int capacity) {
+            bytes = new byte[capacity];
+            length = 0;
+            hash = 0;
+        }
+
+        /**
+         * Constructor for copying key.
+         *
+         * @param src Source key.
+         */
+        private NameKey(NameKey src) {
+            bytes = new byte[src.length];
+            System.arraycopy(src.bytes, 0, bytes, 0, src.length);
+            length = src.length;
+            hash = src.hash;
+        }
+
+        /**
+         * Get buffer to store name bytes.
+         * Buffer is expanded if it is smaller than required length.
+         *
+         * @param required Required length.
+         * @return Buffer for name bytes.
+         */
+        public byte[] buffer(int required) {
+
+            if (bytes.length < required) {
+                bytes = new byte[Math.max(required, bytes.length * 2)];
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Set length of name which is stored in the buffer.
+         *
+         * @param length Length of name.
+         */
+        public void set(int length) {
+            this.length = length;
+
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            hash = h;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof NameKey)) {
+                return false;
+            }
+
+            NameKey other = (NameKey) obj;
+            if ((length != other.length) || (hash != other.hash)) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != other.bytes[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length);
+        }
+
+    }
+
+    /**
+     * Constructor of ClassNameConverter.
+     *
+     * @param javaStyle true if class name should be converted to Java-Style.
+     */
+    private ClassNameConverter(boolean javaStyle) {
+        this.javaStyle = javaStyle;
+        cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get converter instance.
+     *
+     * @param javaStyle true if class name should be converted to Java-Style.
+     * @return Converter which is shared in this process.
+     */
+    public static ClassNameConverter getInstance(boolean javaStyle) {
+        return javaStyle ? JAVA_STYLE : JNI_STYLE;
+    }
+
+    /**
+     * Get class name which is related to the key.
+     * Name is converted and cached if it is not in the cache.
+     * The key is not stored in the cache, so the caller can reuse it.
+     *
+     * @param key Key which holds raw name bytes.
+     * @return Class name.
+     */
+    public String convert(NameKey key) {
+        String result = cache.get(key);
+
+        if (result == null) {
+            String raw = key.toString();
+            result = javaStyle ? toJavaStyle(raw) : raw;
+
+            if (cache.size() < MAX_CACHE_ENTRIES) {
+                String prev = cache.putIfAbsent(new NameKey(key), result);
+                result = (prev == null) ? result : prev;
+            }
+
+        }
+
+        return result;
+    }
+
+    /**
+     * Get primitive type name from JNI type signature.
+     *
+     * @param c Type signature.
+     * @return Primitive type name, or null if c is not primitive.
+     */
+    private static String getPrimitiveName(char c) {
+
+        switch (c) {
+            case 'B':
+                return "byte";
+            case 'C':
+                return "char";
+            case 'I':
+                return "int";
+            case 'S':
+                return "short";
+            case 'J':
+                return "long";
+            case 'D':
+                return "double";
+            case 'F':
+                return "float";
+            case 'V':
+                return "void";
+            case 'Z':
+                return "boolean";
+            default:
+                return null;
+        }
+
+    }
+
+    /**
+     * Convert JNI-style class name to Java-Style.
+     * e.g. "[[Ljava/lang/String;" is converted to "java.lang.String [] []".
+     *
+     * @param name JNI-style class name.
+     * @return Java-Style class name.
+     */
+    public static String toJavaStyle(String name) {
+        int len = name.length();
+        int dims = 0;
+
+        while ((dims < len) && (name.charAt(dims) == '[')) {
+            dims++;
+        }
+
+        int start = dims;
+        int end = ((len > start) && (name.charAt(len - 1) == ';')) ? len - 1 : len;
+        String primitive = null;
+
+        if ((start < len) && (name.charAt(start) == 'L')) {
+            start++;
+        }
+        else if (end - start == 1) {
+            primitive = getPrimitiveName(name.charAt(start));
+        }
+
+        StringBuilder buf = new StringBuilder(Math.max(0, end - start) + dims * 3);
+
+        if (primitive != null) {
+            buf.append(primitive);
+        }
+        else {
+            for (int i = start; i < end; i++) {
+                char c = name.charAt(i);
+                buf.append((c == '/') ? '.' : c);
+            }
+        }
+
+        for (int i = 0; i < dims; i++) {
+            buf.append(" []");
+        }
+
+        return buf.toString();
+    }
+
+}
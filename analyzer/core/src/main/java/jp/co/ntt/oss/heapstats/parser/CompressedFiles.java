@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Utility for reading compressed files transparently.
+ * <p>
+ * gzip file is read as a stream, so moving backward restarts decompression
+ * from the top of the file. BGZF file (blocked gzip, e.g. created by
+ * bgzip) consists of independent gzip blocks with size information, so
+ * blocks are decompressed in parallel and it can be accessed randomly.
+ * BGZF is recommended for SnapShot files which are analyzed interactively.
+ * </p>
+ */
+public final class CompressedFiles {
+
+    /** Buffer size of decompression stream. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Compression format of the file.
+     */
+    public enum Compression {
+        /** Not compressed. */
+        NONE,
+        /** gzip. */
+        GZIP,
+        /** BGZF (blocked gzip). */
+        BGZF,
+        /** Zstandard. This is not supported. */
+        ZSTD
+    }
+
+    /**
+     * Constructor of CompressedFiles.
+     */
+    private CompressedFiles() {
+        /* Utility class */
+    }
+
+    /**
+     * Detect compression format of the file from its magic number.
+     *
+     * @param path File to check.
+     * @return Compression format.
+     * @throws IOException
+     */
+    public static Compression detect(Path path) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(32);
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (head.hasRemaining() && (ch.read(head) != -1)) {
+                /* Read until head is filled */
+            }
+        }
+
+        head.flip();
+
+        if ((head.remaining() >= 4) && (head.getInt(0) == 0x28b52ffd)) {
+            return Compression.ZSTD;
+        }
+        if ((head.remaining() < 2) || (Byte.toUnsignedInt(head.get(0)) != 0x1f) || (Byte.toUnsignedInt(head.get(1)) != 0x8b)) {
+            return Compression.NONE;
+        }
+
+        return BgzfFile.isBgzfHeader(head) ? Compression.BGZF : Compression.GZIP;
+    }
+
+    /**
+     * Check whether the compression format is supported.
+     *
+     * @param path File to check.
+     * @param compression Compression format of the file.
+     * @throws IOException If the format is not supported.
+     */
+    static void checkSupported(Path path, Compression compression) throws IOException {
+
+        if (compression == Compression.ZSTD) {
+            throw new IOException("Zstandard compressed file is not supported. Please decompress it or recompress with gzip: " + path);
+        }
+
+    }
+
+    /**
+     * Open input stream which decompresses the file.
+     * Not compressed file is read as it is.
+     *
+     * @param path File to read.
+     * @return Input stream of decompressed bytes.
+     * @throws IOException
+     */
+    public static InputStream newInputStream(Path path) throws IOException {
+        return newInputStream(path, n -> {});
+    }
+
+    /**
+     * Open input stream which decompresses the file.
+     * Not compressed file is read as it is. Number of bytes which are read
+     * from the file is notified to consumer, so progress of compressed file
+     * can be measured in the same unit as file size. BGZF blocks are read
+     * ahead in parallel, so it is estimated from decompressed bytes.
+     *
+     * @param path File to read.
+     * @param consumed Consumer of bytes which are read from the file.
+     * @return Input stream of decompressed bytes.
+     * @throws IOException
+     */
+    public static InputStream newInputStream(Path path, LongConsumer consumed) throws IOException {
+        Compression compression = detect(path);
+        checkSupported(path, compression);
+
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(new CountingInputStream(Files.newInputStream(path), consumed), BUFFER_SIZE);
+
+            case BGZF:
+                BgzfFile bgzf = BgzfFile.open(path);
+                long fileSize = Files.size(path);
+                long decompressedSize = bgzf.size();
+                long[] decompressed = {0L, 0L};
+
+                return new CountingInputStream(new SnapShotInputStream(new SegmentedSnapShotInput(bgzf)), n -> {
+                    decompressed[0] += n;
+                    long current = (decompressedSize == 0) ? fileSize : (long) ((double) decompressed[0] * fileSize / decompressedSize);
+                    consumed.accept(current - decompressed[1]);
+                    decompressed[1] = current;
+                });
+
+            default:
+                return new BufferedInputStream(new CountingInputStream(Files.newInputStream(path), consumed), BUFFER_SIZE);
+        }
+
+    }
+
+    /**
+     * Open SnapShot input which decompresses the file.
+     *
+     * @param path File to read.
+     * @param compression Compression format of the file.
+     * @return SnapShot input, or null if the file is not compressed.
+     * @throws IOException
+     */
+    static SnapShotInput openSnapShotInput(Path path, Compression compression) throws IOException {
+        checkSupported(path, compression);
+
+        switch (compression) {
+            case GZIP:
+                return new GzipSnapShotInput(path);
+
+            case BGZF:
+                return new SegmentedSnapShotInput(BgzfFile.open(path));
+
+            default:
+                return null;
+        }
+
+    }
+
+    /**
+     * InputStream which notifies number of bytes which are read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final LongConsumer consumed;
+
+        /**
+         * Constructor of CountingInputStream.
+         *
+         * @param in Stream to read.
+         * @param consumed Consumer of bytes which are read.
+         */
+        public CountingInputStream(InputStream in, LongConsumer consumed) {
+            super(in);
+            this.consumed = consumed;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+
+            if (b != -1) {
+                consumed.accept(1);
+            }
+
+            return b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+
+            if (n > 0) {
+                consumed.accept(n);
+            }
+
+            return n;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            consumed.accept(skipped);
+            return skipped;
+        }
+
+        /**
+         * {@inheritDoc}
+         * Mark is not supported because reset bytes would be counted twice.
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+    /**
+     * InputStream adapter of SnapShot input.
+     */
+    private static class SnapShotInputStream extends InputStream {
+
+        private final SnapShotInput input;
+
+        /**
+         * Constructor of SnapShotInputStream.
+         *
+         * @param input SnapShot input to read.
+         */
+        public SnapShotInputStream(SnapShotInput input) {
+            this.input = input;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            return input.read();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            if (len == 0) {
+                return 0;
+            }
+
+            int n = input.read(b, off, len);
+            return (n == 0) ? -1 : n;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * SnapShot input which reads gzip compressed SnapShot file.
+ * <p>
+ * gzip stream cannot be decompressed from the middle, so moving forward
+ * skips decompressed bytes, and moving backward restarts decompression.
+ * Decompression streams are pooled when inputs are closed, and new input
+ * reuses the nearest stream before required position. So SnapShots which
+ * are parsed in order of position are decompressed only once even if each
+ * of them is parsed through new input.
+ * Pooled streams are kept open until {@link #closePooledCursors()} is
+ * called, so it should be called when the parsed files are changed.
+ * </p>
+ */
+public class GzipSnapShotInput implements SnapShotInput {
+
+    /** Max number of pooled cursors per file. */
+    private static final int MAX_POOLED_CURSORS = 4;
+
+    /** Pooled cursors of each file. */
+    private static final Map<Path, List<Cursor>> POOL = new HashMap<>();
+
+    private final Path path;
+
+    private Cursor cursor;
+
+    private ByteOrder order;
+
+    private long position;
+
+    /**
+     * Decompression stream and its position.
+     */
+    private static class Cursor {
+
+        private final Path path;
+
+        /** Last modified time of the file when this cursor is opened. */
+        private final long lastModified;
+
+        private final InputStream in;
+
+        private final ByteBuffer buffer;
+
+        /** Position of the top of buffer. */
+        private long bufferPosition;
+
+        /** Decompressed size, or -1 if it is unknown yet. */
+        private long size;
+
+        /**
+         * Constructor of Cursor.
+         *
+         * @param path gzip file.
+         * @throws IOException
+         */
+        public Cursor(Path path) throws IOException {
+            this.path = path;
+            this.lastModified = Files.getLastModifiedTime(path).toMillis();
+            this.in = new GZIPInputStream(Files.newInputStream(path), CompressedFiles.BUFFER_SIZE);
+            this.buffer = ByteBuffer.allocate(CompressedFiles.BUFFER_SIZE);
+            this.buffer.limit(0);
+            this.bufferPosition = 0;
+            this.size = -1;
+        }
+
+        /**
+         * Get current position.
+         *
+         * @return Position in decompressed file.
+         */
+        public long position() {
+            return bufferPosition + buffer.position();
+        }
+
+        /**
+         * Fill buffer until it has required bytes.
+         *
+         * @param required Required bytes.
+         * @return true if buffer has required bytes.
+         * @throws IOException
+         */
+        public boolean fill(int required) throws IOException {
+
+            if (buffer.remaining() >= required) {
+                return true;
+            }
+
+            bufferPosition += buffer.position();
+            buffer.compact();
+
+            while (buffer.position() < required) {
+                int n = in.read(buffer.array(), buffer.position(), buffer.remaining());
+
+                if (n == -1) {
+                    size = bufferPosition + buffer.position();
+                    break;
+                }
+
+                buffer.position(buffer.position() + n);
+            }
+
+            buffer.flip();
+            return buffer.remaining() >= required;
+        }
+
+        /**
+         * Move to the position.
+         *
+         * @param newPosition New position.
+         * @return false if this cursor cannot move backward to newPosition.
+         * @throws IOException
+         */
+        public boolean seek(long newPosition) throws IOException {
+
+            if (newPosition < bufferPosition) {
+                return false;
+            }
+
+            while (newPosition > bufferPosition + buffer.limit()) {
+                buffer.position(buffer.limit());
+
+                if (!fill(1)) {
+                    break;
+                }
+
+            }
+
+            buffer.position((int) Math.min(newPosition - bufferPosition, buffer.limit()));
+            return true;
+        }
+
+        /**
+         * Close decompression stream.
+         *
+         * @throws IOException
+         */
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+    /**
+     * Constructor of GzipSnapShotInput.
+     *
+     * @param path gzip compressed SnapShot file.
+     */
+    public GzipSnapShotInput(Path path) {
+        this.path = path.toAbsolutePath();
+        this.cursor = null;
+        this.order = ByteOrder.BIG_ENDIAN;
+        this.position = 0;
+    }
+
+    /**
+     * Get pooled cursor which is the nearest before the position.
+     * New cursor is opened if suitable cursor is not pooled.
+     *
+     * @param target Required position.
+     * @return Cursor.
+     * @throws IOException
+     */
+    private Cursor acquire(long target) throws IOException {
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        List<Cursor> stale = new ArrayList<>();
+        Cursor result = null;
+
+        synchronized (POOL) {
+            List<Cursor> cursors = POOL.getOrDefault(path, new ArrayList<>());
+
+            for (Cursor c : cursors) {
+                if (c.lastModified != lastModified) {
+                    stale.add(c);
+                }
+                else if ((c.bufferPosition <= target) &&
+                         ((result == null) || (c.position() > result.position()))) {
+                    result = c;
+                }
+            }
+
+            cursors.removeAll(stale);
+            if (result != null) {
+                cursors.remove(result);
+            }
+
+        }
+
+        closeCursors(stale);
+        return (result == null) ? new Cursor(path) : result;
+    }
+
+    /**
+     * Close cursors.
+     * All cursors are tried to close even if closing some of them failed.
+     *
+     * @param cursors Cursors to close.
+     * @throws IOException
+     */
+    private static void closeCursors(List<Cursor> cursors) throws IOException {
+        IOException error = null;
+
+        for (Cursor c : cursors) {
+            try {
+                c.close();
+            }
+            catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+                else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+
+    }
+
+    /**
+     * Close all pooled decompression streams.
+     * Cursors which are used by opened inputs are not affected, and they
+     * are pooled again when the inputs are closed.
+     *
+     * @throws IOException
+     */
+    public static void closePooledCursors() throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+
+        synchronized (POOL) {
+            POOL.values().forEach(cursors::addAll);
+            POOL.clear();
+        }
+
+        closeCursors(cursors);
+    }
+
+    /**
+     * Return cursor to pool.
+     * The oldest cursor is closed if the pool is full.
+     *
+     * @param c Cursor to return.
+     * @throws IOException
+     */
+    private static void release(Cursor c) throws IOException {
+        Cursor evicted = null;
+
+        synchronized (POOL) {
+            List<Cursor> cursors = POOL.computeIfAbsent(c.path, k -> new ArrayList<>());
+            cursors.add(c);
+
+            if (cursors.size() > MAX_POOLED_CURSORS) {
+                evicted = cursors.remove(0);
+            }
+
+        }
+
+        if (evicted != null) {
+            evicted.close();
+        }
+
+    }
+
+    /**
+     * Get cursor which is moved to current position.
+     *
+     * @return Cursor at current position.
+     * @throws IOException
+     */
+    private Cursor cursor() throws IOException {
+
+        if ((cursor == null) || !cursor.seek(position)) {
+            if (cursor != null) {
+                release(cursor);
+            }
+
+            cursor = acquire(position);
+            cursor.seek(position);
+        }
+
+        cursor.buffer.order(order);
+        return cursor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void order(ByteOrder order) {
+        this.order = order;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Size of decompressed file is unknown until the end of stream is
+     * reached. Long.MAX_VALUE is returned in that case.
+     */
+    @Override
+    public long size() {
+        return ((cursor == null) || (cursor.size == -1)) ? Long.MAX_VALUE : cursor.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void position(long newPosition) {
+        position = newPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     * This method moves the cursor immediately, so EOFException is thrown
+     * if the stream ends before new position.
+     */
+    @Override
+    public void skip(long n) throws IOException {
+        position += n;
+
+        if (cursor().position() != position) {
+            throw new EOFException();
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        Cursor c = cursor();
+
+        if (!c.fill(1)) {
+            return -1;
+        }
+
+        position++;
+        return Byte.toUnsignedInt(c.buffer.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] dst, int off, int len) throws IOException {
+        Cursor c = cursor();
+        int total = 0;
+
+        while (total < len) {
+            if (!c.buffer.hasRemaining() && !c.fill(1)) {
+                break;
+            }
+
+            int n = Math.min(len - total, c.buffer.remaining());
+            c.buffer.get(dst, off + total, n);
+            total += n;
+        }
+
+        position += total;
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong() throws IOException {
+        Cursor c = cursor();
+
+        if (!c.fill(8)) {
+            throw new EOFException();
+        }
+
+        position += 8;
+        return c.buffer.getLong();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt() throws IOException {
+        Cursor c = cursor();
+
+        if (!c.fill(4)) {
+            throw new EOFException();
+        }
+
+        position += 4;
+        return c.buffer.getInt();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRawFile() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSequential() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * New input has its own decompression stream.
+     */
+    @Override
+    public SnapShotInput duplicate() {
+        GzipSnapShotInput result = new GzipSnapShotInput(path);
+        result.order(order);
+        result.position(position);
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Decompression stream is returned to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (cursor != null) {
+            release(cursor);
+            cursor = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SnapShot input which decodes values from memory-mapped file directly.
+ * The file is mapped as several windows because one MappedByteBuffer
+ * cannot be larger than 2GB. Region of the file (e.g. one SnapShot) can be
+ * mapped instead of whole file. Positions are offsets in the file even if
+ * the region is mapped.
+ */
+public class MappedSnapShotInput implements SnapShotInput {
+
+    /** Window size is 1GB. */
+    private static final int WINDOW_SHIFT = 30;
+
+    private static final long WINDOW_MASK = (1L << WINDOW_SHIFT) - 1;
+
+    private ByteBuffer[] windows;
+
+    /** Offset of mapped region in the file. */
+    private final long base;
+
+    /** End of mapped region in the file. */
+    private final long size;
+
+    private ByteOrder order;
+
+    private long position;
+
+    /**
+     * Constructor of MappedSnapShotInput.
+     *
+     * @param path SnapShot file to map.
+     * @throws IOException
+     */
+    public MappedSnapShotInput(Path path) throws IOException {
+        this(path, 0, -1);
+    }
+
+    /**
+     * Constructor of MappedSnapShotInput which maps region of the file.
+     * Position of this input starts at offset.
+     *
+     * @param path SnapShot file to map.
+     * @param offset Offset of the region.
+     * @param length Length of the region. Negative value means until end
+     *                of the file.
+     * @throws IOException
+     */
+    public MappedSnapShotInput(Path path, long offset, long length) throws IOException {
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = ch.size();
+
+            if ((offset < 0) || (offset > fileSize)) {
+                throw new EOFException("Offset " + offset + " is out of " + path.toString());
+            }
+
+            base = offset;
+            size = (length < 0) ? fileSize : Math.min(fileSize, offset + length);
+            windows = new ByteBuffer[(int) ((size - base + WINDOW_MASK) >>> WINDOW_SHIFT)];
+
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i << WINDOW_SHIFT;
+                windows[i] = ch.map(FileChannel.MapMode.READ_ONLY, base + start, Math.min(WINDOW_MASK + 1, size - base - start));
+            }
+
+        }
+
+        order = ByteOrder.BIG_ENDIAN;
+        position = base;
+    }
+
+    /**
+     * Constructor for duplicating windows.
+     *
+     * @param src Source input.
+     */
+    private MappedSnapShotInput(MappedSnapShotInput src) {
+        base = src.base;
+        size = src.size;
+        windows = new ByteBuffer[src.windows.length];
+
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = src.windows[i].duplicate();
+        }
+
+        order(src.order);
+        position = src.position;
+    }
+
+    /**
+     * {@inheritDoc}
+     * New input shares mapped windows with this input.
+     */
+    @Override
+    public MappedSnapShotInput duplicate() {
+        return new MappedSnapShotInput(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get window and check whether it has enough bytes at current position.
+     *
+     * @param required Required bytes.
+     * @return Window which contains required bytes, or null if required bytes
+     * are across the window boundary.
+     * @throws EOFException if reached EOF.
+     */
+    private ByteBuffer window(int required) throws EOFException {
+
+        if ((position < base) || (position + required > size)) {
+            throw new EOFException();
+        }
+
+        long offset = position - base;
+        ByteBuffer window = windows[(int) (offset >>> WINDOW_SHIFT)];
+        return ((offset & WINDOW_MASK) + required <= window.limit()) ? window : null;
+    }
+
+    /**
+     * Assemble value byte by byte. This is used for value across the window
+     * boundary.
+     *
+     * @param len Length of value.
+     * @return Assembled value.
+     * @throws IOException
+     */
+    private long assemble(int len) throws IOException {
+        long result = 0;
+
+        for (int i = 0; i < len; i++) {
+            long b = read();
+
+            if (order == ByteOrder.BIG_ENDIAN) {
+                result = (result << 8) | b;
+            } else {
+                result |= b << (i * 8);
+            }
+
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void order(ByteOrder order) {
+        this.order = order;
+
+        for (ByteBuffer window : windows) {
+            window.order(order);
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void position(long newPosition) {
+        position = newPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() {
+
+        if ((position < base) || (position >= size)) {
+            return -1;
+        }
+
+        long offset = position - base;
+        int result = Byte.toUnsignedInt(windows[(int) (offset >>> WINDOW_SHIFT)].get((int) (offset & WINDOW_MASK)));
+        position++;
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] dst, int off, int len) {
+        int total = (position < base) ? 0 : (int) Math.min(len, Math.max(0, size - position));
+        int done = 0;
+
+        while (done < total) {
+            long offset = position - base;
+            ByteBuffer window = windows[(int) (offset >>> WINDOW_SHIFT)];
+            int winPos = (int) (offset & WINDOW_MASK);
+            int n = Math.min(total - done, window.limit() - winPos);
+
+            window.position(winPos);
+            window.get(dst, off + done, n);
+            position += n;
+            done += n;
+        }
+
+        return total;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong() throws IOException {
+        ByteBuffer window = window(8);
+
+        if (window == null) {
+            return assemble(8);
+        }
+
+        long result = window.getLong((int) ((position - base) & WINDOW_MASK));
+        position += 8;
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt() throws IOException {
+        ByteBuffer window = window(4);
+
+        if (window == null) {
+            return (int) assemble(4);
+        }
+
+        int result = window.getInt((int) ((position - base) & WINDOW_MASK));
+        position += 4;
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void skip(long n) {
+        position += n;
+    }
+
+    /**
+     * {@inheritDoc}
+     * References to mapped windows are dropped, and they are unmapped when
+     * they are collected by GC. Duplicated inputs keep their windows.
+     */
+    @Override
+    public void close() {
+        windows = new ByteBuffer[0];
+        position = size;
+    }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import jp.co.ntt.oss.heapstats.container.log.LogData;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
+
+/**
+ * Parser of HeapStats resource log (CSV).
+ * Log file is read as bytes, and it is split into chunks which are aligned
+ * to line separator. Each chunk is decoded in parallel into LogSeries, and
+ * results are merged in order of the file. Number of chunks in flight is bounded, so
+ * whole file is not loaded at once.
+ */
+public class ResourceLogParser {
+
+    /** Size of chunk. */
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** Max number of chunks which are decoded at the same time. */
+    private static final int MAX_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Result of chunk.
+     */
+    private static class Chunk {
+
+        private final LogSeries entries;
+
+        /** Bytes which were read from the file when this chunk is read. */
+        private final long consumed;
+
+        /** Errors of invalid lines. */
+        private final List<RuntimeException> errors;
+
+        /**
+         * Constructor of Chunk.
+         *
+         * @param consumed Bytes which were read from the file when this
+         *                  chunk is read.
+         */
+        public Chunk(long consumed) {
+            this.entries = new LogSeries();
+            this.consumed = consumed;
+            this.errors = new ArrayList<>();
+        }
+
+    }
+
+    /**
+     * Decode lines in the chunk.
+     * Decoding is stopped at the first invalid line, and entries before
+     * it are kept. If skipInvalid is true, invalid lines are skipped and
+     * decoding is continued.
+     *
+     * @param buf Buffer of chunk.
+     * @param length Length of chunk.
+     * @param logdir Log directory.
+     * @param consumed Bytes which were read from the file when this chunk
+     *                  is read.
+     * @param skipInvalid true if invalid lines should be skipped.
+     * @return Result of chunk.
+     */
+    private static Chunk decode(byte[] buf, int length, String logdir, long consumed, boolean skipInvalid) {
+        Chunk chunk = new Chunk(consumed);
+        LogData element = new LogData();
+        int start = 0;
+
+        while (start < length) {
+            int end = start;
+            while ((end < length) && (buf[end] != '\n')) {
+                end++;
+            }
+
+            int lineEnd = ((end > start) && (buf[end - 1] == '\r')) ? end - 1 : end;
+
+            try {
+                element.parseFromCSV(buf, start, lineEnd - start, logdir);
+                chunk.entries.add(element);
+            } catch (RuntimeException e) {
+                chunk.errors.add(e);
+
+                if (!skipInvalid) {
+                    break;
+                }
+
+            }
+
+            start = end + 1;
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Read bytes from the stream until buffer is filled.
+     *
+     * @param in Stream to read.
+     * @param buf Buffer to fill.
+     * @param offset Start of buffer to fill.
+     * @return Position after the last byte read.
+     * @throws IOException
+     */
+    private static int readFully(InputStream in, byte[] buf, int offset) throws IOException {
+        int pos = offset;
+
+        while (pos < buf.length) {
+            int n = in.read(buf, pos, buf.length - pos);
+            if (n == -1) {
+                break;
+            }
+            pos += n;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Merge result of the oldest chunk.
+     *
+     * @param inFlight Chunks in flight.
+     * @param result Series to store entries.
+     * @param progress Consumer of bytes which are read from the file until
+     *                  the chunk.
+     * @param reported Bytes which are already notified to progress.
+     * @param invalidLineHandler Handler of errors of invalid lines, or null
+     *                            if the error should be thrown.
+     * @return Bytes which are notified to progress.
+     */
+    private static long merge(Deque<CompletableFuture<Chunk>> inFlight, LogSeries result, LongConsumer progress, long reported,
+                              Consumer<RuntimeException> invalidLineHandler) {
+        Chunk chunk;
+
+        try {
+            chunk = inFlight.removeFirst().join();
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+        }
+
+        result.addAll(chunk.entries);
+        progress.accept(chunk.consumed - reported);
+
+        if (!chunk.errors.isEmpty()) {
+            if (invalidLineHandler == null) {
+                throw chunk.errors.get(0);
+            }
+
+            chunk.errors.forEach(invalidLineHandler);
+        }
+
+        return chunk.consumed;
+    }
+
+    /**
+     * Parse resource log from the stream.
+     *
+     * @param in Stream of resource log.
+     * @param logdir Log directory.
+     * @param result Series to store entries in order of the stream.
+     * @param consumed Supplier of bytes which are read from the file.
+     * @param progress Consumer of bytes which are read from the file and
+     *                  decoded.
+     * @param completeLinesOnly true if the last line which does not end
+     *                           with line separator should not be parsed.
+     * @param invalidLineHandler Handler of errors of invalid lines, or null
+     *                            if parsing should be stopped at invalid
+     *                            line.
+     * @return Number of bytes which are parsed.
+     * @throws IOException
+     */
+    private long parse(InputStream in, String logdir, LogSeries result, LongSupplier consumed, LongConsumer progress, boolean completeLinesOnly,
+                       Consumer<RuntimeException> invalidLineHandler) throws IOException {
+        Deque<CompletableFuture<Chunk>> inFlight = new ArrayDeque<>();
+        byte[] buf = new byte[CHUNK_SIZE];
+        int carry = 0;
+        long parsed = 0;
+        long reported = 0;
+
+        while (true) {
+            int length = readFully(in, buf, carry);
+            boolean eof = length < buf.length;
+
+            if (length == 0) {
+                break;
+            }
+
+            int split = length;
+            if (!eof || completeLinesOnly) {
+                while ((split > 0) && (buf[split - 1] != '\n')) {
+                    split--;
+                }
+
+                if ((split == 0) && !eof) {
+                    /* Line is longer than buffer. */
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    carry = length;
+                    continue;
+                }
+
+            }
+
+            if (split > 0) {
+                byte[] chunk = buf;
+                int chunkLength = split;
+                long chunkConsumed = consumed.getAsLong();
+                inFlight.addLast(CompletableFuture.supplyAsync(() -> decode(chunk, chunkLength, logdir, chunkConsumed, invalidLineHandler != null)));
+                parsed += split;
+            }
+
+            if (eof) {
+                break;
+            }
+
+            byte[] next = new byte[CHUNK_SIZE];
+            carry = length - split;
+            System.arraycopy(buf, split, next, 0, carry);
+            buf = next;
+
+            while (inFlight.size() > MAX_IN_FLIGHT) {
+                reported = merge(inFlight, result, progress, reported, invalidLineHandler);
+            }
+
+        }
+
+        while (!inFlight.isEmpty()) {
+            reported = merge(inFlight, result, progress, reported, invalidLineHandler);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Parse resource log.
+     * gzip and BGZF compressed log is decompressed transparently.
+     * If invalid line is found, entries before the line are stored to
+     * result, and IllegalArgumentException is thrown.
+     *
+     * @param path Path to resource log.
+     * @param result Series to store entries in order of the file.
+     * @param progress Consumer of bytes which are decoded. They are counted
+     *                  in bytes of the file, even if it is compressed.
+     * @throws IOException
+     */
+    public void parse(Path path, LogSeries result, LongConsumer progress) throws IOException {
+        AtomicLong consumed = new AtomicLong();
+
+        try (InputStream in = CompressedFiles.newInputStream(path, consumed::addAndGet)) {
+            parse(in, path.toAbsolutePath().getParent().toString(), result, consumed::get, progress, false, null);
+        }
+
+    }
+
+    /**
+     * Parse lines which are appended to resource log.
+     * Only lines which end with line separator are parsed, so the line
+     * which is being written is parsed in next call. Resource log must not
+     * be compressed. Invalid lines are skipped and passed to the handler,
+     * so returned offset always moves past them.
+     *
+     * @param path Path to resource log.
+     * @param offset Start offset in the file. This value should be the
+     *                result of previous call, or 0 at first.
+     * @param result Series to store appended entries.
+     * @param invalidLineHandler Handler of errors of invalid lines.
+     * @return Offset of the next line which is not parsed yet.
+     * @throws IOException
+     */
+    public long parseAppended(Path path, long offset, LogSeries result, Consumer<RuntimeException> invalidLineHandler) throws IOException {
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ch.position(offset);
+            return offset + parse(Channels.newInputStream(ch), path.toAbsolutePath().getParent().toString(), result, () -> 0L, p -> {}, true,
+                                  Objects.requireNonNull(invalidLineHandler));
+        }
+
+    }
+
+}
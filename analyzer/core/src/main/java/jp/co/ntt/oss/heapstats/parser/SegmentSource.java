@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.IOException;
+
+/**
+ * Source of decoded segments for {@link SegmentedSnapShotInput}.
+ * Original file is split into contiguous segments, and each segment can be
+ * decoded independently. Source is shared between duplicated inputs, so it
+ * is reference counted.
+ */
+interface SegmentSource {
+
+    /**
+     * Get size of original file.
+     *
+     * @return Size in bytes.
+     */
+    long size();
+
+    /**
+     * Find segment which contains the position.
+     *
+     * @param position Position in original file.
+     * @return Index of segment, or -1 if position is out of range.
+     */
+    int find(long position);
+
+    /**
+     * Get offset of segment in original file.
+     *
+     * @param index Index of segment.
+     * @return Offset of the segment.
+     */
+    long getOffset(int index);
+
+    /**
+     * Get decoded bytes of segment.
+     *
+     * @param index Index of segment.
+     * @return Bytes of the segment in original file.
+     * @throws IOException
+     */
+    byte[] decode(int index) throws IOException;
+
+    /**
+     * Add reference of this source.
+     *
+     * @return This source.
+     */
+    SegmentSource retain();
+
+    /**
+     * Release reference of this source.
+     * Underlying file is closed when all references are released.
+     *
+     * @throws IOException
+     */
+    void release() throws IOException;
+
+}
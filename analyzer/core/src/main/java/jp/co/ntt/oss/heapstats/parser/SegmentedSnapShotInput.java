@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SnapShot input which reads decoded segments of the file.
+ * This input restores original SnapShot file from {@link SegmentSource},
+ * so positions in this input are positions in original file. Each segment
+ * is decoded when it is accessed.
+ */
+public class SegmentedSnapShotInput implements SnapShotInput {
+
+    private final SegmentSource source;
+
+    private final byte[] work;
+
+    private ByteOrder order;
+
+    private long position;
+
+    /** Decoded segment which is accessed at last. */
+    private ByteBuffer segment;
+
+    /** Position of the top of segment. */
+    private long segmentPosition;
+
+    /**
+     * Constructor of SegmentedSnapShotInput.
+     *
+     * @param source Opened segment source. Its reference is released when
+     *                this input is closed.
+     */
+    SegmentedSnapShotInput(SegmentSource source) {
+        this.source = source;
+        this.work = new byte[8];
+        this.order = ByteOrder.BIG_ENDIAN;
+        this.position = 0;
+        this.segment = null;
+        this.segmentPosition = 0;
+    }
+
+    /**
+     * Load segment which contains current position.
+     *
+     * @param required Required bytes.
+     * @return true if the segment has required bytes at current position.
+     * @throws IOException
+     */
+    private boolean load(int required) throws IOException {
+
+        if ((segment == null) || (position < segmentPosition) || (position >= segmentPosition + segment.capacity())) {
+            int index = source.find(position);
+
+            if (index == -1) {
+                return false;
+            }
+
+            segment = ByteBuffer.wrap(source.decode(index)).order(order);
+            segmentPosition = source.getOffset(index);
+        }
+
+        return position + required <= segmentPosition + segment.capacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void order(ByteOrder order) {
+        this.order = order;
+
+        if (segment != null) {
+            segment.order(order);
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Size of restored SnapShot file is returned.
+     */
+    @Override
+    public long size() {
+        return source.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRawFile() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void position(long newPosition) {
+        position = newPosition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+
+        if (!load(1)) {
+            return -1;
+        }
+
+        return Byte.toUnsignedInt(segment.get((int) (position++ - segmentPosition)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] dst, int off, int len) throws IOException {
+        int total = 0;
+
+        while ((total < len) && load(1)) {
+            int start = (int) (position - segmentPosition);
+            int n = Math.min(len - total, segment.capacity() - start);
+
+            System.arraycopy(segment.array(), start, dst, off + total, n);
+            position += n;
+            total += n;
+        }
+
+        return total;
+    }
+
+    /**
+     * Read bytes which may be across segments.
+     *
+     * @param len Bytes to read.
+     * @return Buffer which contains read bytes.
+     * @throws IOException
+     */
+    private ByteBuffer readAcross(int len) throws IOException {
+
+        if (read(work, 0, len) != len) {
+            throw new EOFException();
+        }
+
+        return ByteBuffer.wrap(work, 0, len).order(order);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLong() throws IOException {
+
+        if (!load(8)) {
+            return readAcross(8).getLong();
+        }
+
+        long result = segment.getLong((int) (position - segmentPosition));
+        position += 8;
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt() throws IOException {
+
+        if (!load(4)) {
+            return readAcross(4).getInt();
+        }
+
+        int result = segment.getInt((int) (position - segmentPosition));
+        position += 4;
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * New input shares decoded segments with this input.
+     */
+    @Override
+    public SnapShotInput duplicate() {
+        SegmentedSnapShotInput result = new SegmentedSnapShotInput(source.retain());
+        result.order(order);
+        result.position(position);
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        source.release();
+    }
+
+}
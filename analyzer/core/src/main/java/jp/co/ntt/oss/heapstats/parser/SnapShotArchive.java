@@ -0,0 +1,594 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Compact archive of SnapShots.
+ * <p>
+ * Archive stores dictionary of classes (tag, name and class loader) once,
+ * and each SnapShot is stored as record which contains differences from
+ * previous SnapShot. Every {@code keyframeInterval} SnapShots, record is
+ * stored as keyframe which does not depend on previous records. Archive
+ * is read through {@link SegmentedSnapShotInput}, which restores original
+ * bytes of SnapShot file. Each SnapShot is one segment.
+ * </p>
+ * <pre>
+ * archive := "HSSA" version:int record* footer footerOffset:long
+ * record  := rawLength:int compressedLength:int deflated bytes
+ * footer  := keyframeInterval:int
+ *            numClasses:int (tag:long nameLength:int name classLoader:long classLoaderTag:long)*
+ *            numSnapShots:int (recordOffset:long length:long)*
+ * </pre>
+ * <p>
+ * Raw record is a sequence of varints. Signed values are encoded by
+ * ZigZag encoding.
+ * </p>
+ * <pre>
+ * record  := headerLength header entry*
+ * entry   := (id - predicted id) (count - previous count) (size - previous size)
+ *            [numChildren child* terminatorInstances terminatorSize]
+ * child   := (tag, instances and size - values at same position in previous children)
+ * </pre>
+ * <p>
+ * Predicted id is id at the same position in previous SnapShot. "previous"
+ * values are values of the same class in the latest SnapShot since last
+ * keyframe, or 0.
+ * </p>
+ */
+public class SnapShotArchive implements SegmentSource {
+
+    /** Magic number of archive. */
+    public static final byte[] MAGIC = {'H', 'S', 'S', 'A'};
+
+    /** Version of archive format. */
+    public static final int VERSION = 1;
+
+    /** Default interval of keyframes. */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 16;
+
+    /** Number of decoded SnapShots which are cached. */
+    private static final int CACHE_SIZE = 8;
+
+    /** Offset of number of entries in SnapShot header. */
+    private static final int NUM_ENTRIES_OFFSET = 10;
+
+    /** Format version of the snapshot file which has child class information. */
+    static final int FILE_FORMAT_HAVE_CHILD = 60;
+
+    private final FileChannel ch;
+
+    private final AtomicInteger refCount;
+
+    private final int keyframeInterval;
+
+    private final long[] tags;
+
+    private final byte[][] names;
+
+    private final long[] classLoaders;
+
+    private final long[] classLoaderTags;
+
+    private final long[] recordOffsets;
+
+    /** Offset of each SnapShot in restored SnapShot file. */
+    private final long[] offsets;
+
+    private final int[] lengths;
+
+    private final long size;
+
+    /** Decoded SnapShots. */
+    private final Map<Integer, byte[]> cache;
+
+    /** Decoding states which can be reused, keyed by keyframe group. */
+    private final Map<Integer, DeltaState> states;
+
+    /**
+     * State of delta encoding.
+     * This state holds previous values of each class since last keyframe.
+     */
+    static class DeltaState {
+
+        int[] ids;
+
+        int numIds;
+
+        long[] counts;
+
+        long[] sizes;
+
+        long[][] children;
+
+        /** Index of SnapShot which should be decoded next. */
+        int next;
+
+        /**
+         * Constructor of DeltaState.
+         *
+         * @param numClasses Expected number of classes.
+         */
+        DeltaState(int numClasses) {
+            int capacity = Math.max(numClasses, 16);
+
+            ids = new int[capacity];
+            numIds = 0;
+            counts = new long[capacity];
+            sizes = new long[capacity];
+            children = new long[capacity][];
+            next = 0;
+        }
+
+        /**
+         * Reset state for keyframe.
+         *
+         * @param keyframe Index of keyframe.
+         */
+        void reset(int keyframe) {
+            numIds = 0;
+            Arrays.fill(counts, 0L);
+            Arrays.fill(sizes, 0L);
+            Arrays.fill(children, null);
+            next = keyframe;
+        }
+
+        /**
+         * Ensure arrays can hold the class id.
+         *
+         * @param id Class id.
+         */
+        void ensure(int id) {
+
+            if (id >= counts.length) {
+                int capacity = Math.max(counts.length * 2, id + 1);
+                counts = Arrays.copyOf(counts, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+
+        }
+
+        /**
+         * Get predicted id of the entry.
+         *
+         * @param entry Index of entry in the SnapShot.
+         * @param lastId Id of previous entry in the SnapShot.
+         * @return Predicted id.
+         */
+        int predict(int entry, int lastId) {
+            return (entry < numIds) ? ids[entry] : (lastId + 1);
+        }
+
+    }
+
+    /**
+     * Constructor of SnapShotArchive.
+     *
+     * @param path Archive file.
+     * @throws IOException
+     */
+    private SnapShotArchive(Path path) throws IOException {
+        ch = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer trailer = readFully(ch.size() - 8, 8);
+            long footerOffset = trailer.getLong();
+            ByteBuffer footer = readFully(footerOffset, (int) (ch.size() - 8 - footerOffset));
+
+            keyframeInterval = footer.getInt();
+
+            int numClasses = footer.getInt();
+            tags = new long[numClasses];
+            names = new byte[numClasses][];
+            classLoaders = new long[numClasses];
+            classLoaderTags = new long[numClasses];
+            for (int i = 0; i < numClasses; i++) {
+                tags[i] = footer.getLong();
+                names[i] = new byte[footer.getInt()];
+                footer.get(names[i]);
+                classLoaders[i] = footer.getLong();
+                classLoaderTags[i] = footer.getLong();
+            }
+
+            int numSnapShots = footer.getInt();
+            recordOffsets = new long[numSnapShots];
+            offsets = new long[numSnapShots];
+            lengths = new int[numSnapShots];
+            long offset = 0;
+            for (int i = 0; i < numSnapShots; i++) {
+                recordOffsets[i] = footer.getLong();
+                offsets[i] = offset;
+                lengths[i] = (int) footer.getLong();
+                offset += lengths[i];
+            }
+            size = offset;
+        }
+        catch (IOException | RuntimeException e) {
+            ch.close();
+            throw (e instanceof IOException) ? (IOException) e : new IOException("Invalid SnapShot archive: " + path, e);
+        }
+
+        refCount = new AtomicInteger(1);
+        cache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true);
+        states = new LinkedHashMap<>();
+    }
+
+    /**
+     * Open SnapShot archive.
+     *
+     * @param path Archive file.
+     * @return Opened archive.
+     * @throws IOException
+     */
+    static SnapShotArchive open(Path path) throws IOException {
+        return new SnapShotArchive(path);
+    }
+
+    /**
+     * Check whether the file is SnapShot archive.
+     *
+     * @param path File to check.
+     * @return true if the file starts with magic number of archive.
+     * @throws IOException
+     */
+    public static boolean isArchive(Path path) throws IOException {
+
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+
+            while (magic.hasRemaining() && (fc.read(magic) != -1)) {
+                /* Read until magic is filled */
+            }
+
+            return !magic.hasRemaining() && Arrays.equals(magic.array(), MAGIC);
+        }
+
+    }
+
+    /**
+     * Read bytes from the archive file.
+     *
+     * @param position File position.
+     * @param length Bytes to read.
+     * @return Buffer which contains read bytes.
+     * @throws IOException
+     */
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) == -1) {
+                throw new IOException("SnapShot archive is truncated.");
+            }
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SnapShotArchive retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void release() throws IOException {
+
+        if (refCount.decrementAndGet() == 0) {
+            ch.close();
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get number of SnapShots in this archive.
+     *
+     * @return Number of SnapShots.
+     */
+    int getNumSnapShots() {
+        return offsets.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int find(long position) {
+
+        if ((position < 0) || (position >= size)) {
+            return -1;
+        }
+
+        int index = Arrays.binarySearch(offsets, position);
+        return (index >= 0) ? index : (-index - 2);
+    }
+
+    /**
+     * {@inheritDoc}
+     * SnapShot is decoded from the nearest state of its keyframe group.
+     */
+    @Override
+    public byte[] decode(int index) throws IOException {
+        byte[] result;
+
+        synchronized (cache) {
+            result = cache.get(index);
+        }
+
+        if (result != null) {
+            return result;
+        }
+
+        int group = index / keyframeInterval;
+        DeltaState state;
+
+        synchronized (states) {
+            state = states.remove(group);
+        }
+
+        if ((state == null) || (state.next > index)) {
+            state = (state == null) ? new DeltaState(tags.length) : state;
+            state.reset(group * keyframeInterval);
+        }
+
+        while (state.next <= index) {
+            result = decodeRecord(state.next, state);
+            state.next++;
+
+            synchronized (cache) {
+                cache.put(state.next - 1, result);
+
+                Iterator<byte[]> itr = cache.values().iterator();
+                while (cache.size() > CACHE_SIZE) {
+                    itr.next();
+                    itr.remove();
+                }
+
+            }
+
+        }
+
+        synchronized (states) {
+            states.put(group, state);
+
+            Iterator<DeltaState> itr = states.values().iterator();
+            while (states.size() > Runtime.getRuntime().availableProcessors()) {
+                itr.next();
+                itr.remove();
+            }
+
+        }
+
+        return result;
+    }
+
+    /**
+     * Decode the record.
+     *
+     * @param index Index of SnapShot.
+     * @param state Delta state which is updated by this record.
+     * @return Bytes of SnapShot in original SnapShot file.
+     * @throws IOException
+     */
+    private byte[] decodeRecord(int index, DeltaState state) throws IOException {
+        ByteBuffer recordHeader = readFully(recordOffsets[index], 8);
+        int rawLength = recordHeader.getInt();
+        byte[] compressed = readFully(recordOffsets[index] + 8, recordHeader.getInt()).array();
+        byte[] raw = new byte[rawLength];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            if (inflater.inflate(raw) != rawLength) {
+                throw new IOException("SnapShot archive record " + index + " is corrupted.");
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("SnapShot archive record " + index + " is corrupted.", e);
+        }
+        finally {
+            inflater.end();
+        }
+
+        try {
+            return restore(index, raw, state);
+        }
+        catch (IndexOutOfBoundsException | BufferOverflowException | NegativeArraySizeException e) {
+            throw new IOException("SnapShot archive record " + index + " is corrupted.", e);
+        }
+
+    }
+
+    /**
+     * Restore bytes of SnapShot from raw record.
+     *
+     * @param index Index of SnapShot.
+     * @param raw Raw record.
+     * @param state Delta state which is updated by this record.
+     * @return Bytes of SnapShot in original SnapShot file.
+     * @throws IOException
+     */
+    private byte[] restore(int index, byte[] raw, DeltaState state) throws IOException {
+        VarIntReader in = new VarIntReader(raw);
+        ByteBuffer out = ByteBuffer.allocate(lengths[index]);
+
+        byte[] header = new byte[(int) in.next()];
+        in.get(header);
+        out.put(header);
+
+        ByteOrder order = (header[1] == 'L') ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        out.order(order);
+        boolean haveChild = Byte.toUnsignedInt(header[0]) >= FILE_FORMAT_HAVE_CHILD;
+        long numEntries = ByteBuffer.wrap(header, NUM_ENTRIES_OFFSET, 8).order(order).getLong();
+
+        int[] ids = new int[(int) numEntries];
+        int lastId = -1;
+
+        for (int e = 0; e < numEntries; e++) {
+            long predicted = state.predict(e, lastId) + in.nextSigned();
+
+            if ((predicted < 0) || (predicted >= tags.length)) {
+                throw new IOException("SnapShot archive record " + index + " is corrupted.");
+            }
+
+            int id = (int) predicted;
+            long count = state.counts[id] + in.nextSigned();
+            long totalSize = state.sizes[id] + in.nextSigned();
+
+            ids[e] = id;
+            lastId = id;
+            state.counts[id] = count;
+            state.sizes[id] = totalSize;
+
+            out.putLong(tags[id]);
+            out.putLong(names[id].length);
+            out.put(names[id]);
+            if (haveChild) {
+                out.putLong(classLoaders[id]);
+                out.putLong(classLoaderTags[id]);
+            }
+            out.putLong(count);
+            out.putLong(totalSize);
+
+            if (haveChild) {
+                long[] prev = state.children[id];
+                long[] current = new long[(int) in.next() * 3];
+
+                for (int i = 0; i < current.length; i++) {
+                    current[i] = (((prev != null) && (i < prev.length)) ? prev[i] : 0L) + in.nextSigned();
+                    out.putLong(current[i]);
+                }
+
+                out.putLong(-1L);
+                out.putLong(in.nextSigned());
+                out.putLong(in.nextSigned());
+                state.children[id] = current;
+            }
+
+        }
+
+        state.ids = ids;
+        state.numIds = ids.length;
+
+        if (out.hasRemaining()) {
+            throw new IOException("SnapShot archive record " + index + " is corrupted.");
+        }
+
+        return out.array();
+    }
+
+    /**
+     * Reader of varints in raw record.
+     */
+    static class VarIntReader {
+
+        private final byte[] buf;
+
+        private int pos;
+
+        /**
+         * Constructor of VarIntReader.
+         *
+         * @param buf Raw record.
+         */
+        VarIntReader(byte[] buf) {
+            this.buf = buf;
+            this.pos = 0;
+        }
+
+        /**
+         * Read unsigned varint.
+         *
+         * @return Value.
+         */
+        long next() {
+            long result = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                b = buf[pos++];
+                result |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            return result;
+        }
+
+        /**
+         * Read ZigZag encoded varint.
+         *
+         * @return Value.
+         */
+        long nextSigned() {
+            long v = next();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        /**
+         * Read bytes.
+         *
+         * @param dst Destination array.
+         */
+        void get(byte[] dst) {
+            System.arraycopy(buf, pos, dst, 0, dst.length);
+            pos += dst.length;
+        }
+
+    }
+
+}
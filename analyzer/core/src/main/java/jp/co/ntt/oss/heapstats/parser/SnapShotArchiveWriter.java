@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+
+/**
+ * Writer of {@link SnapShotArchive}.
+ * SnapShots are read as raw bytes from SnapShot input, so restored
+ * SnapShot file is the same as original one.
+ * If adding SnapShot failed, or the writer is aborted, footer is not
+ * written and the archive file is deleted at {@link #close()}.
+ */
+public class SnapShotArchiveWriter implements Closeable {
+
+    private final Path path;
+
+    private final DataOutputStream out;
+
+    private final int keyframeInterval;
+
+    private final Map<ClassKey, Integer> dictionary;
+
+    private final List<ClassKey> classes;
+
+    private final List<long[]> snapShots;
+
+    private final SnapShotArchive.DeltaState state;
+
+    private final Deflater deflater;
+
+    private long position;
+
+    private byte[] compressBuffer;
+
+    private boolean aborted;
+
+    /**
+     * Key of class dictionary.
+     */
+    private static class ClassKey {
+
+        private final long tag;
+
+        private final byte[] name;
+
+        private final long classLoader;
+
+        private final long classLoaderTag;
+
+        /**
+         * Constructor of ClassKey.
+         *
+         * @param tag Class tag.
+         * @param name Class name in SnapShot file.
+         * @param classLoader Class loader id.
+         * @param classLoaderTag Class tag of class loader.
+         */
+        public ClassKey(long tag, byte[] name, long classLoader, long classLoaderTag) {
+            this.tag = tag;
+            this.name = name;
+            this.classLoader = classLoader;
+            this.classLoaderTag = classLoaderTag;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return ((Long.hashCode(tag) * 31 + Arrays.hashCode(name)) * 31 + Long.hashCode(classLoader)) * 31 + Long.hashCode(classLoaderTag);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+
+            if (!(obj instanceof ClassKey)) {
+                return false;
+            }
+
+            ClassKey other = (ClassKey) obj;
+            return (tag == other.tag) && (classLoader == other.classLoader) &&
+                   (classLoaderTag == other.classLoaderTag) && Arrays.equals(name, other.name);
+        }
+
+    }
+
+    /**
+     * Writer of varints.
+     */
+    private static class VarIntWriter {
+
+        private byte[] buf;
+
+        private int pos;
+
+        /**
+         * Constructor of VarIntWriter.
+         *
+         * @param capacity Initial capacity.
+         */
+        public VarIntWriter(int capacity) {
+            buf = new byte[Math.max(capacity, 64)];
+            pos = 0;
+        }
+
+        /**
+         * Ensure capacity of buffer.
+         *
+         * @param required Bytes to be appended.
+         */
+        private void ensure(int required) {
+            if (pos + required > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + required));
+            }
+        }
+
+        /**
+         * Write unsigned varint.
+         *
+         * @param value Value.
+         */
+        public void put(long value) {
+            ensure(10);
+
+            while ((value & ~0x7fL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+
+            buf[pos++] = (byte) value;
+        }
+
+        /**
+         * Write ZigZag encoded varint.
+         *
+         * @param value Value.
+         */
+        public void putSigned(long value) {
+            put((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Write bytes.
+         *
+         * @param bytes Bytes to write.
+         */
+        public void put(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+    }
+
+    /**
+     * Constructor of SnapShotArchiveWriter.
+     *
+     * @param path Archive file to write.
+     * @param keyframeInterval Interval of keyframes.
+     * @throws IOException
+     */
+    public SnapShotArchiveWriter(Path path, int keyframeInterval) throws IOException {
+
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        }
+
+        this.path = path;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        this.keyframeInterval = keyframeInterval;
+        this.dictionary = new HashMap<>();
+        this.classes = new ArrayList<>();
+        this.snapShots = new ArrayList<>();
+        this.state = new SnapShotArchive.DeltaState(0);
+        this.deflater = new Deflater();
+        this.compressBuffer = new byte[64 * 1024];
+        this.aborted = false;
+
+        out.write(SnapShotArchive.MAGIC);
+        out.writeInt(SnapShotArchive.VERSION);
+        position = SnapShotArchive.MAGIC.length + 4;
+    }
+
+    /**
+     * Constructor of SnapShotArchiveWriter.
+     * {@link SnapShotArchive#DEFAULT_KEYFRAME_INTERVAL} is used as interval
+     * of keyframes.
+     *
+     * @param path Archive file to write.
+     * @throws IOException
+     */
+    public SnapShotArchiveWriter(Path path) throws IOException {
+        this(path, SnapShotArchive.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * Get id of the class.
+     * Class is registered to dictionary if it is not found.
+     *
+     * @param key Class key.
+     * @return Class id.
+     */
+    private int getId(ClassKey key) {
+        Integer id = dictionary.get(key);
+
+        if (id == null) {
+            id = classes.size();
+            dictionary.put(key, id);
+            classes.add(key);
+        }
+
+        return id;
+    }
+
+    /**
+     * Add SnapShot to this archive.
+     *
+     * @param input Input of SnapShot file which contains the header.
+     * @param header Header of SnapShot to add.
+     * @throws IOException
+     */
+    public void add(SnapShotInput input, SnapShotHeader header) throws IOException {
+
+        if (aborted) {
+            throw new IllegalStateException("SnapShot archive writer is aborted.");
+        }
+
+        boolean succeeded = false;
+
+        try {
+            byte[] raw = new byte[(int) header.getSnapShotSize()];
+
+            input.position(header.getFileOffset());
+            if (input.read(raw, 0, raw.length) != raw.length) {
+                throw new IOException("SnapShot at " + header.getFileOffset() + " is truncated.");
+            }
+
+            write(encode(raw, header));
+            succeeded = true;
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("SnapShot at " + header.getFileOffset() + " is truncated.", e);
+        }
+        finally {
+            if (!succeeded) {
+                aborted = true;
+            }
+        }
+
+    }
+
+    /**
+     * Abort writing this archive.
+     * Footer is not written, and archive file is deleted at
+     * {@link #close()}.
+     */
+    public void abort() {
+        aborted = true;
+    }
+
+    /**
+     * Encode SnapShot to raw record.
+     *
+     * @param raw Bytes of SnapShot in SnapShot file.
+     * @param header Header of SnapShot.
+     * @return Raw record.
+     * @throws IOException
+     */
+    private VarIntWriter encode(byte[] raw, SnapShotHeader header) throws IOException {
+        int index = snapShots.size();
+
+        if (index % keyframeInterval == 0) {
+            state.reset(index);
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(raw).order(header.getByteOrderMark());
+        boolean haveChild = header.getSnapShotType() >= SnapShotArchive.FILE_FORMAT_HAVE_CHILD;
+        int headerSize = (int) header.getSnapShotHeaderSize();
+        VarIntWriter record = new VarIntWriter(raw.length / 4);
+
+        record.put(headerSize);
+        record.put(Arrays.copyOf(raw, headerSize));
+        buf.position(headerSize);
+
+        int[] ids = new int[(int) header.getNumEntries()];
+        int lastId = -1;
+
+        for (int e = 0; e < ids.length; e++) {
+            long tag = buf.getLong();
+            byte[] name = new byte[(int) buf.getLong()];
+            buf.get(name);
+            long classLoader = haveChild ? buf.getLong() : 0L;
+            long classLoaderTag = haveChild ? buf.getLong() : 0L;
+            long count = buf.getLong();
+            long totalSize = buf.getLong();
+
+            int id = getId(new ClassKey(tag, name, classLoader, classLoaderTag));
+            state.ensure(id);
+
+            record.putSigned(id - state.predict(e, lastId));
+            record.putSigned(count - state.counts[id]);
+            record.putSigned(totalSize - state.sizes[id]);
+
+            ids[e] = id;
+            lastId = id;
+            state.counts[id] = count;
+            state.sizes[id] = totalSize;
+
+            if (haveChild) {
+                long[] prev = state.children[id];
+                long[] current = new long[48];
+                int numValues = 0;
+
+                while (true) {
+                    long childTag = buf.getLong();
+                    long instances = buf.getLong();
+                    long childSize = buf.getLong();
+
+                    if (childTag == -1) {
+                        record.put(numValues / 3);
+
+                        for (int i = 0; i < numValues; i++) {
+                            record.putSigned(current[i] - (((prev != null) && (i < prev.length)) ? prev[i] : 0L));
+                        }
+
+                        record.putSigned(instances);
+                        record.putSigned(childSize);
+                        break;
+                    }
+
+                    if (numValues + 3 > current.length) {
+                        current = Arrays.copyOf(current, current.length * 2);
+                    }
+                    current[numValues++] = childTag;
+                    current[numValues++] = instances;
+                    current[numValues++] = childSize;
+                }
+
+                state.children[id] = Arrays.copyOf(current, numValues);
+            }
+
+        }
+
+        if (buf.hasRemaining()) {
+            throw new IOException("SnapShot at " + header.getFileOffset() + " has unknown data.");
+        }
+
+        state.ids = ids;
+        state.numIds = ids.length;
+        snapShots.add(new long[]{position, raw.length});
+
+        return record;
+    }
+
+    /**
+     * Compress and write raw record.
+     *
+     * @param record Raw record.
+     * @throws IOException
+     */
+    private void write(VarIntWriter record) throws IOException {
+        deflater.reset();
+        deflater.setInput(record.buf, 0, record.pos);
+        deflater.finish();
+
+        int len = 0;
+        while (!deflater.finished()) {
+            if (len == compressBuffer.length) {
+                compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+            }
+            len += deflater.deflate(compressBuffer, len, compressBuffer.length - len);
+        }
+
+        out.writeInt(record.pos);
+        out.writeInt(len);
+        out.write(compressBuffer, 0, len);
+        position += 8 + len;
+    }
+
+    /**
+     * Write footer and close the archive.
+     * If this writer is aborted, archive file is deleted instead.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (aborted) {
+            try {
+                deflater.end();
+                out.close();
+            }
+            finally {
+                Files.deleteIfExists(path);
+            }
+            return;
+        }
+
+        try {
+            long footerOffset = position;
+
+            out.writeInt(keyframeInterval);
+
+            out.writeInt(classes.size());
+            for (ClassKey key : classes) {
+                out.writeLong(key.tag);
+                out.writeInt(key.name.length);
+                out.write(key.name);
+                out.writeLong(key.classLoader);
+                out.writeLong(key.classLoaderTag);
+            }
+
+            out.writeInt(snapShots.size());
+            for (long[] snapShot : snapShots) {
+                out.writeLong(snapShot[0]);
+                out.writeLong(snapShot[1]);
+            }
+
+            out.writeLong(footerOffset);
+        }
+        finally {
+            deflater.end();
+            out.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+
+/**
+ * Sidecar index of SnapShot file.
+ * This index is stored as "&lt;SnapShot file&gt;.hsidx", and holds all
+ * SnapShot headers which have been parsed from the SnapShot file.
+ * HeapStats agent appends SnapShot to the file, so the index is still usable
+ * if the file has grown. In that case, only appended SnapShots should be
+ * scanned from {@link #getIndexedSize()}.
+ */
+public class SnapShotIndex {
+
+    /** Suffix of index file. */
+    public static final String INDEX_SUFFIX = ".hsidx";
+
+    /** "HSIX" */
+    private static final int MAGIC = 0x48534958;
+
+    private static final int VERSION = 1;
+
+    /** Size of sampling area to calculate checksum of SnapShot file. */
+    private static final int SAMPLE_SIZE = 4096;
+
+    private final Path snapshotFile;
+
+    private final long lastModified;
+
+    private final long indexedSize;
+
+    private final long sampleChecksum;
+
+    private final List<SnapShotHeader> headers;
+
+    /**
+     * Constructor of SnapShotIndex.
+     *
+     * @param snapshotFile SnapShot file of this index.
+     * @param lastModified Last modified time of SnapShot file.
+     * @param indexedSize Size of SnapShot file which is covered by this index.
+     * @param sampleChecksum Checksum of SnapShot file.
+     * @param headers SnapShot headers in this index.
+     */
+    private SnapShotIndex(Path snapshotFile, long lastModified, long indexedSize, long sampleChecksum, List<SnapShotHeader> headers) {
+        this.snapshotFile = snapshotFile;
+        this.lastModified = lastModified;
+        this.indexedSize = indexedSize;
+        this.sampleChecksum = sampleChecksum;
+        this.headers = headers;
+    }
+
+    /**
+     * Get path of index file.
+     *
+     * @param snapshotFile SnapShot file.
+     * @return Path of index file.
+     */
+    public static Path getIndexFile(Path snapshotFile) {
+        return snapshotFile.resolveSibling(snapshotFile.getFileName().toString() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Calculate checksum of SnapShot file.
+     * Head and tail of indexed area are used for checksum.
+     *
+     * @param snapshotFile SnapShot file.
+     * @param size Size of indexed area.
+     * @return Checksum.
+     * @throws IOException
+     */
+    private static long calculateSampleChecksum(Path snapshotFile, long size) throws IOException {
+        CRC32 crc = new CRC32();
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile.toFile(), "r")) {
+            byte[] buf = new byte[(int) Math.min(SAMPLE_SIZE, size)];
+
+            file.readFully(buf);
+            crc.update(buf);
+
+            file.seek(size - buf.length);
+            file.readFully(buf);
+            crc.update(buf);
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Create index from SnapShot headers.
+     * All headers must be in the SnapShot file, and must be parsed completely.
+     *
+     * @param snapshotFile SnapShot file.
+     * @param headers SnapShot headers which are parsed from snapshotFile.
+     * @return Index of SnapShot file.
+     * @throws IOException
+     */
+    public static SnapShotIndex create(Path snapshotFile, List<SnapShotHeader> headers) throws IOException {
+        List<SnapShotHeader> sorted = new ArrayList<>(headers);
+        sorted.sort((h1, h2) -> Long.compare(h1.getFileOffset(), h2.getFileOffset()));
+        long indexedSize = sorted.isEmpty() ? 0
+                                            : sorted.get(sorted.size() - 1).getFileOffset() + sorted.get(sorted.size() - 1).getSnapShotSize();
+
+        return new SnapShotIndex(snapshotFile, Files.getLastModifiedTime(snapshotFile).toMillis(),
+                indexedSize, calculateSampleChecksum(snapshotFile, indexedSize), sorted);
+    }
+
+    /**
+     * Write header to the stream.
+     *
+     * @param out Stream to write.
+     * @param header Header to write.
+     * @throws IOException
+     */
+    private static void writeHeader(DataOutputStream out, SnapShotHeader header) throws IOException {
+        out.writeByte(header.getSnapShotType());
+        out.writeByte(header.getByteOrderMark() == ByteOrder.LITTLE_ENDIAN ? 'L' : 'B');
+        out.writeLong(header.getSnapShotDateAsLong());
+        out.writeLong(header.getNumEntries());
+        out.writeInt(header.getCause());
+        out.writeUTF(header.getGcCause());
+        out.writeLong(header.getFullCount());
+        out.writeLong(header.getYngCount());
+        out.writeLong(header.getGcTime());
+        out.writeLong(header.getNewHeap());
+        out.writeLong(header.getOldHeap());
+        out.writeLong(header.getTotalCapacity());
+        out.writeLong(header.getMetaspaceUsage());
+        out.writeLong(header.getMetaspaceCapacity());
+        out.writeLong(header.getFileOffset());
+        out.writeLong(header.getSnapShotHeaderSize());
+        out.writeLong(header.getSnapShotSize());
+        out.writeLong(header.getNumInstances());
+    }
+
+    /**
+     * Read header from the stream.
+     *
+     * @param in Stream to read.
+     * @param snapshotFile SnapShot file which contains this header.
+     * @return Header.
+     * @throws IOException
+     */
+    private static SnapShotHeader readHeader(DataInputStream in, Path snapshotFile) throws IOException {
+        SnapShotHeader header = new SnapShotHeader();
+
+        header.setSnapshotFile(snapshotFile);
+        header.setSnapShotType(in.readUnsignedByte());
+        header.setByteOrderMark(in.readUnsignedByte() == 'L' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        header.setSnapShotDateAsLong(in.readLong());
+        header.setNumEntries(in.readLong());
+        header.setCause(in.readInt());
+        header.setGcCause(in.readUTF());
+        header.setFullCount(in.readLong());
+        header.setYngCount(in.readLong());
+        header.setGcTime(in.readLong());
+        header.setNewHeap(in.readLong());
+        header.setOldHeap(in.readLong());
+        header.setTotalCapacity(in.readLong());
+        header.setMetaspaceUsage(in.readLong());
+        header.setMetaspaceCapacity(in.readLong());
+        header.setFileOffset(in.readLong());
+        header.setSnapShotHeaderSize(in.readLong());
+        header.setSnapShotSize(in.readLong());
+        header.setNumInstances(in.readLong());
+
+        return header;
+    }
+
+    /**
+     * Write this index next to the SnapShot file.
+     * Index is written to temporary file at first, and it is moved to
+     * index file.
+     *
+     * @throws IOException
+     */
+    public void write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lastModified);
+            out.writeLong(indexedSize);
+            out.writeLong(sampleChecksum);
+            out.writeInt(headers.size());
+
+            for (SnapShotHeader header : headers) {
+                writeHeader(out, header);
+            }
+
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+
+        Path indexFile = getIndexFile(snapshotFile);
+        Path tmpFile = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName().toString(), ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            bytes.writeTo(out);
+            out.writeLong(crc.getValue());
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load index of SnapShot file.
+     * Index is discarded in following cases:
+     * <ul>
+     * <li>Index file is broken.</li>
+     * <li>SnapShot file is smaller than indexed area.</li>
+     * <li>Head or tail of indexed area is changed.</li>
+     * <li>SnapShot file is modified without growing.</li>
+     * </ul>
+     *
+     * @param snapshotFile SnapShot file.
+     * @return Index of SnapShot file. Empty if index is not available.
+     */
+    public static Optional<SnapShotIndex> load(Path snapshotFile) {
+        Path indexFile = getIndexFile(snapshotFile);
+
+        if (!Files.isRegularFile(indexFile)) {
+            return Optional.empty();
+        }
+
+        try {
+            byte[] bytes;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(indexFile))) {
+                bytes = new byte[(int) Files.size(indexFile)];
+                if ((bytes.length < 8) || (in.read(bytes) != bytes.length)) {
+                    return Optional.empty();
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                in.skipBytes(bytes.length - 8);
+                if (in.readLong() != crc.getValue()) {
+                    return Optional.empty();
+                }
+            }
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8))) {
+
+                if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                    return Optional.empty();
+                }
+
+                long lastModified = in.readLong();
+                long indexedSize = in.readLong();
+                long sampleChecksum = in.readLong();
+                long fileSize = Files.size(snapshotFile);
+                long fileLastModified = Files.getLastModifiedTime(snapshotFile).toMillis();
+
+                if ((fileSize < indexedSize)
+                        || ((fileSize == indexedSize) && (fileLastModified != lastModified))
+                        || (calculateSampleChecksum(snapshotFile, indexedSize) != sampleChecksum)) {
+                    return Optional.empty();
+                }
+
+                int count = in.readInt();
+                List<SnapShotHeader> headers = new ArrayList<>(count);
+
+                for (int i = 0; i < count; i++) {
+                    headers.add(readHeader(in, snapshotFile));
+                }
+
+                return Optional.of(new SnapShotIndex(snapshotFile, lastModified, indexedSize, sampleChecksum, headers));
+            }
+
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+
+    }
+
+    /**
+     * Get SnapShot headers in this index.
+     *
+     * @return SnapShot headers which are sorted by file offset.
+     */
+    public List<SnapShotHeader> getHeaders() {
+        return Collections.unmodifiableList(headers);
+    }
+
+    /**
+     * Get size of SnapShot file which is covered by this index.
+     * SnapShots after this offset have been appended after indexing.
+     *
+     * @return Size of indexed area.
+     */
+    public long getIndexedSize() {
+        return indexedSize;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * Source of SnapShot bytes for {@link SnapShotParser}.
+ * Implementation decides how bytes are fetched from the file.
+ */
+public interface SnapShotInput extends Closeable {
+
+    /**
+     * Set byte order which is used in {@link #getLong()} and {@link #getInt()}.
+     *
+     * @param order Byte order of this SnapShot.
+     */
+    void order(ByteOrder order);
+
+    /**
+     * Get current position in the file.
+     *
+     * @return Current position.
+     * @throws IOException
+     */
+    long position() throws IOException;
+
+    /**
+     * Get size of the file.
+     *
+     * @return File size.
+     * @throws IOException
+     */
+    long size() throws IOException;
+
+    /**
+     * Move to the position in the file.
+     *
+     * @param newPosition New position.
+     * @throws IOException
+     */
+    void position(long newPosition) throws IOException;
+
+    /**
+     * Read one byte.
+     *
+     * @return Unsigned byte value, or -1 if reached EOF.
+     * @throws IOException
+     */
+    int read() throws IOException;
+
+    /**
+     * Read bytes into the array.
+     *
+     * @param dst Destination array.
+     * @param off Offset in dst.
+     * @param len Bytes to read.
+     * @return Read bytes. This value is less than len if reached EOF.
+     * @throws IOException
+     */
+    int read(byte[] dst, int off, int len) throws IOException;
+
+    /**
+     * Read long (8 bytes) value.
+     *
+     * @return Read value.
+     * @throws IOException
+     */
+    long getLong() throws IOException;
+
+    /**
+     * Read int (4 bytes) value.
+     *
+     * @return Read value.
+     * @throws IOException
+     */
+    int getInt() throws IOException;
+
+    /**
+     * Create new input for the same file.
+     * Position and byte order of new input are independent from this input.
+     *
+     * @return New input.
+     * @throws IOException
+     */
+    SnapShotInput duplicate() throws IOException;
+
+    /**
+     * Check whether positions in this input are positions in the file
+     * itself. This is false if the file is compressed or archived.
+     *
+     * @return true if this input reads raw file.
+     */
+    default boolean isRawFile() {
+        return true;
+    }
+
+    /**
+     * Check whether this input can be read only forward efficiently.
+     * Moving backward on such input may restart reading from the top of
+     * the file, so caller should read SnapShots in order of position.
+     *
+     * @return true if random access is expensive.
+     */
+    default boolean isSequential() {
+        return false;
+    }
+
+    /**
+     * Skip bytes.
+     *
+     * @param n Bytes to skip.
+     * @throws IOException
+     */
+    default void skip(long n) throws IOException {
+        position(position() + n);
+    }
+
+}
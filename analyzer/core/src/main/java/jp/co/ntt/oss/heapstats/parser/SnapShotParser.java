@@ -22,15 +22,13 @@
 
 package jp.co.ntt.oss.heapstats.parser;
 
-import java.io.FileInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.FileChannel;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystems;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
 import jp.co.ntt.oss.heapstats.container.snapshot.ChildObjectData;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
@@ -52,65 +50,85 @@ public class SnapShotParser {
     /** Format version of the snapshot file. Have a metaspace information. */
     private static final int FILE_FORMAT_HAVE_CHILD_AND_METASPACE = 61;
     
-    private final ByteBuffer longBuffer;
-    
-    private final ByteBuffer intBuffer;
-    
     /**
-     * Whether JNI style classname should be replaced.
+     * Converter of class name.
+     * JNI style classname is replaced if the parser is created for Java-Style.
+     */
+    private final ClassNameConverter converter;
+
+    /**
+     * Whether SnapShot file should be read through memory-mapped file.
      */
-    private final boolean replace;
+    private final boolean useMappedFile;
 
     /**
      * Constructor of SnapShotParser.
+     * SnapShot file is read through memory-mapped file.
      * 
      * @param replace true if class name should be converted to Java-Style.
      */
     public SnapShotParser(boolean replace) {
-        longBuffer = ByteBuffer.allocate(48);
-        intBuffer = ByteBuffer.allocate(4);
-        this.replace = replace;
+        this(replace, true);
     }
-    
+
     /**
-     * Setter of byte order.
-     * This value is used in parsing of SnapShot file.
+     * Constructor of SnapShotParser.
      * 
-     * @param order byte order of this SnapShot file.
+     * @param replace true if class name should be converted to Java-Style.
+     * @param useMappedFile true if SnapShot file should be mapped to memory.
+     *                       false means SnapShot file is read through
+     *                       buffered FileChannel.
      */
-    private void setByteOrder(ByteOrder order){
-        longBuffer.order(order);
-        intBuffer.order(order);
+    public SnapShotParser(boolean replace, boolean useMappedFile) {
+        this.converter = ClassNameConverter.getInstance(replace);
+        this.useMappedFile = useMappedFile;
     }
-    
+
     /**
-     * Reader of long (8 bytes) value from channel.
+     * Open SnapShot file.
+     * SnapShot archive and compressed SnapShot file (gzip, BGZF) are
+     * detected by their magic numbers, and they are decompressed
+     * transparently.
      * 
-     * @param ch Channel to be read.
-     * @param size Read size.
+     * @param path SnapShot file to open.
+     * @return Input of SnapShot file.
      * @throws IOException 
      */
-    private void readLong(SeekableByteChannel ch, int size) throws IOException{
-        longBuffer.position(0);
-        longBuffer.limit(size);
-        ch.read(longBuffer);
-        longBuffer.flip();
+    public SnapShotInput openInput(Path path) throws IOException {
+
+        if (SnapShotArchive.isArchive(path)) {
+            return new SegmentedSnapShotInput(SnapShotArchive.open(path));
+        }
+
+        CompressedFiles.Compression compression = CompressedFiles.detect(path);
+        if (compression != CompressedFiles.Compression.NONE) {
+            return CompressedFiles.openSnapShotInput(path, compression);
+        }
+
+        return useMappedFile ? new MappedSnapShotInput(path)
+                             : new ChannelSnapShotInput(path);
     }
 
     /**
-     * Reader of int (4 bytes) value from channel.
+     * Open region of SnapShot file which contains one SnapShot.
+     * Only the region is mapped if the file is read through memory-mapped
+     * file. Whole file is opened if the file is compressed or archived, or
+     * if size of the SnapShot is unknown.
      * 
-     * @param ch Channel to be read.
-     * @return read value.
+     * @param header SnapShotHeader to open.
+     * @return Input of SnapShot file.
      * @throws IOException 
      */
-    private int readInt(SeekableByteChannel ch) throws IOException{
-        ch.read(intBuffer);
-        intBuffer.flip();
-        int ret = intBuffer.getInt();
-        intBuffer.flip();
-        
-        return ret;
+    public SnapShotInput openInput(SnapShotHeader header) throws IOException {
+        Path path = header.getSnapshotFile();
+
+        if (!useMappedFile || (header.getSnapShotSize() <= 0) ||
+            SnapShotArchive.isArchive(path) ||
+            (CompressedFiles.detect(path) != CompressedFiles.Compression.NONE)) {
+            return openInput(path);
+        }
+
+        return new MappedSnapShotInput(path, header.getFileOffset(), header.getSnapShotSize());
     }
     
     /**
@@ -122,28 +140,115 @@ public class SnapShotParser {
      */
     public boolean parseSingle(SnapShotHeader header, SnapShotParserEventHandler handler) throws IOException {
 
-        try(FileInputStream stream = new FileInputStream(header.getSnapshotFile().toFile())) {
-            FileChannel ch = stream.getChannel();
-            ch.position(header.getFileOffset() + header.getSnapShotHeaderSize());
-            setByteOrder(header.getByteOrderMark());
+        try(SnapShotInput input = openInput(header)) {
+            return parseSingle(input, header, handler);
+        }
 
-            handler.onStart(header.getFileOffset());
+    }
 
-            if(handler.onNewSnapShot(header, header.getSnapshotFile().toString()) != ParseResult.HEAPSTATS_PARSE_CONTINUE){
-                return false;
+    /**
+     * Parse single SnapShot from opened input.
+     * Input is not closed in this method.
+     * 
+     * @param input Input of SnapShot file which contains header.
+     * @param header SnapShotHeader to parse.
+     * @param handler SnapShot handler.
+     * @return true if parsing is succeeded.
+     * @throws IOException 
+     */
+    public boolean parseSingle(SnapShotInput input, SnapShotHeader header, SnapShotParserEventHandler handler) throws IOException {
+        input.position(header.getFileOffset() + header.getSnapShotHeaderSize());
+        input.order(header.getByteOrderMark());
+
+        handler.onStart(header.getFileOffset());
+
+        if(handler.onNewSnapShot(header, header.getSnapshotFile().toString()) != ParseResult.HEAPSTATS_PARSE_CONTINUE){
+            return false;
+        }
+
+        if(parseElement(input, header, handler) == ParseResult.HEAPSTATS_PARSE_ABORT){
+            return false;
+        }
+
+        return handler.onFinish(input.position()) != ParseResult.HEAPSTATS_PARSE_ABORT;
+    }
+
+    /**
+     * Scan SnapShot headers from current position of input.
+     * Entries are skipped without decoding, so number of instances is not
+     * set to scanned header.
+     * 
+     * @param input Input of SnapShot file.
+     * @param fname Snapshot file name.
+     * @param consumer Consumer of scanned header. Header is passed after
+     *                  its SnapShot size is set.
+     * @throws IOException 
+     */
+    public void scanHeaders(SnapShotInput input, String fname, Consumer<SnapShotHeader> consumer) throws IOException {
+        long fileSize = input.size();
+        SnapShotHeader header;
+
+        while ((header = parseHeader(input, fname)) != null) {
+            skipElement(input, header);
+
+            if (input.position() > fileSize) {
+                throw new EOFException("SnapShot at " + header.getFileOffset() + " is truncated.");
             }
-                    
-            if(parseElement(stream, header, handler) == ParseResult.HEAPSTATS_PARSE_ABORT){
-                return false;
+
+            header.setSnapShotSize(input.position() - header.getFileOffset());
+            consumer.accept(header);
+        }
+
+    }
+
+    /**
+     * Scan complete SnapShot headers from current position of input.
+     * Unlike {@link #scanHeaders(SnapShotInput, String, Consumer)}, the last
+     * SnapShot which is being written is not treated as error. It is not
+     * passed to consumer, and it should be scanned again from returned
+     * position after it is completed.
+     *
+     * @param input Input of raw SnapShot file.
+     * @param fname Snapshot file name.
+     * @param consumer Consumer of scanned header. Header is passed after
+     *                  its SnapShot size is set.
+     * @return Position after the last complete SnapShot.
+     * @throws IOException
+     */
+    public long scanCompleteHeaders(SnapShotInput input, String fname, Consumer<SnapShotHeader> consumer) throws IOException {
+        long fileSize = input.size();
+        long completed = input.position();
+
+        while (completed < fileSize) {
+            SnapShotHeader header;
+
+            try {
+                header = parseHeader(input, fname);
+                skipElement(input, header);
             }
+            catch (EOFException e) {
+                break;
+            }
+            catch (IOException e) {
 
-            if(handler.onFinish(ch.position()) == ParseResult.HEAPSTATS_PARSE_ABORT){
-                return false;
+                /* Short read at the end of file means incomplete SnapShot. */
+                if (input.position() >= fileSize) {
+                    break;
+                }
+
+                throw e;
             }
-                
+
+            if (input.position() > fileSize) {
+                break;
+            }
+
+            header.setSnapShotSize(input.position() - header.getFileOffset());
+            consumer.accept(header);
+            completed = input.position();
         }
 
-        return true;
+        return completed;
     }
 
     /**
@@ -157,27 +262,40 @@ public class SnapShotParser {
      */
     public boolean parse(String fname, SnapShotParserEventHandler handler) throws IOException {
 
-        try(FileInputStream stream = new FileInputStream(fname)) {
-            SnapShotHeader header;
-            FileChannel ch = stream.getChannel();
-            
-            while ((header = parseHeader(stream, fname)) != null) {
-                handler.onStart(header.getFileOffset());
+        try(SnapShotInput input = openInput(Paths.get(fname))) {
+            return parse(input, fname, handler);
+        }
 
-                if(handler.onNewSnapShot(header, fname) != ParseResult.HEAPSTATS_PARSE_CONTINUE){
-                    return false;
-                }
-                    
-                if(parseElement(stream, header, handler) == ParseResult.HEAPSTATS_PARSE_ABORT){
-                    return false;
-                }
+    }
 
-                if(handler.onFinish(ch.position()) == ParseResult.HEAPSTATS_PARSE_ABORT){
-                    return false;
-                }
-                
+    /**
+     * Parse HeapStats SnapShot from current position of opened input.
+     * Input is not closed in this method.
+     *
+     * @param input Input of SnapShot file.
+     * @param fname Snapshot file name.
+     * @param handler the ParserEventHandler.
+     * @return true if parsing is succeeded.
+     * @throws IOException 
+     */
+    public boolean parse(SnapShotInput input, String fname, SnapShotParserEventHandler handler) throws IOException {
+        SnapShotHeader header;
+
+        while ((header = parseHeader(input, fname)) != null) {
+            handler.onStart(header.getFileOffset());
+
+            if(handler.onNewSnapShot(header, fname) != ParseResult.HEAPSTATS_PARSE_CONTINUE){
+                return false;
             }
-            
+
+            if(parseElement(input, header, handler) == ParseResult.HEAPSTATS_PARSE_ABORT){
+                return false;
+            }
+
+            if(handler.onFinish(input.position()) == ParseResult.HEAPSTATS_PARSE_ABORT){
+                return false;
+            }
+
         }
 
         return true;
@@ -186,17 +304,16 @@ public class SnapShotParser {
     /**
      * Extracting the header information of the snapshot.
      *
-     * @param stream the file Java Heap Information.
+     * @param input the file Java Heap Information.
      * @param fname Snapshot file name.
      * @return Return the SnapShotHeader
      * @throws IOException If other I / O error occurs.
      */
-    protected SnapShotHeader parseHeader(FileInputStream stream, String fname) throws IOException {
+    protected SnapShotHeader parseHeader(SnapShotInput input, String fname) throws IOException {
         SnapShotHeader header = new SnapShotHeader();
-        FileChannel ch = stream.getChannel();
-        long startPos = ch.position();
+        long startPos = input.position();
         
-        int ret = stream.read();
+        int ret = input.read();
 
         if (ret == -1) {
           // EOF
@@ -218,7 +335,7 @@ public class SnapShotParser {
           throw new IOException(errString.toString());
         }
 
-        ret = stream.read();
+        ret = input.read();
 
         switch (ret) {
             
@@ -239,56 +356,51 @@ public class SnapShotParser {
                 
         }
 
-        setByteOrder(header.getByteOrderMark());
+        input.order(header.getByteOrderMark());
 
         // SnapShot Date
-        readLong(ch, 16);
-        header.setSnapShotDateAsLong(longBuffer.getLong());
+        header.setSnapShotDateAsLong(input.getLong());
         // Entries
-        header.setNumEntries(longBuffer.getLong());
+        header.setNumEntries(input.getLong());
 
         // SnapShot Cause
-        header.setCause(readInt(ch));
+        header.setCause(input.getInt());
 
         // GC Cause
-        readLong(ch, 8);
-        int len = (int)longBuffer.getLong();
+        int len = (int)input.getLong();
         byte[] gcCause = new byte[len];
-        if (stream.read(gcCause) != gcCause.length) {
+        if (input.read(gcCause, 0, len) != gcCause.length) {
             throw new IOException("Could not get the GC Cause.");
         }
         header.setGcCause(gcCause[0] == '\0' ? "-" : new String(gcCause));
 
-        readLong(ch, 48);
         // Full GC Count
-        header.setFullCount(longBuffer.getLong());
+        header.setFullCount(input.getLong());
 
         // Young GC Count
-        header.setYngCount(longBuffer.getLong());
+        header.setYngCount(input.getLong());
 
         // GC Time
-        header.setGcTime(longBuffer.getLong());
+        header.setGcTime(input.getLong());
 
         // New Heap Size
-        header.setNewHeap(longBuffer.getLong());
+        header.setNewHeap(input.getLong());
 
         // Old Heap Size
-        header.setOldHeap(longBuffer.getLong());
+        header.setOldHeap(input.getLong());
 
         // Total Heap Size
-        header.setTotalCapacity(longBuffer.getLong());
+        header.setTotalCapacity(input.getLong());
 
         if(header.getSnapShotType() == FILE_FORMAT_HAVE_CHILD_AND_METASPACE){
-          readLong(ch, 16);
-          
           // Metaspace usage
-          header.setMetaspaceUsage(longBuffer.getLong());
+          header.setMetaspaceUsage(input.getLong());
 
           // Metaspace capacity
-          header.setMetaspaceCapacity(longBuffer.getLong());
+          header.setMetaspaceCapacity(input.getLong());
         }
         
-        header.setSnapShotHeaderSize(ch.position() - startPos);
+        header.setSnapShotHeaderSize(input.position() - startPos);
 
         return header;
     }
@@ -296,77 +408,47 @@ public class SnapShotParser {
     /**
      * Stored in a temporary file to extract the object information.
      *
-     * @param stream the file Java Heap Information.
+     * @param input the file Java Heap Information.
      * @param header the SnapShot header
      * @param handler ParserEventHandler
      * @return Return the Parse result.
      * @throws IOException If some other I/O error occurs
      */
-    protected ParseResult parseElement(FileInputStream stream, SnapShotHeader header, SnapShotParserEventHandler handler) throws IOException {
+    protected ParseResult parseElement(SnapShotInput input, SnapShotHeader header, SnapShotParserEventHandler handler) throws IOException {
+        /* Name buffer is reused for all entries in this SnapShot. */
+        ClassNameConverter.NameKey nameKey = new ClassNameConverter.NameKey(256);
 
-        FileChannel ch = stream.getChannel();
-        
         for (long i = 0; i < header.getNumEntries(); i++) {
-            byte[] classNameInBytes;
             SnapShotParserEventHandler.ParseResult eventResult;
             ObjectData obj;
             obj = new ObjectData();
             
-            readLong(ch, 16);
-
             // tag
-            obj.setTag(longBuffer.getLong());
+            obj.setTag(input.getLong());
 
             // class Name
-            classNameInBytes = new byte[(int)longBuffer.getLong()];
-            if (stream.read(classNameInBytes) != classNameInBytes.length) {
+            int nameLength = (int)input.getLong();
+            if (input.read(nameKey.buffer(nameLength), 0, nameLength) != nameLength) {
                 throw new IOException("Could not get the Class name.");
             }
-
-            if (replace) {
-                String tmp = new String(classNameInBytes)
-                                  .replaceAll("^L|(^\\[*)L|;$", "$1")
-                                  .replaceAll("(^\\[*)B$", "$1byte")
-                                  .replaceAll("(^\\[*)C$", "$1char")
-                                  .replaceAll("(^\\[*)I$", "$1int")
-                                  .replaceAll("(^\\[*)S$", "$1short")
-                                  .replaceAll("(^\\[*)J$", "$1long")
-                                  .replaceAll("(^\\[*)D$", "$1double")
-                                  .replaceAll("(^\\[*)F$", "$1float")
-                                  .replaceAll("(^\\[*)V$", "$1void")
-                                  .replaceAll("(^\\[*)Z$", "$1boolean");
-
-                Pattern pattern = Pattern.compile("^\\[(.*)");
-                Matcher matcher = pattern.matcher(tmp);
-                while (matcher.find()) {
-                    tmp = matcher.replaceAll("$1 []");
-                    matcher = pattern.matcher(tmp);
-                }
-
-                obj.setName(tmp.replaceAll("\\/", "."));
-            }
-            else {
-                obj.setName(new String(classNameInBytes));
-            }
+            nameKey.set(nameLength);
+            obj.setName(converter.convert(nameKey));
 
             if (header.getSnapShotType() >= FILE_FORMAT_HAVE_CHILD) {
-                readLong(ch, 16);
-                obj.setClassLoader(longBuffer.getLong());
-                obj.setClassLoaderTag(longBuffer.getLong());
+                obj.setClassLoader(input.getLong());
+                obj.setClassLoaderTag(input.getLong());
             }
 
-            readLong(ch, 16);
-            
             // instance
-            obj.setCount(longBuffer.getLong());
+            obj.setCount(input.getLong());
             // heap usage
-            obj.setTotalSize(longBuffer.getLong());
+            obj.setTotalSize(input.getLong());
 
             eventResult = handler.onEntry(obj);
 
             if ((eventResult == ParseResult.HEAPSTATS_PARSE_CONTINUE) &&
                 (header.getSnapShotType() >= FILE_FORMAT_HAVE_CHILD)) {
-                eventResult = parseChildClass(obj.getTag(), ch,
+                eventResult = parseChildClass(obj.getTag(), input,
                                          header.getByteOrderMark(), handler);
             }
 
@@ -379,27 +461,55 @@ public class SnapShotParser {
         return ParseResult.HEAPSTATS_PARSE_CONTINUE;
     }
 
+    /**
+     * Skip entries of SnapShot.
+     *
+     * @param input the file Java Heap Information.
+     * @param header the SnapShot header
+     * @throws IOException If some other I/O error occurs
+     */
+    protected void skipElement(SnapShotInput input, SnapShotHeader header) throws IOException {
+        boolean haveChild = header.getSnapShotType() >= FILE_FORMAT_HAVE_CHILD;
+
+        for (long i = 0; i < header.getNumEntries(); i++) {
+            // tag
+            input.skip(8);
+
+            // class name, (class loader,) instance and heap usage
+            long nameLength = input.getLong();
+            input.skip(nameLength + (haveChild ? 32 : 16));
+
+            if (haveChild) {
+                // child class tag, instances and total size
+                while (input.getLong() != -1) {
+                    input.skip(16);
+                }
+                input.skip(16);
+            }
+
+        }
+
+    }
+
     /**
      * Child class to extract information from a stream of snapshots.
      *
      * @param parentClassTag Tags parent class for uniquely identifying the
      *        parent class
-     * @param ch FileChannel of Snapshot file.
+     * @param input Input of Snapshot file.
      * @param byteOrder the byte order
      * @param handler ParserEventHandler
      * @return Return the Parse result.
      * @throws IOException If some other I/O error occurs
      */
     protected ParseResult parseChildClass(final long parentClassTag,
-            final FileChannel ch, final ByteOrder byteOrder,
+            final SnapShotInput input, final ByteOrder byteOrder,
             final SnapShotParserEventHandler handler) throws IOException {
 
         while (true) {
-            readLong(ch, 24);
-            
-            long childClassTag = longBuffer.getLong();
-            long instances = longBuffer.getLong();
-            long totalSize = longBuffer.getLong();
+            long childClassTag = input.getLong();
+            long instances = input.getLong();
+            long totalSize = input.getLong();
 
             if (childClassTag == -1) {
                 return ParseResult.HEAPSTATS_PARSE_CONTINUE;
@@ -21,10 +21,9 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -51,6 +50,33 @@ public class ThreadRecordParser {
      */
     private List<ThreadStat> threadStatList;
     
+    /**
+     * Read bytes from channel until the buffer is filled.
+     * Channel of compressed file might return fewer bytes than remaining of
+     * the buffer even if the stream does not reach the end.
+     * 
+     * @param ch Channel to read.
+     * @param buffer ByteBuffer to fill.
+     * @return Number of bytes read, or -1 if the channel has reached
+     *          end-of-stream.
+     * @throws IOException 
+     */
+    private static int readFully(ReadableByteChannel ch, ByteBuffer buffer) throws IOException{
+        int total = 0;
+        
+        while(buffer.hasRemaining()){
+            int n = ch.read(buffer);
+            
+            if(n == -1){
+                return (total == 0) ? -1 : total;
+            }
+            
+            total += n;
+        }
+        
+        return total;
+    }
+    
     /**
      * Get byte order from channel.
      * 
@@ -59,10 +85,10 @@ public class ThreadRecordParser {
      * @return ByteOrder in this channel.
      * @throws IOException 
      */
-    private ByteOrder getByteOrder(SeekableByteChannel ch, ByteBuffer buffer) throws IOException{
+    private ByteOrder getByteOrder(ReadableByteChannel ch, ByteBuffer buffer) throws IOException{
         buffer.position(buffer.capacity() - 1);
         buffer.mark();
-        ch.read(buffer);
+        readFully(ch, buffer);
         buffer.reset();
         
         return (buffer.get() == (byte)'L') ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
@@ -76,24 +102,24 @@ public class ThreadRecordParser {
      * @param buffer ByteBuffer to use.
      * @param map Thread ID - Thread Name map to set.
      */
-    private void setThreadStatToMap(SeekableByteChannel ch, ByteBuffer buffer, Map<Long, String> map){
+    private void setThreadStatToMap(ReadableByteChannel ch, ByteBuffer buffer, Map<Long, String> map){
         int capacity = buffer.capacity();
         
         try{
             buffer.position(capacity- 8);
             buffer.mark();
-            ch.read(buffer);
+            readFully(ch, buffer);
             buffer.reset();
             long id = buffer.getLong();
 
             buffer.position(capacity - 4);
             buffer.mark();
-            ch.read(buffer);
+            readFully(ch, buffer);
             buffer.reset();
             int len = buffer.getInt();
 
             ByteBuffer utf8Buffer = ByteBuffer.allocate(len);
-            ch.read(utf8Buffer);
+            readFully(ch, utf8Buffer);
             utf8Buffer.flip();
             String className = new String(utf8Buffer.array());
         
@@ -113,12 +139,12 @@ public class ThreadRecordParser {
      * @return Thread ID - Thread Name map.
      * @throws IOException
      */
-    private Map<Long, String> getThreadIdMap(SeekableByteChannel ch, ByteBuffer buffer) throws IOException{
+    private Map<Long, String> getThreadIdMap(ReadableByteChannel ch, ByteBuffer buffer) throws IOException{
         int capacity = buffer.capacity();
 
         buffer.position(capacity - 4);
         buffer.mark();
-        ch.read(buffer);
+        readFully(ch, buffer);
         buffer.reset();
 
         int mapSize = buffer.getInt();
@@ -138,11 +164,11 @@ public class ThreadRecordParser {
      * @return Thread Stat list.
      * @throws IOException 
      */
-    private List<ThreadStat> getThreadStatList(SeekableByteChannel ch, ByteBuffer buffer) throws IOException{
+    private List<ThreadStat> getThreadStatList(ReadableByteChannel ch, ByteBuffer buffer) throws IOException{
         List<ThreadStat> result = new ArrayList<>();
         buffer.flip();
 
-        while(ch.read(buffer) != -1){
+        while(readFully(ch, buffer) != -1){
             buffer.flip();
             
             while(buffer.hasRemaining()){
@@ -164,6 +190,7 @@ public class ThreadRecordParser {
 
     /**
      * Parse HeapStats Thread Recorder file.
+     * gzip and BGZF compressed file is decompressed transparently.
      * 
      * @param path Path to recorder file.
      * @throws IOException 
@@ -171,7 +198,7 @@ public class ThreadRecordParser {
     public void parse(Path path) throws IOException{
         ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024); // 1MB
 
-        try(SeekableByteChannel ch = Files.newByteChannel(path, StandardOpenOption.READ)){
+        try(ReadableByteChannel ch = Channels.newChannel(CompressedFiles.newInputStream(path))){
             buffer.order(getByteOrder(ch, buffer));
             idMap = getThreadIdMap(ch, buffer);
             threadStatList = getThreadStatList(ch, buffer);
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser.handler;
+
+import java.util.function.Consumer;
+import jp.co.ntt.oss.heapstats.container.snapshot.ChildObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParserEventHandler;
+
+/**
+ * HeapStats SnapShot parser handler for streaming class entries.
+ * Each class entry is passed to consumer in order of the file, so whole
+ * SnapShot is not built. Child entries are ignored.
+ */
+public class ObjectDataHandler implements SnapShotParserEventHandler{
+    
+    private final Consumer<? super ObjectData> consumer;
+
+    /**
+     * Constructor of ObjectDataHandler.
+     * 
+     * @param consumer Consumer of class entries.
+     */
+    public ObjectDataHandler(Consumer<? super ObjectData> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onStart(long off) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onNewSnapShot(SnapShotHeader header, String parent) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onEntry(ObjectData data) {
+        consumer.accept(data);
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onChildEntry(long parentClassTag, ChildObjectData child) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onFinish(long off) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+    
+}
@@ -18,24 +18,24 @@
 
 package jp.co.ntt.oss.heapstats.parser.handler;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import jp.co.ntt.oss.heapstats.container.snapshot.ChildObjectData;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.container.snapshot.SymbolTable;
 import jp.co.ntt.oss.heapstats.parser.SnapShotParserEventHandler;
 
 /**
  * HeapStats SnapShot parser handler for parsing SnapShot.
+ * Entries are stored to columnar {@link SnapShotData}.
  * @author Yasumasa Suenaga
  */
 public class SnapShotHandler implements SnapShotParserEventHandler{
     
-    private Map<Long, ObjectData> snapShotData;
+    private SnapShotData snapShotData;
     
-    private ObjectData currentObjectData;
+    private final SymbolTable symbolTable = SymbolTable.getInstance();
     
     /**
      * {@inheritDoc}
@@ -51,7 +51,7 @@ public class SnapShotHandler implements SnapShotParserEventHandler{
      */
     @Override
     public ParseResult onNewSnapShot(SnapShotHeader header, String parent) {
-        snapShotData = new HashMap<>();
+        snapShotData = new SnapShotData(header.getExpectedEntries(), symbolTable);
         return ParseResult.HEAPSTATS_PARSE_CONTINUE;
     }
 
@@ -60,8 +60,9 @@ public class SnapShotHandler implements SnapShotParserEventHandler{
      */
     @Override
     public ParseResult onEntry(ObjectData data) {
-        snapShotData.put(data.getTag(), data);
-        currentObjectData = data;
+        int nameId = symbolTable.intern(data.getTag(), data.getName()).getId();
+        snapShotData.add(data.getTag(), nameId, data.getClassLoader(), data.getClassLoaderTag(),
+                         data.getCount(), data.getTotalSize());
         return ParseResult.HEAPSTATS_PARSE_CONTINUE;
     }
 
@@ -70,15 +71,7 @@ public class SnapShotHandler implements SnapShotParserEventHandler{
      */
     @Override
     public ParseResult onChildEntry(long parentClassTag, ChildObjectData child) {
-        List<ChildObjectData> referenceList = currentObjectData.getReferenceList();
-
-        if(referenceList == null){
-            referenceList = new ArrayList<>();
-            currentObjectData.setReferenceList(referenceList);
-        }
-        
-        referenceList.add(child);
-
+        snapShotData.addChild(child.getTag(), child.getInstances(), child.getTotalSize());
         return ParseResult.HEAPSTATS_PARSE_CONTINUE;
     }
 
@@ -87,7 +80,7 @@ public class SnapShotHandler implements SnapShotParserEventHandler{
      */
     @Override
     public ParseResult onFinish(long off) {
-        snapShotData.forEach((k, v) -> v.setLoaderName(snapShotData));
+        snapShotData.trim();
         return ParseResult.HEAPSTATS_PARSE_CONTINUE;
     }
 
@@ -96,8 +89,18 @@ public class SnapShotHandler implements SnapShotParserEventHandler{
      * 
      * @return SnapShot.
      */
-    public Map<Long, ObjectData> getSnapShot() {
+    public SnapShotData getSnapShotData() {
         return snapShotData;
     }
 
+    /**
+     * Get SnapShot as Map.
+     * 
+     * @return Map view of SnapShot.
+     * @see SnapShotData#asMap()
+     */
+    public Map<Long, ObjectData> getSnapShot() {
+        return snapShotData.asMap();
+    }
+
 }
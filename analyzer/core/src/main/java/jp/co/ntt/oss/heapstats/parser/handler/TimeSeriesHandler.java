@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser.handler;
+
+import java.util.Optional;
+import java.util.function.Predicate;
+import jp.co.ntt.oss.heapstats.container.snapshot.ChildObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.ClassTimeSeries;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.container.snapshot.SymbolTable;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParserEventHandler;
+
+/**
+ * HeapStats SnapShot parser handler for building time series of classes.
+ * Entries are stored to {@link ClassTimeSeries} directly, so whole SnapShot
+ * is not built.
+ */
+public class TimeSeriesHandler implements SnapShotParserEventHandler{
+    
+    private final ClassTimeSeries timeSeries;
+    
+    private final int snapShotIndex;
+    
+    private final Optional<Predicate<? super ObjectData>> filter;
+    
+    private final SymbolTable symbolTable;
+
+    /**
+     * Constructor of TimeSeriesHandler.
+     * 
+     * @param timeSeries Time series to store.
+     * @param snapShotIndex Index of SnapShot to parse in timeSeries.
+     * @param filter Class filter.
+     */
+    public TimeSeriesHandler(ClassTimeSeries timeSeries, int snapShotIndex, Predicate<? super ObjectData> filter) {
+        this.timeSeries = timeSeries;
+        this.snapShotIndex = snapShotIndex;
+        this.filter = Optional.ofNullable(filter);
+        this.symbolTable = timeSeries.getSymbolTable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onStart(long off) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onNewSnapShot(SnapShotHeader header, String parent) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onEntry(ObjectData data) {
+        int nameId = symbolTable.intern(data.getTag(), data.getName()).getId();
+        timeSeries.put(snapShotIndex, data.getTag(), nameId, data.getCount(), data.getTotalSize(),
+                       filter.map(f -> f.test(data)).orElse(true));
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onChildEntry(long parentClassTag, ChildObjectData child) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onFinish(long off) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+    
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.parser.handler;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import jp.co.ntt.oss.heapstats.collection.LongIntHashMap;
+import jp.co.ntt.oss.heapstats.collection.TopNSelector;
+import jp.co.ntt.oss.heapstats.container.snapshot.ChildObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.container.snapshot.SymbolTable;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParserEventHandler;
+
+/**
+ * HeapStats SnapShot parser handler for collecting TopN classes.
+ * This handler keeps only TopN classes while parsing, so whole SnapShot is
+ * not stored.
+ * Filter is evaluated for each entry before class loader name is resolved.
+ */
+public class TopNHandler implements SnapShotParserEventHandler{
+    
+    private final int rankLevel;
+    
+    private final boolean byCount;
+    
+    private final Optional<Predicate<? super ObjectData>> filter;
+    
+    private final SymbolTable symbolTable = SymbolTable.getInstance();
+    
+    private TopNSelector<ObjectData> selector;
+    
+    /** Class tag to symbol id to resolve class loader name. */
+    private LongIntHashMap nameIds;
+    
+    private List<ObjectData> topN;
+
+    /**
+     * Constructor of TopNHandler.
+     * 
+     * @param rankLevel Rank (TopN) level to collect.
+     * @param byCount true if classes are ranked by instance count. false means total size.
+     * @param filter Class filter.
+     */
+    public TopNHandler(int rankLevel, boolean byCount, Predicate<? super ObjectData> filter) {
+        this.rankLevel = rankLevel;
+        this.byCount = byCount;
+        this.filter = Optional.ofNullable(filter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onStart(long off) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onNewSnapShot(SnapShotHeader header, String parent) {
+        selector = new TopNSelector<>(rankLevel);
+        nameIds = new LongIntHashMap(header.getExpectedEntries());
+        topN = null;
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onEntry(ObjectData data) {
+        SymbolTable.Symbol symbol = symbolTable.intern(data.getTag(), data.getName());
+        data.setName(symbol.getName());
+        nameIds.put(data.getTag(), symbol.getId());
+        
+        if(filter.map(f -> f.test(data)).orElse(true)){
+            selector.offer(byCount ? data.getCount() : data.getTotalSize(), data);
+        }
+        
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onChildEntry(long parentClassTag, ChildObjectData child) {
+        /* Nothing to do */
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParseResult onFinish(long off) {
+        topN = selector.toList();
+        topN.forEach(o -> o.setLoaderName(symbolTable.getLoaderName(o.getClassLoader(), o.getClassLoaderTag(), t -> {
+                                                                        int id = nameIds.getOrDefault(t, -1);
+                                                                        return (id == -1) ? null : symbolTable.getSymbol(id).getName();
+                                                                     })));
+        selector = null;
+        nameIds = null;
+        return ParseResult.HEAPSTATS_PARSE_CONTINUE;
+    }
+
+    /**
+     * Get TopN classes.
+     * 
+     * @return TopN classes which are sorted in descending order.
+     */
+    public List<ObjectData> getTopN() {
+        return topN;
+    }
+    
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.snapshot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+import jp.co.ntt.oss.heapstats.container.snapshot.ExhaustionForecast;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+
+/**
+ * This class forecasts exhaustion of Java heap and Metaspace.
+ * Usage after full GC approximates live set, so linear trend of the
+ * usage is fitted by least squares at SnapShots which are taken after full
+ * GC ({@link SnapShotHeader#getFullCount()} is increased from previous
+ * SnapShot). Old generation usage is compared with total capacity of Java
+ * heap, and Metaspace usage is compared with Metaspace capacity.
+ * <p>
+ * SnapShot can be appended one by one, and the forecast is updated in
+ * constant time. If full GC count is decreased, JVM is regarded as
+ * rebooted, and trend is fitted from scratch.
+ * </p>
+ */
+public class ExhaustionForecaster {
+
+    /** Min number of points to forecast. */
+    private static final int MIN_POINTS = 3;
+
+    /** Forecast beyond this horizon is regarded as no exhaustion. */
+    private static final double MAX_HORIZON_SECONDS = 100.0d * 365 * 24 * 60 * 60;
+
+    /** Two-sided 95% quantile of t-distribution for degrees of freedom 1 - 30 . */
+    private static final double[] T_QUANTILES = {12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+                                                 2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+                                                 2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+    /** Quantile of normal distribution which is used for large degrees of freedom. */
+    private static final double Z_QUANTILE = 1.960;
+
+    private final TrendFit heap;
+
+    private final TrendFit metaspace;
+
+    private SnapShotHeader prev;
+
+    private LocalDateTime origin;
+
+    /**
+     * Least-squares fitting of linear trend.
+     * Sums of squares are updated online, so each point is added in
+     * constant time and space.
+     */
+    private static class TrendFit {
+
+        private final ToLongFunction<SnapShotHeader> usage;
+
+        private final ToLongFunction<SnapShotHeader> capacity;
+
+        private int n;
+
+        private double meanX;
+
+        private double meanY;
+
+        private double sxx;
+
+        private double sxy;
+
+        private double syy;
+
+        private double lastX;
+
+        private long lastCapacity;
+
+        private LocalDateTime lastDate;
+
+        /**
+         * Constructor of TrendFit.
+         *
+         * @param usage Function to get usage from SnapShot header.
+         * @param capacity Function to get capacity from SnapShot header.
+         */
+        public TrendFit(ToLongFunction<SnapShotHeader> usage, ToLongFunction<SnapShotHeader> capacity) {
+            this.usage = usage;
+            this.capacity = capacity;
+            reset();
+        }
+
+        /**
+         * Discard all points.
+         */
+        public void reset() {
+            n = 0;
+            meanX = 0.0d;
+            meanY = 0.0d;
+            sxx = 0.0d;
+            sxy = 0.0d;
+            syy = 0.0d;
+        }
+
+        /**
+         * Add point.
+         *
+         * @param x Elapsed time in seconds.
+         * @param header SnapShot header of the point.
+         */
+        public void add(double x, SnapShotHeader header) {
+            double y = usage.applyAsLong(header);
+
+            n++;
+            double dx = x - meanX;
+            double dy = y - meanY;
+            meanX += dx / n;
+            meanY += dy / n;
+            sxx += dx * (x - meanX);
+            sxy += dx * (y - meanY);
+            syy += dy * (y - meanY);
+
+            lastX = x;
+            lastCapacity = capacity.applyAsLong(header);
+            lastDate = header.getSnapShotDate();
+        }
+
+        /**
+         * Get time when usage reaches capacity.
+         *
+         * @param remaining Remaining bytes at the last point.
+         * @param slope Slope in bytes per second.
+         * @return Time of exhaustion, or null if usage does not reach
+         *          capacity within horizon.
+         */
+        private LocalDateTime exhaustAt(double remaining, double slope) {
+
+            if (remaining <= 0.0d) {
+                return lastDate;
+            }
+            if (slope <= 0.0d) {
+                return null;
+            }
+
+            double seconds = remaining / slope;
+            return (seconds > MAX_HORIZON_SECONDS) ? null : lastDate.plus(Duration.ofMillis((long) (seconds * 1000)));
+        }
+
+        /**
+         * Get forecast from current points.
+         *
+         * @return Forecast, or empty if points are not enough.
+         */
+        public Optional<ExhaustionForecast> getForecast() {
+
+            if ((n < MIN_POINTS) || (sxx <= 0.0d) || (lastCapacity <= 0)) {
+                return Optional.empty();
+            }
+
+            double slope = sxy / sxx;
+            double residual = Math.max(syy - slope * sxy, 0.0d);
+            double slopeError = Math.sqrt(residual / (n - 2) / sxx);
+            double t = (n - 2 <= T_QUANTILES.length) ? T_QUANTILES[n - 3] : Z_QUANTILE;
+            double fitted = meanY + slope * (lastX - meanX);
+            double remaining = lastCapacity - fitted;
+
+            return Optional.of(new ExhaustionForecast(n, lastDate, Math.round(fitted), lastCapacity, slope, slopeError,
+                                                      exhaustAt(remaining, slope),
+                                                      exhaustAt(remaining, slope + t * slopeError),
+                                                      exhaustAt(remaining, slope - t * slopeError)));
+        }
+
+    }
+
+    /**
+     * Constructor of ExhaustionForecaster.
+     */
+    public ExhaustionForecaster() {
+        heap = new TrendFit(SnapShotHeader::getOldHeap, SnapShotHeader::getTotalCapacity);
+        metaspace = new TrendFit(SnapShotHeader::getMetaspaceUsage, SnapShotHeader::getMetaspaceCapacity);
+        prev = null;
+        origin = null;
+    }
+
+    /**
+     * Append SnapShot.
+     * SnapShots must be appended in order of time.
+     *
+     * @param header SnapShot header to append.
+     */
+    public void add(SnapShotHeader header) {
+
+        if ((prev != null) && (header.getFullCount() < prev.getFullCount())) {
+            /* JVM seems to be rebooted. */
+            heap.reset();
+            metaspace.reset();
+            origin = null;
+        }
+        else if ((prev != null) && (header.getFullCount() > prev.getFullCount())) {
+            if (origin == null) {
+                origin = header.getSnapShotDate();
+            }
+
+            double x = Duration.between(origin, header.getSnapShotDate()).toMillis() / 1000.0d;
+            heap.add(x, header);
+            metaspace.add(x, header);
+        }
+
+        prev = header;
+    }
+
+    /**
+     * Get forecast of Java heap.
+     *
+     * @return Forecast, or empty if SnapShots after full GC are not enough.
+     */
+    public Optional<ExhaustionForecast> getHeapForecast() {
+        return heap.getForecast();
+    }
+
+    /**
+     * Get forecast of Metaspace.
+     *
+     * @return Forecast, or empty if SnapShots after full GC are not enough.
+     */
+    public Optional<ExhaustionForecast> getMetaspaceForecast() {
+        return metaspace.getForecast();
+    }
+
+}
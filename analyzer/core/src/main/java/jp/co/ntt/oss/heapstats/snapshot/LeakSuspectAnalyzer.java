@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.snapshot;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import jp.co.ntt.oss.heapstats.collection.LongIntHashMap;
+import jp.co.ntt.oss.heapstats.collection.TopNSelector;
+import jp.co.ntt.oss.heapstats.container.snapshot.LeakSuspect;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.container.snapshot.SymbolTable;
+
+/**
+ * This class detects classes which are suspected to leak.
+ * SnapShots are passed in order of time in one streaming pass, and trend
+ * of each class is accumulated in constant size of state. So whole series
+ * of SnapShots is not kept in memory.
+ * <p>
+ * Following trends of total size are accumulated for each class:
+ * </p>
+ * <ul>
+ * <li>Least-squares slope over time</li>
+ * <li>Ratio of growing steps in consecutive SnapShots</li>
+ * <li>Growth after full GC ({@link SnapShotHeader#getFullCount()} is
+ * increased from previous SnapShot)</li>
+ * </ul>
+ */
+public class LeakSuspectAnalyzer {
+
+    /** Min number of samples to calculate trend. */
+    private static final int MIN_SAMPLES = 3;
+
+    private final LongIntHashMap index;
+
+    private final SymbolTable symbolTable;
+
+    private int size;
+
+    private long[] tags;
+
+    private int[] nameIds;
+
+    private long[] classLoaders;
+
+    private long[] classLoaderTags;
+
+    private boolean[] selected;
+
+    private int[] samples;
+
+    private double[] meanX;
+
+    private double[] meanY;
+
+    private double[] coMoments;
+
+    private double[] squareSums;
+
+    private int[] lastSeen;
+
+    private long[] lastCounts;
+
+    private long[] lastSizes;
+
+    private int[] steps;
+
+    private int[] increases;
+
+    private int[] fullGCSamples;
+
+    private long[] firstSizesAfterFullGC;
+
+    private long[] lastSizesAfterFullGC;
+
+    private int numSnapShots;
+
+    private LocalDateTime origin;
+
+    private long prevFullCount;
+
+    private double currentX;
+
+    private boolean afterFullGC;
+
+    /**
+     * Constructor of LeakSuspectAnalyzer.
+     *
+     * @param expectedSize Expected number of classes.
+     */
+    public LeakSuspectAnalyzer(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+
+        index = new LongIntHashMap(capacity);
+        symbolTable = SymbolTable.getInstance();
+        size = 0;
+        tags = new long[capacity];
+        nameIds = new int[capacity];
+        classLoaders = new long[capacity];
+        classLoaderTags = new long[capacity];
+        selected = new boolean[capacity];
+        samples = new int[capacity];
+        meanX = new double[capacity];
+        meanY = new double[capacity];
+        coMoments = new double[capacity];
+        squareSums = new double[capacity];
+        lastSeen = new int[capacity];
+        lastCounts = new long[capacity];
+        lastSizes = new long[capacity];
+        steps = new int[capacity];
+        increases = new int[capacity];
+        fullGCSamples = new int[capacity];
+        firstSizesAfterFullGC = new long[capacity];
+        lastSizesAfterFullGC = new long[capacity];
+        numSnapShots = 0;
+    }
+
+    /**
+     * Expand state arrays.
+     */
+    private void grow() {
+        int capacity = tags.length * 2;
+
+        tags = Arrays.copyOf(tags, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        classLoaders = Arrays.copyOf(classLoaders, capacity);
+        classLoaderTags = Arrays.copyOf(classLoaderTags, capacity);
+        selected = Arrays.copyOf(selected, capacity);
+        samples = Arrays.copyOf(samples, capacity);
+        meanX = Arrays.copyOf(meanX, capacity);
+        meanY = Arrays.copyOf(meanY, capacity);
+        coMoments = Arrays.copyOf(coMoments, capacity);
+        squareSums = Arrays.copyOf(squareSums, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        lastCounts = Arrays.copyOf(lastCounts, capacity);
+        lastSizes = Arrays.copyOf(lastSizes, capacity);
+        steps = Arrays.copyOf(steps, capacity);
+        increases = Arrays.copyOf(increases, capacity);
+        fullGCSamples = Arrays.copyOf(fullGCSamples, capacity);
+        firstSizesAfterFullGC = Arrays.copyOf(firstSizesAfterFullGC, capacity);
+        lastSizesAfterFullGC = Arrays.copyOf(lastSizesAfterFullGC, capacity);
+    }
+
+    /**
+     * Start new SnapShot.
+     * SnapShots must be passed in order of time.
+     *
+     * @param header Header of SnapShot.
+     */
+    public void beginSnapShot(SnapShotHeader header) {
+
+        if (numSnapShots == 0) {
+            origin = header.getSnapShotDate();
+            afterFullGC = false;
+        }
+        else {
+            afterFullGC = header.getFullCount() > prevFullCount;
+        }
+
+        currentX = Duration.between(origin, header.getSnapShotDate()).toMillis() / 1000.0d;
+        prevFullCount = header.getFullCount();
+        numSnapShots++;
+    }
+
+    /**
+     * Add the class in current SnapShot.
+     *
+     * @param tag Class tag.
+     * @param nameId Symbol id of class name.
+     * @param classLoader Id of class loader.
+     * @param classLoaderTag Class tag of class loader.
+     * @param count Number of instances.
+     * @param totalSize Total size of instances.
+     * @param accepted true if the class is accepted by filter. Class which
+     *                  is not accepted in any SnapShot is not reported as
+     *                  suspect.
+     */
+    public void add(long tag, int nameId, long classLoader, long classLoaderTag, long count, long totalSize, boolean accepted) {
+        int current = numSnapShots - 1;
+        int slot = index.getOrDefault(tag, -1);
+
+        if (slot == -1) {
+            if (size == tags.length) {
+                grow();
+            }
+
+            slot = size++;
+            index.put(tag, slot);
+            tags[slot] = tag;
+            nameIds[slot] = nameId;
+            lastSeen[slot] = -1;
+        }
+        else if (lastSeen[slot] == current) {
+            /* Duplicated entry in the SnapShot */
+            return;
+        }
+
+        classLoaders[slot] = classLoader;
+        classLoaderTags[slot] = classLoaderTag;
+        selected[slot] |= accepted;
+
+        /* Online update of least-squares regression */
+        int n = ++samples[slot];
+        double dx = currentX - meanX[slot];
+        meanX[slot] += dx / n;
+        meanY[slot] += (totalSize - meanY[slot]) / n;
+        coMoments[slot] += dx * (totalSize - meanY[slot]);
+        squareSums[slot] += dx * (currentX - meanX[slot]);
+
+        if (lastSeen[slot] == current - 1) {
+            steps[slot]++;
+
+            if (totalSize > lastSizes[slot]) {
+                increases[slot]++;
+            }
+
+        }
+
+        if (afterFullGC) {
+            if (fullGCSamples[slot]++ == 0) {
+                firstSizesAfterFullGC[slot] = totalSize;
+            }
+
+            lastSizesAfterFullGC[slot] = totalSize;
+        }
+
+        lastSeen[slot] = current;
+        lastCounts[slot] = count;
+        lastSizes[slot] = totalSize;
+    }
+
+    /**
+     * Get symbol table which name ids are registered to.
+     *
+     * @return Symbol table.
+     */
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * Get number of SnapShots which are passed to this analyzer.
+     *
+     * @return Number of SnapShots.
+     */
+    public int getNumSnapShots() {
+        return numSnapShots;
+    }
+
+    /**
+     * Get number of classes.
+     *
+     * @return Number of classes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Build suspect of the class.
+     *
+     * @param slot Slot of the class.
+     * @param slope Slope of total size.
+     * @param score Score of the class.
+     * @return Suspect of the class.
+     */
+    private LeakSuspect buildSuspect(int slot, double slope, long score) {
+        String loaderName = symbolTable.getLoaderName(classLoaders[slot], classLoaderTags[slot], t -> {
+                                                                                                      int loaderSlot = index.getOrDefault(t, -1);
+                                                                                                      return (loaderSlot == -1) ? null : symbolTable.getSymbol(nameIds[loaderSlot]).getName();
+                                                                                                   });
+        long growth = (fullGCSamples[slot] < 2) ? 0 : lastSizesAfterFullGC[slot] - firstSizesAfterFullGC[slot];
+
+        return new LeakSuspect(tags[slot], symbolTable.getSymbol(nameIds[slot]).getName(), loaderName,
+                               samples[slot], slope, getMonotonicRatio(slot), fullGCSamples[slot], growth,
+                               lastCounts[slot], lastSizes[slot], score);
+    }
+
+    /**
+     * Get ratio of growing steps of the class.
+     *
+     * @param slot Slot of the class.
+     * @return Ratio of growing steps.
+     */
+    private double getMonotonicRatio(int slot) {
+        return (steps[slot] == 0) ? 0.0d : (double) increases[slot] / steps[slot];
+    }
+
+    /**
+     * Get leak suspects.
+     * Class is suspected if it exists in the last SnapShot and its total
+     * size has positive slope. If the class is sampled after full GC more
+     * than once, it is excluded when its size after full GC does not grow.
+     * Suspects are ranked by score: slope in bytes per hour multiplied by
+     * ratio of growing steps.
+     *
+     * @param limit Max number of suspects.
+     * @return Suspects which are sorted by score in descending order.
+     */
+    public List<LeakSuspect> getSuspects(int limit) {
+        TopNSelector<Integer> selector = new TopNSelector<>(limit);
+        double[] slopes = new double[size];
+
+        for (int slot = 0; slot < size; slot++) {
+            if (!selected[slot] || (lastSeen[slot] != numSnapShots - 1) ||
+                (samples[slot] < MIN_SAMPLES) || (squareSums[slot] <= 0.0d)) {
+                continue;
+            }
+
+            slopes[slot] = coMoments[slot] / squareSums[slot];
+            if (slopes[slot] <= 0.0d) {
+                continue;
+            }
+
+            if ((fullGCSamples[slot] >= 2) && (lastSizesAfterFullGC[slot] <= firstSizesAfterFullGC[slot])) {
+                continue;
+            }
+
+            long score = Math.round(slopes[slot] * 3600.0d * getMonotonicRatio(slot));
+            if (selector.accepts(score)) {
+                selector.offer(score, slot);
+            }
+
+        }
+
+        return selector.toList()
+                       .stream()
+                       .map(s -> buildSuspect(s, slopes[s], Math.round(slopes[s] * 3600.0d * getMonotonicRatio(s))))
+                       .collect(Collectors.toList());
+    }
+
+}
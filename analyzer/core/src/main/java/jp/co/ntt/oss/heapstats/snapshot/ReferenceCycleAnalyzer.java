@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import jp.co.ntt.oss.heapstats.container.snapshot.ClassCluster;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
+
+/**
+ * This class analyzes cycles in class reference graph.
+ * Strongly connected components are found by Tarjan's algorithm in linear
+ * time of number of classes and references.
+ */
+public class ReferenceCycleAnalyzer {
+
+    private final SnapShotData snapShot;
+
+    private volatile List<ClassCluster> clusters;
+
+    /**
+     * Constructor of ReferenceCycleAnalyzer.
+     *
+     * @param snapShot SnapShot to analyze.
+     */
+    public ReferenceCycleAnalyzer(SnapShotData snapShot) {
+        this.snapShot = snapShot;
+    }
+
+    /**
+     * Find strongly connected components.
+     * Recursion of Tarjan's algorithm is replaced with explicit stack to
+     * avoid StackOverflowError on deep reference chain.
+     *
+     * @return Strongly connected components which have cycle.
+     */
+    private List<ClassCluster> findClusters() {
+        int size = snapShot.size();
+        int[] childRows = IntStream.range(0, snapShot.getNumChildren())
+                                   .parallel()
+                                   .map(c -> snapShot.indexOf(snapShot.getChildTag(c)))
+                                   .toArray();
+
+        int[] indices = new int[size];
+        int[] lowLinks = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] stack = new int[size];
+        int stackTop = 0;
+        int[] callRows = new int[size];
+        int[] callChildren = new int[size];
+        int nextIndex = 1;
+        List<ClassCluster> result = new ArrayList<>();
+
+        for (int root = 0; root < size; root++) {
+            if (indices[root] != 0) {
+                continue;
+            }
+
+            int callTop = 0;
+            callRows[0] = root;
+            callChildren[0] = snapShot.getChildStart(root);
+            indices[root] = lowLinks[root] = nextIndex++;
+            stack[stackTop++] = root;
+            onStack[root] = true;
+
+            while (callTop >= 0) {
+                int row = callRows[callTop];
+
+                if (callChildren[callTop] < snapShot.getChildEnd(row)) {
+                    int next = childRows[callChildren[callTop]++];
+
+                    if (next == -1) {
+                        continue;
+                    }
+
+                    if (indices[next] == 0) {
+                        callTop++;
+                        callRows[callTop] = next;
+                        callChildren[callTop] = snapShot.getChildStart(next);
+                        indices[next] = lowLinks[next] = nextIndex++;
+                        stack[stackTop++] = next;
+                        onStack[next] = true;
+                    }
+                    else if (onStack[next]) {
+                        lowLinks[row] = Math.min(lowLinks[row], indices[next]);
+                    }
+
+                    continue;
+                }
+
+                if (lowLinks[row] == indices[row]) {
+                    List<ObjectData> members = new ArrayList<>();
+                    int member;
+
+                    do {
+                        member = stack[--stackTop];
+                        onStack[member] = false;
+                        members.add(snapShot.getObjectData(member));
+                    } while (member != row);
+
+                    if ((members.size() > 1) || hasSelfReference(row, childRows)) {
+                        members.sort(Comparator.comparingLong(ObjectData::getTotalSize).reversed());
+                        result.add(new ClassCluster(members));
+                    }
+
+                }
+
+                callTop--;
+                if (callTop >= 0) {
+                    int parent = callRows[callTop];
+                    lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[row]);
+                }
+
+            }
+
+        }
+
+        result.sort(Comparator.comparingLong(ClassCluster::getTotalSize).reversed());
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Check whether the class refers itself.
+     *
+     * @param row Row of the class.
+     * @param childRows Rows of each child reference.
+     * @return true if the class refers itself.
+     */
+    private boolean hasSelfReference(int row, int[] childRows) {
+        return IntStream.range(snapShot.getChildStart(row), snapShot.getChildEnd(row))
+                        .anyMatch(c -> childRows[c] == row);
+    }
+
+    /**
+     * Get clusters which have reference cycle.
+     * Clusters are calculated only once for each ReferenceCycleAnalyzer.
+     *
+     * @return Clusters which are sorted by total size in descending order.
+     */
+    public List<ClassCluster> getClusters() {
+        List<ClassCluster> result = clusters;
+
+        if (result == null) {
+            synchronized (this) {
+                result = clusters;
+                if (result == null) {
+                    result = findClusters();
+                    clusters = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get cluster which contains the class.
+     *
+     * @param tag Class tag.
+     * @return Cluster of the class. If the class is not in any cycle, this
+     *          method returns empty.
+     */
+    public Optional<ClassCluster> getCluster(long tag) {
+        return getClusters().stream()
+                            .filter(c -> c.contains(tag))
+                            .findFirst();
+    }
+
+    /**
+     * Get total size of classes of the cluster in each SnapShot.
+     * This value shows how the cluster grows across SnapShots.
+     *
+     * @param cluster Cluster to track.
+     * @param snapShots SnapShots to track.
+     * @return Total size of classes in the cluster. Index is same as snapShots.
+     */
+    public static long[] getSizeHistory(ClassCluster cluster, List<SnapShotData> snapShots) {
+        long[] tags = cluster.getTags();
+
+        return snapShots.stream()
+                        .mapToLong(s -> IntStream.range(0, tags.length)
+                                                 .map(i -> s.indexOf(tags[i]))
+                                                 .filter(r -> r != -1)
+                                                 .mapToLong(s::getTotalSize)
+                                                 .sum())
+                        .toArray();
+    }
+
+}
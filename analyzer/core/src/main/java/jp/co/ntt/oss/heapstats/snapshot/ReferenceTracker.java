@@ -18,17 +18,16 @@
 
 package jp.co.ntt.oss.heapstats.snapshot;
 
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import jp.co.ntt.oss.heapstats.container.snapshot.ChildObjectData;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
 
 /**
  * This class tracks object references.
@@ -37,7 +36,7 @@ import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
  */
 public class ReferenceTracker {
     
-    private final Map<Long, ObjectData> snapShot;
+    private final SnapShotData snapShot;
     
     private final OptionalInt rankLevel;
     
@@ -50,7 +49,7 @@ public class ReferenceTracker {
      * @param rankLevel Ranking level. If this value is empty, ReferenceTracker returns all reference list.
      * @param filter Class filter. If this value is empty, ReferenceTracker returns all reference list.
      */
-    public ReferenceTracker(Map<Long, ObjectData> snapShot, OptionalInt rankLevel, Optional<Predicate<? super ObjectData>> filter) {
+    public ReferenceTracker(SnapShotData snapShot, OptionalInt rankLevel, Optional<Predicate<? super ObjectData>> filter) {
         this.snapShot = snapShot;
         this.rankLevel = rankLevel;
         this.filter = filter;
@@ -59,38 +58,28 @@ public class ReferenceTracker {
     /**
      * Build parent object data which is referenced from childTag.
      * 
-     * @param parent Parent object.
-     * @param childTag Object tag of child object.
-     * @return Referenced ObjectData. If parent do not have childTag, this method will return empty.
+     * @param parentRow Row of parent object.
+     * @param child Position of child reference in the parent.
+     * @return Referenced ObjectData.
      */
-    private Optional<ObjectData> buildParentObjData(ObjectData parent, long childTag){
-        Optional<ChildObjectData> child = parent.getReferenceList().stream()
-                                                                   .filter(c -> (c.getTag() == childTag))
-                                                                   .findAny();
+    private ObjectData buildParentObjData(int parentRow, int child){
+        ObjectData objData = snapShot.getObjectData(parentRow);
+        objData.setCount(snapShot.getChildInstances(child));
+        objData.setTotalSize(snapShot.getChildTotalSize(child));
         
-        Optional<ObjectData> result = Optional.empty();
-        
-        if(child.isPresent()){
-            ObjectData objData = parent.clone();
-            objData.setCount(child.get().getInstances());
-            objData.setTotalSize(child.get().getTotalSize());
-            
-            result = Optional.of(objData);
-        }
-        
-        return result;
+        return objData;
     }
     
     /**
-     * Convert ChildObjectData to ObjectData.
+     * Convert child reference to ObjectData.
      * 
-     * @param child ChildObjectData instance to convert.
+     * @param child Position of child reference.
      * @return ObjectData.
      */
-    private ObjectData childObjToObjData(ChildObjectData child){
-        ObjectData result = snapShot.get(child.getTag()).clone();
-        result.setCount(child.getInstances());
-        result.setTotalSize(child.getTotalSize());
+    private ObjectData childObjToObjData(int child){
+        ObjectData result = snapShot.getObjectData(snapShot.indexOf(snapShot.getChildTag(child)));
+        result.setCount(snapShot.getChildInstances(child));
+        result.setTotalSize(snapShot.getChildTotalSize(child));
         
         return result;
     }
@@ -105,20 +94,20 @@ public class ReferenceTracker {
      * @return List of parents.
      */
     public List<ObjectData> getParents(long startTag, boolean sortBySize){
-        /* Pick up parents which have reference to target object */
-        Stream<ObjectData> parentStream = snapShot.values().parallelStream()
-                                                           .filter(o -> o.getReferenceList() != null);
+        int row = snapShot.indexOf(startTag);
+
+        /* Pick up parents from reverse references of target object */
+        IntStream parentStream = (row == -1) ? IntStream.empty()
+                                             : IntStream.range(snapShot.getParentStart(row), snapShot.getParentEnd(row));
         if(filter.isPresent()){
-            parentStream = parentStream.filter(filter.get());
+            parentStream = parentStream.filter(p -> filter.get().test(snapShot.getObjectData(snapShot.getParentRow(p))));
         }
 
         /* This comparator is reverse order. */
         Comparator<ObjectData> comparator = sortBySize ? Comparator.comparingLong(ObjectData::getTotalSize).reversed()
                                                        : Comparator.comparingLong(ObjectData::getCount).reversed();
         
-        Stream<ObjectData> result = parentStream.map(o -> buildParentObjData(o, startTag))
-                                                .filter(o -> o.isPresent())
-                                                .map(o -> o.get())
+        Stream<ObjectData> result = parentStream.mapToObj(p -> buildParentObjData(snapShot.getParentRow(p), snapShot.getParentChild(p)))
                                                 .sorted(comparator);
         
         if(rankLevel.isPresent()){
@@ -138,29 +127,28 @@ public class ReferenceTracker {
      * @return List of children.
      */
     public List<ObjectData> getChildren(long startTag, boolean sortBySize){
-        List<ChildObjectData> children = snapShot.get(startTag).getReferenceList();
-        
-        if(children == null){
-            return new ArrayList<>();
-        }
+        int row = snapShot.indexOf(startTag);
         
-        /* Building ChildObjectData stream. */
-        Stream<ChildObjectData> result = children.stream();
+        /* Building child reference stream. */
+        IntStream result = (row == -1) ? IntStream.empty()
+                                       : IntStream.range(snapShot.getChildStart(row), snapShot.getChildEnd(row))
+                                                  .filter(c -> snapShot.indexOf(snapShot.getChildTag(c)) != -1);
         
         if(filter.isPresent()){
-            result = result.filter(c -> filter.get().test(snapShot.get(c.getTag())));
+            result = result.filter(c -> filter.get().test(snapShot.getObjectData(snapShot.indexOf(snapShot.getChildTag(c)))));
         }
         
         /* This comparator is reverse order. */
-        Comparator<ChildObjectData> comparator = sortBySize ? Comparator.comparingLong(ChildObjectData::getTotalSize).reversed()
-                                                            : Comparator.comparingLong(ChildObjectData::getInstances).reversed();
-        result = result.sorted(comparator);
+        Comparator<Integer> comparator = sortBySize ? Comparator.comparingLong((Integer c) -> snapShot.getChildTotalSize(c)).reversed()
+                                                    : Comparator.comparingLong((Integer c) -> snapShot.getChildInstances(c)).reversed();
+        Stream<Integer> sorted = result.boxed()
+                                       .sorted(comparator);
         
         if(rankLevel.isPresent()){
-            result = result.limit(rankLevel.getAsInt());
+            sorted = sorted.limit(rankLevel.getAsInt());
         }
         
-        return result.map(this::childObjToObjData)
+        return sorted.map(this::childObjToObjData)
                      .collect(Collectors.toList());
     }
     
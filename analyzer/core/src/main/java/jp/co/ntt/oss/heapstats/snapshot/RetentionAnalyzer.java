@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import jp.co.ntt.oss.heapstats.collection.LongIntHashMap;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.ReferencePath;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
+
+/**
+ * This class analyzes multi-hop references in class reference graph.
+ * It can find heaviest reference paths from the class to its owners, and
+ * approximate size which is retained by each class.
+ */
+public class RetentionAnalyzer {
+
+    /** Damping factor to make retained size converge on cyclic references. */
+    private static final double DAMPING = 0.9;
+
+    /** Retained size is converged if relative change is lower than this value. */
+    private static final double EPSILON = 1.0e-6;
+
+    private static final int MAX_ITERATIONS = 64;
+
+    private final SnapShotData snapShot;
+
+    private final Optional<Predicate<? super ObjectData>> filter;
+
+    /** Result of filter of each row. 0: not yet, 1: accepted, 2: rejected */
+    private final byte[] filterResults;
+
+    private volatile long[] retainedSizes;
+
+    /**
+     * Node of reference path in search.
+     */
+    private static class PathNode {
+
+        private final int row;
+
+        /** Position of the reference in child arrays. -1 means start class. */
+        private final int child;
+
+        private final long weight;
+
+        private final int depth;
+
+        private final long order;
+
+        private final PathNode prev;
+
+        /**
+         * Constructor of PathNode.
+         *
+         * @param row Row of the class.
+         * @param child Position of the reference to previous class.
+         * @param weight Weight of the path to this node.
+         * @param order Order of creation.
+         * @param prev Previous node.
+         */
+        public PathNode(int row, int child, long weight, long order, PathNode prev) {
+            this.row = row;
+            this.child = child;
+            this.weight = weight;
+            this.depth = (prev == null) ? 0 : prev.depth + 1;
+            this.order = order;
+            this.prev = prev;
+        }
+
+        /**
+         * Check whether the class is in the path to this node.
+         *
+         * @param target Row of the class.
+         * @return true if the path contains the class.
+         */
+        public boolean contains(int target) {
+
+            for (PathNode node = this; node != null; node = node.prev) {
+                if (node.row == target) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+    }
+
+    /**
+     * Constructor of RetentionAnalyzer.
+     *
+     * @param snapShot SnapShot to analyze.
+     * @param filter Class filter. Classes which are rejected by filter are
+     *                not traversed as owner.
+     */
+    public RetentionAnalyzer(SnapShotData snapShot, Optional<Predicate<? super ObjectData>> filter) {
+        this.snapShot = snapShot;
+        this.filter = filter;
+        this.filterResults = new byte[snapShot.size()];
+    }
+
+    /**
+     * Check whether the class is accepted by the filter.
+     *
+     * @param row Row of the class.
+     * @return true if the class is accepted.
+     */
+    private boolean accepts(int row) {
+
+        if (!filter.isPresent()) {
+            return true;
+        }
+
+        if (filterResults[row] == 0) {
+            filterResults[row] = filter.get().test(snapShot.getObjectData(row)) ? (byte) 1 : (byte) 2;
+        }
+
+        return filterResults[row] == 1;
+    }
+
+    /**
+     * Convert search node to ReferencePath.
+     *
+     * @param node Last node of the path.
+     * @return ReferencePath.
+     */
+    private ReferencePath toReferencePath(PathNode node) {
+        List<ObjectData> objects = new ArrayList<>(node.depth + 1);
+
+        for (PathNode n = node; n != null; n = n.prev) {
+            ObjectData obj = snapShot.getObjectData(n.row);
+
+            if (n.child != -1) {
+                obj.setCount(snapShot.getChildInstances(n.child));
+                obj.setTotalSize(snapShot.getChildTotalSize(n.child));
+            }
+
+            objects.add(obj);
+        }
+
+        Collections.reverse(objects);
+        return new ReferencePath(objects, node.weight);
+    }
+
+    /**
+     * Find heaviest reference paths from the class to its owners.
+     * Weight of path is the smallest reference in the path, and each class
+     * appears only once in a path. Path ends at the class which has no parent,
+     * or at maxDepth.
+     * This method searches paths in best-first order, so heavier paths are
+     * found earlier. Weight of the path never increases while it is
+     * extended, so each class at each depth is expanded at most numPaths
+     * times. Later paths to the same class at the same depth are dominated
+     * by expanded ones, and they are not searched.
+     *
+     * @param startTag Class tag to start.
+     * @param maxDepth Max number of hops.
+     * @param numPaths Number of paths to find.
+     * @param sortBySize If this parameter is true, weight of reference is
+     *                    total size. Others, weight is instance count.
+     * @return Reference paths which are sorted by weight in descending order.
+     */
+    public List<ReferencePath> getHeaviestPaths(long startTag, int maxDepth, int numPaths, boolean sortBySize) {
+        List<ReferencePath> result = new ArrayList<>();
+        int startRow = snapShot.indexOf(startTag);
+
+        if ((startRow == -1) || (maxDepth <= 0) || (numPaths <= 0)) {
+            return result;
+        }
+
+        PriorityQueue<PathNode> queue = new PriorityQueue<>(Comparator.comparingLong((PathNode n) -> n.weight)
+                                                                      .reversed()
+                                                                      .thenComparingLong(n -> n.order));
+        /* Number of expansions of each pair of (row, depth) */
+        LongIntHashMap expansions = new LongIntHashMap(1024);
+        long order = 0;
+        queue.add(new PathNode(startRow, -1, Long.MAX_VALUE, order++, null));
+
+        while (!queue.isEmpty() && (result.size() < numPaths)) {
+            PathNode node = queue.poll();
+            long key = (long)node.row * (maxDepth + 1) + node.depth;
+
+            if (expansions.addTo(key, 1) > numPaths) {
+                /* Dominated by heavier paths */
+                continue;
+            }
+
+            boolean extended = false;
+
+            if (node.depth < maxDepth) {
+                int end = snapShot.getParentEnd(node.row);
+                int parentDepth = node.depth + 1;
+
+                for (int p = snapShot.getParentStart(node.row); p < end; p++) {
+                    int parentRow = snapShot.getParentRow(p);
+
+                    if (!node.contains(parentRow) && accepts(parentRow)) {
+                        /* Path which is not searched is not an end of path. */
+                        extended = true;
+
+                        if (expansions.getOrDefault((long)parentRow * (maxDepth + 1) + parentDepth, 0) < numPaths) {
+                            int child = snapShot.getParentChild(p);
+                            long weight = sortBySize ? snapShot.getChildTotalSize(child) : snapShot.getChildInstances(child);
+                            queue.add(new PathNode(parentRow, child, Math.min(node.weight, weight), order++, node));
+                        }
+
+                    }
+
+                }
+
+            }
+
+            if (!extended && (node.depth > 0)) {
+                result.add(toReferencePath(node));
+            }
+
+        }
+
+        return result;
+    }
+
+    /**
+     * Calculate approximate retained sizes.
+     * Retained size of the class is own total size and retained sizes of
+     * children. Retained size of the child is shared to its parents in
+     * proportion to total size of references. This value is calculated with
+     * iterative fixed point, and it is damped to converge on cyclic
+     * references.
+     *
+     * @return Retained sizes of each row.
+     */
+    private long[] calculateRetainedSizes() {
+        int size = snapShot.size();
+        int numChildren = snapShot.getNumChildren();
+        int[] childRows = new int[numChildren];
+        double[] incoming = new double[size];
+
+        /* Sum of references to each class. Self references are ignored. */
+        for (int row = 0; row < size; row++) {
+            for (int child = snapShot.getChildStart(row); child < snapShot.getChildEnd(row); child++) {
+                int childRow = snapShot.indexOf(snapShot.getChildTag(child));
+
+                if (childRow == row) {
+                    childRow = -1;
+                }
+                else if (childRow != -1) {
+                    incoming[childRow] += snapShot.getChildTotalSize(child);
+                }
+
+                childRows[child] = childRow;
+            }
+        }
+
+        double[] shares = new double[numChildren];
+        IntStream.range(0, numChildren)
+                 .parallel()
+                 .filter(c -> (childRows[c] != -1) && (incoming[childRows[c]] > 0.0d))
+                 .forEach(c -> shares[c] = DAMPING * snapShot.getChildTotalSize(c) / incoming[childRows[c]]);
+
+        double[] current = new double[size];
+        IntStream.range(0, size)
+                 .parallel()
+                 .forEach(r -> current[r] = snapShot.getTotalSize(r));
+        double[] next = new double[size];
+
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            IntStream.range(0, size)
+                     .parallel()
+                     .forEach(r -> {
+                                     double value = snapShot.getTotalSize(r);
+                                     for (int c = snapShot.getChildStart(r); c < snapShot.getChildEnd(r); c++) {
+                                         if (childRows[c] != -1) {
+                                             value += shares[c] * current[childRows[c]];
+                                         }
+                                     }
+                                     next[r] = value;
+                                   });
+            boolean converged = IntStream.range(0, size)
+                                         .parallel()
+                                         .allMatch(r -> Math.abs(next[r] - current[r]) <= next[r] * EPSILON);
+            System.arraycopy(next, 0, current, 0, size);
+
+            if (converged) {
+                break;
+            }
+
+        }
+
+        return IntStream.range(0, size)
+                        .parallel()
+                        .mapToLong(r -> Math.round(current[r]))
+                        .toArray();
+    }
+
+    /**
+     * Get approximate retained size of the class.
+     * Retained sizes are calculated only once for each RetentionAnalyzer.
+     *
+     * @param tag Class tag.
+     * @return Retained size in bytes, or -1 if the class is not found.
+     */
+    public long getRetainedSize(long tag) {
+        int row = snapShot.indexOf(tag);
+
+        if (row == -1) {
+            return -1;
+        }
+
+        long[] result = retainedSizes;
+        if (result == null) {
+            synchronized (this) {
+                result = retainedSizes;
+                if (result == null) {
+                    result = calculateRetainedSizes();
+                    retainedSizes = result;
+                }
+            }
+        }
+
+        return result[row];
+    }
+
+}
@@ -15,28 +15,59 @@
  * along with this program; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-
 package jp.co.ntt.oss.heapstats.task;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.StringJoiner;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import jp.co.ntt.oss.heapstats.container.snapshot.ClassTimeSeries;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
-import static java.util.stream.Collectors.*;
+import jp.co.ntt.oss.heapstats.container.snapshot.SymbolTable;
 
 /**
  * CSV writer class for GC statistics and heap histogram.
+ * SnapShots are processed in column blocks. If there are more SnapShots
+ * than one block, each block is spilled to temporary file, and CSV rows are
+ * built by merging blocks. So memory usage does not depend on number of
+ * SnapShots. If there are many blocks, they are merged into larger blocks
+ * in several passes, so number of files which are opened at once is
+ * bounded.
  */
 public class CSVDumpHeap extends ProgressRunnable{
     
+    /** Number of SnapShots in one column block. */
+    private static final int BLOCK_SIZE = 256;
+    
+    /** Max number of values in one chunk of rows. */
+    private static final int CHUNK_VALUES = 1 << 20;
+    
+    /** Max number of block files which are merged at once. */
+    private static final int MAX_FAN_IN = 64;
+    
+    /** Size of write buffer. */
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+    
     /** Save the file name. */
     private final File csvFile;
     
@@ -47,6 +78,153 @@ public class CSVDumpHeap extends ProgressRunnable{
     private final Optional<Predicate<? super ObjectData>> filter;
     
     private final boolean needJavaStyle;
+    
+    private long progressCounter;
+
+    /**
+     * Source of values of rows.
+     */
+    @FunctionalInterface
+    private static interface ChunkReader{
+        
+        /**
+         * Read values of rows.
+         * Values of each row are stored as instances and total size of
+         * each SnapShot.
+         * 
+         * @param start First slot to read.
+         * @param rows Number of rows to read.
+         * @param values Array to store values.
+         * @throws IOException 
+         */
+        public void read(int start, int rows, long[] values) throws IOException;
+        
+    }
+    
+    /**
+     * Formatter of CSV row.
+     * Numbers are formatted into byte array directly.
+     */
+    private static class RowFormatter{
+        
+        private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(Charset.defaultCharset());
+        
+        private byte[] buf;
+        
+        private int pos;
+        
+        private final byte[] digits;
+        
+        /**
+         * Constructor of RowFormatter.
+         * 
+         * @param capacity Initial capacity.
+         */
+        public RowFormatter(int capacity){
+            buf = new byte[Math.max(capacity, 64)];
+            pos = 0;
+            digits = new byte[20];
+        }
+        
+        /**
+         * Ensure capacity of buffer.
+         * 
+         * @param required Bytes to be appended.
+         */
+        private void ensure(int required){
+            if(pos + required > buf.length){
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + required));
+            }
+        }
+        
+        /**
+         * Append bytes.
+         * 
+         * @param bytes Bytes to append.
+         * @return This formatter.
+         */
+        public RowFormatter append(byte[] bytes){
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+            return this;
+        }
+        
+        /**
+         * Append comma.
+         * 
+         * @return This formatter.
+         */
+        public RowFormatter comma(){
+            ensure(1);
+            buf[pos++] = ',';
+            return this;
+        }
+        
+        /**
+         * Append decimal number.
+         * 
+         * @param value Value to append.
+         * @return This formatter.
+         */
+        public RowFormatter append(long value){
+            
+            if(value == Long.MIN_VALUE){
+                return append(Long.toString(value).getBytes(Charset.defaultCharset()));
+            }
+            
+            int len = 0;
+            long v = Math.abs(value);
+            do{
+                digits[len++] = (byte)('0' + (v % 10));
+                v /= 10;
+            } while(v != 0);
+            
+            ensure(len + 1);
+            if(value < 0){
+                buf[pos++] = '-';
+            }
+            while(len > 0){
+                buf[pos++] = digits[--len];
+            }
+            
+            return this;
+        }
+        
+        /**
+         * Append hexadecimal number with "0x" prefix.
+         * 
+         * @param value Value to append.
+         * @return This formatter.
+         */
+        public RowFormatter appendHex(long value){
+            int len = 0;
+            long v = value;
+            do{
+                digits[len++] = HEX_DIGITS[(int)(v & 0xf)];
+                v >>>= 4;
+            } while(v != 0);
+            
+            ensure(len + 2);
+            buf[pos++] = '0';
+            buf[pos++] = 'x';
+            while(len > 0){
+                buf[pos++] = digits[--len];
+            }
+            
+            return this;
+        }
+        
+        /**
+         * Get formatted row.
+         * 
+         * @return Bytes of this row.
+         */
+        public byte[] toByteArray(){
+            return Arrays.copyOf(buf, pos);
+        }
+        
+    }
 
     /**
      * Constructor of CSVDumpHeap.
@@ -63,17 +241,216 @@ public class CSVDumpHeap extends ProgressRunnable{
         this.needJavaStyle = needJavaStyle;
     }
     
-    private String buildCSVEntry(long tag, String className){
-        StringJoiner joiner = new StringJoiner(",");
-        joiner.add(String.format("0x%X", tag))
-              .add(className);
+    /**
+     * Write bytes to the channel through buffer.
+     * 
+     * @param channel Channel to write.
+     * @param buffer Write buffer.
+     * @param bytes Bytes to write.
+     * @throws IOException 
+     */
+    private void write(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException{
         
-        snapShots.stream()
-                 .map(h -> Optional.ofNullable(h.getSnapShot(needJavaStyle).get(tag)))
-                 .peek(p -> joiner.add(p.map(o -> o.getCount()).orElse(0L).toString()))
-                 .forEach(p -> joiner.add(p.map(o -> o.getTotalSize()).orElse(0L).toString()));
+        if(buffer.remaining() < bytes.length){
+            flush(channel, buffer);
+        }
+        
+        if(buffer.remaining() < bytes.length){
+            channel.write(ByteBuffer.wrap(bytes));
+        }
+        else{
+            buffer.put(bytes);
+        }
+        
+    }
+    
+    /**
+     * Flush write buffer.
+     * 
+     * @param channel Channel to write.
+     * @param buffer Write buffer.
+     * @throws IOException 
+     */
+    private void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Spill column block to temporary file.
+     * Values of each class are stored in order of slot in classes.
+     * 
+     * @param block Time series of the block.
+     * @param classes Dictionary of all classes.
+     * @return Temporary file.
+     * @throws IOException 
+     */
+    private Path spillBlock(ClassTimeSeries block, ClassTimeSeries classes) throws IOException{
+        Path tmp = Files.createTempFile("heapstats", ".csvblock");
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))){
+            for(int slot = 0; slot < classes.size(); slot++){
+                int blockSlot = block.indexOf(classes.getTag(slot));
+                
+                for(int i = 0; i < block.getNumSnapShots(); i++){
+                    out.writeLong((blockSlot == -1) ? 0L : block.getCount(blockSlot, i));
+                    out.writeLong((blockSlot == -1) ? 0L : block.getTotalSize(blockSlot, i));
+                }
+                
+            }
+        }
+        
+        return tmp;
+    }
+    
+    /**
+     * Merge consecutive column blocks into one block.
+     * Values of each class are stored in order of slot as spillBlock().
+     * 
+     * @param blockFiles Block files to merge.
+     * @param blockRanges Ranges of blocks: first SnapShot, end of SnapShots
+     *                     and number of classes.
+     * @return Temporary file of merged block.
+     * @throws IOException 
+     */
+    private Path mergeBlocks(List<Path> blockFiles, List<int[]> blockRanges) throws IOException{
+        Path tmp = Files.createTempFile("heapstats", ".csvblock");
+        List<DataInputStream> inputs = new ArrayList<>();
+        int numClasses = blockRanges.get(blockRanges.size() - 1)[2];
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE))){
+            for(Path blockFile : blockFiles){
+                inputs.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(blockFile), BUFFER_SIZE / blockFiles.size() + 8192)));
+            }
+            
+            for(int slot = 0; slot < numClasses; slot++){
+                for(int b = 0; b < inputs.size(); b++){
+                    int[] range = blockRanges.get(b);
+                    boolean exists = slot < range[2];
+                    
+                    for(int i = range[0] * 2; i < range[1] * 2; i++){
+                        out.writeLong(exists ? inputs.get(b).readLong() : 0L);
+                    }
+                    
+                }
+            }
+        }
+        catch(IOException ex){
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        finally{
+            for(DataInputStream in : inputs){
+                in.close();
+            }
+        }
+        
+        return tmp;
+    }
+    
+    /**
+     * Merge column blocks until number of blocks is MAX_FAN_IN or less.
+     * Merged block files are deleted.
+     * 
+     * @param blockFiles Block files. This list is replaced with merged
+     *                    blocks.
+     * @param blockRanges Ranges of blocks. This list is replaced with ranges
+     *                     of merged blocks.
+     * @throws IOException 
+     */
+    private void reduceBlocks(List<Path> blockFiles, List<int[]> blockRanges) throws IOException{
+        
+        while(blockFiles.size() > MAX_FAN_IN){
+            List<Path> mergedFiles = new ArrayList<>();
+            List<int[]> mergedRanges = new ArrayList<>();
+            
+            try{
+                for(int from = 0; from < blockFiles.size(); from += MAX_FAN_IN){
+                    int to = Math.min(from + MAX_FAN_IN, blockFiles.size());
+                    mergedFiles.add(mergeBlocks(blockFiles.subList(from, to), blockRanges.subList(from, to)));
+                    mergedRanges.add(new int[]{blockRanges.get(from)[0], blockRanges.get(to - 1)[1], blockRanges.get(to - 1)[2]});
+                }
+            }
+            catch(IOException ex){
+                for(Path mergedFile : mergedFiles){
+                    Files.deleteIfExists(mergedFile);
+                }
+                throw ex;
+            }
+            
+            for(Path blockFile : blockFiles){
+                Files.deleteIfExists(blockFile);
+            }
+            blockFiles.clear();
+            blockFiles.addAll(mergedFiles);
+            blockRanges.clear();
+            blockRanges.addAll(mergedRanges);
+        }
+        
+    }
+    
+    /**
+     * Build CSV row of the class.
+     * 
+     * @param classes Dictionary of all classes.
+     * @param slot Slot of the class.
+     * @param values Values of rows in chunk.
+     * @param offset Offset of the row in values.
+     * @return CSV row.
+     */
+    private byte[] buildCSVEntry(ClassTimeSeries classes, int slot, long[] values, int offset){
+        int numValues = snapShots.size() * 2;
+        RowFormatter formatter = new RowFormatter(numValues * 8);
+        
+        formatter.appendHex(classes.getTag(slot))
+                 .comma()
+                 .append(classes.getName(slot).getBytes(Charset.defaultCharset()));
+        for(int i = 0; i < numValues; i++){
+            formatter.comma()
+                     .append(values[offset + i]);
+        }
+        formatter.append(LINE_SEPARATOR);
+        
+        return formatter.toByteArray();
+    }
+    
+    /**
+     * Write CSV rows.
+     * Rows are read in chunks, and rows in each chunk are formatted in
+     * parallel.
+     * 
+     * @param channel Channel to write.
+     * @param buffer Write buffer.
+     * @param classes Dictionary of all classes.
+     * @param reader Source of values.
+     * @throws IOException 
+     */
+    private void writeRows(FileChannel channel, ByteBuffer buffer, ClassTimeSeries classes, ChunkReader reader) throws IOException{
+        int numValues = snapShots.size() * 2;
+        int chunkRows = Math.max(1, CHUNK_VALUES / Math.max(numValues, 1));
+        long[] values = new long[chunkRows * numValues];
+        
+        for(int start = 0; start < classes.size(); start += chunkRows){
+            int first = start;
+            int rows = Math.min(chunkRows, classes.size() - start);
+            reader.read(start, rows, values);
+            
+            byte[][] lines = IntStream.range(0, rows)
+                                      .parallel()
+                                      .mapToObj(r -> classes.isSelected(first + r) ? buildCSVEntry(classes, first + r, values, r * numValues) : null)
+                                      .toArray(byte[][]::new);
+            for(byte[] line : lines){
+                if(line != null){
+                    write(channel, buffer, line);
+                }
+            }
+            
+            updateProgress.ifPresent(c -> c.accept(progressCounter + (long)(first + rows) * snapShots.size() / classes.size()));
+        }
         
-        return joiner.toString();
     }
 
     /**
@@ -81,13 +458,12 @@ public class CSVDumpHeap extends ProgressRunnable{
      */
     @Override
     public void run() {
+        setTotal(snapShots.size() * 2L);
+        progressCounter = 0;
+        List<Path> blockFiles = new ArrayList<>();
         
-        try(PrintWriter writer = new PrintWriter(csvFile)){
-            /* Collect all class tags and names from target snapshots. */
-            Map<Long, String> targetClasses = snapShots.stream()
-                                                       .flatMap(s -> s.getSnapShot(needJavaStyle).entrySet().stream())
-                                                       .filter(e -> filter.orElse(f -> true).test(e.getValue()))
-                                                       .collect(toConcurrentMap(e -> e.getKey(), e -> e.getValue().getName(), (v1, v2) -> v1));
+        try(FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
             
             /* Sorted SnapShot DateTime List */
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss.SSS");
@@ -100,16 +476,102 @@ public class CSVDumpHeap extends ProgressRunnable{
                      .map(h -> formatter.format(h.getSnapShotDate()))
                      .forEachOrdered(s -> headerJoiner.add(String.format("%s_instances", s))
                                                       .add(String.format("%s_total size", s)));
-            writer.println(headerJoiner.toString());
+            write(channel, buffer, (headerJoiner.toString() + System.lineSeparator()).getBytes(Charset.defaultCharset()));
+            
+            /* Collect history of all classes in column blocks. */
+            ClassTimeSeries classes = null;
+            List<int[]> blockRanges = new ArrayList<>();
+            
+            for(int start = 0; start < snapShots.size(); start += BLOCK_SIZE){
+                int end = Math.min(start + BLOCK_SIZE, snapShots.size());
+                ClassTimeSeries block = ClassTimeSeries.build(snapShots.subList(start, end), needJavaStyle, filter);
+                
+                if(snapShots.size() <= BLOCK_SIZE){
+                    classes = block;
+                }
+                else{
+                    if(classes == null){
+                        classes = new ClassTimeSeries(0, block.size());
+                    }
+                    
+                    for(int slot = 0; slot < block.size(); slot++){
+                        classes.register(block.getTag(slot), block.getNameId(slot, classes.getSymbolTable()), block.isSelected(slot));
+                    }
+                    blockFiles.add(spillBlock(block, classes));
+                    blockRanges.add(new int[]{start, end, classes.size()});
+                }
+                
+                progressCounter = end;
+                updateProgress.ifPresent(c -> c.accept(progressCounter));
+            }
             
             /* Dump data */
-            targetClasses.entrySet().stream()
-                                    .map(e -> buildCSVEntry(e.getKey(), e.getValue()))
-                                    .forEach(writer::println);
-        } catch (FileNotFoundException ex) {
+            if(classes == null){
+                /* Nothing to dump */
+            }
+            else if(blockFiles.isEmpty()){
+                ClassTimeSeries series = classes;
+                writeRows(channel, buffer, classes, (start, rows, values) -> {
+                    int numValues = series.getNumSnapShots() * 2;
+                    for(int r = 0; r < rows; r++){
+                        for(int i = 0; i < series.getNumSnapShots(); i++){
+                            values[r * numValues + i * 2] = series.getCount(start + r, i);
+                            values[r * numValues + i * 2 + 1] = series.getTotalSize(start + r, i);
+                        }
+                    }
+                });
+            }
+            else{
+                reduceBlocks(blockFiles, blockRanges);
+                
+                List<DataInputStream> inputs = new ArrayList<>();
+                try{
+                    for(Path blockFile : blockFiles){
+                        inputs.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(blockFile), BUFFER_SIZE / blockFiles.size() + 8192)));
+                    }
+                    
+                    writeRows(channel, buffer, classes, (start, rows, values) -> {
+                        int numValues = snapShots.size() * 2;
+                        Arrays.fill(values, 0, rows * numValues, 0L);
+                        
+                        for(int b = 0; b < inputs.size(); b++){
+                            int[] range = blockRanges.get(b);
+                            DataInputStream in = inputs.get(b);
+                            
+                            /* Classes which are registered after this block do not exist in it. */
+                            for(int r = 0; (r < rows) && (start + r < range[2]); r++){
+                                for(int i = range[0] * 2; i < range[1] * 2; i++){
+                                    values[r * numValues + i] = in.readLong();
+                                }
+                            }
+                            
+                        }
+                        
+                    });
+                }
+                finally{
+                    for(DataInputStream in : inputs){
+                        in.close();
+                    }
+                }
+            }
+            
+            flush(channel, buffer);
+        } catch (IOException ex) {
             throw new UncheckedIOException(ex);
         }
+        finally{
+            for(Path blockFile : blockFiles){
+                try{
+                    Files.deleteIfExists(blockFile);
+                }
+                catch(IOException ex){
+                    /* Temporary file is left */
+                }
+            }
+        }
         
+        updateProgress.ifPresent(c -> c.accept(getTotal()));
     }
 
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import jp.co.ntt.oss.heapstats.columnar.ColumnType;
+import jp.co.ntt.oss.heapstats.columnar.ColumnarWriter;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
+import jp.co.ntt.oss.heapstats.parser.handler.ObjectDataHandler;
+
+/**
+ * Columnar binary writer class for GC statistics and heap histogram.
+ * Two tables are written: "gc" has one row per SnapShot, and "histogram"
+ * has one row per class in each SnapShot. Class names are dictionary
+ * encoded.
+ *
+ * @see ColumnarWriter
+ */
+public class ColumnarDumpHeap extends ProgressRunnable{
+    
+    private static final String[] GC_COLUMNS = {"date", "fullCount", "youngCount", "newHeap", "oldHeap", "totalCapacity",
+                                                "gcCause", "gcTime", "metaspaceUsage", "metaspaceCapacity"};
+    
+    private static final ColumnType[] GC_TYPES = {ColumnType.LONG, ColumnType.LONG, ColumnType.LONG, ColumnType.LONG, ColumnType.LONG, ColumnType.LONG,
+                                                  ColumnType.DICTIONARY, ColumnType.LONG, ColumnType.LONG, ColumnType.LONG};
+    
+    private static final String[] HISTOGRAM_COLUMNS = {"date", "tag", "name", "instances", "totalSize"};
+    
+    private static final ColumnType[] HISTOGRAM_TYPES = {ColumnType.LONG, ColumnType.LONG, ColumnType.DICTIONARY, ColumnType.LONG, ColumnType.LONG};
+    
+    /** Size of write buffer. */
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+    
+    /** Save the file name. */
+    private final File outFile;
+    
+    /** SnapShot to dump */
+    private final List<SnapShotHeader> snapShots;
+    
+    /** Filter. */
+    private final Optional<Predicate<? super ObjectData>> filter;
+    
+    private final boolean needJavaStyle;
+
+    /**
+     * Constructor of ColumnarDumpHeap.
+     *
+     * @param outFile File name to dump.
+     * @param target List of SnapShot to dump.
+     * @param filter Filter list to dump.
+     * @param needJavaStyle true if class name should be Java-style. false if class name should be JNI-style.
+     */
+    public ColumnarDumpHeap(File outFile, List<SnapShotHeader> target, Predicate<? super ObjectData> filter, boolean needJavaStyle) {
+        this.outFile = outFile;
+        this.snapShots = target;
+        this.filter = Optional.ofNullable(filter);
+        this.needJavaStyle = needJavaStyle;
+    }
+    
+    /**
+     * Write "gc" table.
+     * 
+     * @param writer Columnar writer.
+     * @throws IOException 
+     */
+    private void writeGCTable(ColumnarWriter writer) throws IOException{
+        ColumnarWriter.Table table = writer.startTable("gc", GC_COLUMNS, GC_TYPES);
+        
+        for(SnapShotHeader header : snapShots){
+            table.setLong(0, header.getSnapShotDateAsLong());
+            table.setLong(1, header.getFullCount());
+            table.setLong(2, header.getYngCount());
+            table.setLong(3, header.getNewHeap());
+            table.setLong(4, header.getOldHeap());
+            table.setLong(5, header.getTotalCapacity());
+            table.setString(6, header.getGcCause());
+            table.setLong(7, header.getGcTime());
+            table.setLong(8, header.getMetaspaceUsage());
+            table.setLong(9, header.getMetaspaceCapacity());
+            table.endRow();
+        }
+        
+    }
+    
+    /**
+     * Write one row of "histogram" table.
+     * 
+     * @param table Histogram table.
+     * @param date SnapShot date.
+     * @param obj Class entry.
+     * @throws IOException 
+     */
+    private void writeHistogramRow(ColumnarWriter.Table table, long date, ObjectData obj) throws IOException{
+        table.setLong(0, date);
+        table.setLong(1, obj.getTag());
+        table.setString(2, obj.getName());
+        table.setLong(3, obj.getCount());
+        table.setLong(4, obj.getTotalSize());
+        table.endRow();
+    }
+    
+    /**
+     * Write "histogram" table.
+     * Rows of each SnapShot are written while it is parsed, so whole
+     * SnapShot is not built unless it is cached.
+     * 
+     * @param writer Columnar writer.
+     * @throws IOException 
+     */
+    private void writeHistogramTable(ColumnarWriter writer) throws IOException{
+        ColumnarWriter.Table table = writer.startTable("histogram", HISTOGRAM_COLUMNS, HISTOGRAM_TYPES);
+        SnapShotParser parser = new SnapShotParser(needJavaStyle);
+        
+        for(int i = 0; i < snapShots.size(); i++){
+            SnapShotHeader header = snapShots.get(i);
+            long date = header.getSnapShotDateAsLong();
+            
+            if(header.isSnapShotCached(needJavaStyle)){
+                SnapShotData data = header.getSnapShotData(needJavaStyle);
+                
+                for(int row = 0; row < data.size(); row++){
+                    ObjectData obj = data.getObjectData(row);
+                    
+                    if(filter.map(f -> f.test(obj)).orElse(true)){
+                        writeHistogramRow(table, date, obj);
+                    }
+                    
+                }
+                
+            }
+            else{
+                try{
+                    parser.parseSingle(header, new ObjectDataHandler(obj -> {
+                        if(filter.map(f -> f.test(obj)).orElse(true)){
+                            try{
+                                writeHistogramRow(table, date, obj);
+                            }
+                            catch(IOException ex){
+                                throw new UncheckedIOException(ex);
+                            }
+                        }
+                    }));
+                }
+                catch(UncheckedIOException ex){
+                    throw ex.getCause();
+                }
+            }
+            
+            long progress = i + 1;
+            updateProgress.ifPresent(c -> c.accept(progress));
+        }
+        
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        setTotal(snapShots.size());
+        
+        try(ColumnarWriter writer = new ColumnarWriter(new BufferedOutputStream(new FileOutputStream(outFile), BUFFER_SIZE))){
+            writeGCTable(writer);
+            writeHistogramTable(writer);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import jp.co.ntt.oss.heapstats.columnar.ColumnType;
+import jp.co.ntt.oss.heapstats.columnar.ColumnarWriter;
+import jp.co.ntt.oss.heapstats.container.log.LogData;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
+
+/**
+ * Columnar binary writer class for resource log.
+ * "resource" table is written with one row per log entry.
+ * Metric columns are copied from LogSeries in order of its columns.
+ *
+ * @see ColumnarWriter
+ */
+public class ColumnarDumpLog extends ProgressRunnable{
+    
+    private static final String[] COLUMNS = {"date", "logCause",
+                                             "javaUserTime", "javaSysTime", "javaVSSize", "javaRSSize",
+                                             "systemUserTime", "systemNiceTime", "systemSysTime", "systemIdleTime",
+                                             "systemIOWaitTime", "systemIRQTime", "systemSoftIRQTime", "systemStealTime", "systemGuestTime",
+                                             "jvmSyncPark", "jvmSafepointTime", "jvmSafepoints", "jvmLiveThreads"};
+    
+    /** Save the file name. */
+    private final File outFile;
+    
+    /** Log entries to dump. */
+    private final LogSeries logSeries;
+
+    /**
+     * Constructor of ColumnarDumpLog.
+     *
+     * @param outFile File name to dump.
+     * @param target Log series to dump.
+     */
+    public ColumnarDumpLog(File outFile, LogSeries target) {
+        this.outFile = outFile;
+        this.logSeries = target;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        setTotal(logSeries.size());
+        
+        ColumnType[] types = new ColumnType[COLUMNS.length];
+        Arrays.fill(types, ColumnType.LONG);
+        types[1] = ColumnType.DICTIONARY;
+        
+        try(ColumnarWriter writer = new ColumnarWriter(new BufferedOutputStream(new FileOutputStream(outFile)))){
+            ColumnarWriter.Table table = writer.startTable("resource", COLUMNS, types);
+            long progress = 0;
+            
+            for(int idx = 0; idx < logSeries.size(); idx++){
+                LogData.LogCause cause = logSeries.getLogCause(idx);
+                table.setLong(0, logSeries.getEpochMilli(idx));
+                table.setString(1, (cause == null) ? null : cause.name());
+                
+                for(int i = 0; i < LogSeries.NUM_COLUMNS; i++){
+                    table.setLong(i + 2, logSeries.getValue(i, idx));
+                }
+                
+                table.endRow();
+                
+                long current = ++progress;
+                updateProgress.ifPresent(c -> c.accept(current));
+            }
+            
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        
+    }
+
+}
@@ -17,18 +17,25 @@
  */
 package jp.co.ntt.oss.heapstats.task;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jp.co.ntt.oss.heapstats.collection.LongHashSet;
+import jp.co.ntt.oss.heapstats.collection.TopNSelector;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
 import jp.co.ntt.oss.heapstats.container.snapshot.DiffData;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
+import jp.co.ntt.oss.heapstats.parser.handler.TopNHandler;
 
 /**
  * Task thread implementation for calculating difference data.
@@ -93,20 +100,60 @@ public class DiffCalculator extends ProgressRunnable {
         setTotal(this.snapShots.size());
     }
 
+    /**
+     * Select TopN classes from cached SnapShot.
+     * ObjectData is built only for rows which can be ranked in TopN.
+     *
+     * @param data SnapShot data.
+     * @return TopN classes which are sorted in descending order.
+     */
+    private List<ObjectData> selectTopN(SnapShotData data) {
+        TopNSelector<ObjectData> selector = new TopNSelector<>(rankLevel);
+
+        for (int row = 0; row < data.size(); row++) {
+            long value = isInstanceGraph ? data.getCount(row) : data.getTotalSize(row);
+
+            if (!filter.isPresent()) {
+                if (selector.accepts(value)) {
+                    selector.offer(value, data.getObjectData(row));
+                }
+            }
+            else {
+                ObjectData obj = data.getObjectData(row);
+                if (filter.get().test(obj)) {
+                    selector.offer(value, obj);
+                }
+            }
+
+        }
+
+        return selector.toList();
+    }
+
     /**
      * Build TopN data from givien snapshot header.
+     * If the SnapShot is not cached, TopN classes are collected while
+     * parsing, so whole SnapShot is not built.
      *
      * @param header SnapShot header to build.
      */
     private void buildTopNData(SnapShotHeader header) {
-        List<ObjectData> topNBuffer = header.getSnapShot(needJavaStyle)
-                .values()
-                .parallelStream()
-                .filter(filter.orElse(o -> true))
-                .sorted(Comparator.comparingLong(isInstanceGraph ?
-                        ObjectData::getCount : ObjectData::getTotalSize).reversed())
-                .limit(rankLevel)
-                .collect(Collectors.toList());
+        List<ObjectData> topNBuffer;
+
+        if (header.isSnapShotCached(needJavaStyle)) {
+            topNBuffer = selectTopN(header.getSnapShotData(needJavaStyle));
+        }
+        else {
+            TopNHandler handler = new TopNHandler(rankLevel, isInstanceGraph, filter.orElse(null));
+
+            try {
+                new SnapShotParser(needJavaStyle).parseSingle(header, handler);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            topNBuffer = handler.getTopN();
+        }
 
         if (includeOthers) {
             ObjectData other = new ObjectData();
@@ -140,31 +187,39 @@ public class DiffCalculator extends ProgressRunnable {
         snapShots.stream()
                 .forEachOrdered(h -> buildTopNData(h));
 
-        List<Long> rankedTagList = topNList.values().stream()
+        LongHashSet rankedTags = new LongHashSet(rankLevel * 2);
+        topNList.values().stream()
                 .flatMap(c -> c.stream())
                 .mapToLong(o -> o.getTag())
                 .filter(t -> t != 0L)
-                .distinct()
-                .boxed()
-                .collect(Collectors.toList());
+                .forEach(rankedTags::add);
 
         /* Calculate summarize diff */
         SnapShotHeader startHeader = snapShots.get(0);
         SnapShotHeader endHeader = snapShots.get(snapShots.size() - 1);
 
-        Map<Long, ObjectData> start = startHeader.getSnapShot(needJavaStyle);
-        Map<Long, ObjectData> end = endHeader.getSnapShot(needJavaStyle);
-        start.forEach((k, v) -> end.putIfAbsent(k, new ObjectData(k, v.getName(), v.getClassLoader(), v.getClassLoaderTag(), 0, 0, v.getLoaderName(), null)));
-
-        if (filter.isPresent()) {
-            end.entrySet().stream()
-                    .filter(e -> filter.get().test(e.getValue()))
-                    .map(e -> new DiffData(endHeader.getSnapShotDate(), start.get(e.getKey()), e.getValue(), rankedTagList.contains(e.getValue().getTag())))
-                    .forEach(d -> lastDiffList.add(d));
-        } else {
-            end.forEach((k, v) -> lastDiffList.add(new DiffData(endHeader.getSnapShotDate(), start.get(k), v, rankedTagList.contains(v.getTag()))));
-        }
-
+        SnapShotData start = startHeader.getSnapShotData(needJavaStyle);
+        SnapShotData end = endHeader.getSnapShotData(needJavaStyle);
+        LocalDateTime endDate = endHeader.getSnapShotDate();
+        Predicate<? super ObjectData> diffFilter = filter.orElse(o -> true);
+
+        /* Merge classes in the last SnapShot and classes which are unloaded in it */
+        Stream<DiffData> current = end.rows()
+                                      .parallel()
+                                      .mapToObj(end::getObjectData)
+                                      .filter(diffFilter)
+                                      .map(o -> {
+                                                  int prev = start.indexOf(o.getTag());
+                                                  return new DiffData(endDate, (prev == -1) ? null : start.getObjectData(prev), o, rankedTags.contains(o.getTag()));
+                                                });
+        Stream<DiffData> unloaded = start.rows()
+                                         .parallel()
+                                         .filter(r -> end.indexOf(start.getTag(r)) == -1)
+                                         .mapToObj(r -> new ObjectData(start.getTag(r), start.getName(r), start.getClassLoader(r), start.getClassLoaderTag(r), 0, 0, start.getLoaderName(r), null))
+                                         .filter(diffFilter)
+                                         .map(o -> new DiffData(endDate, start.getObjectData(start.indexOf(o.getTag())), o, rankedTags.contains(o.getTag())));
+
+        lastDiffList.addAll(Stream.concat(current, unloaded).collect(Collectors.toList()));
     }
 
     /**
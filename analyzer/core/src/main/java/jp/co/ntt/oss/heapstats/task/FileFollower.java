@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import jp.co.ntt.oss.heapstats.parser.CompressedFiles;
+
+/**
+ * Base class of follower of a file which is appended by HeapStats agent.
+ * Directory of the file is watched by WatchService, and only bytes which
+ * are appended after the last read are passed to subclass. File size is
+ * also checked periodically because some file systems do not notify
+ * modification immediately.
+ * If the file is truncated (e.g. JVM is restarted), {@link #onTruncated()}
+ * is called, and then the file is read from the beginning. Subclass should
+ * discard data which is read before truncation in onTruncated().
+ */
+public abstract class FileFollower implements Runnable {
+
+    /** Interval of periodic check in milliseconds. */
+    private static final long POLL_INTERVAL = 1000;
+
+    /** File to follow. */
+    protected final Path file;
+
+    private long offset;
+
+    private volatile boolean running;
+
+    private volatile Thread worker;
+
+    /**
+     * Constructor of FileFollower.
+     *
+     * @param file File to follow. It does not need to exist yet.
+     */
+    public FileFollower(Path file) {
+        this.file = file.toAbsolutePath();
+        this.offset = 0;
+        this.running = false;
+        this.worker = null;
+    }
+
+    /**
+     * Read bytes which are appended to the file.
+     *
+     * @param offset Offset in the file to start reading.
+     * @return Offset of the next byte which is not processed yet.
+     *          Incomplete record at the end of file should be left.
+     * @throws IOException
+     */
+    protected abstract long readAppended(long offset) throws IOException;
+
+    /**
+     * Called when the file is truncated.
+     * Subclass should discard data which is read from the file, because the
+     * file is read from the beginning after this call.
+     */
+    protected void onTruncated() {
+        /* Nothing to do */
+    }
+
+    /**
+     * Check the file and read appended bytes.
+     * This method can be called without run() to follow the file manually.
+     *
+     * @throws IOException
+     */
+    public synchronized void poll() throws IOException {
+
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long size = Files.size(file);
+
+        if (size < offset) {
+            /* File is truncated. */
+            offset = 0;
+            onTruncated();
+        }
+
+        if (size > offset) {
+
+            if ((offset == 0) && (CompressedFiles.detect(file) != CompressedFiles.Compression.NONE)) {
+                throw new IOException("Compressed file cannot be followed: " + file);
+            }
+
+            offset = readAppended(offset);
+        }
+
+    }
+
+    /**
+     * Get offset of the next byte which is not processed yet.
+     *
+     * @return Offset in the file.
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Stop following.
+     * run() returns after current reading is finished.
+     */
+    public void stop() {
+        running = false;
+        Thread t = worker;
+
+        if (t != null) {
+            t.interrupt();
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This method follows the file until stop() is called or the thread is
+     * interrupted.
+     */
+    @Override
+    public void run() {
+        running = true;
+        worker = Thread.currentThread();
+
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            poll();
+
+            while (running) {
+                WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    /* Events of other files are also ignored by poll() if the file is not changed. */
+                    key.pollEvents();
+                    key.reset();
+                }
+
+                poll();
+            }
+
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            /* Stopped */
+        }
+        catch (IOException e) {
+
+            /* Reading is interrupted by stop(). */
+            if (running) {
+                throw new UncheckedIOException(e);
+            }
+
+        }
+        finally {
+            running = false;
+            worker = null;
+        }
+
+    }
+
+}
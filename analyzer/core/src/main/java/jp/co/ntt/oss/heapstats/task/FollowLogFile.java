@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jp.co.ntt.oss.heapstats.container.log.DiffSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogStatistics;
+import jp.co.ntt.oss.heapstats.parser.ResourceLogParser;
+
+/**
+ * Follower of HeapStats resource log (CSV).
+ * Lines which are appended to the log are parsed, and they are added to
+ * the end of log series in order of the file. Invalid lines are skipped,
+ * and they are reported to the handler. Listener is notified on the
+ * thread which follows the log. If the log is truncated, all entries and
+ * statistics are discarded, and entries are notified from index 0 again.
+ */
+public class FollowLogFile extends FileFollower {
+
+    private final ResourceLogParser parser;
+
+    private final LogSeries logSeries;
+
+    private final DiffSeries diffSeries;
+
+    private final LogStatistics statistics;
+
+    private final ObjIntConsumer<LogSeries> listener;
+
+    private final Consumer<RuntimeException> invalidLineHandler;
+
+    /**
+     * Constructor of FollowLogFile.
+     *
+     * @param file Resource log to follow.
+     * @param listener Listener of appended entries. Log series and index of
+     *                  the first appended entry are passed.
+     * @param invalidLineHandler Handler of errors of invalid lines.
+     */
+    public FollowLogFile(Path file, ObjIntConsumer<LogSeries> listener, Consumer<RuntimeException> invalidLineHandler) {
+        super(file);
+        this.parser = new ResourceLogParser();
+        this.logSeries = new LogSeries();
+        this.diffSeries = new DiffSeries(logSeries);
+        this.statistics = new LogStatistics();
+        this.listener = listener;
+        this.invalidLineHandler = invalidLineHandler;
+    }
+
+    /**
+     * Constructor of FollowLogFile.
+     * Invalid lines are logged as warning.
+     *
+     * @param file Resource log to follow.
+     * @param listener Listener of appended entries. Log series and index of
+     *                  the first appended entry are passed.
+     */
+    public FollowLogFile(Path file, ObjIntConsumer<LogSeries> listener) {
+        this(file, listener, e -> Logger.getLogger(FollowLogFile.class.getName()).log(Level.WARNING, "Invalid line is skipped.", e));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long readAppended(long offset) throws IOException {
+        int from = logSeries.size();
+        long next;
+
+        try {
+            next = parser.parseAppended(file, offset, logSeries, invalidLineHandler);
+        }
+        finally {
+
+            /* Entries before invalid line are also notified. */
+            if (logSeries.size() > from) {
+                statistics.addLogEntries(logSeries, from, logSeries.size());
+                /* Difference of the first appended entry is calculated with previous entry. */
+                statistics.addDiffEntries(diffSeries, Math.max(from - 1, 0), diffSeries.size());
+                listener.accept(logSeries, from);
+            }
+
+        }
+
+        return next;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onTruncated() {
+        logSeries.truncate(0);
+        statistics.clear();
+    }
+
+    /**
+     * Returns log series which is followed.
+     *
+     * @return Log series.
+     */
+    public LogSeries getLogSeries() {
+        return logSeries;
+    }
+
+    /**
+     * Returns difference series of the log series.
+     *
+     * @return Difference series.
+     */
+    public DiffSeries getDiffSeries() {
+        return diffSeries;
+    }
+
+    /**
+     * Returns statistics of the log series.
+     * Statistics are updated before the listener is notified.
+     *
+     * @return Statistics of all entries which are followed.
+     */
+    public LogStatistics getStatistics() {
+        return statistics;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.parser.ChannelSnapShotInput;
+import jp.co.ntt.oss.heapstats.parser.SnapShotInput;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
+import jp.co.ntt.oss.heapstats.parser.handler.SnapShotHandler;
+
+/**
+ * Follower of HeapStats SnapShot file.
+ * SnapShots which are appended to the file are scanned and decoded to count
+ * instances. Decoded SnapShot is kept in SnapShotCache as JNI-style
+ * SnapShot, so it is not parsed again. SnapShot which is being written is
+ * processed after it is completed. Listener is notified on the thread which
+ * follows the file. If the file is truncated, followed SnapShots are
+ * discarded.
+ */
+public class FollowSnapShot extends FileFollower {
+
+    private final SnapShotParser parser;
+
+    private final List<SnapShotHeader> snapShotList;
+
+    private final Consumer<List<SnapShotHeader>> listener;
+
+    /**
+     * Constructor of FollowSnapShot.
+     *
+     * @param file SnapShot file to follow.
+     * @param listener Listener of appended SnapShot headers.
+     */
+    public FollowSnapShot(Path file, Consumer<List<SnapShotHeader>> listener) {
+        super(file);
+        /* Class names are not needed to count instances. */
+        this.parser = new SnapShotParser(false);
+        this.snapShotList = Collections.synchronizedList(new ArrayList<>());
+        this.listener = listener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long readAppended(long offset) throws IOException {
+        List<SnapShotHeader> appended = new ArrayList<>();
+        long next;
+
+        try (SnapShotInput input = new ChannelSnapShotInput(file)) {
+            input.position(offset);
+            next = parser.scanCompleteHeaders(input, file.toString(), appended::add);
+
+            for (SnapShotHeader header : appended) {
+                SnapShotHandler handler = new SnapShotHandler();
+                parser.parseSingle(input, header, handler);
+
+                SnapShotData snapShot = handler.getSnapShotData();
+                header.setNumInstances(snapShot.rows()
+                                               .mapToLong(snapShot::getCount)
+                                               .sum());
+                header.setSnapShotData(snapShot, false);
+            }
+
+        }
+
+        if (!appended.isEmpty()) {
+            snapShotList.addAll(appended);
+            listener.accept(appended);
+        }
+
+        return next;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onTruncated() {
+        snapShotList.clear();
+    }
+
+    /**
+     * Returns SnapShot headers which are followed.
+     *
+     * @return Unmodifiable list of SnapShot headers in order of the file.
+     */
+    public List<SnapShotHeader> getSnapShotList() {
+        return Collections.unmodifiableList(snapShotList);
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import jp.co.ntt.oss.heapstats.container.snapshot.LeakSuspect;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
+import jp.co.ntt.oss.heapstats.parser.handler.LeakSuspectHandler;
+import jp.co.ntt.oss.heapstats.snapshot.LeakSuspectAnalyzer;
+
+/**
+ * Task thread implementation for detecting leak suspects.
+ * All SnapShots are passed to {@link LeakSuspectAnalyzer} in one pass.
+ * Cached SnapShot is read from cache, and others are parsed without
+ * building whole SnapShot.
+ */
+public class LeakSuspectCalculator extends ProgressRunnable {
+
+    private final List<SnapShotHeader> snapShots;
+
+    private final int limit;
+
+    private final Optional<Predicate<? super ObjectData>> filter;
+
+    private final boolean needJavaStyle;
+
+    private List<LeakSuspect> suspects;
+
+    /**
+     * Constructor of LeakSuspectCalculator.
+     *
+     * @param snapShots SnapShot list to analyze. They should be sorted by
+     *                   date.
+     * @param limit Max number of suspects.
+     * @param filter Class filter.
+     * @param needJavaStyle true if class name should be Java-style FQCN. false means JNI-style.
+     */
+    public LeakSuspectCalculator(List<SnapShotHeader> snapShots, int limit, Predicate<? super ObjectData> filter, boolean needJavaStyle) {
+        this.snapShots = snapShots;
+        this.limit = limit;
+        this.filter = Optional.ofNullable(filter);
+        this.needJavaStyle = needJavaStyle;
+        this.suspects = null;
+
+        setTotal(this.snapShots.size());
+    }
+
+    /**
+     * Pass cached SnapShot to analyzer.
+     *
+     * @param analyzer Analyzer to pass.
+     * @param header SnapShot header.
+     */
+    private void addCachedSnapShot(LeakSuspectAnalyzer analyzer, SnapShotHeader header) {
+        SnapShotData data = header.getSnapShotData(needJavaStyle);
+        analyzer.beginSnapShot(header);
+
+        for (int row = 0; row < data.size(); row++) {
+            int r = row;
+            boolean accepted = filter.map(f -> f.test(data.getObjectData(r))).orElse(true);
+            analyzer.add(data.getTag(row), data.getNameId(row, analyzer.getSymbolTable()), data.getClassLoader(row), data.getClassLoaderTag(row),
+                         data.getCount(row), data.getTotalSize(row), accepted);
+        }
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        int expectedSize = snapShots.stream()
+                                    .mapToInt(SnapShotHeader::getExpectedEntries)
+                                    .max()
+                                    .orElse(0);
+        LeakSuspectAnalyzer analyzer = new LeakSuspectAnalyzer(expectedSize);
+        SnapShotParser parser = new SnapShotParser(needJavaStyle);
+
+        for (int i = 0; i < snapShots.size(); i++) {
+            SnapShotHeader header = snapShots.get(i);
+
+            if (header.isSnapShotCached(needJavaStyle)) {
+                addCachedSnapShot(analyzer, header);
+            }
+            else {
+                try {
+                    parser.parseSingle(header, new LeakSuspectHandler(analyzer, filter.orElse(null)));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+
+            long progress = i + 1;
+            updateProgress.ifPresent(c -> c.accept(progress));
+        }
+
+        suspects = analyzer.getSuspects(limit);
+    }
+
+    /**
+     * Get leak suspects which are result of this task.
+     *
+     * @return Suspects which are sorted by score in descending order.
+     */
+    public List<LeakSuspect> getSuspects() {
+        return suspects;
+    }
+
+}
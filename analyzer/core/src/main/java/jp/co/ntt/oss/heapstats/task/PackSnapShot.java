@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.lambda.ConsumerWrapper;
+import jp.co.ntt.oss.heapstats.parser.SnapShotArchive;
+import jp.co.ntt.oss.heapstats.parser.SnapShotArchiveWriter;
+import jp.co.ntt.oss.heapstats.parser.SnapShotInput;
+import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
+
+/**
+ * Task for converting SnapShots to compact SnapShot archive.
+ * SnapShots are stored in order of the list. Archive can be read as
+ * SnapShot file by {@link SnapShotParser}.
+ *
+ * @see SnapShotArchive
+ */
+public class PackSnapShot extends ProgressRunnable{
+    
+    /** Archive file to write. */
+    private final File archiveFile;
+    
+    /** SnapShot to pack */
+    private final List<SnapShotHeader> snapShots;
+    
+    private final int keyframeInterval;
+
+    /**
+     * Constructor of PackSnapShot.
+     *
+     * @param archiveFile Archive file to write.
+     * @param target List of SnapShot to pack.
+     * @param keyframeInterval Interval of keyframes.
+     */
+    public PackSnapShot(File archiveFile, List<SnapShotHeader> target, int keyframeInterval) {
+        this.archiveFile = archiveFile;
+        this.snapShots = target;
+        this.keyframeInterval = keyframeInterval;
+    }
+    
+    /**
+     * Constructor of PackSnapShot.
+     * {@link SnapShotArchive#DEFAULT_KEYFRAME_INTERVAL} is used as interval
+     * of keyframes.
+     *
+     * @param archiveFile Archive file to write.
+     * @param target List of SnapShot to pack.
+     */
+    public PackSnapShot(File archiveFile, List<SnapShotHeader> target) {
+        this(archiveFile, target, SnapShotArchive.DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        setTotal(snapShots.size());
+        SnapShotParser parser = new SnapShotParser(false);
+        Map<Path, SnapShotInput> inputs = new HashMap<>();
+        
+        try(SnapShotArchiveWriter writer = new SnapShotArchiveWriter(archiveFile.toPath(), keyframeInterval)){
+            long progress = 0;
+            
+            try{
+                for(SnapShotHeader header : snapShots){
+                    SnapShotInput input = inputs.get(header.getSnapshotFile());
+                    if(input == null){
+                        input = parser.openInput(header.getSnapshotFile());
+                        inputs.put(header.getSnapshotFile(), input);
+                    }
+
+                    writer.add(input, header);
+
+                    long current = ++progress;
+                    updateProgress.ifPresent(c -> c.accept(current));
+                }
+            }
+            catch(IOException | RuntimeException e){
+                /* Partial archive should not be left as valid one. */
+                writer.abort();
+                throw e;
+            }
+            
+        }
+        catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+        finally{
+            inputs.values().forEach(new ConsumerWrapper<>(SnapShotInput::close));
+        }
+        
+    }
+
+}
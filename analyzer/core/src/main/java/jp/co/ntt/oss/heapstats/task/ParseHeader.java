@@ -19,13 +19,27 @@
 package jp.co.ntt.oss.heapstats.task;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
 import jp.co.ntt.oss.heapstats.lambda.ConsumerWrapper;
+import jp.co.ntt.oss.heapstats.parser.SnapShotIndex;
+import jp.co.ntt.oss.heapstats.parser.SnapShotInput;
 import jp.co.ntt.oss.heapstats.parser.SnapShotParser;
 import jp.co.ntt.oss.heapstats.parser.handler.SnapShotListHandler;
 
@@ -37,27 +51,41 @@ public class ParseHeader extends ProgressRunnable{
     
     private final List<String> files;
     
-    private final boolean needJavaStyle;
-    
     private final boolean parseAsPossible;
     
+    private final boolean useIndex;
+    
     private List<SnapShotHeader> snapShotList;
     
     /**
      * Constructor of ParseHeader.
+     * Sidecar index of SnapShot file is used if it is available.
+     * Class names are not decoded while parsing headers, so they are
+     * converted to Java-Style when SnapShot is loaded.
      * 
      * @param files List of HeapStats SnapShot files.
-     * @param needJavaStyle true if class name should be converted to Java-Style
      * @param parseAsPossible Parse SnapShot before occuring error.
      */
-    public ParseHeader(List<String> files, boolean needJavaStyle, boolean parseAsPossible) {
+    public ParseHeader(List<String> files, boolean parseAsPossible) {
+        this(files, parseAsPossible, true);
+    }
+
+    /**
+     * Constructor of ParseHeader.
+     * 
+     * @param files List of HeapStats SnapShot files.
+     * @param parseAsPossible Parse SnapShot before occuring error.
+     * @param useIndex true if sidecar index (.hsidx) should be loaded and
+     *                  written.
+     */
+    public ParseHeader(List<String> files, boolean parseAsPossible, boolean useIndex) {
         this.files = files;
         setTotal(this.files.stream()
                            .map(f -> new File(f))
                            .mapToLong(f -> f.length())
                            .sum());
-        this.needJavaStyle = needJavaStyle;
         this.parseAsPossible = parseAsPossible;
+        this.useIndex = useIndex;
         snapShotList = null;
     }
 
@@ -69,36 +97,188 @@ public class ParseHeader extends ProgressRunnable{
         return snapShotList;
     }
 
+    /**
+     * Scan SnapShot headers in the file.
+     * This is the first phase of parsing. Offset and size of each SnapShot
+     * are recorded to the header.
+     * If valid index is available, headers in the index are stored to
+     * indexed, and only SnapShots which are appended after indexing are
+     * scanned.
+     * 
+     * @param parser SnapShot parser.
+     * @param file SnapShot file to scan.
+     * @param inputs Map to store input of scanned file.
+     * @param indexed Queue to store headers which are loaded from index.
+     * @param decoded Queue to store headers which are decoded while
+     *                 scanning. Sequential input (e.g. gzip) is decoded in
+     *                 this phase because it cannot be read from the middle
+     *                 efficiently.
+     * @param progressUpdater Consumer for ProgressIndicator.
+     * @param outdated Set to store files which index should be written.
+     * @param errors Queue to store errors while scanning.
+     * @return Scanned headers. If error occurred, this list contains headers
+     *          before the error.
+     */
+    private List<SnapShotHeader> scanFile(SnapShotParser parser, String file,
+            Map<Path, SnapShotInput> inputs, Queue<SnapShotHeader> indexed,
+            Queue<SnapShotHeader> decoded, Consumer<Long> progressUpdater,
+            Set<Path> outdated, Queue<Exception> errors){
+        List<SnapShotHeader> headers = new ArrayList<>();
+        Path path = Paths.get(file);
+        
+        try{
+            SnapShotInput input = parser.openInput(path);
+            inputs.put(path, input);
+            
+            long start = 0;
+            /* Sidecar index is based on layout of raw file, so it is not used for archive and compressed file. */
+            boolean indexable = useIndex && input.isRawFile();
+            if(indexable){
+                Optional<SnapShotIndex> index = SnapShotIndex.load(path);
+                if(index.isPresent()){
+                    indexed.addAll(index.get().getHeaders());
+                    start = index.get().getIndexedSize();
+                }
+                else{
+                    outdated.add(path);
+                }
+            }
+            
+            try(SnapShotInput scanInput = input.duplicate()){
+                scanInput.position(start);
+                
+                if(input.isSequential()){
+                    SnapShotListHandler handler = new SnapShotListHandler(progressUpdater);
+                    
+                    try{
+                        parser.parse(scanInput, file, handler);
+                    }
+                    finally{
+                        /* Last header is incomplete if error occurred while decoding. */
+                        handler.getHeaders()
+                               .stream()
+                               .filter(h -> h.getSnapShotSize() > 0)
+                               .forEach(decoded::add);
+                    }
+                    
+                }
+                else{
+                    parser.scanHeaders(scanInput, file, headers::add);
+                }
+                
+            }
+            
+            if(indexable && !headers.isEmpty()){
+                outdated.add(path);
+            }
+            
+        }
+        catch(Exception e){
+            errors.add(e);
+        }
+        
+        return headers;
+    }
+    
+    /**
+     * Decode entries in the SnapShot to count instances.
+     * This is the second phase of parsing.
+     * 
+     * @param parser SnapShot parser.
+     * @param header SnapShot header to decode.
+     * @param inputs Inputs of scanned files.
+     * @param progressUpdater Consumer for ProgressIndicator.
+     * @param errors Queue to store errors while decoding.
+     * @return true if decoding is succeeded.
+     */
+    private boolean decodeSnapShot(SnapShotParser parser, SnapShotHeader header,
+            Map<Path, SnapShotInput> inputs, Consumer<Long> progressUpdater, Queue<Exception> errors){
+        
+        try(SnapShotInput input = inputs.get(header.getSnapshotFile()).duplicate()){
+            return parser.parseSingle(input, header, new SnapShotListHandler(progressUpdater));
+        }
+        catch(Exception e){
+            errors.add(e);
+            return false;
+        }
+        
+    }
+
+    /**
+     * Write sidecar index of the SnapShot file.
+     * Index is just a cache, so error is not reported to the caller.
+     * 
+     * @param file SnapShot file.
+     * @param headers All SnapShot headers in the file.
+     */
+    private void writeIndex(Path file, List<SnapShotHeader> headers){
+        
+        try{
+            SnapShotIndex.create(file, headers).write();
+        }
+        catch(IOException e){
+            Logger.getLogger(ParseHeader.class.getName()).log(Level.FINE, "Could not write index of " + file, e);
+        }
+        
+    }
+
     /**
      * {@inheritDoc}
+     * 
+     * SnapShots are parsed in two phases.
+     * At first, SnapShot headers in each file are scanned in parallel.
+     * Then each SnapShot is decoded in parallel to count instances.
+     * SnapShots in the sidecar index skip both phases. SnapShots in
+     * sequential input (e.g. gzip) are decoded in the first phase.
      */
     @Override
     public void run() {
         AtomicLong progress = new AtomicLong();
-        SnapShotListHandler handler = new SnapShotListHandler(p -> updateProgress.ifPresent(c -> c.accept(progress.addAndGet(p))));
-        SnapShotParser parser = new SnapShotParser(needJavaStyle);
+        Consumer<Long> progressUpdater = p -> updateProgress.ifPresent(c -> c.accept(progress.addAndGet(p)));
         
-        ConsumerWrapper<String> parseMethod = new ConsumerWrapper<>(f -> parser.parse(f, handler));
-        Optional<Exception> parseError = Optional.empty();
+        /* Class names are not needed to count instances. */
+        SnapShotParser parser = new SnapShotParser(false);
+        Map<Path, SnapShotInput> inputs = new ConcurrentHashMap<>();
+        Queue<SnapShotHeader> indexed = new ConcurrentLinkedQueue<>();
+        Queue<SnapShotHeader> sequential = new ConcurrentLinkedQueue<>();
+        Set<Path> outdated = ConcurrentHashMap.newKeySet();
+        Queue<Exception> parseErrors = new ConcurrentLinkedQueue<>();
         
         try{
-            files.forEach(parseMethod);
-        }
-        catch(Exception e){
-            parseError = Optional.of(e);
+            List<SnapShotHeader> scanned = files.parallelStream()
+                                                .flatMap(f -> scanFile(parser, f, inputs, indexed, sequential, progressUpdater, outdated, parseErrors).stream())
+                                                .collect(Collectors.toList());
+
+            if(!parseErrors.isEmpty() && !parseAsPossible){
+                throw new RuntimeException(parseErrors.peek());
+            }
+
+            indexed.forEach(h -> progressUpdater.accept(h.getSnapShotSize()));
             
-            if(!parseAsPossible){
-                throw e;
+            List<SnapShotHeader> decoded = scanned.parallelStream()
+                                                  .filter(h -> decodeSnapShot(parser, h, inputs, progressUpdater, parseErrors))
+                                                  .collect(Collectors.toList());
+            decoded.addAll(indexed);
+            decoded.addAll(sequential);
+            
+            if(parseErrors.isEmpty()){
+                decoded.stream()
+                       .filter(h -> outdated.contains(h.getSnapshotFile()))
+                       .collect(Collectors.groupingBy(SnapShotHeader::getSnapshotFile))
+                       .forEach(this::writeIndex);
             }
             
+            snapShotList = decoded.stream()
+                                  .sorted(Comparator.naturalOrder())
+                                  .collect(Collectors.toList());
+        }
+        finally{
+            inputs.values().forEach(new ConsumerWrapper<>(SnapShotInput::close));
         }
         
-        snapShotList = handler.getHeaders().stream()
-                                           .sorted(Comparator.naturalOrder())
-                                           .collect(Collectors.toList());
-        
-        if(parseError.isPresent()){
-            throw new RuntimeException(parseError.get());
+        if(!parseErrors.isEmpty()){
+            snapShotList = parseAsPossible ? snapShotList : null;
+            throw new RuntimeException(parseErrors.peek());
         }
         
     }
@@ -20,18 +20,17 @@ package jp.co.ntt.oss.heapstats.task;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Stream;
 import jp.co.ntt.oss.heapstats.container.log.DiffData;
+import jp.co.ntt.oss.heapstats.container.log.DiffSeries;
 import jp.co.ntt.oss.heapstats.container.log.LogData;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
 import jp.co.ntt.oss.heapstats.lambda.ConsumerWrapper;
+import jp.co.ntt.oss.heapstats.parser.ResourceLogParser;
 
 /**
  * HeapStats log file (CSV) parser.
@@ -39,9 +38,15 @@ import jp.co.ntt.oss.heapstats.lambda.ConsumerWrapper;
  */
 public class ParseLogFile extends ProgressRunnable{
     
-    private final List<LogData> logEntries;
+    private final LogSeries logSeries;
     
-    private final List<DiffData> diffEntries;
+    private final DiffSeries diffSeries;
+    
+    /**
+     * Entries of log files which overlap with previous files.
+     * They are merged into logSeries.
+     */
+    private final List<LogSeries> fileSeries;
     
     private final List<File> fileList;
     
@@ -54,25 +59,13 @@ public class ParseLogFile extends ProgressRunnable{
      * @param parseAsPossible Parse log before occuring error.
      */
     public ParseLogFile(List<File> fileList, boolean parseAsPossible){
-        logEntries = new ArrayList<>();
-        diffEntries = new ArrayList<>();
+        logSeries = new LogSeries();
+        diffSeries = new DiffSeries(logSeries);
+        fileSeries = new ArrayList<>();
         this.fileList = fileList;
         this.parseAsPossible = parseAsPossible;
     }
     
-    /**
-     * This method addes log value from CSV.
-     * 
-     * @param csvLine CSV data to be added. This value must be 1-raw (1-record).
-     * @param logdir Log directory. This value is used to store log value.
-     */
-    private void addEntry(String csvLine, String logdir){
-        LogData element = new LogData();
-        
-        element.parseFromCSV(csvLine, logdir);        
-        logEntries.add(element);
-    }
-    
     /**
      * Parse log file.
      * 
@@ -81,31 +74,76 @@ public class ParseLogFile extends ProgressRunnable{
      * @throws java.io.IOException
      */
     protected void parse(String logfile, AtomicLong progress) throws IOException{
-        Path logPath = Paths.get(logfile);
-        String logdir =logPath.getParent().toString();
+        /*
+         * Log is decoded from bytes in parallel chunks.
+         * gzip and BGZF compressed log is decompressed transparently.
+         * Entries are parsed into logSeries directly. If they are not
+         * later than previous entries, they are moved out to be merged.
+         * Entries before error are kept.
+         */
+        int start = logSeries.size();
         
-        try(Stream<String> paths = Files.lines(logPath)){
-            paths.peek(s -> addEntry(s, logdir))
-                 .forEach(s -> updateProgress.ifPresent(p -> p.accept(progress.addAndGet(s.length()))));
+        try{
+            new ResourceLogParser().parse(Paths.get(logfile), logSeries,
+                                          p -> updateProgress.ifPresent(c -> c.accept(progress.addAndGet(p))));
+        }
+        finally{
+            int end = logSeries.size();
+            boolean sorted = true;
+            
+            for(int idx = Math.max(start, 1); sorted && (idx < end); idx++){
+                sorted = logSeries.getEpochMilli(idx - 1) <= logSeries.getEpochMilli(idx);
+            }
+            
+            if(!sorted){
+                LogSeries series = new LogSeries(end - start);
+                series.addAll(logSeries.subSeries(start, end));
+                logSeries.truncate(start);
+                series.sort();
+                fileSeries.add(series);
+            }
+            
         }
         
     }
     
     /**
      * Returns log entries of resulting on this task.
+     * Each LogData is created on demand from {@link #getLogSeries()} .
+     * 
      * @return results of this task.
      */
     public List<LogData> getLogEntries() {
-        return logEntries;
+        return logSeries.asList();
     }
 
     /**
      * Returns diff entries of resulting on this task.
+     * Each DiffData is created on demand from {@link #getDiffSeries()} .
      * 
      * @return results of this task.
      */
     public List<DiffData> getDiffEntries() {
-        return diffEntries;
+        return diffSeries.asList();
+    }
+
+    /**
+     * Returns columnar log series of resulting on this task.
+     * 
+     * @return results of this task.
+     */
+    public LogSeries getLogSeries() {
+        return logSeries;
+    }
+
+    /**
+     * Returns difference series of resulting on this task.
+     * Difference values are calculated from log series on demand.
+     * 
+     * @return results of this task.
+     */
+    public DiffSeries getDiffSeries() {
+        return diffSeries;
     }
 
     /**
@@ -136,25 +174,17 @@ public class ParseLogFile extends ProgressRunnable{
             
         }
         
-        /* Sort log files order by date&time */
-        logEntries.sort(Comparator.naturalOrder());
-
         /*
-         * Calculate diff data
-         * Difference data needs 2 elements at least.
-         *
-         *  1. Skip top element in logEntries.
-         *  2. Pass top element in logEntries to reduce() as identity value.
-         *  3. Calculate difference data in reduce().
-         *  4. Return current element in logEntries. That value passes next
-         *     calculation in reduce().
+         * Merge log files which overlap with previous files order by
+         * date&time. Each log file is already in time order, so entries
+         * are merged without global sort, and entries before overlap are
+         * not moved. Difference data is calculated from merged series on
+         * demand.
          */
-        logEntries.stream()
-                  .skip(1)
-                  .reduce(logEntries.get(0), (x, y) -> {
-                                                          diffEntries.add(new DiffData(x, y));
-                                                          return y;
-                                                       });
+        if(!fileSeries.isEmpty()){
+            logSeries.mergeSorted(fileSeries);
+            fileSeries.clear();
+        }
         
         if(parseError.isPresent()){
             throw new RuntimeException(parseError.get());
@@ -202,6 +202,24 @@ public class WindowController implements Initializable {
         snapShotController.dumpClassHistogramToCSV(true);
     }
 
+    @FXML
+    private void onColumnarHeapAllClick(ActionEvent event) {
+        SnapShotController snapShotController = (SnapShotController)getPluginController("SnapShot Data");
+        snapShotController.dumpToColumnar(false);
+    }
+
+    @FXML
+    private void onColumnarHeapSelectedClick(ActionEvent event) {
+        SnapShotController snapShotController = (SnapShotController)getPluginController("SnapShot Data");
+        snapShotController.dumpToColumnar(true);
+    }
+
+    @FXML
+    private void onColumnarLogClick(ActionEvent event) {
+        LogController logController = (LogController)getPluginController("Log Data");
+        logController.dumpToColumnar();
+    }
+
     @FXML
     private void onSnapShotOpenClick(ActionEvent event) {
         Tab snapShotTab = tabPane.getTabs().stream()
@@ -26,6 +26,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -44,13 +45,14 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import jp.co.ntt.oss.heapstats.WindowController;
 import jp.co.ntt.oss.heapstats.container.log.ArchiveData;
-import jp.co.ntt.oss.heapstats.container.log.DiffData;
-import jp.co.ntt.oss.heapstats.container.log.LogData;
+import jp.co.ntt.oss.heapstats.container.log.DiffSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
 import jp.co.ntt.oss.heapstats.lambda.ConsumerWrapper;
 import jp.co.ntt.oss.heapstats.lambda.FunctionWrapper;
 import jp.co.ntt.oss.heapstats.plugin.PluginController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.log.tabs.LogDetailsController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.log.tabs.LogResourcesController;
+import jp.co.ntt.oss.heapstats.task.ColumnarDumpLog;
 import jp.co.ntt.oss.heapstats.task.ParseLogFile;
 import jp.co.ntt.oss.heapstats.utils.HeapStatsUtils;
 import jp.co.ntt.oss.heapstats.utils.LocalDateTimeConverter;
@@ -81,9 +83,9 @@ public class LogController extends PluginController implements Initializable {
     @FXML
     private Button okBtn;
 
-    private List<LogData> logEntries;
+    private LogSeries logSeries;
 
-    private List<DiffData> diffEntries;
+    private DiffSeries diffSeries;
 
     private ObjectProperty<ObservableList<ArchiveData>> archiveList;
 
@@ -114,18 +116,19 @@ public class LogController extends PluginController implements Initializable {
         endCombo.getItems().clear();
         ObservableList<ArchiveData> archiveListBuf = FXCollections.observableArrayList();
 
-        logEntries = parser.getLogEntries();
-        diffEntries = parser.getDiffEntries();
-        List<LocalDateTime> timeline = logEntries.stream()
-                .map(d -> d.getDateTime())
+        logSeries = parser.getLogSeries();
+        diffSeries = parser.getDiffSeries();
+        List<LocalDateTime> timeline = IntStream.range(0, logSeries.size())
+                .mapToObj(logSeries::getDateTime)
                 .collect(Collectors.toList());
         startCombo.getItems().addAll(timeline);
         startCombo.getSelectionModel().selectFirst();
         endCombo.getItems().addAll(timeline);
         endCombo.getSelectionModel().selectLast();
 
-        logEntries.stream()
-                .filter(d -> d.getArchivePath() != null)
+        IntStream.range(0, logSeries.size())
+                .filter(i -> logSeries.getArchivePath(i) != null)
+                .mapToObj(logSeries::get)
                 .map(new FunctionWrapper<>(ArchiveData::new))
                 .peek(new ConsumerWrapper<>(a -> a.parseArchive()))
                 .forEach(archiveListBuf::add);
@@ -145,6 +148,7 @@ public class LogController extends PluginController implements Initializable {
         dialog.setTitle(resource.getString("dialog.filechooser.title"));
         dialog.setInitialDirectory(new File(HeapStatsUtils.getDefaultDirectory()));
         dialog.getExtensionFilters().addAll(new ExtensionFilter("Log file (*.csv)", "*.csv"),
+                new ExtensionFilter("Compressed log file (*.csv.gz)", "*.csv.gz"),
                 new ExtensionFilter("All files", "*.*"));
 
         List<File> logList = dialog.showOpenMultipleDialog(WindowController.getInstance().getOwner());
@@ -174,16 +178,17 @@ public class LogController extends PluginController implements Initializable {
      */
     @FXML
     private void onOkClick(ActionEvent event) {
-        /* Get range */
-        LocalDateTime start = startCombo.getValue();
-        LocalDateTime end = endCombo.getValue();
-
-        List<LogData> targetLogData = logEntries.parallelStream()
-                .filter(d -> ((d.getDateTime().compareTo(start) >= 0) && (d.getDateTime().compareTo(end) <= 0)))
-                .collect(Collectors.toList());
-        List<DiffData> targetDiffData = diffEntries.parallelStream()
-                .filter(d -> ((d.getDateTime().compareTo(start) >= 0) && (d.getDateTime().compareTo(end) <= 0)))
-                .collect(Collectors.toList());
+        /*
+         * Get range
+         * Items in combo boxes are same order of log series, so selected
+         * indices are used as range of series.
+         */
+        int start = startCombo.getSelectionModel().getSelectedIndex();
+        int end = endCombo.getSelectionModel().getSelectedIndex() + 1;
+
+        /* Difference data needs previous entry of start. */
+        LogSeries targetLogData = logSeries.subSeries(start, end);
+        DiffSeries targetDiffData = new DiffSeries(logSeries.subSeries(Math.max(start - 1, 0), end));
 
         Task<Void> task = logResourcesController.createDrawResourceCharts(targetLogData, targetDiffData);
         super.bindTask(task);
@@ -191,6 +196,34 @@ public class LogController extends PluginController implements Initializable {
         drawChartThread.start();
     }
 
+    /**
+     * Dump resource log to columnar binary file.
+     * All log entries which are loaded are dumped.
+     */
+    public void dumpToColumnar() {
+
+        if (logSeries == null) {
+            return;
+        }
+
+        FileChooser dialog = new FileChooser();
+        ResourceBundle resource = ResourceBundle.getBundle("logResources", new Locale(HeapStatsUtils.getLanguage()));
+        dialog.setTitle(resource.getString("dialog.columnarchooser.title"));
+        dialog.setInitialDirectory(new File(HeapStatsUtils.getDefaultDirectory()));
+        dialog.getExtensionFilters().addAll(new ExtensionFilter("Columnar binary file (*.hscl)", "*.hscl"),
+                new ExtensionFilter("All files", "*.*"));
+        File outFile = dialog.showSaveDialog(WindowController.getInstance().getOwner());
+
+        if (outFile != null) {
+            TaskAdapter<ColumnarDumpLog> task = new TaskAdapter<>(new ColumnarDumpLog(outFile, logSeries));
+            super.bindTask(task);
+
+            Thread dumpThread = new Thread(task);
+            dumpThread.start();
+        }
+
+    }
+
     /**
      * Returns plugin name. This value is used to show in main window tab.
      *
@@ -25,6 +25,7 @@ import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -51,8 +52,9 @@ import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
 import javafx.stage.Popup;
 import jp.co.ntt.oss.heapstats.container.log.ArchiveData;
-import jp.co.ntt.oss.heapstats.container.log.DiffData;
-import jp.co.ntt.oss.heapstats.container.log.LogData;
+import jp.co.ntt.oss.heapstats.container.log.DiffSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogSeries;
+import jp.co.ntt.oss.heapstats.container.log.LogStatistics;
 import jp.co.ntt.oss.heapstats.container.log.SummaryData;
 import jp.co.ntt.oss.heapstats.utils.HeapStatsUtils;
 import jp.co.ntt.oss.heapstats.utils.LocalDateTimeConverter;
@@ -360,6 +362,23 @@ public class LogResourcesController implements Initializable {
         drawRebootSuspectLine();
     }
 
+    /**
+     * Format p50, p90, p99 and p99.9 of the metric.
+     *
+     * @param summary Summary data of resource log.
+     * @param metric Metric to format.
+     * @param format Format string of each value.
+     * @return Formatted string of percentiles.
+     */
+    private static String formatPercentiles(SummaryData summary, LogStatistics.Metric metric, String format) {
+        String[] labels = {"p50", "p90", "p99", "p99.9"};
+        double[] percentiles = {50.0d, 90.0d, 99.0d, 99.9d};
+
+        return IntStream.range(0, percentiles.length)
+                .mapToObj(i -> labels[i] + ": " + String.format(format, summary.getPercentile(metric, percentiles[i])))
+                .collect(Collectors.joining(", "));
+    }
+
     /**
      * Task class for drawing log chart data.
      */
@@ -396,15 +415,15 @@ public class LogResourcesController implements Initializable {
 
         private final LocalDateTimeConverter converter;
 
-        private final List<LogData> targetLogData;
+        private final LogSeries targetLogData;
 
-        private final List<DiffData> targetDiffData;
+        private final DiffSeries targetDiffData;
 
         private long loopCount;
 
         private final long totalLoopCount;
 
-        public DrawLogChartTask(List<LogData> targetLogData, List<DiffData> targetDiffData) {
+        public DrawLogChartTask(LogSeries targetLogData, DiffSeries targetDiffData) {
             javaUserUsageBuf = FXCollections.observableArrayList();
             javaSysUsageBuf = FXCollections.observableArrayList();
             systemUserUsageBuf = FXCollections.observableArrayList();
@@ -429,33 +448,33 @@ public class LogResourcesController implements Initializable {
             totalLoopCount = targetDiffData.size() + targetLogData.size();
         }
 
-        private void addDiffData(DiffData data) {
-            String time = converter.toString(data.getDateTime());
-
-            javaUserUsageBuf.add(new XYChart.Data<>(time, data.getJavaUserUsage()));
-            javaSysUsageBuf.add(new XYChart.Data<>(time, data.getJavaSysUsage()));
-            systemUserUsageBuf.add(new XYChart.Data<>(time, data.getCpuUserUsage()));
-            systemNiceUsageBuf.add(new XYChart.Data<>(time, data.getCpuNiceUsage()));
-            systemSysUsageBuf.add(new XYChart.Data<>(time, data.getCpuSysUsage()));
-            systemIdleUsageBuf.add(new XYChart.Data<>(time, data.getCpuIdleUsage()));
-            systemIOWaitUsageBuf.add(new XYChart.Data<>(time, data.getCpuIOWaitUsage()));
-            systemIRQUsageBuf.add(new XYChart.Data<>(time, data.getCpuIRQUsage()));
-            systemSoftIRQUsageBuf.add(new XYChart.Data<>(time, data.getCpuSoftIRQUsage()));
-            systemStealUsageBuf.add(new XYChart.Data<>(time, data.getCpuStealUsage()));
-            systemGuestUsageBuf.add(new XYChart.Data<>(time, data.getCpuGuestUsage()));
-            monitorsBuf.add(new XYChart.Data<>(time, data.getJvmSyncPark()));
-            safepointsBuf.add(new XYChart.Data<>(time, data.getJvmSafepoints()));
-            safepointTimeBuf.add(new XYChart.Data<>(time, data.getJvmSafepointTime()));
+        private void addDiffData(int i) {
+            String time = converter.toString(targetDiffData.getDateTime(i));
+
+            javaUserUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getJavaUserUsage(i)));
+            javaSysUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getJavaSysUsage(i)));
+            systemUserUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuUserUsage(i)));
+            systemNiceUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuNiceUsage(i)));
+            systemSysUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuSysUsage(i)));
+            systemIdleUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuIdleUsage(i)));
+            systemIOWaitUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuIOWaitUsage(i)));
+            systemIRQUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuIRQUsage(i)));
+            systemSoftIRQUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuSoftIRQUsage(i)));
+            systemStealUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuStealUsage(i)));
+            systemGuestUsageBuf.add(new XYChart.Data<>(time, targetDiffData.getCpuGuestUsage(i)));
+            monitorsBuf.add(new XYChart.Data<>(time, targetDiffData.getJvmSyncPark(i)));
+            safepointsBuf.add(new XYChart.Data<>(time, targetDiffData.getJvmSafepoints(i)));
+            safepointTimeBuf.add(new XYChart.Data<>(time, targetDiffData.getJvmSafepointTime(i)));
 
             updateProgress();
         }
 
-        private void addLogData(LogData data) {
-            String time = converter.toString(data.getDateTime());
+        private void addLogData(int i) {
+            String time = converter.toString(targetLogData.getDateTime(i));
 
-            javaVSZUsageBuf.add(new XYChart.Data<>(time, data.getJavaVSSize() / 1024 / 1024));
-            javaRSSUsageBuf.add(new XYChart.Data<>(time, data.getJavaRSSize() / 1024 / 1024));
-            threadsBuf.add(new XYChart.Data<>(time, data.getJvmLiveThreads()));
+            javaVSZUsageBuf.add(new XYChart.Data<>(time, targetLogData.getJavaVSSize(i) / 1024 / 1024));
+            javaRSSUsageBuf.add(new XYChart.Data<>(time, targetLogData.getJavaRSSize(i) / 1024 / 1024));
+            threadsBuf.add(new XYChart.Data<>(time, targetLogData.getJvmLiveThreads(i)));
 
             updateProgress();
         }
@@ -494,16 +513,19 @@ public class LogResourcesController implements Initializable {
                     new SummaryData.SummaryDataEntry(resource.getString("summary.rss.average"), String.format("%.1f MB", summary.getAverageRSS())),
                     new SummaryData.SummaryDataEntry(resource.getString("summary.rss.peak"), String.format("%.1f MB", summary.getMaxRSS())),
                     new SummaryData.SummaryDataEntry(resource.getString("summary.threads.average"), String.format("%.1f", summary.getAverageLiveThreads())),
-                    new SummaryData.SummaryDataEntry(resource.getString("summary.threads.peak"), Long.toString(summary.getMaxLiveThreads()))
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.threads.peak"), Long.toString(summary.getMaxLiveThreads())),
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.cpu.percentile"), formatPercentiles(summary, LogStatistics.Metric.CPU_TOTAL_USAGE, "%.1f %%")),
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.safepoint.percentile"), formatPercentiles(summary, LogStatistics.Metric.JVM_SAFEPOINT_TIME, "%.0f ms")),
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.monitor.percentile"), formatPercentiles(summary, LogStatistics.Metric.JVM_SYNC_PARK, "%.0f"))
             ));
 
             /*
              * drawArchiveLine() needs positions in each chart.
              * So I call it next event.
              */
-            suspectList = targetDiffData.stream()
-                    .filter(d -> d.hasMinusData())
-                    .map(d -> d.getDateTime())
+            suspectList = IntStream.range(0, targetDiffData.size())
+                    .filter(targetDiffData::hasMinusData)
+                    .mapToObj(targetDiffData::getDateTime)
                     .collect(Collectors.toList());
 
             Platform.runLater(() -> drawEventLineToChart());
@@ -518,8 +540,8 @@ public class LogResourcesController implements Initializable {
             loopCount = 0;
 
             /* Generate graph data */
-            targetDiffData.forEach(this::addDiffData);
-            targetLogData.forEach(this::addLogData);
+            IntStream.range(0, targetDiffData.size()).forEach(this::addDiffData);
+            IntStream.range(0, targetLogData.size()).forEach(this::addLogData);
 
             Platform.runLater(this::setChartData);
 
@@ -531,12 +553,12 @@ public class LogResourcesController implements Initializable {
     /**
      * Get Task instance which draws each chart.
      *
-     * @param targetLogData List of LogData to draw.
-     * @param targetDiffData List of DiffData to draw.
+     * @param targetLogData Log series to draw.
+     * @param targetDiffData Difference series to draw.
      *
      * @return Task instance to draw charts.
      */
-    public Task<Void> createDrawResourceCharts(List<LogData> targetLogData, List<DiffData> targetDiffData) {
+    public Task<Void> createDrawResourceCharts(LogSeries targetLogData, DiffSeries targetDiffData) {
         return new DrawLogChartTask(targetLogData, targetDiffData);
     }
 
@@ -18,6 +18,7 @@
 package jp.co.ntt.oss.heapstats.plugin.builtin.snapshot;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -64,15 +65,21 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import jp.co.ntt.oss.heapstats.WindowController;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotCache;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
 import jp.co.ntt.oss.heapstats.container.snapshot.SummaryData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SymbolTable;
+import jp.co.ntt.oss.heapstats.parser.GzipSnapShotInput;
 import jp.co.ntt.oss.heapstats.plugin.PluginController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs.HistogramController;
+import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs.LeakSuspectController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs.RefTreeController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs.SnapshotController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs.SummaryController;
+import jp.co.ntt.oss.heapstats.snapshot.ExhaustionForecaster;
 import jp.co.ntt.oss.heapstats.task.CSVDumpGC;
 import jp.co.ntt.oss.heapstats.task.CSVDumpHeap;
+import jp.co.ntt.oss.heapstats.task.ColumnarDumpHeap;
 import jp.co.ntt.oss.heapstats.task.ParseHeader;
 import jp.co.ntt.oss.heapstats.utils.HeapStatsUtils;
 import jp.co.ntt.oss.heapstats.utils.LocalDateTimeConverter;
@@ -91,6 +98,9 @@ public class SnapShotController extends PluginController implements Initializabl
     @FXML
     private HistogramController histogramController;
 
+    @FXML
+    private LeakSuspectController leakSuspectController;
+
     @FXML
     private SnapshotController snapshotController;
 
@@ -118,6 +128,9 @@ public class SnapShotController extends PluginController implements Initializabl
     @FXML
     private Tab histogramTab;
 
+    @FXML
+    private Tab leakSuspectTab;
+
     @FXML
     private Tab snapshotTab;
 
@@ -151,6 +164,8 @@ public class SnapShotController extends PluginController implements Initializabl
         summaryController.currentTargetProperty().bind(currentTarget);
         histogramController.currentTargetProperty().bind(currentTarget);
         snapshotController.currentTargetProperty().bind(currentTarget);
+        leakSuspectController.currentTargetProperty().bind(currentTarget);
+        leakSuspectController.setFilterSupplier(histogramController::getFilter);
         currentClassNameSet = new SimpleObjectProperty<>();
         summaryController.currentClassNameSetProperty().bind(currentClassNameSet);
         histogramController.currentClassNameSetProperty().bind(currentClassNameSet);
@@ -176,6 +191,7 @@ public class SnapShotController extends PluginController implements Initializabl
         //currentObjectTag.bind(snapshotController.currentObjectTagProperty());
         histogramController.currentObjectTagProperty().addListener((v, o, n) -> Optional.ofNullable(n).ifPresent(m -> currentObjectTag.set((Long) m)));
         snapshotController.currentObjectTagProperty().addListener((v, o, n) -> Optional.ofNullable(n).ifPresent(m -> currentObjectTag.set((Long) m)));
+        leakSuspectController.currentObjectTagProperty().addListener((v, o, n) -> Optional.ofNullable(n).ifPresent(m -> currentObjectTag.set((Long) m)));
         reftreeController.currentObjectTagProperty().bind(currentObjectTag);
 
         snapshotMain.getSelectionModel().selectedItemProperty().addListener(this::onTabChanged);
@@ -196,6 +212,14 @@ public class SnapShotController extends PluginController implements Initializabl
             bindTask(t);
             (new Thread(t)).start();
         });
+        leakSuspectController.setTaskExecutor(t -> {
+            bindTask(t);
+            (new Thread(t)).start();
+        });
+        reftreeController.setTaskExecutor(t -> {
+            bindTask(t);
+            (new Thread(t)).start();
+        });
     }
 
     private void onTabChanged(ObservableValue<? extends Tab> observable, Tab oldValue, Tab newValue) {
@@ -204,6 +228,8 @@ public class SnapShotController extends PluginController implements Initializabl
                 currentObjectTag.set(histogramController.currentObjectTagProperty().get());
             } else if (oldValue == snapshotTab) {
                 currentObjectTag.set(snapshotController.currentObjectTagProperty().get());
+            } else if (oldValue == leakSuspectTab) {
+                currentObjectTag.set(leakSuspectController.currentObjectTagProperty().get());
             }
         }
     }
@@ -221,6 +247,8 @@ public class SnapShotController extends PluginController implements Initializabl
         dialog.setTitle(resource.getString("dialog.filechooser.title"));
         dialog.setInitialDirectory(new File(HeapStatsUtils.getDefaultDirectory()));
         dialog.getExtensionFilters().addAll(new ExtensionFilter("SnapShot file (*.dat)", "*.dat"),
+                new ExtensionFilter("SnapShot archive (*.hsa)", "*.hsa"),
+                new ExtensionFilter("Compressed SnapShot file (*.dat.gz)", "*.dat.gz"),
                 new ExtensionFilter("All files", "*.*"));
 
         List<File> snapshotFileList = dialog.showOpenMultipleDialog(WindowController.getInstance().getOwner());
@@ -232,7 +260,8 @@ public class SnapShotController extends PluginController implements Initializabl
                     .collect(Collectors.toList());
             snapshotList.setText(files.stream().collect(Collectors.joining("; ")));
 
-            TaskAdapter<ParseHeader> task = new TaskAdapter<>(new ParseHeader(files, HeapStatsUtils.getReplaceClassName(), true));
+            clearParsedData();
+            TaskAdapter<ParseHeader> task = new TaskAdapter<>(new ParseHeader(files, true));
             task.setOnSucceeded(evt -> {
                 ObservableList<SnapShotHeader> list = FXCollections.observableArrayList(task.getTask().getSnapShotList());
                 startCombo.setItems(list);
@@ -259,7 +288,9 @@ public class SnapShotController extends PluginController implements Initializabl
         int endIdx = endCombo.getSelectionModel().getSelectedIndex();
         currentTarget.set(FXCollections.observableArrayList(startCombo.getItems().subList(startIdx, endIdx + 1)));
         currentClassNameSet.set(FXCollections.observableSet());
-        summaryData.set(new SummaryData(currentTarget.get()));
+        ExhaustionForecaster forecaster = new ExhaustionForecaster();
+        currentTarget.get().forEach(forecaster::add);
+        summaryData.set(new SummaryData(currentTarget.get(), forecaster.getHeapForecast(), forecaster.getMetaspaceForecast()));
 
         Task<Void> topNTask = histogramController.getDrawTopNDataTask(currentTarget.get(), true, null);
         super.bindTask(topNTask);
@@ -351,17 +382,63 @@ public class SnapShotController extends PluginController implements Initializabl
 
     }
 
+    /**
+     * Dump GC Statistics and Java Class Histogram to columnar binary file.
+     *
+     * @param isSelected If this value is true, this method dumps data which is
+     * selected time range and class filter, otherwise this method dumps all
+     * snapshot data.
+     */
+    public void dumpToColumnar(boolean isSelected) {
+        FileChooser dialog = new FileChooser();
+        ResourceBundle resource = ResourceBundle.getBundle("snapshotResources", new Locale(HeapStatsUtils.getLanguage()));
+
+        dialog.setTitle(resource.getString("dialog.columnarchooser.title"));
+        dialog.setInitialDirectory(new File(HeapStatsUtils.getDefaultDirectory()));
+        dialog.getExtensionFilters().addAll(new ExtensionFilter("Columnar binary file (*.hscl)", "*.hscl"),
+                new ExtensionFilter("All files", "*.*"));
+        File outFile = dialog.showSaveDialog(WindowController.getInstance().getOwner());
+
+        if (outFile != null) {
+            Predicate<? super ObjectData> filter = histogramController.getFilter();
+            TaskAdapter<ColumnarDumpHeap> task = new TaskAdapter<>(new ColumnarDumpHeap(outFile, isSelected ? currentTarget.get() : startCombo.getItems(), isSelected ? filter : null, HeapStatsUtils.getReplaceClassName()));
+            super.bindTask(task);
+
+            Thread dumpThread = new Thread(task);
+            dumpThread.start();
+        }
+
+    }
+
     @Override
     public Runnable getOnCloseRequest() {
         return null;
     }
 
+    /**
+     * Discard SnapShots and symbols of previous file set.
+     * This method is called before new file set is parsed.
+     */
+    private void clearParsedData() {
+        SnapShotCache.getInstance().clear();
+        /* Tasks of previous file set keep using previous symbol table. */
+        SymbolTable.renew();
+
+        try {
+            GzipSnapShotInput.closePooledCursors();
+        } catch (IOException ex) {
+            HeapStatsUtils.showExceptionDialog(ex);
+        }
+
+    }
+
     @Override
     public void setData(Object data, boolean select) {
         super.setData(data, select);
         snapshotList.setText((String) data);
 
-        TaskAdapter<ParseHeader> task = new TaskAdapter<>(new ParseHeader(Arrays.asList((String) data), HeapStatsUtils.getReplaceClassName(), true));
+        clearParsedData();
+        TaskAdapter<ParseHeader> task = new TaskAdapter<>(new ParseHeader(Arrays.asList((String) data), true));
         task.setOnSucceeded(evt -> {
             startCombo.setItems(FXCollections.observableArrayList(task.getTask().getSnapShotList()));
             endCombo.setItems(FXCollections.observableArrayList(task.getTask().getSnapShotList()));
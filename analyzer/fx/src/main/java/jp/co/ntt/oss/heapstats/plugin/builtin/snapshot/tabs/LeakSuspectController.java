@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 Nippon Telegraph and Telephone Corporation
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs;
+
+import java.net.URL;
+import java.util.Optional;
+import java.util.ResourceBundle;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.event.ActionEvent;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+import jp.co.ntt.oss.heapstats.container.snapshot.LeakSuspect;
+import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
+import jp.co.ntt.oss.heapstats.task.LeakSuspectCalculator;
+import jp.co.ntt.oss.heapstats.utils.HeapStatsUtils;
+import jp.co.ntt.oss.heapstats.utils.TaskAdapter;
+
+/**
+ * FXML Controller class for "Leak Suspects" tab in SnapShot plugin.
+ */
+public class LeakSuspectController implements Initializable {
+
+    /** Max number of suspects to show. */
+    private static final int MAX_SUSPECTS = 100;
+
+    @FXML
+    private Button analyzeBtn;
+
+    @FXML
+    private CheckBox useFilterCheckBox;
+
+    @FXML
+    private TableView<LeakSuspect> suspectTable;
+
+    @FXML
+    private TableColumn<LeakSuspect, String> classNameColumn;
+
+    @FXML
+    private TableColumn<LeakSuspect, String> classLoaderColumn;
+
+    @FXML
+    private TableColumn<LeakSuspect, Double> slopeColumn;
+
+    @FXML
+    private TableColumn<LeakSuspect, Double> growingColumn;
+
+    @FXML
+    private TableColumn<LeakSuspect, Long> fullGCGrowthColumn;
+
+    @FXML
+    private TableColumn<LeakSuspect, Long> instanceColumn;
+
+    @FXML
+    private TableColumn<LeakSuspect, Long> totalSizeColumn;
+
+    private ObjectProperty<ObservableList<SnapShotHeader>> currentTarget;
+
+    private LongProperty currentObjectTag;
+
+    private Supplier<Predicate<? super ObjectData>> filterSupplier;
+
+    private Consumer<Task<Void>> taskExecutor;
+
+    /**
+     * Initializes the controller class.
+     */
+    @Override
+    public void initialize(URL url, ResourceBundle rb) {
+        currentTarget = new SimpleObjectProperty<>(FXCollections.emptyObservableList());
+        currentObjectTag = new SimpleLongProperty();
+
+        classNameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
+        classLoaderColumn.setCellValueFactory(new PropertyValueFactory<>("loaderName"));
+        slopeColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(Math.round(p.getValue().getSlope() * 3600 / 1024 * 10) / 10.0d));
+        slopeColumn.setSortType(TableColumn.SortType.DESCENDING);
+        growingColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(Math.round(p.getValue().getMonotonicRatio() * 1000) / 10.0d));
+        growingColumn.setSortType(TableColumn.SortType.DESCENDING);
+        /* Growth after full GC is empty if the class is not sampled after full GC twice or more. */
+        fullGCGrowthColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>((p.getValue().getFullGCSamples() < 2) ? null : p.getValue().getGrowthAfterFullGC() / 1024));
+        fullGCGrowthColumn.setSortType(TableColumn.SortType.DESCENDING);
+        instanceColumn.setCellValueFactory(new PropertyValueFactory<>("count"));
+        instanceColumn.setSortType(TableColumn.SortType.DESCENDING);
+        totalSizeColumn.setCellValueFactory(p -> new ReadOnlyObjectWrapper<>(p.getValue().getTotalSize() / 1024));
+        totalSizeColumn.setSortType(TableColumn.SortType.DESCENDING);
+
+        analyzeBtn.disableProperty().bind(Bindings.createBooleanBinding(() -> currentTarget.get().size() < 2, currentTarget));
+        currentTarget.addListener((v, o, n) -> suspectTable.getItems().clear());
+        currentObjectTag.bind(Bindings.createLongBinding(() -> Optional.ofNullable(suspectTable.getSelectionModel().getSelectedItem())
+                .map(s -> s.getTag())
+                .orElse(0xffffffffffffffffl),
+                suspectTable.getSelectionModel().selectedItemProperty()));
+    }
+
+    /**
+     * Event handler of analyze button.
+     * Leak suspects are detected from all SnapShots in current range.
+     *
+     * @param event ActionEvent of this event.
+     */
+    @FXML
+    private void onAnalyzeClick(ActionEvent event) {
+        Predicate<? super ObjectData> filter = (useFilterCheckBox.isSelected() && (filterSupplier != null)) ? filterSupplier.get() : null;
+        taskExecutor.accept(getCalculateLeakSuspectTask(filter));
+    }
+
+    /**
+     * Get task for detecting leak suspects.
+     *
+     * @param filter Class filter.
+     * @return Task for detecting leak suspects.
+     */
+    public Task<Void> getCalculateLeakSuspectTask(Predicate<? super ObjectData> filter) {
+        suspectTable.getItems().clear();
+
+        TaskAdapter<LeakSuspectCalculator> task = new TaskAdapter<>(new LeakSuspectCalculator(currentTarget.get(), MAX_SUSPECTS,
+                filter, HeapStatsUtils.getReplaceClassName()));
+        task.setOnSucceeded(evt -> suspectTable.setItems(FXCollections.observableArrayList(task.getTask().getSuspects())));
+
+        return task;
+    }
+
+    /**
+     * Set Supplier of class filter.
+     * Filter is applied if "use histogram filter" is checked.
+     *
+     * @param filterSupplier Supplier of class filter.
+     */
+    public void setFilterSupplier(Supplier<Predicate<? super ObjectData>> filterSupplier) {
+        this.filterSupplier = filterSupplier;
+    }
+
+    /**
+     * Set Consumer for executing JavaFX task. This Consumer is used for tasks
+     * which should be shown ProgressIndicator.
+     *
+     * @param taskExecutor Consumer for executing JavaFX task.
+     */
+    public void setTaskExecutor(Consumer<Task<Void>> taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Get current target property.
+     *
+     * @return Current target property.
+     */
+    public ObjectProperty<ObservableList<SnapShotHeader>> currentTargetProperty() {
+        return currentTarget;
+    }
+
+    /**
+     * Get current object tag property.
+     *
+     * @return Current object tag property.
+     */
+    public LongProperty currentObjectTagProperty() {
+        return currentObjectTag;
+    }
+
+}
@@ -17,6 +17,7 @@
  */
 package jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs;
 
+import jp.co.ntt.oss.heapstats.snapshot.ReferenceCycleAnalyzer;
 import jp.co.ntt.oss.heapstats.snapshot.ReferenceTracker;
 import com.mxgraph.layout.hierarchical.mxHierarchicalLayout;
 import com.mxgraph.model.mxCell;
@@ -29,28 +30,39 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.LongProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleObjectProperty;
+import javafx.concurrent.Task;
 import javafx.embed.swing.SwingNode;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.RadioButton;
 import javafx.scene.layout.AnchorPane;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import jp.co.ntt.oss.heapstats.container.snapshot.ClassCluster;
 import jp.co.ntt.oss.heapstats.container.snapshot.ObjectData;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
 import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.SnapShotHeaderConverter;
 import jp.co.ntt.oss.heapstats.utils.HeapStatsUtils;
@@ -96,6 +108,8 @@ public class RefTreeController implements Initializable, MouseListener {
     
     private ResourceBundle resource;
 
+    private Consumer<Task<Void>> taskExecutor;
+
     private void buildTab() {
         if (currentSnapShotHeader.get() != null) {
             SwingUtilities.invokeLater(() -> initializeSwingNode());
@@ -164,25 +178,36 @@ public class RefTreeController implements Initializable, MouseListener {
     }
 
     /**
-     * Add reference cells to graph. This method creates cell which represents
-     * child, and connects to it from parent.
+     * Find cell of the object.
      *
-     * @param parentCell Parent cell
-     * @param child Child data.
+     * @param parent Parent cell which contains target cell.
+     * @param tag Tag of the object.
+     * @return Cell of the object. If it is not found, this method returns null.
      */
-    private void addReferenceCell(ReferenceCell parentCell, ObjectData objData) {
+    private ReferenceCell findCell(mxCell parent, long tag) {
         ReferenceCell cell = null;
-        mxCell tmp = (mxCell) parentCell.getParent();
 
-        for (int i = 0; i < tmp.getChildCount(); i++) {
-            mxICell target = tmp.getChildAt(i);
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            mxICell target = parent.getChildAt(i);
 
-            if (target.isVertex() && (((ReferenceCell) target).getTag() == objData.getTag())) {
+            if (target.isVertex() && (((ReferenceCell) target).getTag() == tag)) {
                 cell = (ReferenceCell) target;
             }
 
         }
 
+        return cell;
+    }
+
+    /**
+     * Add reference cells to graph. This method creates cell which represents
+     * child, and connects to it from parent.
+     *
+     * @param parentCell Parent cell
+     * @param child Child data.
+     */
+    private void addReferenceCell(ReferenceCell parentCell, ObjectData objData) {
+        ReferenceCell cell = findCell((mxCell) parentCell.getParent(), objData.getTag());
         ReferenceCell edge = new ReferenceCell(objData, false, true);
 
         if (cell == null) {
@@ -214,7 +239,7 @@ public class RefTreeController implements Initializable, MouseListener {
 
         OptionalInt rankLevel = rankCheckBox.isSelected() ? OptionalInt.of(HeapStatsUtils.getRankLevel())
                 : OptionalInt.empty();
-        ReferenceTracker refTracker = new ReferenceTracker(currentSnapShotHeader.get().getSnapShot(HeapStatsUtils.getReplaceClassName()), rankLevel, Optional.empty());
+        ReferenceTracker refTracker = new ReferenceTracker(currentSnapShotHeader.get().getSnapShotData(HeapStatsUtils.getReplaceClassName()), rankLevel, Optional.empty());
         List<ObjectData> objectList = radioParent.isSelected() ? refTracker.getParents(parentCell.getTag(), radioSize.isSelected())
                 : refTracker.getChildren(parentCell.getTag(), radioSize.isSelected());
 
@@ -305,6 +330,142 @@ public class RefTreeController implements Initializable, MouseListener {
         graphComponent.getViewport().setViewPosition(new Point(0, 0));
     }
 
+    /**
+     * Draw references in the reference cycle which contains the root object.
+     * This method is called by Swing Event Dispatcher Thread.
+     *
+     * @param snapShot SnapShot which contains the cycle.
+     * @param cluster Reference cycle.
+     */
+    private void drawCycle(SnapShotData snapShot, ClassCluster cluster) {
+        ReferenceCell root = findCell((mxCell) graph.getDefaultParent(), currentObjectTag.get());
+        if (root == null) {
+            return;
+        }
+
+        Deque<ReferenceCell> queue = new ArrayDeque<>();
+        Set<Long> visited = new HashSet<>();
+
+        queue.add(root);
+        visited.add(root.getTag());
+
+        graph.getModel().beginUpdate();
+        {
+            while (!queue.isEmpty()) {
+                ReferenceCell parentCell = queue.poll();
+                int row = snapShot.indexOf(parentCell.getTag());
+                if (row == -1) {
+                    continue;
+                }
+
+                for (int child = snapShot.getChildStart(row); child < snapShot.getChildEnd(row); child++) {
+                    long tag = snapShot.getChildTag(child);
+
+                    if (cluster.contains(tag)) {
+                        ObjectData objData = snapShot.getObjectData(snapShot.indexOf(tag));
+                        objData.setCount(snapShot.getChildInstances(child));
+                        objData.setTotalSize(snapShot.getChildTotalSize(child));
+                        addReferenceCell(parentCell, objData);
+
+                        if (visited.add(tag)) {
+                            Optional.ofNullable(findCell((mxCell) graph.getDefaultParent(), tag))
+                                    .ifPresent(queue::add);
+                        }
+
+                    }
+
+                }
+
+            }
+
+            mxHierarchicalLayout layout = new mxHierarchicalLayout(graph, SwingConstants.WEST);
+            layout.execute(graph.getDefaultParent());
+        }
+        graph.getModel().endUpdate();
+
+        graphComponent.repaint();
+        Platform.runLater(() -> topAnchorPane.layout());
+    }
+
+    /**
+     * JavaFX task class for finding the reference cycle which contains the
+     * root object.
+     */
+    private class FindCycleTask extends Task<Void> {
+
+        private final ActionEvent event;
+
+        private final SnapShotHeader header;
+
+        private final long tag;
+
+        private SnapShotData snapShot;
+
+        private Optional<ClassCluster> cluster;
+
+        /**
+         * Constructor of FindCycleTask.
+         *
+         * @param event ActionEvent of Cycle button.
+         * @param header SnapShot header to analyze.
+         * @param tag Tag of the root object.
+         */
+        public FindCycleTask(ActionEvent event, SnapShotHeader header, long tag) {
+            this.event = event;
+            this.header = header;
+            this.tag = tag;
+        }
+
+        @Override
+        protected Void call() throws Exception {
+            updateMessage("Finding reference cycle...");
+            snapShot = header.getSnapShotData(HeapStatsUtils.getReplaceClassName());
+            cluster = (new ReferenceCycleAnalyzer(snapShot)).getCluster(tag);
+            return null;
+        }
+
+        @Override
+        protected void succeeded() {
+
+            /* Root object might be changed while this task is running. */
+            if ((header != currentSnapShotHeader.get()) || (tag != currentObjectTag.get())) {
+                return;
+            }
+
+            if (!cluster.isPresent()) {
+                Alert dialog = new Alert(AlertType.INFORMATION, resource.getString("reftree.message.nocycle"), ButtonType.OK);
+                dialog.show();
+                return;
+            }
+
+            onOkClick(event);
+            SwingUtilities.invokeLater(() -> drawCycle(snapShot, cluster.get()));
+        }
+
+        @Override
+        protected void failed() {
+            HeapStatsUtils.showExceptionDialog(getException());
+        }
+
+    }
+
+    /**
+     * Event handler of Cycle button.
+     * This handler shows the reference cycle which contains the root object.
+     * Reference cycles are analyzed in background task.
+     *
+     * @param event ActionEvent of this event.
+     */
+    @FXML
+    private void onCycleClick(ActionEvent event) {
+
+        if ((currentSnapShotHeader.get() == null) || (graph == null)) {
+            return;
+        }
+
+        taskExecutor.accept(new FindCycleTask(event, currentSnapShotHeader.get(), currentObjectTag.get()));
+    }
+
     /**
      * Get property of current SnapShotHeader.
      *
@@ -323,4 +484,14 @@ public class RefTreeController implements Initializable, MouseListener {
         return currentObjectTag;
     }
 
+    /**
+     * Set Consumer for executing JavaFX task. This Consumer is used for tasks
+     * which should be shown ProgressIndicator.
+     *
+     * @param taskExecutor Consumer for executing JavaFX task.
+     */
+    public void setTaskExecutor(Consumer<Task<Void>> taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
 }
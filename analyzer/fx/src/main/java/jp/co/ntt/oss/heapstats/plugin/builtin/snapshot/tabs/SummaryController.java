@@ -19,6 +19,7 @@ package jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.tabs;
 
 import java.net.URL;
 import java.util.Locale;
+import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -39,6 +40,8 @@ import javafx.scene.chart.XYChart;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
+import jp.co.ntt.oss.heapstats.container.snapshot.ExhaustionForecast;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotData;
 import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotHeader;
 import jp.co.ntt.oss.heapstats.container.snapshot.SummaryData;
 import jp.co.ntt.oss.heapstats.utils.HeapStatsUtils;
@@ -122,11 +125,30 @@ public class SummaryController implements Initializable {
                     new SummaryData.SummaryDataEntry(resource.getString("summary.metaspace.usage"), String.format("%.1f MB", data.getLatestMetaspaceUsage() / 1024.0d / 1024.0d)),
                     new SummaryData.SummaryDataEntry(resource.getString("summary.gc.time"), String.format("%d ms", data.getMaxGCTime())),
                     new SummaryData.SummaryDataEntry(resource.getString("summary.snapshot.size"), String.format("%.1f KB", data.getMaxSnapshotSize() / 1024.0d)),
-                    new SummaryData.SummaryDataEntry(resource.getString("summary.snapshot.entrycount"), Long.toString(data.getMaxEntryCount()))
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.snapshot.entrycount"), Long.toString(data.getMaxEntryCount())),
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.heap.exhaustion"), formatForecast(data.getHeapForecast())),
+                    new SummaryData.SummaryDataEntry(resource.getString("summary.metaspace.exhaustion"), formatForecast(data.getMetaspaceForecast()))
             ));
         }
     }
 
+    /**
+     * Format forecast of exhaustion.
+     *
+     * @param forecast Forecast to format.
+     * @return Estimated time with 95% confidence band, or "-" if exhaustion
+     *          is not expected.
+     */
+    private String formatForecast(Optional<ExhaustionForecast> forecast) {
+        LocalDateTimeConverter converter = new LocalDateTimeConverter();
+
+        return forecast.filter(f -> f.getEstimated().isPresent())
+                       .map(f -> String.format("%s (%s - %s)", converter.toString(f.getEstimated().get()),
+                                                               f.getEarliest().map(converter::toString).orElse("-"),
+                                                               f.getLatest().map(converter::toString).orElse("-")))
+                       .orElse("-");
+    }
+
     /**
      * Initialize Series in Chart. This method uses to avoid RuntimeException
      * which is related to: RT-37994: [FXML] ProxyBuilder does not support
@@ -233,10 +255,9 @@ public class SummaryController implements Initializable {
             metaspaceUsageBuf.add(new XYChart.Data<>(time, header.getMetaspaceUsage() / 1024 / 1024));
             metaspaceCapacityBuf.add(new XYChart.Data<>(time, header.getMetaspaceCapacity() / 1024 / 1024));
 
-            currentClassNameSet.get().addAll(header.getSnapShot(HeapStatsUtils.getReplaceClassName())
-                    .values()
-                    .stream()
-                    .map(s -> s.getName())
+            SnapShotData snapShot = header.getSnapShotData(HeapStatsUtils.getReplaceClassName());
+            currentClassNameSet.get().addAll(snapShot.rows()
+                    .mapToObj(snapShot::getName)
                     .collect(Collectors.toSet()));
 
             updateProgress(++processedIndex, currentTarget.get().size());
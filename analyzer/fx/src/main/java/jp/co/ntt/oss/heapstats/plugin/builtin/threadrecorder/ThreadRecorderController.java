@@ -155,6 +155,7 @@ public class ThreadRecorderController extends PluginController implements Initia
         dialog.setTitle(resource.getString("dialog.filechooser.title"));
         dialog.setInitialDirectory(new File(HeapStatsUtils.getDefaultDirectory()));
         dialog.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Thread Recorder file (*.htr)", "*.htr"),
+                                            new FileChooser.ExtensionFilter("Compressed Thread Recorder file (*.htr.gz)", "*.htr.gz"),
                                             new FileChooser.ExtensionFilter("All files", "*.*"));
         File recorderFile = dialog.showOpenDialog(WindowController.getInstance().getOwner());
         
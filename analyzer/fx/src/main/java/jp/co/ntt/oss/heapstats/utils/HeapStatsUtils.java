@@ -41,6 +41,7 @@ import java.util.stream.Stream;
 import javafx.scene.control.Alert;
 import javafx.scene.control.TextArea;
 import javafx.scene.paint.Color;
+import jp.co.ntt.oss.heapstats.container.snapshot.SnapShotCache;
 import jp.co.ntt.oss.heapstats.plugin.builtin.jvmlive.JVMLiveController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.log.LogController;
 import jp.co.ntt.oss.heapstats.plugin.builtin.snapshot.SnapShotController;
@@ -169,6 +170,16 @@ public class HeapStatsUtils {
             prop.setProperty("heaporder", "true");
         }
 
+        /* Budget of SnapShot cache (MB). */
+        String cacheSizeStr = prop.getProperty("snapshot_cache_mb");
+        if (cacheSizeStr != null) {
+            try {
+                SnapShotCache.getInstance().setMaxBytes(Long.parseLong(cacheSizeStr) * 1024 * 1024);
+            } catch (NumberFormatException e) {
+                throw new HeapStatsConfigException(resource.getString("invalid.option") + " snapshot_cache_mb=" + cacheSizeStr, e);
+            }
+        }
+
         /* Add shutdown hook for saving current settings. */
         Runnable savePropImpl = () -> {
             try (OutputStream out = Files.newOutputStream(properties, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE)) {